@@ -28,11 +28,18 @@
 
 package org.cuframework;
 
+import java.util.AbstractMap;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * Representation of a Map of maps.
@@ -61,32 +68,92 @@ public class MapOfMaps {
     }
 
     private final Map<String, Map<String, Object>> mapOfMaps;
+    private final MapOfMaps parent;
+    private Map<String, InheritedMap> inheritedMaps = null;  //copy on write views of the maps of the parent, created when
+                                                            //first asked for
 
     public MapOfMaps() {
-        this(new TreeMap<String, Map<String, Object>>());
+        this(new TreeMap<String, Map<String, Object>>());  //sorted by the map names as getMapOfMaps has always returned them
     }
 
     public MapOfMaps(Map<String, Map<String, Object>> map) {
-        this.mapOfMaps = map;
-        this.mapOfMaps.put(Name.SYSTEM_MAP.getKey(), getSystemMap());  //let's make the system map
-                                                                       //always available for use.
+        this(map, null);
+    }
+
+    /**
+     * Creates a map of maps which overlays the specified (typically shared and immutable, see {@link #toImmutable()})
+     * parent. The maps of the parent are visible through the child unless the child puts a map of the same name,
+     * which then shadows the parent's one. The parent itself is never modified through the child: the maps inherited
+     * from the parent are copied on write i.e. the first modification of an inherited map (e.g. by a 'set' unit)
+     * shadows the parent's map with a copy of it local to the child, which then gets modified.
+     *
+     * @param parent
+     *            the map of maps to be overlaid
+     */
+    public MapOfMaps(MapOfMaps parent) {
+        this(new TreeMap<String, Map<String, Object>>(), parent);
+    }
+
+    private MapOfMaps(Map<String, Map<String, Object>> map, MapOfMaps parent) {
+        this(map, parent, true);
     }
 
-    private Map<String, Object> getSystemMap() {
-        Map<String, Object> sysPropsMap = new HashMap<String, Object>();
-        for (Entry<Object, Object> entry: System.getProperties().entrySet()) {
-            Object key = entry.getKey();
-            Object value = entry.getValue();
-            sysPropsMap.put(key.toString(), value/* != null ? value.toString() : null*/);
+    private MapOfMaps(Map<String, Map<String, Object>> map, MapOfMaps parent, boolean putSystemMap) {
+        this.mapOfMaps = map;
+        this.parent = parent;
+        if (putSystemMap) {
+            this.mapOfMaps.put(Name.SYSTEM_MAP.getKey(), new SystemMap());  //let's make the system map
+                                                                            //always available for use.
         }
-        sysPropsMap.put("CURRENT_TIME", (new Date())/*.toString()*/);
-        return sysPropsMap;
     }
 
+    /**
+     * Returns the maps of this map of maps, not including the ones inherited from the parent (if any).
+     */
     public Map<String, Map<String, Object>> getMapOfMaps() {
         return mapOfMaps;
     }
 
+    /**
+     * Returns the parent overlaid by this map of maps or null if there is none.
+     */
+    public MapOfMaps getParent() {
+        return parent;
+    }
+
+    /**
+     * Returns an immutable copy of this map of maps (including the maps inherited from the parent) which can be shared
+     * across threads as the parent of the per request map of maps. Neither the maps nor their contents can be modified
+     * through the copy; the copy however isn't deep i.e. it is backed by the maps of this instance.
+     *
+     * @return the immutable copy
+     */
+    public MapOfMaps toImmutable() {
+        Map<String, Map<String, Object>> maps = new TreeMap<String, Map<String, Object>>();
+        for (MapOfMaps mom = this; mom != null; mom = mom.parent) {
+            for (Entry<String, Map<String, Object>> entry: mom.mapOfMaps.entrySet()) {
+                if (!maps.containsKey(entry.getKey())) {  //the child's map shadows the parent's one
+                    maps.put(entry.getKey(), entry.getValue() == null? null:
+                                                                       Collections.unmodifiableMap(entry.getValue()));
+                }
+            }
+        }
+        return new MapOfMaps(Collections.unmodifiableMap(maps), null, false);  //the system map is copied as well
+    }
+
+    /**
+     * Returns a view of this map of maps which can be used (read as well as modified) concurrently, e.g. by the
+     * iterations of a parallel loop. All the operations of the view and of the maps obtained through it are synchronized
+     * on a single lock and get applied to this map of maps and to its maps, hence the changes done through the view
+     * remain once it is done with. The maps obtained through the view are iterated over the snapshots of their entries.
+     * The values held inside the maps (e.g. the nested maps) aren't synchronized.
+     *
+     * @return the synchronized view
+     */
+    public MapOfMaps toSynchronized() {
+        return new SynchronizedMapOfMaps(this);
+    }
+
     /**
      * Returns the map identified by the specified name.
      *
@@ -112,6 +179,9 @@ public class MapOfMaps {
      */
     public Map<String, Object> getMap(String mapName, boolean create) {
         Map<String, Object> map = mapOfMaps.get(mapName);
+        if (map == null && parent != null) {
+            map = getInheritedMap(mapName);
+        }
         if (map == null && create) {
             map = new TreeMap<String, Object>();
             mapOfMaps.put(mapName, map);
@@ -122,7 +192,7 @@ public class MapOfMaps {
     /**
      * Puts the specified map into the Map of maps using the specified
      * map name as key. (The previous map with the same name, if any, will be
-     * discarded).
+     * discarded or, if it belongs to the parent, shadowed).
      *
      * @param mapName
      *            name of the map to be added
@@ -132,4 +202,280 @@ public class MapOfMaps {
     public void putMap(String mapName, Map<String, Object> map) {
         mapOfMaps.put(mapName, map);
     }
+
+    private Map<String, Object> getInheritedMap(String mapName) {
+        InheritedMap inheritedMap = inheritedMaps != null? inheritedMaps.get(mapName): null;
+        if (inheritedMap == null) {
+            Map<String, Object> parentMap = parent.getMap(mapName);
+            if (parentMap == null) {
+                return null;
+            }
+            inheritedMap = new InheritedMap(mapName, parentMap);
+            if (inheritedMaps == null) {
+                inheritedMaps = new HashMap<String, InheritedMap>();
+            }
+            inheritedMaps.put(mapName, inheritedMap);
+        }
+        return inheritedMap;
+    }
+
+    //Copy on write view of a map of the parent. Reads go to the parent's map until the map gets modified through the view
+    //(or the child puts a map of the same name) after which they go to the child's map shadowing the parent's one.
+    //Until then the entries (and the views over them) can't be modified through the iterators.
+    private final class InheritedMap extends AbstractMap<String, Object> {
+        private final String mapName;
+        private final Map<String, Object> parentMap;
+
+        private InheritedMap(String mapName, Map<String, Object> parentMap) {
+            this.mapName = mapName;
+            this.parentMap = parentMap;
+        }
+
+        @Override
+        public Object get(Object key) {
+            return getTarget().get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return getTarget().containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return getTarget().size();
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            return getLocalMap().put(key, value);
+        }
+
+        @Override
+        public void putAll(Map<? extends String, ? extends Object> map) {
+            getLocalMap().putAll(map);
+        }
+
+        @Override
+        public Object remove(Object key) {
+            return getTarget().containsKey(key)? getLocalMap().remove(key): null;
+        }
+
+        @Override
+        public void clear() {
+            getLocalMap().clear();
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            Map<String, Object> localMap = mapOfMaps.get(mapName);
+            return localMap != null? localMap.entrySet(): Collections.unmodifiableMap(parentMap).entrySet();
+        }
+
+        private Map<String, Object> getTarget() {
+            Map<String, Object> localMap = mapOfMaps.get(mapName);
+            return localMap != null? localMap: parentMap;
+        }
+
+        private Map<String, Object> getLocalMap() {
+            Map<String, Object> localMap = mapOfMaps.get(mapName);
+            if (localMap == null) {
+                localMap = new LinkedHashMap<String, Object>(parentMap);  //in the parent's order
+                mapOfMaps.put(mapName, localMap);
+            }
+            return localMap;
+        }
+    }
+
+    //Synchronized view of a map of maps. The maps are wrapped into synchronized views as well (one per map so that the same
+    //view is returned every time) which share the lock of the map of maps.
+    private static final class SynchronizedMapOfMaps extends MapOfMaps {
+        private final MapOfMaps backingMapOfMaps;
+        private final Map<Map<String, Object>, Map<String, Object>> synchronizedMaps = new IdentityHashMap<>();
+
+        private SynchronizedMapOfMaps(MapOfMaps backingMapOfMaps) {
+            super(backingMapOfMaps.mapOfMaps, backingMapOfMaps.parent, false);
+            this.backingMapOfMaps = backingMapOfMaps;
+        }
+
+        @Override
+        public synchronized Map<String, Map<String, Object>> getMapOfMaps() {
+            Map<String, Map<String, Object>> maps = new TreeMap<String, Map<String, Object>>();
+            for (Entry<String, Map<String, Object>> entry: backingMapOfMaps.getMapOfMaps().entrySet()) {
+                maps.put(entry.getKey(), toSynchronized(entry.getValue()));
+            }
+            return Collections.unmodifiableMap(maps);
+        }
+
+        @Override
+        public synchronized MapOfMaps toImmutable() {
+            return backingMapOfMaps.toImmutable();
+        }
+
+        @Override
+        public MapOfMaps toSynchronized() {
+            return this;
+        }
+
+        @Override
+        public synchronized Map<String, Object> getMap(String mapName, boolean create) {
+            return toSynchronized(backingMapOfMaps.getMap(mapName, create));
+        }
+
+        @Override
+        public synchronized void putMap(String mapName, Map<String, Object> map) {
+            backingMapOfMaps.putMap(mapName, map);
+        }
+
+        private Map<String, Object> toSynchronized(Map<String, Object> map) {
+            if (map == null) {
+                return null;
+            }
+            Map<String, Object> synchronizedMap = synchronizedMaps.get(map);
+            if (synchronizedMap == null) {
+                synchronizedMaps.put(map, synchronizedMap = new SynchronizedMap(map, this));
+            }
+            return synchronizedMap;
+        }
+    }
+
+    private static final class SynchronizedMap extends AbstractMap<String, Object> {
+        private final Map<String, Object> map;
+        private final Object lock;
+
+        private SynchronizedMap(Map<String, Object> map, Object lock) {
+            this.map = map;
+            this.lock = lock;
+        }
+
+        @Override
+        public Object get(Object key) {
+            synchronized (lock) {
+                return map.get(key);
+            }
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            synchronized (lock) {
+                return map.containsKey(key);
+            }
+        }
+
+        @Override
+        public int size() {
+            synchronized (lock) {
+                return map.size();
+            }
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            synchronized (lock) {
+                return map.put(key, value);
+            }
+        }
+
+        @Override
+        public void putAll(Map<? extends String, ? extends Object> m) {
+            synchronized (lock) {
+                map.putAll(m);
+            }
+        }
+
+        @Override
+        public Object remove(Object key) {
+            synchronized (lock) {
+                return map.remove(key);
+            }
+        }
+
+        @Override
+        public void clear() {
+            synchronized (lock) {
+                map.clear();
+            }
+        }
+
+        @Override
+        public Object putIfAbsent(String key, Object value) {
+            synchronized (lock) {
+                return map.putIfAbsent(key, value);
+            }
+        }
+
+        @Override
+        public Object computeIfAbsent(String key, Function<? super String, ? extends Object> mappingFunction) {
+            synchronized (lock) {
+                return map.computeIfAbsent(key, mappingFunction);
+            }
+        }
+
+        @Override
+        public Object compute(String key, BiFunction<? super String, ? super Object, ? extends Object> remappingFunction) {
+            synchronized (lock) {
+                return map.compute(key, remappingFunction);
+            }
+        }
+
+        @Override
+        public Object merge(String key, Object value,
+                            BiFunction<? super Object, ? super Object, ? extends Object> remappingFunction) {
+            synchronized (lock) {
+                return map.merge(key, value, remappingFunction);
+            }
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            synchronized (lock) {
+                return Collections.unmodifiableMap(new LinkedHashMap<String, Object>(map)).entrySet();  //snapshot
+            }
+        }
+    }
+
+    //Read-through view of the system properties plus the CURRENT_TIME of the map's creation. Nothing is copied unless the
+    //map is iterated or modified in which case a snapshot is taken which then serves all the calls. Constructing the
+    //map of maps (done per execution) thus doesn't pay for the copy of all the system properties, which mostly go unread.
+    private static final class SystemMap extends AbstractMap<String, Object> {
+        private static final String CURRENT_TIME = "CURRENT_TIME";
+
+        private final Date currentTime = new Date();
+        private volatile Map<String, Object> snapshot = null;  //volatile as the map may be shared through an immutable copy
+
+        @Override
+        public Object get(Object key) {
+            return snapshot != null? snapshot.get(key):
+                   CURRENT_TIME.equals(key)? currentTime:
+                   key != null? System.getProperties().get(key): null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return snapshot != null? snapshot.containsKey(key):
+                   CURRENT_TIME.equals(key) || key != null && System.getProperties().containsKey(key);
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            return getSnapshot().put(key, value);
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return getSnapshot().entrySet();
+        }
+
+        private Map<String, Object> getSnapshot() {
+            if (snapshot == null) {
+                Map<String, Object> sysPropsMap = new HashMap<String, Object>();
+                for (Entry<Object, Object> entry: System.getProperties().entrySet()) {
+                    sysPropsMap.put(entry.getKey().toString(), entry.getValue());
+                }
+                sysPropsMap.put(CURRENT_TIME, currentTime);
+                snapshot = sysPropsMap;
+            }
+            return snapshot;
+        }
+    }
 }
@@ -28,13 +28,18 @@
 
 package org.cuframework.config;
 
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 import org.cuframework.core.CompilationUnits;
 
@@ -53,6 +58,7 @@ public class ConfigManager {
     private static final String JOINER = ".";  //char used as joiner to form the key of attribute to be looked up inside the various hierarchical config maps
     private static final String STAR = "*";  //wildcard char used to form the blanket key of attribute to be looked up inside the various hierarchical config maps
     private static final String MERGEABLE_ATTRIBUTES_SPLITTER = ",";
+    private static final Object NULL_VALUE = new Object();  //caches the failed lookups (concurrent maps can't hold nulls)
 
     /**
      * Defining some generic config ids.
@@ -84,7 +90,7 @@ public class ConfigManager {
 
         private String id = null;
         private String name= null;  //for information purpose
-        private HashMap<String, HierarchicalConfig> linkedDownstreamConfigs = null;
+        private volatile Map<String, HierarchicalConfig> linkedDownstreamConfigs = null;  //concurrent as it is read without lock
         private HierarchicalConfig parentConfig = null;
 
         public HierarchicalConfig(String id) {
@@ -113,12 +119,145 @@ public class ConfigManager {
                 return;
             }
             if (linkedDownstreamConfigs == null) {
-                linkedDownstreamConfigs = new HashMap<>();
+                linkedDownstreamConfigs = new ConcurrentHashMap<>();
             }
             if (config != null) {
                 config.parentConfig = this;
+                linkedDownstreamConfigs.put(configId, config);
+            } else {
+                linkedDownstreamConfigs.remove(configId);  //same as linking null
+            }
+            changed();
+        }
+
+        //the changes to the config are tracked to invalidate the resolutions cached by the config manager. Changes made
+        //directly inside the nested containers (e.g. the attributes map), as well as the ones made through the key, value
+        //and entry views of the config, aren't and should be followed by a call to ConfigManager.configChanged().
+        private static void changed() {
+            if (cm != null) {  //null while the config manager itself (and its system map) is being initialized
+                cm.configChanged();
+            }
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            try {
+                return super.put(key, value);
+            } finally {
+                changed();
+            }
+        }
+
+        @Override
+        public void putAll(Map<? extends String, ? extends Object> m) {
+            try {
+                super.putAll(m);
+            } finally {
+                changed();
+            }
+        }
+
+        @Override
+        public Object remove(Object key) {
+            try {
+                return super.remove(key);
+            } finally {
+                changed();
+            }
+        }
+
+        @Override
+        public void clear() {
+            try {
+                super.clear();
+            } finally {
+                changed();
+            }
+        }
+
+        //the default methods below are overridden by HashMap without going through put/remove and hence are tracked
+        //on their own
+        @Override
+        public Object putIfAbsent(String key, Object value) {
+            try {
+                return super.putIfAbsent(key, value);
+            } finally {
+                changed();
+            }
+        }
+
+        @Override
+        public boolean remove(Object key, Object value) {
+            try {
+                return super.remove(key, value);
+            } finally {
+                changed();
+            }
+        }
+
+        @Override
+        public boolean replace(String key, Object oldValue, Object newValue) {
+            try {
+                return super.replace(key, oldValue, newValue);
+            } finally {
+                changed();
+            }
+        }
+
+        @Override
+        public Object replace(String key, Object value) {
+            try {
+                return super.replace(key, value);
+            } finally {
+                changed();
+            }
+        }
+
+        @Override
+        public void replaceAll(BiFunction<? super String, ? super Object, ? extends Object> function) {
+            try {
+                super.replaceAll(function);
+            } finally {
+                changed();
+            }
+        }
+
+        @Override
+        public Object computeIfAbsent(String key, Function<? super String, ? extends Object> mappingFunction) {
+            try {
+                return super.computeIfAbsent(key, mappingFunction);
+            } finally {
+                changed();
+            }
+        }
+
+        @Override
+        public Object computeIfPresent(String key,
+                                       BiFunction<? super String, ? super Object, ? extends Object> remappingFunction) {
+            try {
+                return super.computeIfPresent(key, remappingFunction);
+            } finally {
+                changed();
+            }
+        }
+
+        @Override
+        public Object compute(String key, BiFunction<? super String, ? super Object, ? extends Object> remappingFunction) {
+            try {
+                return super.compute(key, remappingFunction);
+            } finally {
+                changed();
+            }
+        }
+
+        @Override
+        public Object merge(String key, Object value,
+                            BiFunction<? super Object, ? super Object, ? extends Object> remappingFunction) {
+            try {
+                return super.merge(key, value, remappingFunction);
+            } finally {
+                changed();
             }
-            linkedDownstreamConfigs.put(configId, config);
         }
 
         private Map<String, Object> getContainer(String containerId) {
@@ -159,27 +298,31 @@ public class ConfigManager {
         //does a hierarchical lookup of the key's value inside the specified container.
         //If the specified container is null then the key is looked up directly inside this top level map instance.
         public Object get(String[] downstreamConfigHierarchy, String keyContainerId, String key) {
+            return get(downstreamConfigHierarchy, 0, keyContainerId, key);
+        }
+
+        //looks up the key considering the hierarchy from the passed index onwards (saves copying the hierarchy at every level)
+        private Object get(String[] downstreamConfigHierarchy, int from, String keyContainerId, String key) {
             if (key == null) {
                 return null;
             }
 
             //initialize with the top level value
+            Object container = keyContainerId == null? null: get(keyContainerId);
             Object value = keyContainerId == null?
                                        get(key):
-                                       _fetchFromInsideContainers(new String[]{keyContainerId}, key);
+                                       container instanceof Map? ((Map) container).get(key): null;
 
-            if (downstreamConfigHierarchy == null || downstreamConfigHierarchy.length == 0) {
+            if (downstreamConfigHierarchy == null) {
                 return value;
             }
-            for (int i = 0; i < downstreamConfigHierarchy.length; i++) {
+            for (int i = from; i < downstreamConfigHierarchy.length; i++) {
                 String downstreamConfigId = downstreamConfigHierarchy[i];
                 HierarchicalConfig downstreamConfig = getDownstreamConfig(downstreamConfigId);
-                Object downstreamValue = downstreamConfig == null? null: downstreamConfig.get(
-                                                                                i == downstreamConfigHierarchy.length - 1?
-                                                                                    null:
-                                                                                    Arrays.copyOfRange(downstreamConfigHierarchy, i + 1, downstreamConfigHierarchy.length),
-                                                                                keyContainerId,
-                                                                                key);
+                Object downstreamValue = downstreamConfig == null? null: downstreamConfig.get(downstreamConfigHierarchy,
+                                                                                              i + 1,
+                                                                                              keyContainerId,
+                                                                                              key);
                 if (downstreamValue != null) {
                     value = downstreamValue;
                 }
@@ -206,9 +349,12 @@ public class ConfigManager {
 
     private static ConfigManager cm = new ConfigManager();
     private final Map<String, HierarchicalConfig> configs;
+    private final AtomicLong version = new AtomicLong();  //bumped on every (tracked) config change
+    private final Map<ResolutionKey, Resolution> resolutions = new ConcurrentHashMap<>();  //lookups resolved per node (see
+                                                                                          //getResolution)
 
     private ConfigManager() {
-        this.configs = new HashMap<>();
+        this.configs = new ConcurrentHashMap<>();  //read concurrently by the units being compiled
         this.configs.put(ConfigID.SYSTEM.getKey(), getSystemMap());  //let's make the system map
                                                                        //always available for use.
     }
@@ -258,8 +404,8 @@ public class ConfigManager {
     public HierarchicalConfig getConfig(String configId, boolean create) {
         HierarchicalConfig config = configs.get(configId);
         if (config == null && create) {
-            config = new HierarchicalConfig(configId);
-            configs.put(configId, config);
+            config = configs.computeIfAbsent(configId, HierarchicalConfig::new);
+            configChanged();
         }
         return config;
     }
@@ -275,7 +421,77 @@ public class ConfigManager {
      *            the config to be added
      */
     public void putConfig(String configId, HierarchicalConfig config) {
-        configs.put(configId, config);
+        if (config != null) {
+            configs.put(configId, config);
+        } else {
+            configs.remove(configId);  //same as putting null
+        }
+        configChanged();
+    }
+
+    /**
+     * Invalidates the lookups resolved (and cached) so far. Called on the changes made through the config manager and the
+     * hierarchical configs. Must be called explicitly after making any changes to the configs by other means (e.g. inside
+     * the nested container maps of the configs).
+     */
+    public void configChanged() {
+        version.incrementAndGet();
+    }
+
+    //returns the lookups resolved for the passed node. Resolved afresh if the configs have changed since last resolved.
+    private Resolution getResolution(String nodeName, String tagName, String namespaceURI, String realmId) {
+        ResolutionKey key = new ResolutionKey(nodeName, tagName, namespaceURI, realmId);
+        long currentVersion = version.get();
+        Resolution resolution = resolutions.get(key);
+        if (resolution == null || resolution.version != currentVersion) {
+            resolution = new Resolution(currentVersion);
+            resolutions.put(key, resolution);
+        }
+        return resolution;
+    }
+
+    private static final class ResolutionKey {
+        private final String nodeName;
+        private final String tagName;
+        private final String namespaceURI;
+        private final String realmId;
+        private final int hash;
+
+        private ResolutionKey(String nodeName, String tagName, String namespaceURI, String realmId) {
+            this.nodeName = nodeName;
+            this.tagName = tagName;
+            this.namespaceURI = namespaceURI;
+            this.realmId = realmId;
+            this.hash = Objects.hash(nodeName, tagName, namespaceURI, realmId);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ResolutionKey)) {
+                return false;
+            }
+            ResolutionKey other = (ResolutionKey) o;
+            return Objects.equals(nodeName, other.nodeName) && Objects.equals(tagName, other.tagName) &&
+                   Objects.equals(namespaceURI, other.namespaceURI) && Objects.equals(realmId, other.realmId);
+        }
+    }
+
+    //the lookups resolved for a node as of a given version of the configs. Each is resolved when first asked for.
+    private static final class Resolution {
+        private final long version;
+        private volatile Map<String, Object> attributes = null;
+        private volatile Set<String> mergeableAttributes = null;
+        private final Map<String, Object> attributeValues = new ConcurrentHashMap<>();
+        private final Map<String, Object> metadataValues = new ConcurrentHashMap<>();
+
+        private Resolution(long version) {
+            this.version = version;
+        }
     }
 
     public HierarchicalConfig getSystemConfig() {
@@ -319,7 +535,19 @@ public class ConfigManager {
         }
     }
 
+    //the returned set is shared and hence unmodifiable
     public Set<String> getNamesOfMergeableAttributes(String nodeName, String tagName, String namespaceURI, String realmId) {
+        Resolution resolution = getResolution(nodeName, tagName, namespaceURI, realmId);
+        Set<String> mergeableAttributes = resolution.mergeableAttributes;
+        if (mergeableAttributes == null) {
+            mergeableAttributes = Collections.unmodifiableSet(
+                                          resolveNamesOfMergeableAttributes(nodeName, tagName, namespaceURI, realmId));
+            resolution.mergeableAttributes = mergeableAttributes;
+        }
+        return mergeableAttributes;
+    }
+
+    private Set<String> resolveNamesOfMergeableAttributes(String nodeName, String tagName, String namespaceURI, String realmId) {
         Set<String> mergeableAttributes = new HashSet<>();
         String attribute = HierarchicalConfig.STANDARD_METADATA_KEY_MERGEABLE_ATTRIBUTES;
 
@@ -438,6 +666,19 @@ public class ConfigManager {
     }
 
     public Object getMetadataValue(String nodeName, String tagName, String namespaceURI, String realmId, String key) {
+        if (key == null) {
+            return resolveMetadataValue(nodeName, tagName, namespaceURI, realmId, key);
+        }
+        Map<String, Object> metadataValues = getResolution(nodeName, tagName, namespaceURI, realmId).metadataValues;
+        Object value = metadataValues.get(key);
+        if (value == null) {
+            value = resolveMetadataValue(nodeName, tagName, namespaceURI, realmId, key);
+            metadataValues.put(key, value == null? NULL_VALUE: value);
+        }
+        return value == NULL_VALUE? null: value;
+    }
+
+    private Object resolveMetadataValue(String nodeName, String tagName, String namespaceURI, String realmId, String key) {
         String CONTAINER_ID = HierarchicalConfig.STANDARD_CONTAINER__METADATA;
 
         boolean nodeAndTagNamesAreSame = nodeName != null? nodeName.equals(tagName): false;
@@ -483,6 +724,19 @@ public class ConfigManager {
     }
 
     public Object getAttributeValue(String nodeName, String tagName, String namespaceURI, String realmId, String attribute) {
+        if (attribute == null) {
+            return resolveAttributeValue(nodeName, tagName, namespaceURI, realmId, attribute);
+        }
+        Map<String, Object> attributeValues = getResolution(nodeName, tagName, namespaceURI, realmId).attributeValues;
+        Object value = attributeValues.get(attribute);
+        if (value == null) {
+            value = resolveAttributeValue(nodeName, tagName, namespaceURI, realmId, attribute);
+            attributeValues.put(attribute, value == null? NULL_VALUE: value);
+        }
+        return value == NULL_VALUE? null: value;
+    }
+
+    private Object resolveAttributeValue(String nodeName, String tagName, String namespaceURI, String realmId, String attribute) {
         String CONTAINER_ID = HierarchicalConfig.STANDARD_CONTAINER__ATTRIBUTES;
 
         boolean nodeAndTagNamesAreSame = nodeName != null? nodeName.equals(tagName): false;
@@ -535,7 +789,18 @@ public class ConfigManager {
         return config == null? null: config.get(new String[]{downstreamConfigId}, keyContainerId, key);
     }
 
+    //the returned map is shared and hence unmodifiable
     public Map<String, Object> getAttributes(String nodeName, String tagName, String namespaceURI, String realmId) {
+        Resolution resolution = getResolution(nodeName, tagName, namespaceURI, realmId);
+        Map<String, Object> attributes = resolution.attributes;
+        if (attributes == null) {
+            attributes = Collections.unmodifiableMap(resolveAttributes(nodeName, tagName, namespaceURI, realmId));
+            resolution.attributes = attributes;
+        }
+        return attributes;
+    }
+
+    private Map<String, Object> resolveAttributes(String nodeName, String tagName, String namespaceURI, String realmId) {
         boolean nodeAndTagNamesAreSame = nodeName != null? nodeName.equals(tagName): false;
         String[] downstreamConfigIdsInAscPriorityOrder = nodeAndTagNamesAreSame?
                                                                new String[]{STAR, nodeName}:
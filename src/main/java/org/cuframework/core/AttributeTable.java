@@ -0,0 +1,148 @@
+// Compilation Units Framework: a very generic & powerful data driven programming framework.
+// Copyright (c) 2019 Sidharth Yadav, sidharth_08@yahoo.com
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.cuframework.core;
+
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Immutable open addressing (linear probing) table holding the attributes of a compilation unit. The attributes are read
+ * far more often (on every evaluation) than written (only while compiling and extending the unit), so the writes copy the
+ * table and the reads go without any locking. The keys are interned as the units share a small set of attribute names.
+ * @author Sidharth Yadav
+ *
+ */
+final class AttributeTable {
+    static final AttributeTable EMPTY = new AttributeTable(new String[0], new String[0], 0);
+
+    private static final int MIN_CAPACITY = 8;
+
+    private final String[] keys;
+    private final String[] values;
+    private final int size;
+
+    private AttributeTable(String[] keys, String[] values, int size) {
+        this.keys = keys;
+        this.values = values;
+        this.size = size;
+    }
+
+    String get(String key) {
+        int index = indexOf(key);
+        return index < 0? null: values[index];
+    }
+
+    boolean containsKey(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    //returns a table with the passed attribute added (or replaced). This table is left as is.
+    AttributeTable with(String key, String value) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            if (value.equals(values[index])) {
+                return this;
+            }
+            String[] newValues = values.clone();
+            newValues[index] = value;
+            return new AttributeTable(keys, newValues, size);
+        }
+        int capacity = keys.length;
+        if ((size + 1) * 2 > capacity) {  //keeps the load factor at a half or less so that the probes stay short
+            capacity = Math.max(MIN_CAPACITY, capacity * 2);
+        }
+        String[] newKeys = new String[capacity];
+        String[] newValues = new String[capacity];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                insert(newKeys, newValues, keys[i], values[i]);
+            }
+        }
+        insert(newKeys, newValues, key.intern(), value);
+        return new AttributeTable(newKeys, newValues, size + 1);
+    }
+
+    //returns a new (modifiable) set on every call, same as Properties.stringPropertyNames(), as the names are exposed to
+    //the templates (through the attribute expressions) which are free to modify the returned set
+    Set<String> names() {
+        Set<String> names = new HashSet<>(size * 2);
+        for (String key: keys) {
+            if (key != null) {
+                names.add(key);
+            }
+        }
+        return names;
+    }
+
+    Properties toProperties() {
+        Properties properties = new Properties();
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                properties.setProperty(keys[i], values[i]);
+            }
+        }
+        return properties;
+    }
+
+    private int indexOf(String key) {
+        if (size == 0 || key == null) {
+            return -1;
+        }
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            String k = keys[i];
+            if (k == null) {
+                return -1;
+            }
+            if (k == key || k.equals(key)) {
+                return i;
+            }
+        }
+    }
+
+    private static void insert(String[] keys, String[] values, String key, String value) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != null) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
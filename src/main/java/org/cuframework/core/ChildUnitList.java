@@ -0,0 +1,149 @@
+// Compilation Units Framework: a very generic & powerful data driven programming framework.
+// Copyright (c) 2019 Sidharth Yadav, sidharth_08@yahoo.com
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.cuframework.core;
+
+import java.lang.reflect.Array;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.cuframework.core.CompilationUnits.ICompilationUnit;
+
+/**
+ * List to hold the child units of a compilation unit.
+ * Besides the usual list operations it provides constant time lookups of the children by their identifiers and of the
+ * children of a given type. These are served from a read only snapshot (an array of the children along with an index
+ * of the children keyed by their identifiers and the per type arrays) which is frozen on first lookup and discarded
+ * whenever the list gets modified (e.g. while processing the extensions). Hence once a unit is compiled the lookups
+ * neither scan the list nor allocate.
+ * Lookups can be made concurrently (compiled units are shared between the threads) whereas the modifications, same
+ * as before, are expected to be done by a single thread on an unpublished unit.
+ * @author Sidharth Yadav
+ *
+ */
+final class ChildUnitList<C extends ICompilationUnit> extends AbstractList<C> implements RandomAccess {
+    private final ArrayList<C> units = new ArrayList<>();
+    private volatile Snapshot snapshot = null;
+
+    @Override
+    public C get(int index) {
+        return units.get(index);
+    }
+
+    @Override
+    public int size() {
+        return units.size();
+    }
+
+    @Override
+    public void add(int index, C unit) {
+        units.add(index, unit);
+        modified();
+    }
+
+    @Override
+    public C set(int index, C unit) {
+        C replacedUnit = units.set(index, unit);
+        snapshot = null;  //not a structural modification
+        return replacedUnit;
+    }
+
+    @Override
+    public C remove(int index) {
+        C removedUnit = units.remove(index);
+        modified();
+        return removedUnit;
+    }
+
+    private void modified() {
+        modCount++;
+        snapshot = null;
+    }
+
+    //returns the first child with the passed identifier or null if there is no such child.
+    @SuppressWarnings("unchecked")
+    C getByIdOrElse(String idOrElse) {
+        return idOrElse != null? (C) snapshot().unitsByIdOrElse.get(idOrElse): null;
+    }
+
+    //returns the children that are of the passed type. The returned array is shared and must not be modified.
+    <T extends ICompilationUnit> T[] getByType(Class<T> type) {
+        return snapshot().getByType(type);
+    }
+
+    private Snapshot snapshot() {
+        Snapshot _snapshot = snapshot;
+        if (_snapshot == null) {
+            snapshot = _snapshot = new Snapshot(units.toArray(new ICompilationUnit[units.size()]));
+        }
+        return _snapshot;
+    }
+
+    private static final class Snapshot {
+        private final ICompilationUnit[] units;
+        private final Map<String, ICompilationUnit> unitsByIdOrElse;
+        private final Map<Class<?>, Object> unitsByType = new ConcurrentHashMap<>();  //type specific arrays computed on demand
+
+        private Snapshot(ICompilationUnit[] units) {
+            this.units = units;
+            unitsByIdOrElse = new HashMap<>(units.length * 2);
+            for (ICompilationUnit unit: units) {
+                String idOrElse = unit.getIdOrElse();
+                if (idOrElse != null) {
+                    unitsByIdOrElse.putIfAbsent(idOrElse, unit);  //the first one wins, same as the sequential lookup
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T extends ICompilationUnit> T[] getByType(Class<T> type) {
+            Object unitsOfType = unitsByType.get(type);
+            if (unitsOfType == null) {
+                int count = 0;
+                for (ICompilationUnit unit: units) {
+                    if (CompilationUnits.isAssignableFrom(type, unit.getClass())) {
+                        count++;
+                    }
+                }
+                T[] _unitsOfType = (T[]) Array.newInstance(type, count);
+                int i = 0;
+                for (ICompilationUnit unit: units) {
+                    if (CompilationUnits.isAssignableFrom(type, unit.getClass())) {
+                        _unitsOfType[i++] = (T) unit;
+                    }
+                }
+                unitsByType.put(type, unitsOfType = _unitsOfType);
+            }
+            return (T[]) unitsOfType;
+        }
+    }
+}
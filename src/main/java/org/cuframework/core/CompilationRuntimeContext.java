@@ -29,9 +29,12 @@
 package org.cuframework.core;
 
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.cuframework.MapOfMaps;
+import org.cuframework.util.JsonParser;
 
 /**
  * Runtime context to be used by compilation units.
@@ -39,14 +42,25 @@ import org.cuframework.MapOfMaps;
  *
  */
 public class CompilationRuntimeContext {
+    private static final int PARSED_JSON_CACHE_SIZE = 8;  //number of the most recently parsed json payloads retained per context
+
     private MapOfMaps externalContext = null;
     private Map<String, Object> internalContextMap = null;
+    private Map<String, Object> immutableInternalContextMap = null;  //read only view of the current internal context map. Cached
+                                                                     //as the internal context is read on almost every evaluation.
     private boolean abortIfNotSatisfy = false;  //this flag can be internally set by the compilation units to modify
                                                 //the behavior of the state machine while getting the value out
                                                 //from a ValueOf CU (Compilation Unit). If it so happens that any of
                                                 //the controlling 'on' conditions are not satisfied inside ValueOf CU
                                                 //and if this flag is set then it may opt to throw a runtime exception
                                                 //to indicate that no required conditions were satisfied.
+    private Map<Object, Object> runtimeStateOfUnits = null;  //per evaluation state of the compilation units. Compiled units are shared
+                                                             //(e.g. by the threads executing the same compiled template) and hence must
+                                                             //not hold any such state themselves. Keyed by the unit's identity.
+    private Object[] parsedJsonCache = null;  //source string and (read only) parsed json tree pairs of the recently parsed payloads.
+                                              //Saves reparsing the same payload on repeated lookups within this context. Bounded as
+                                              //the context may live across many evaluations.
+    private int nextParsedJsonSlot = 0;  //slot to be overwritten by the next parsed payload i.e. the oldest one
 
     public void setExternalContext(MapOfMaps mapOfMaps) {
         externalContext = mapOfMaps;
@@ -57,10 +71,31 @@ public class CompilationRuntimeContext {
     }
 
     public Map<String, Object> getImmutableInternalContext() {
-        return internalContextMap != null? Collections.unmodifiableMap(internalContextMap): null;
+        if (internalContextMap != null && immutableInternalContextMap == null) {
+            immutableInternalContextMap = Collections.unmodifiableMap(internalContextMap);
+        }
+        return immutableInternalContextMap;
+    }
+
+    //returns the value of the first key found inside the internal context. Returns null if none of the keys is present.
+    //Meant for the hot lookups (e.g. null replacements of the expressions) and hence doesn't allocate.
+    public Object getInternalContextValue(String[] lookupKeysInPriorityOrder) {
+        if (internalContextMap == null || lookupKeysInPriorityOrder == null) {
+            return null;
+        }
+        for (String lookupKey: lookupKeysInPriorityOrder) {
+            Object value = internalContextMap.get(lookupKey);
+            if (value != null || internalContextMap.containsKey(lookupKey)) {
+                return value;
+            }
+        }
+        return null;
     }
 
     protected void setInternalContext(Map<String, Object> internalContextMap) {
+        if (this.internalContextMap != internalContextMap) {
+            immutableInternalContextMap = null;  //the cached view is of the replaced map
+        }
         this.internalContextMap = internalContextMap;
     }
 
@@ -68,6 +103,82 @@ public class CompilationRuntimeContext {
         return internalContextMap;
     }
 
+    //returns a new context for evaluating an iteration that runs concurrently with the other evaluations of this context.
+    //The external context is shared (the caller is to share a synchronized view of it, see MapOfMaps.toSynchronized) while
+    //the internal context and the runtime state of the units are forked so that the changes done by the iteration stay local to it.
+    protected CompilationRuntimeContext newIterationContext() {
+        CompilationRuntimeContext iterationContext = new CompilationRuntimeContext();
+        iterationContext.externalContext = externalContext;
+        iterationContext.internalContextMap = ScopedContextMap.copyOf(internalContextMap != null?
+                                                                          internalContextMap: Collections.emptyMap());
+        iterationContext.abortIfNotSatisfy = abortIfNotSatisfy;
+        if (runtimeStateOfUnits != null) {
+            iterationContext.runtimeStateOfUnits = new IdentityHashMap<>(runtimeStateOfUnits);
+        }
+        return iterationContext;
+    }
+
+    //returns the per evaluation state held for the passed compilation unit (or null if none).
+    protected Object getRuntimeState(Object unit) {
+        return runtimeStateOfUnits != null? runtimeStateOfUnits.get(unit): null;
+    }
+
+    //holds the per evaluation state of the passed compilation unit. A null state removes the held state, if any.
+    protected void setRuntimeState(Object unit, Object state) {
+        if (state == null) {
+            if (runtimeStateOfUnits != null) {
+                runtimeStateOfUnits.remove(unit);
+            }
+            return;
+        }
+        if (runtimeStateOfUnits == null) {
+            runtimeStateOfUnits = new IdentityHashMap<>();
+        }
+        runtimeStateOfUnits.put(unit, state);
+    }
+
+    //returns the parsed json tree for the passed source string. A source (instance) is parsed only once as long as it is among the
+    //recently parsed ones. The returned tree is shared across the lookups and hence is read only.
+    protected Object getParsedJson(String jsonSource) {
+        if (jsonSource == null) {
+            return null;
+        }
+        if (parsedJsonCache == null) {
+            parsedJsonCache = new Object[PARSED_JSON_CACHE_SIZE * 2];
+        }
+        for (int i = 0; i < parsedJsonCache.length; i += 2) {
+            if (parsedJsonCache[i] == jsonSource) {
+                return parsedJsonCache[i + 1];
+            }
+        }
+        Object parsedJson;
+        try {
+            parsedJson = toUnmodifiable(JsonParser.parse(jsonSource));
+        } catch (IllegalArgumentException iae) {
+            parsedJson = null;  //not a valid json. Caching the null value as well to avoid reparsing.
+        }
+        parsedJsonCache[nextParsedJsonSlot] = jsonSource;
+        parsedJsonCache[nextParsedJsonSlot + 1] = parsedJson;
+        nextParsedJsonSlot = (nextParsedJsonSlot + 2) % parsedJsonCache.length;
+        return parsedJson;
+    }
+
+    //wraps the maps and lists of the parsed json tree (recursively) into their read only views.
+    private static Object toUnmodifiable(Object json) {
+        if (json instanceof Map) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> map = (Map<String, Object>) json;
+            map.replaceAll((key, value) -> toUnmodifiable(value));
+            return Collections.unmodifiableMap(map);
+        } else if (json instanceof List) {
+            @SuppressWarnings("unchecked")
+            List<Object> list = (List<Object>) json;
+            list.replaceAll(CompilationRuntimeContext::toUnmodifiable);
+            return Collections.unmodifiableList(list);
+        }
+        return json;
+    }
+
     @Deprecated
     protected void setAbortIfNotSatisfy(boolean flag) {
         this.abortIfNotSatisfy = flag;
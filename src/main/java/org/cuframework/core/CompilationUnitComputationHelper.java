@@ -28,8 +28,8 @@
 
 package org.cuframework.core;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.xpath.XPathExpressionException;
 
@@ -56,8 +56,10 @@ final class CompilationUnitComputationHelper {
     private static final String ATTR_TOKENIZER_KEY = "tokenizer";  //attribute suffix: used as value tokenizer during computation.
     private static final String ATTR_EXPRESSION_KEY = "expression";
 
+    private static final Object NULL_VALUE = new Object();  //ConcurrentHashMap doesn't accept nulls. Placeholder for the cached null values.
+
     private ICompilationUnit boundCU = null;
-    private Map<String, Object> autonomousCache = null;
+    private volatile Map<String, Object> autonomousCache = null;  //the bound cu is shared by the threads evaluating it and so is this cache
 
     private CompilationUnitComputationHelper(ICompilationUnit cu) {
         if (cu == null) {
@@ -71,10 +73,16 @@ final class CompilationUnitComputationHelper {
     }
 
     private Map<String, Object> _autonomousCache() {
-        if (autonomousCache == null) {
-            autonomousCache = new HashMap<>();
+        Map<String, Object> cache = autonomousCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = autonomousCache;
+                if (cache == null) {
+                    autonomousCache = cache = new ConcurrentHashMap<>();
+                }
+            }
         }
-        return autonomousCache;
+        return cache;
     }
 
     private String getAttributeValueTokenizer(String attr) {
@@ -85,19 +93,19 @@ final class CompilationUnitComputationHelper {
                                                                              //the namespace (or system properties) definition so make sure to define
                                                                              //the config keys already in lowercase in the respective definition block(s).
         Map<String, Object> autonomousCache = _autonomousCache();
-        boolean cacheContainsTheKey = autonomousCache.containsKey(lookupKey);
         Object attributeValueTokenizer = autonomousCache.get(lookupKey);
+        boolean cacheContainsTheKey = attributeValueTokenizer != null;
         if (!cacheContainsTheKey) {
             attributeValueTokenizer = ConfigManager.getInstance().getMetadataValue(_boundCU.getNodeName(),
                                                                                    _boundCU.getTagName(),
                                                                                    _boundCU.getNamespaceURI(),
                                                                                    null,
                                                                                    lookupKey);
-            autonomousCache.put(lookupKey, attributeValueTokenizer);  //let's put the value anyway inside cache (even if its null) to
-                                                                      //avoid doing config manager's hierarchical lookup again. If it wasn't
-                                                                      //found this time, it won't be found in subsequent lookups as well.
+            autonomousCache.put(lookupKey, attributeValueTokenizer == null? NULL_VALUE: attributeValueTokenizer);  //let's put the value anyway inside cache (even if its null) to
+                                                                                                                   //avoid doing config manager's hierarchical lookup again. If it wasn't
+                                                                                                                   //found this time, it won't be found in subsequent lookups as well.
         }
-        return attributeValueTokenizer == null? null: attributeValueTokenizer.toString();
+        return attributeValueTokenizer == null || attributeValueTokenizer == NULL_VALUE? null: attributeValueTokenizer.toString();
     }
 
     private Expression getAttributeValueExpression(String attr, String value) {
@@ -106,15 +114,15 @@ final class CompilationUnitComputationHelper {
         }
         String lookupKey = (attr + DOT + ATTR_EXPRESSION_KEY);
         Map<String, Object> autonomousCache = _autonomousCache();
-        boolean cacheContainsTheKey = autonomousCache.containsKey(lookupKey);      
         Object attributeValueExpression = autonomousCache.get(lookupKey);
+        boolean cacheContainsTheKey = attributeValueExpression != null;
         if (!cacheContainsTheKey) { 
             attributeValueExpression = EL.parse(value);
-            autonomousCache.put(lookupKey, attributeValueExpression);  //let's put the value anyway inside cache (even if its null) to 
-                                                                       //avoid doing EL parsing again. If it wasn't successful this time,
-                                                                       //it won't be in subsequent attempts as well.
+            autonomousCache.put(lookupKey, attributeValueExpression == null? NULL_VALUE: attributeValueExpression);  //let's put the value anyway inside cache (even if its null) to 
+                                                                                                                     //avoid doing EL parsing again. If it wasn't successful this time,
+                                                                                                                     //it won't be in subsequent attempts as well.
         }
-        return (Expression) attributeValueExpression;
+        return attributeValueExpression == NULL_VALUE? null: (Expression) attributeValueExpression;
     }
 
     public static CompilationUnitComputationHelper instance(ICompilationUnit cu) {
@@ -39,11 +39,14 @@ import org.cuframework.util.cu.FileIO;
 import org.cuframework.util.cu.HttpIO;
 import org.cuframework.util.cu.RdbmsIO;
 import org.cuframework.util.cu.LoadProperties;
+import org.cuframework.util.AccessorPath;
+import org.cuframework.util.ClasspathLoaders;
 import org.cuframework.util.UtilityFunctions;
+import org.cuframework.util.JsonParser;
 import org.cuframework.ns.NamespaceDynamicTemplatesHandler;
 
 import java.lang.reflect.Array;
-import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -52,9 +55,17 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.xml.XMLConstants;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
@@ -62,8 +73,8 @@ import javax.xml.xpath.XPathFactory;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 /**
  * Core Compilation Units.
@@ -78,6 +89,13 @@ public final class CompilationUnits {
     }
 
     private static final java.util.Map<String, CompilationUnitsNamespace> NAMESPACES = new HashMap<>();
+    private static final ThreadLocal<java.util.Set<String>> NAMESPACES_IN_USE = new ThreadLocal<>();  //refer recordNamespacesInUse
+    private static final AtomicInteger FUNCTION_TABLES_VERSION = new AtomicInteger();  //incremented every time the function resolution
+                                                                                       //outcome of any namespace could have changed (e.g.
+                                                                                       //new namespace, new parent namespace or custom
+                                                                                       //functions loaded). Consumers caching the resolved
+                                                                                       //function references (e.g. compiled EL expressions)
+                                                                                       //use it to detect stale references.
     static {
         java.util.Map<String, Class<? extends ICompilationUnit>> coreCUs = new HashMap<String, Class<? extends ICompilationUnit>>();
         coreCUs.put(Conditional.TAG_NAME, Conditional.class);
@@ -126,6 +144,10 @@ public final class CompilationUnits {
     }
 
     public static ICompilationUnit getCompilationUnitForTag(String namespaceURI, String tagName) {
+        java.util.Set<String> namespacesInUse = NAMESPACES_IN_USE.get();
+        if (namespacesInUse != null && namespaceURI != null && !ROOT_CU_NAMESPACE_URI.equals(namespaceURI)) {
+            namespacesInUse.add(namespaceURI);
+        }
         CompilationUnitsNamespace cuNamespace = getCompilationUnitsNamespace(namespaceURI, false);
         return cuNamespace == null? null: cuNamespace.getCompilationUnitForTag(tagName);
     }
@@ -140,6 +162,14 @@ public final class CompilationUnits {
         return cuNamespace == null? null: cuNamespace.resolveFunction(fnName);
     }
 
+    public static int getFunctionTablesVersion() {
+        return FUNCTION_TABLES_VERSION.get();
+    }
+
+    public static void markFunctionTablesAsModified() {
+        FUNCTION_TABLES_VERSION.incrementAndGet();
+    }
+
     protected static Class<? extends ICompilationUnit> getCompilationClassForTag(String namespaceURI,
                                                                                  String tagName,
                                                                                  boolean attemptRootLookup) {
@@ -168,12 +198,46 @@ public final class CompilationUnits {
         return cuNamespace == null? null: cuNamespace.unsetCompilationUnitForTag(tagName);
     }
 
+    //records the namespaces (other than the root one) of the units instantiated by the current thread into the passed set,
+    //or stops recording if the passed set is null. Returns the set recorded into before. Used by the registry to find the
+    //namespaces a template being compiled depends on.
+    static java.util.Set<String> recordNamespacesInUse(java.util.Set<String> namespaceURIs) {
+        java.util.Set<String> recording = NAMESPACES_IN_USE.get();
+        if (namespaceURIs == null) {
+            NAMESPACES_IN_USE.remove();
+        } else {
+            NAMESPACES_IN_USE.set(namespaceURIs);
+        }
+        return recording;
+    }
+
+    //Unloads the namespace (the root namespace can't be unloaded) i.e. its units and functions can no longer be resolved,
+    //and closes the class loaders created for the classpaths of the namespace (unless shared with other namespaces).
+    //The compiled templates having units of the namespace (and the templates extending them) are evicted and the
+    //constructors cached for the classes of the loaders to be closed are dropped before the loaders get closed, as these
+    //would otherwise keep using the classes of the closed loaders (which can no longer load the classes they refer lazily).
+    //Same as the namespace registration, this is expected to be done while (re)configuring and not while executing.
+    public static boolean unloadNamespace(String namespaceURI) {
+        if (namespaceURI == null || ROOT_CU_NAMESPACE_URI.equals(namespaceURI)) {
+            return false;
+        }
+        CompilationUnitsNamespace cuNamespace = NAMESPACES.remove(namespaceURI);
+        if (cuNamespace != null) {
+            markFunctionTablesAsModified();  //the functions resolved off the namespace are now stale
+        }
+        CompiledTemplatesRegistry.getInstance().evictCompiledTemplatesUsing(namespaceURI);
+        DefaultPlatformFunctions.forgetClassesOf(ClasspathLoaders.getExclusiveClassLoaders(namespaceURI));
+        ClasspathLoaders.release(namespaceURI);
+        return cuNamespace != null;
+    }
+
     private static CompilationUnitsNamespace getCompilationUnitsNamespace(String namespaceURI, boolean create) {
         namespaceURI = namespaceURI == null? ROOT_CU_NAMESPACE_URI: namespaceURI;
         CompilationUnitsNamespace cuNamespace = NAMESPACES.get(namespaceURI);
         if (cuNamespace == null && create) {
             cuNamespace = new CompilationUnitsNamespace(namespaceURI);
             NAMESPACES.put(namespaceURI, cuNamespace);
+            markFunctionTablesAsModified();
         }
         return cuNamespace;
     }
@@ -204,7 +268,13 @@ public final class CompilationUnits {
         return XPathFactory.newInstance().newXPath();
     }
 
-    private static final XPath XPATH = getXPath();
+    private static final ThreadLocal<XPath> XPATH = ThreadLocal.withInitial(CompilationUnits::getXPath);  //XPath objects are not thread safe
+                                                                                                           //and the units get compiled and
+                                                                                                           //evaluated from multiple threads.
+
+    private static XPath xpath() {
+        return XPATH.get();
+    }
 
     public interface ICompilationUnit {
         static final String ATTRIBUTE_ID = "id";
@@ -235,7 +305,10 @@ public final class CompilationUnits {
     }
 
     public abstract static class CompilationUnit implements ICompilationUnit {
-        private Properties attributes = new Properties();
+        private static final AtomicReferenceFieldUpdater<CompilationUnit, AttributeTable> ATTRIBUTES_UPDATER =
+                AtomicReferenceFieldUpdater.newUpdater(CompilationUnit.class, AttributeTable.class, "attributes");
+        private volatile AttributeTable attributes = AttributeTable.EMPTY;  //immutable and swapped as a whole on updates so that the reads
+                                                                           //(far more frequent than the updates) don't lock
         private Node nodeContext = null;
 
         protected static enum TextBlockTreatment {
@@ -267,7 +340,7 @@ public final class CompilationUnits {
                                                                                      //cdata-section etc.). It is not to be confused with the type
                                                                                      //attribute of some cus like Group cu.
 
-        private CompilationUnitComputationHelper cuch = null;  //should get initialized on demand
+        private volatile CompilationUnitComputationHelper cuch = null;  //should get initialized on demand. Volatile as the unit is shared by the threads evaluating it
 
         Node getNodeContext() {
             return this.nodeContext;
@@ -316,36 +389,69 @@ public final class CompilationUnits {
 
         @Override
         public java.util.Set<String> getAttributeNames() {
-            return attributes.stringPropertyNames();
+            return attributes.names();
         }
 
-        static String getAttributeValueIffAttributeIsDefined(String attribute, Node n) throws XPathExpressionException {
-            Node attribNode = (Node) CompilationUnits.XPATH.evaluate(attribute, n, XPathConstants.NODE);
-            if (attribNode != null) {
+        static String getAttributeValueIffAttributeIsDefined(String attribute, Node n) {
+            //direct lookup equivalent to evaluating the xpath '@attribute' over the node (the compilation walks the dom
+            //directly as evaluating xpath expressions per node was dominating the template compilation time)
+            NamedNodeMap attrs = n != null && n.getNodeType() == Node.ELEMENT_NODE? n.getAttributes(): null;
+            Node attribNode = attrs != null? attrs.getNamedItem(attribute): null;
+            if (attribNode != null && !isNamespaceDeclaration(attribNode)) {
                 return attribNode.getNodeValue();
             }
             return null;
         }
 
+        static String getFirstTextNodeValue(Node n) {
+            //direct lookup equivalent to evaluating the xpath 'text()[1]' over the node
+            for (Node child = n.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (isTextNode(child)) {
+                    return child.getNodeValue();
+                }
+            }
+            return null;
+        }
+
+        private static boolean isTextNode(Node n) {
+            short nodeType = n.getNodeType();
+            return nodeType == Node.TEXT_NODE || nodeType == Node.CDATA_SECTION_NODE;
+        }
+
+        private static boolean isNamespaceDeclaration(Node attr) {
+            //namespace declarations are not attributes in the xpath data model
+            String name = attr.getNodeName();
+            return "xmlns".equals(name) || name.startsWith("xmlns:") ||
+                   XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attr.getNamespaceURI());
+        }
+
         void setAttribute(String key, String value, boolean mergeValue) {
             if (key != null && value != null) {
-                if (mergeValue) {
-                    String existingValue = getAttribute(key);
-                    value = existingValue != null? existingValue + value: value;
-                }
-                attributes.setProperty(key, value);
+                AttributeTable current;
+                AttributeTable updated;
+                do {
+                    current = attributes;
+                    String existingValue = mergeValue? current.get(key): null;
+                    updated = current.with(key, existingValue != null? existingValue + value: value);
+                } while (!ATTRIBUTES_UPDATER.compareAndSet(this, current, updated));
             }
         }
 
         void setAttributeIffNew(String key, String value) {
-            if (key != null && value != null && !attributes.containsKey(key)) {
-                attributes.setProperty(key, value);
+            if (key != null && value != null) {
+                AttributeTable current;
+                do {
+                    current = attributes;
+                    if (current.containsKey(key)) {
+                        return;
+                    }
+                } while (!ATTRIBUTES_UPDATER.compareAndSet(this, current, current.with(key, value)));
             }
         }
 
         @Override
         public String getAttribute(String key) {
-            return attributes.getProperty(key);
+            return attributes.get(key);
         }
 
         /******************************************************************************************************************************/
@@ -384,11 +490,13 @@ public final class CompilationUnits {
         /**************************************************************************************/
         /***********Basically used while cloning a CU during inheritance processing************/
         Properties getAttributes() {
-            return attributes;
+            return attributes.toProperties();  //a copy
         }
 
         void copyAttributes(Properties attributes) {
-            this.attributes.putAll(attributes);
+            for (String key: attributes.stringPropertyNames()) {
+                setAttribute(key, attributes.getProperty(key), false);
+            }
         }
         /**************************************************************************************/
 
@@ -454,6 +562,22 @@ public final class CompilationUnits {
             doCompileChildren(n);
             postCompileChildren(n);
             //doCompile(n);
+
+            if (StreamingTemplateCompiler.isNodeContextReleasable(n)) {
+                if (requiresNodeContext()) {
+                    StreamingTemplateCompiler.markNodeContextRequired(n);  //a fragment isn't a valid context for the document
+                                                                           //relative xpaths. The template is compiled off its DOM.
+                } else {
+                    this.nodeContext = null;  //not needed at runtime. Releasing it lets the fragment of the template (that the
+                                              //node belongs to) be garbage collected.
+                }
+            }
+        }
+
+        //Subclasses should override to return true if the node the unit was compiled from is needed at runtime (e.g. as the
+        //context of xpath evaluations). Called once the unit has been compiled.
+        protected boolean requiresNodeContext() {
+            return false;
         }
 
         /******* Start - Default implementations of compilation related methods. It should suffice for most of the cases. *******/
@@ -476,10 +600,14 @@ public final class CompilationUnits {
         }
 
         protected void doCompileAttributes(Node n, java.util.Set<String> mergeableAttributes) throws XPathExpressionException {
-            NodeList attrs = (NodeList) CompilationUnits.XPATH.evaluate("@*", n, XPathConstants.NODESET);
-            for (int i = 0; i < attrs.getLength(); i++) {
-                String attribute = attrs.item(i).getNodeName();
-                String attributeValue = attrs.item(i).getNodeValue();
+            NamedNodeMap attrs = n.getNodeType() == Node.ELEMENT_NODE? n.getAttributes(): null;
+            for (int i = 0, count = attrs != null? attrs.getLength(): 0; i < count; i++) {
+                Node attr = attrs.item(i);
+                if (isNamespaceDeclaration(attr)) {
+                    continue;
+                }
+                String attribute = attr.getNodeName();
+                String attributeValue = attr.getNodeValue();
                 setAttribute(
                         attribute,
                         attributeValue,
@@ -489,15 +617,23 @@ public final class CompilationUnits {
 
         protected void doCompileChildren(Node n) throws XPathExpressionException {
             //compile all the children
-            String childrenXPathExpr = treatTextBlockAsChild()? "*|text()": "*";
-            NodeList nl = (NodeList) CompilationUnits.XPATH
-                                         .evaluate(childrenXPathExpr, n, XPathConstants.NODESET);
-            for (int i = 0; i < nl.getLength(); i++) {
-                String nodeName = UtilityFunctions.getLocalOrNodeName(nl.item(i));
-                String nodeNamespace = nl.item(i).getNamespaceURI();
+            //walks the same nodes as the xpath '*|text()' (or '*' if text blocks aren't children) would select, in document order
+            boolean includeText = treatTextBlockAsChild();
+            int i = 0;  //position of the child within the selected nodes (used in the ids of the text blocks)
+            boolean inTextRun = false;  //xpath sees adjacent text/cdata nodes as one text node (the first one represents it)
+            for (Node child = n.getFirstChild(); child != null; child = child.getNextSibling()) {
+                boolean isText = isTextNode(child);
+                boolean continuesTextRun = isText && inTextRun;
+                inTextRun = isText;
+                if (child.getNodeType() != Node.ELEMENT_NODE && !(isText && includeText) || continuesTextRun) {
+                    continue;
+                }
+                String nodeName = UtilityFunctions.getLocalOrNodeName(child);
+                String nodeNamespace = child.getNamespaceURI();
                 if (isChildTagRecognized(nodeNamespace, nodeName)) {
-                    doCompileChild(i, nl.item(i));
+                    doCompileChild(i, child);
                 }
+                i++;
             }
         }
 
@@ -559,6 +695,15 @@ public final class CompilationUnits {
             return null;
         }
 
+        //Note: The method would return null if element list is null or the specified elementType is null. Else returns the elements
+        //of the specified type from the (indexed) element list. The returned array is shared and must not be modified.
+        static <T extends ICompilationUnit> T[] getElementsFromList(ChildUnitList<? extends ICompilationUnit> elementList, Class<T> elementType) {
+            if (elementList != null && elementType != null) {
+                return elementList.getByType(elementType);
+            }
+            return null;
+        }
+
         @SuppressWarnings("unchecked")
         //Note: The method would return null if the element passed is null or if elementType is null or if
         //the class of element doesn't match the component type of the class represented by elementType.
@@ -696,7 +841,8 @@ public final class CompilationUnits {
         private boolean evalEnabled = true;
         private boolean xpathEvalEnabled = true;  //this would be applicable only if evalEnabled is true
 
-        private Expression evalExpression = null;
+        private volatile Expression evalExpression = null;  //lazily parsed. Volatile as the unit is shared by the threads evaluating it
+        private volatile Pattern extractionPattern = null;  //compiled extraction expression. Compiled once on first use
 
         @Override
         public boolean doOutputNullValue() {
@@ -716,13 +862,13 @@ public final class CompilationUnits {
             for (String attribute : ATTRIBUTES) {
                 setAttribute(
                         attribute,
-                        getAttributeValueIffAttributeIsDefined("@" + attribute, n),
+                        getAttributeValueIffAttributeIsDefined(attribute, n),
                         mergeableAttributes.contains(attribute));
             }
             */
 
             boolean textEvalEnabled = treatTextBlockAsEvalExpr();
-            String textNodePathAsStr = getAttributeValueIffAttributeIsDefined(TEXT_NODE_XPATH, n);
+            String textNodePathAsStr = getFirstTextNodeValue(n);
             if (textEvalEnabled && textNodePathAsStr != null && !"".equals(textNodePathAsStr.trim())) {
                 setAttribute(TEXT_NODE_XPATH, textNodePathAsStr.trim(), mergeableAttributes.contains(TEXT_NODE_XPATH));
             }
@@ -793,8 +939,8 @@ public final class CompilationUnits {
                          //a missing key and for a key having null value is 'null' in both cases.
             }
             if (compilationRuntimeContext.getInternalContext() == null) {
-                compilationRuntimeContext.setInternalContext(new HashMap<String, Object>());  //initialize the internal context map as we plan to make the
-                                                                                              //value available inside it.
+                compilationRuntimeContext.setInternalContext(new ScopedContextMap());  //initialize the internal context map as we plan to make the
+                                                                                       //value available inside it.
             }
             String idOrElse = getIdOrElse();  //computedAttributeValue(getIdOrElse(), compilationRuntimeContext);  //use the computed value of getIdOrElse(...)
             String thisValueIdentifier = "-" + (idOrElse == null? "unnamed": idOrElse) + "-value";  //refer comment below
@@ -846,8 +992,9 @@ public final class CompilationUnits {
                 //instead of just holding the reference to the internal context we would like to create a copy
                 //of it so that even if the internal context map gets modified by any of the methods of the
                 //processor CU we would still be able to restore back to the original context state cleanly.
-                java.util.Map<String, Object> savedInternalContextCpy = new HashMap<String, Object>();
-                savedInternalContextCpy.putAll(savedInternalContext);
+                //the copy is a constant time fork of the (persistent) internal context map. Only the entries modified
+                //during this getValue request get copied.
+                java.util.Map<String, Object> savedInternalContextCpy = ScopedContextMap.copyOf(savedInternalContext);
                 compilationRuntimeContext.setInternalContext(savedInternalContextCpy);  //savedInternalContext = savedInternalContextCpy;  //refer comment below:
                                                                                         //Updated the reference of internal context map inside compilationRuntimeContext
                                                                                         //for this getValue request as opposed to the previous scheme of using the same reference of
@@ -929,7 +1076,7 @@ public final class CompilationUnits {
             if (msgFormat == null) {
                 return value;  //no message formatter specified. Return the value as is.
             }
-            return (new MessageFormat(msgFormat)).
+            return CompiledPatterns.getMessageFormat(msgFormat).  //parsed once and copied per use (MessageFormat is not thread safe)
                        format(value instanceof Object[] ? value : new Object[]{value});
         }
 
@@ -949,14 +1096,23 @@ public final class CompilationUnits {
                                                                                          //exception if no valid int
                                                                                          //value is specified.
             }
+            String literalExtractionExpr = matcherGroup < 0? CompiledPatterns.getLiteral(extractionExpr): null;
+            if (literalExtractionExpr != null) {
+                //splitting around a plain text delimiter (e.g. a tab) doesn't need the regex machinery
+                return CompiledPatterns.splitAroundLiteral(value.toString(), literalExtractionExpr);
+            }
+            Pattern pattern = extractionPattern;
+            if (pattern == null || !pattern.pattern().equals(extractionExpr)) {
+                extractionPattern = pattern = CompiledPatterns.getPattern(extractionExpr);  //compile the extraction expression
+            }
             if (matcherGroup >= 0) {
-                //compile the extraction expression and return the requested matcher group
-                Matcher matcher = Pattern.compile(extractionExpr).matcher(value.toString());
+                //return the requested matcher group
+                Matcher matcher = pattern.matcher(value.toString());
                 return matcher.find() ? matcher.group(matcherGroup) : null;
             } else {
                 //the request is not to return any specific matcher group but to use the
                 //extraction expression to split the input value into an array of tokens.
-                return Pattern.compile(extractionExpr).split(value.toString(), -1);  //using -1 as limit to consider trailing empty tokens also
+                return pattern.split(value.toString(), -1);  //using -1 as limit to consider trailing empty tokens also
             }
         }
 
@@ -978,7 +1134,7 @@ public final class CompilationUnits {
                                                        setAdditionalContext(ExpressionRuntimeContext.ADDITIONAL_CONTEXT_THIS_VALUE, thisValue);
                     if (_xpathEvalEnabled()) {
                         erc.setAdditionalContext(ExpressionRuntimeContext.ADDITIONAL_CONTEXT_NODE, getNodeContext()).
-                            setAdditionalContext(ExpressionRuntimeContext.ADDITIONAL_CONTEXT_XPATH, CompilationUnits.XPATH);
+                            setAdditionalContext(ExpressionRuntimeContext.ADDITIONAL_CONTEXT_XPATH, CompilationUnits.xpath());
                     }
                     returnValue = evalExpression.getValue(erc);
                 }
@@ -1046,6 +1202,23 @@ public final class CompilationUnits {
             return evalEnabled;
         }
 
+        @Override
+        protected boolean requiresNodeContext() {
+            if (!_evalEnabled() || !_xpathEvalEnabled()) {
+                return false;
+            }
+            String evalText = getEvalText();
+            if (evalText == null || "".equals(evalText.trim()) || SKIP_EVALUATION.equals(evalText.trim())) {
+                return false;  //never evaluated (see getEvaluatedValue)
+            }
+            try {
+                Expression evalExpression = getEvalExpression();  //the node is the context of the xpath expressions in it
+                return evalExpression != null && evalExpression.requiresNodeContext();
+            } catch (RuntimeException e) {
+                return true;  //malformed expression. Let the evaluation report it at runtime as it always did.
+            }
+        }
+
         private boolean _xpathEvalEnabled() {
             return xpathEvalEnabled;
         }
@@ -1088,8 +1261,8 @@ public final class CompilationUnits {
 
         private static final String[] ATTRIBUTES = {ATTRIBUTE_ORDER_OF_IMPLICIT_EXTENDS};
 
-        private List<Extends> extensions = null;
-        private boolean extensionsProcessed = false;
+        private ChildUnitList<Extends> extensions = null;
+        private volatile boolean extensionsProcessed = false;  //set by the extensions processing and read by the evaluating threads
         private int orderOfImplicitExtends = -1;  //a negative value would mean to insert the implicit <extends> clause at last in the sequence
 
         @Override
@@ -1114,11 +1287,8 @@ public final class CompilationUnits {
         @Override
         protected void doCompileChildren(Node n) throws XPathExpressionException {
 
-            extensions = new LinkedList<Extends>();  //since mostly we would
-                                                       //be operating
-                                                       //sequentially so
-                                                       //LinkedList would be an
-                                                       //optimal choice
+            extensions = new ChildUnitList<Extends>();  //indexed list as the children are looked up (by id or type) far
+                                                        //more often than they get modified
 
             super.doCompileChildren(n);
         }
@@ -1166,10 +1336,9 @@ public final class CompilationUnits {
                 return null;
             }
             if (extensions != null) {
-                for (Extends extension : extensions) {
-                    if (idOrElseOfChild.equals(extension.getIdOrElse())) {
-                        return extension;
-                    }
+                Extends extension = extensions.getByIdOrElse(idOrElseOfChild);  //indexed lookup
+                if (extension != null) {
+                    return extension;
                 }
             }
             return null;
@@ -1179,7 +1348,7 @@ public final class CompilationUnits {
         @SuppressWarnings("unchecked")
         public <T1 extends ICompilationUnit> T1[] getChildren(Class<T1> type) {
             Extends[] extendsArray = areMatchingTypes(Extends.class, type) ?
-                                                getElementsFromList(extensions, new Extends[0]) : null;
+                                                getElementsFromList(extensions, Extends.class) : null;
             return (T1[]) extendsArray;  //if extendsArray is null here then don't return a zero length array in this
                                          //case since the null check is used in super classes to continue or break the
                                          //children lookup and appropriately return the right type of children.
@@ -1215,7 +1384,13 @@ public final class CompilationUnits {
                 CompiledTemplatesRegistry mctr) throws XPathExpressionException {
             if (extensionsProcessed) {
                 return (T) this;
-            } else {
+            }
+            synchronized (this) {  //the final (context independent) outcome of the extensions gets published into this unit itself and
+                                   //hence the extensions of a unit are processed by one thread at a time. The units extended by it
+                                   //(or by its children) are locked on their own so that the unrelated units are extended concurrently.
+                if (extensionsProcessed) {
+                    return (T) this;
+                }
                 T extendedCU = doExtend(compilationRuntimeContext, mctr);
                 return extendedCU;
             }
@@ -1239,7 +1414,7 @@ public final class CompilationUnits {
         /***********Basically used while cloning a CU during inheritance processing************/
         void copyExtensions(List<Extends> extensions) {
             if (this.extensions == null) {
-                this.extensions = new LinkedList<Extends>();
+                this.extensions = new ChildUnitList<Extends>();
             }
             this.extensions.addAll(extensions);
         }
@@ -1261,9 +1436,11 @@ public final class CompilationUnits {
         /* private static final List<String> RECOGNIZED_CHILD_TAGS = Arrays.asList(
                                                                       new String[]{Condition.TAG_NAME, ValueOf.TAG_NAME, Get.TAG_NAME, Select.TAG_NAME}); */
 
-        private List<Condition> conditions = null;
+        private ChildUnitList<Condition> conditions = null;
         //private EvaluableCompilationUnit evaluable = null;
         private IEvaluable evaluable = null;
+        private volatile Object[] compiledExpression = null;  //the meta expression along with its compiled form (null if the
+                                                              //expression couldn't be compiled and is to be evaluated as xpath)
 
         @Override
         public String getTagName() {
@@ -1278,11 +1455,8 @@ public final class CompilationUnits {
         @Override
         protected void doCompileChildren(Node n) throws XPathExpressionException {
 
-            conditions = new LinkedList<Condition>();  //since mostly we would
-                                                       //be operating
-                                                       //sequentially so
-                                                       //LinkedList would be an
-                                                       //optimal choice
+            conditions = new ChildUnitList<Condition>();  //indexed list as the children are looked up (by id or type) far
+                                                          //more often than they get modified
 
             super.doCompileChildren(n);
         }
@@ -1312,10 +1486,9 @@ public final class CompilationUnits {
                 return null;
             }
             if (conditions != null) {
-                for (Condition c : conditions) {
-                    if (idOrElseOfChild.equals(c.getIdOrElse())) {
-                        return c;
-                    }
+                Condition c = conditions.getByIdOrElse(idOrElseOfChild);  //indexed lookup
+                if (c != null) {
+                    return c;
                 }
             }
             if (evaluable != null && idOrElseOfChild.equals(evaluable.getIdOrElse())) {
@@ -1328,7 +1501,7 @@ public final class CompilationUnits {
         @SuppressWarnings("unchecked")
         public <T extends ICompilationUnit> T[] getChildren(Class<T> type) {
             Condition[] conditionsArray = areMatchingTypes(Condition.class, type) ?
-                                                        getElementsFromList(conditions, new Condition[0]) : null;
+                                                        getElementsFromList(conditions, Condition.class) : null;
             if (conditionsArray != null) {
                 return (T[]) conditionsArray;
             }
@@ -1346,14 +1519,32 @@ public final class CompilationUnits {
                 return true;  //no expression specififed. Let's just return true. Alternately we could also have implicitly and'ed return values of all the
                               //conditions inside the for loop below to decide the truth or falseness of this method. I just chose the first over the other.
             }
+            Object[] compiledExpression = this.compiledExpression;
+            if (compiledExpression == null || !expr.equals(compiledExpression[0])) {
+                //compiled once (the conditions are looked up by their ids) and then reused across the evaluations
+                this.compiledExpression = compiledExpression = new Object[]{expr, ConditionalExpression.compile(expr, conditions::getByIdOrElse)};
+            }
+            if (compiledExpression[1] != null) {
+                //conditions are evaluated lazily and 'and'/'or' short circuit
+                return ((ConditionalExpression) compiledExpression[1]).evaluate(compilationRuntimeContext);
+            }
+
+            //expression not supported by the compiled form. Evaluate it as xpath.
             for (Condition condition : conditions) {
                 expr = expr.replaceAll("\\b" + condition.getId() + "\\b",
                                Boolean.toString(condition.matches(compilationRuntimeContext)) + "()");
             }
-            return (Boolean) CompilationUnits.XPATH.evaluate(
+            return (Boolean) CompilationUnits.xpath().evaluate(
                                     expr, getNodeContext(), XPathConstants.BOOLEAN);
         }
 
+        @Override
+        protected boolean requiresNodeContext() {
+            String expr = getAttribute(ATTRIBUTE_META_EXPRESSION);
+            return super.requiresNodeContext() ||
+                   expr != null && ConditionalExpression.compile(expr, conditions::getByIdOrElse) == null;  //evaluated as xpath
+        }
+
         @Override
         protected Object doGetValue(CompilationRuntimeContext compilationRuntimeContext)
                                                                     throws XPathExpressionException {
@@ -1376,6 +1567,7 @@ public final class CompilationUnits {
 
         //private ValueOf valueOf = null;
         private IEvaluable evaluable = null;
+        private volatile Pattern expressionPattern = null;  //compiled matcher expression. Compiled once on first use
 
         @Override
         public String getTagName() {
@@ -1440,7 +1632,14 @@ public final class CompilationUnits {
             //evaluableValueTmp = "".equals(evaluableValueTmp) ? null : evaluableValueTmp;  //commented out: 10th Mar 20.
                                                                                             //To check for empty string use the regex ^()$
                                                                                             //To check for any string (including empty string) use the regex ^(.*)$
-            return evaluableValueTmp == null ? false : Pattern.matches(expr, evaluableValueTmp.toString());
+            if (evaluableValueTmp == null) {
+                return false;
+            }
+            Pattern pattern = expressionPattern;
+            if (pattern == null || !pattern.pattern().equals(expr)) {
+                expressionPattern = pattern = CompiledPatterns.getPattern(expr);
+            }
+            return pattern.matcher(evaluableValueTmp.toString()).matches();
         }
     }
 
@@ -1455,7 +1654,7 @@ public final class CompilationUnits {
         /* private static final List<String> RECOGNIZED_CHILD_TAGS = Arrays.asList(
                                                                         new String[]{Map.TAG_NAME, InternalMap.TAG_NAME, Json.TAG_NAME, On.TAG_NAME}); */
 
-        private List<Map> maps = null;
+        private ChildUnitList<Map> maps = null;
         private On on = null;  //'on' condition would be used only if there are no map entries defined.
 
         @Override
@@ -1481,10 +1680,8 @@ public final class CompilationUnits {
 
         @Override
         protected void doCompileChildren(Node n) throws XPathExpressionException {
-            maps = new LinkedList<Map>();  //since mostly we would be operating
-                                           //sequentially so
-                                           //LinkedList would be an optimal
-                                           //choice
+            maps = new ChildUnitList<Map>();  //indexed list as the children are looked up (by id or type) far
+                                              //more often than they get modified
 
             super.doCompileChildren(n);
         }
@@ -1513,10 +1710,9 @@ public final class CompilationUnits {
                 return null;
             }
             if (maps != null) {
-                for (Map map : maps) {
-                    if (idOrElseOfChild.equals(map.getIdOrElse())) {
-                        return map;
-                    }
+                Map map = maps.getByIdOrElse(idOrElseOfChild);  //indexed lookup
+                if (map != null) {
+                    return map;
                 }
             }
             if (on != null && idOrElseOfChild.equals(on.getIdOrElse())) {
@@ -1528,7 +1724,7 @@ public final class CompilationUnits {
         @Override
         @SuppressWarnings("unchecked")
         public <T extends ICompilationUnit> T[] getChildren(Class<T> type) {
-            Map[] mapsArray = areMatchingTypes(Map.class, type) ? getElementsFromList(maps, new Map[0]) : null;
+            Map[] mapsArray = areMatchingTypes(Map.class, type) ? getElementsFromList(maps, Map.class) : null;
             if (mapsArray != null) {
                 return (T[]) mapsArray;
             }
@@ -1788,7 +1984,9 @@ public final class CompilationUnits {
                     if (key != null)  //Added support for returning the complete map if no key specified.
                         value = getValue(key, map);  //map.get(key);
                     else
-                        value = map;  //return the complete map
+                        value = map instanceof ScopedContextMap?
+                                    ((ScopedContextMap) map).asHashMap():  //the templates get to see the internal context as a HashMap
+                                    map;  //return the complete map
                 }
             //}
             return value;
@@ -1820,7 +2018,10 @@ public final class CompilationUnits {
                 }
             }
             return value;*/
-            return UtilityFunctions.getValue(keyHierarchy, getKeyDelimiter(), map);
+            return keyHierarchy == null || map == null? null:
+                                         AccessorPath.of(keyHierarchy, getKeyDelimiter()).getValue(map);  //the key could be built at
+                                                                                                          //runtime hence the cached
+                                                                                                          //path lookup
         }
     }
 
@@ -1867,6 +2068,11 @@ public final class CompilationUnits {
             return super.isAttributeNative(attr) || UtilityFunctions.isItemInArray(attr, ATTRIBUTES);
         }
 
+        @SuppressWarnings("unchecked")
+        private static java.util.Map<String, Object> toJsonMap(Object json) {
+            return json instanceof java.util.Map? (java.util.Map<String, Object>) json: null;  //json values other than objects are not maps
+        }
+
         @Override
         public Object remove(String key, CompilationRuntimeContext compilationRuntimeContext) {
             Object value = null;
@@ -1891,18 +2097,16 @@ public final class CompilationUnits {
 
                 java.util.Map<String, Object> jsonToMap = null;
                 if (jsonObj instanceof String) {
-                    javax.script.ScriptEngine scriptEngine = new javax.script.ScriptEngineManager().getEngineByName("javascript");  //using script engine of java 8
-                    try {
-                        jsonToMap = (java.util.Map<String, Object>) scriptEngine.eval("Java.asJSONCompatible(" +jsonObj+ ")");
-                    } catch(Exception e) {
-                        //ignore. null value would get returned.
-                    }
-                } else if (jsonObj instanceof java.util.Map) {
+                    //parsing a fresh copy as the removal is to be done on the json map and not on the cached (shared) one.
+                    Object parsedJson = null;
                     try {
-                        jsonToMap = (java.util.Map<String, Object>) jsonObj;  //if it throws a class cast exception because of difference in types then let it be.
-                    } catch(Exception e) {
+                        parsedJson = JsonParser.parse((String) jsonObj);
+                    } catch(IllegalArgumentException iae) {
                         //ignore. null value would get returned.
                     }
+                    jsonToMap = toJsonMap(parsedJson);
+                } else {
+                    jsonToMap = toJsonMap(jsonObj);
                 }
 
                 if (jsonToMap != null) {
@@ -1936,21 +2140,9 @@ public final class CompilationUnits {
                     jsonObj = getValue(mapKeyName, map);  //map.get(mapKeyName);  //5th May, 20: Using getValue instead of direct key lookup as it supports key hierarchy traversal.
                 }
 
-                java.util.Map<String, Object> jsonToMap = null;
-                if (jsonObj instanceof String) {
-                    javax.script.ScriptEngine scriptEngine = new javax.script.ScriptEngineManager().getEngineByName("javascript");  //using script engine of java 8
-                    try {
-                        jsonToMap = (java.util.Map<String, Object>) scriptEngine.eval("Java.asJSONCompatible(" +jsonObj+ ")");
-                    } catch(Exception e) {
-                        //ignore. null value would get returned.
-                    }
-                } else if (jsonObj instanceof java.util.Map) {
-                    try {
-                        jsonToMap = (java.util.Map<String, Object>) jsonObj;  //if it throws a class cast exception because of difference in types then let it be.
-                    } catch(Exception e) {
-                        //ignore. null value would get returned.
-                    }
-                }
+                java.util.Map<String, Object> jsonToMap = toJsonMap(jsonObj instanceof String?
+                                                                        compilationRuntimeContext.getParsedJson((String) jsonObj):  //parsed once per context
+                                                                        jsonObj);
 
                 if (jsonToMap != null) {
                     if (key != null)  //Added support for returning the complete map if no key specified.
@@ -2064,7 +2256,7 @@ public final class CompilationUnits {
             for (String attribute: attributesToInheritFromParentNode) {
                 setAttribute(
                             attribute,
-                            getAttributeValueIffAttributeIsDefined("parent::*/@" + attribute, n),
+                            getAttributeValueIffAttributeIsDefined(attribute, n.getParentNode()),
                             mergeableAttributes.contains(attribute));  //Set specific attributes of this TextBlock cu
                                                                        //with the value of the parent attribute if one
                                                                        //is defined
@@ -2304,7 +2496,9 @@ public final class CompilationUnits {
         /* private static final List<String> RECOGNIZED_CHILD_TAGS = Arrays.asList(
                                                                        new String[]{Set.TAG_NAME, Group.TAG_NAME, Init.TAG_NAME, Finally.TAG_NAME, On.TAG_NAME}); */
 
-        private List<ICompilationUnit> children = null;
+        private volatile ChildUnitList<ICompilationUnit> children = null;  //volatile as the extensions processing replaces the list
+                                                                           //of a (shared) unit once the unit achieves finality. The
+                                                                           //published list is never modified in place thereafter.
         private Init init = null;
         private Finally finallyy = null;
         private On on = null;  //'on' condition, if present, must be satisfied in order for this Group CU to execute.
@@ -2325,14 +2519,10 @@ public final class CompilationUnits {
                                                                                  //0th index holds the serialization
                                                                                  //policy of self. 1st index holds the
                                                                                  //serialization policy of children.
-        private SerializationPolicy[] runtimeSerializationPolicies = serializationPolicies;  //the runtime
-                                                                                              //serialization policies
-                                                                                              //would be used at
-                                                                                              //runtime to override the
-                                                                                              //serialization policies
-                                                                                              //of a child group by the
-                                                                                              //parent group during
-                                                                                              //serialization.
+        private volatile SerializationPolicy[] runtimeSerializationPolicies = null;  //overrides set through the deprecated
+                                                                                     //context less setters. These are held by
+                                                                                     //the group itself and hence are seen by
+                                                                                     //all the contexts (as they used to be).
         private boolean escapeQuotes = false;  //defined a boolean variable for performance reasons.
                                                //Otherwise we could have very well read the information
                                                //directly by checking the value of the respective attribute.
@@ -2367,7 +2557,7 @@ public final class CompilationUnits {
             for (String attribute : ATTRIBUTES) {
                 setAttribute(
                         attribute,
-                        getAttributeValueIffAttributeIsDefined("@" + attribute, n),
+                        getAttributeValueIffAttributeIsDefined(attribute, n),
                         mergeableAttributes.contains(attribute));
             }
             */
@@ -2397,7 +2587,6 @@ public final class CompilationUnits {
 
             setSerializationPolicy(false);  //set serialization policy for self
             setSerializationPolicy(true);  //set serialization policy for children
-            runtimeSerializationPolicies = serializationPolicies;
 
             String escapeQuotesTmp = getAttribute(ATTRIBUTE_ESCAPE_QUOTES);
             if (escapeQuotesTmp == null || "".equals(escapeQuotesTmp)) {
@@ -2411,10 +2600,8 @@ public final class CompilationUnits {
 
         @Override
         protected void doCompileChildren(Node n) throws XPathExpressionException {
-            children = new LinkedList<ICompilationUnit>();  //since mostly we would be operating
-                                                            //sequentially so
-                                                            //LinkedList would be an optimal
-                                                            //choice
+            children = new ChildUnitList<ICompilationUnit>();  //indexed list as the children are looked up (by id or type) far
+                                                               //more often than they get modified
             super.doCompileChildren(n);
         }
 
@@ -2487,30 +2674,104 @@ public final class CompilationUnits {
             return serializationPolicies[1];
         }
 
+        //the runtime serialization policies are used to override the serialization policies of a child group by the
+        //parent group during serialization. Since the group is shared (e.g. by the threads executing the same compiled
+        //template) the overrides are held inside the compilation runtime context and not inside the group itself.
+        private SerializationPolicy[] getRuntimeSerializationPolicies(CompilationRuntimeContext compilationRuntimeContext) {
+            SerializationPolicy[] contextSerializationPolicies = compilationRuntimeContext == null? null:
+                                                                    (SerializationPolicy[]) compilationRuntimeContext.getRuntimeState(this);
+            return contextSerializationPolicies != null? contextSerializationPolicies: getSharedRuntimeSerializationPolicies();
+        }
+
+        private SerializationPolicy[] getSharedRuntimeSerializationPolicies() {
+            SerializationPolicy[] sharedSerializationPolicies = runtimeSerializationPolicies;
+            return sharedSerializationPolicies != null? sharedSerializationPolicies: serializationPolicies;
+        }
+
+        private void setRuntimeSerializationPolicy(int index, SerializationPolicy serPolicy,
+                                                   CompilationRuntimeContext compilationRuntimeContext) {
+            if (compilationRuntimeContext == null) {
+                SerializationPolicy[] sharedSerializationPolicies = getSharedRuntimeSerializationPolicies().clone();
+                sharedSerializationPolicies[index] = serPolicy;
+                runtimeSerializationPolicies = sharedSerializationPolicies;  //published as a whole. Never modified in place.
+                return;
+            }
+            SerializationPolicy[] contextSerializationPolicies = getRuntimeSerializationPolicies(compilationRuntimeContext).clone();
+            contextSerializationPolicies[index] = serPolicy;
+            compilationRuntimeContext.setRuntimeState(this, Arrays.equals(contextSerializationPolicies,
+                                                                          getSharedRuntimeSerializationPolicies())?
+                                                                null:  //back to the policies of the group. No override to hold.
+                                                                contextSerializationPolicies);
+        }
+
+        /**
+         * @deprecated the override set through the context less setter is held by the group and is thus seen by every
+         * context the group is evaluated with. Use {@link #getSelfSerializationPolicyRuntime(CompilationRuntimeContext)}.
+         */
+        @Deprecated
         public SerializationPolicy getSelfSerializationPolicyRuntime() {
-            return runtimeSerializationPolicies[0];
+            return getSelfSerializationPolicyRuntime(null);
         }
 
+        /**
+         * @deprecated the override set through the context less setter is held by the group and is thus seen by every
+         * context the group is evaluated with. Use {@link #getChildSerializationPolicyRuntime(CompilationRuntimeContext)}.
+         */
+        @Deprecated
         public SerializationPolicy getChildSerializationPolicyRuntime() {
-            return runtimeSerializationPolicies[1];
+            return getChildSerializationPolicyRuntime(null);
+        }
+
+        /**
+         * @deprecated changes the runtime serialization policy of the group for every context (and thread) it is
+         * evaluated with. Use {@link #setSelfSerializationPolicyRuntime(SerializationPolicy, CompilationRuntimeContext)}.
+         * @param serPolicy
+         */
+        @Deprecated
+        public void setSelfSerializationPolicyRuntime(SerializationPolicy serPolicy) {
+            setSelfSerializationPolicyRuntime(serPolicy, null);
+        }
+
+        /**
+         * @deprecated changes the runtime serialization policy of the group for every context (and thread) it is
+         * evaluated with. Use {@link #setChildSerializationPolicyRuntime(SerializationPolicy, CompilationRuntimeContext)}.
+         * @param serPolicy
+         */
+        @Deprecated
+        public void setChildSerializationPolicyRuntime(SerializationPolicy serPolicy) {
+            setChildSerializationPolicyRuntime(serPolicy, null);
+        }
+
+        public SerializationPolicy getSelfSerializationPolicyRuntime(CompilationRuntimeContext compilationRuntimeContext) {
+            return getRuntimeSerializationPolicies(compilationRuntimeContext)[0];
+        }
+
+        public SerializationPolicy getChildSerializationPolicyRuntime(CompilationRuntimeContext compilationRuntimeContext) {
+            return getRuntimeSerializationPolicies(compilationRuntimeContext)[1];
         }
 
         /**
          * This method is used to change the value of runtime serialization policy by the group serializers. This
          * method is not for general use and shouldn't be called arbitrarily.
          * @param serPolicy
+         * @param compilationRuntimeContext the context holding the runtime serialization policy. If null, the policy is
+         * changed for all the contexts.
          */
-        public void setSelfSerializationPolicyRuntime(SerializationPolicy serPolicy) {
-            runtimeSerializationPolicies[0] = serPolicy;
+        public void setSelfSerializationPolicyRuntime(SerializationPolicy serPolicy,
+                                                      CompilationRuntimeContext compilationRuntimeContext) {
+            setRuntimeSerializationPolicy(0, serPolicy, compilationRuntimeContext);
         }
 
         /**
          * This method is used to change the value of runtime serialization policy by the group serializers. This
          * method is not for general use and shouldn't be called arbitrarily.
          * @param serPolicy
+         * @param compilationRuntimeContext the context holding the runtime serialization policy. If null, the policy is
+         * changed for all the contexts.
          */
-        public void setChildSerializationPolicyRuntime(SerializationPolicy serPolicy) {
-            runtimeSerializationPolicies[1] = serPolicy;
+        public void setChildSerializationPolicyRuntime(SerializationPolicy serPolicy,
+                                                       CompilationRuntimeContext compilationRuntimeContext) {
+            setRuntimeSerializationPolicy(1, serPolicy, compilationRuntimeContext);
         }
 
         @Override
@@ -2547,10 +2808,9 @@ public final class CompilationUnits {
                 return on;
             }
             if (children != null) {
-                for (ICompilationUnit child : children) {
-                    if (idOrElseOfChild.equals(child.getIdOrElse())) {
-                        return child;
-                    }
+                ICompilationUnit child = children.getByIdOrElse(idOrElseOfChild);  //indexed lookup
+                if (child != null) {
+                    return child;
                 }
             }
             return null;
@@ -2564,19 +2824,19 @@ public final class CompilationUnits {
                 return (T[]) superChildrenByType;
             }
             if (areMatchingTypes(ICompilationUnit.class, type)) {
-                ICompilationUnit[] allChildren = getElementsFromList(children, ICompilationUnit.class, new ICompilationUnit[0]);
+                ICompilationUnit[] allChildren = getElementsFromList(children, ICompilationUnit.class);
                 return (T[]) (allChildren == null? getZeroLengthArrayOfType(type): allChildren);
             } else if (areMatchingTypes(IExtensible.class, type)) {
-                IExtensible[] extensibleChildren = getElementsFromList(children, IExtensible.class, new IExtensible[0]);
+                IExtensible[] extensibleChildren = getElementsFromList(children, IExtensible.class);
                 return (T[]) (extensibleChildren == null? getZeroLengthArrayOfType(type): extensibleChildren);
             } else if (areMatchingTypes(IEvaluable.class, type)) {
-                IEvaluable[] evaluableChildren = getElementsFromList(children, IEvaluable.class, new IEvaluable[0]);
+                IEvaluable[] evaluableChildren = getElementsFromList(children, IEvaluable.class);
                 return (T[]) (evaluableChildren == null? getZeroLengthArrayOfType(type): evaluableChildren);
             } else if (areMatchingTypes(Set.class, type)) {
-                Set[] sets = getElementsFromList(children, Set.class, new Set[0]);
+                Set[] sets = getElementsFromList(children, Set.class);
                 return (T[]) (sets == null? getZeroLengthArrayOfType(type): sets);
             } else if (areMatchingTypes(Group.class, type)) {
-                Group[] groups = getElementsFromList(children, Group.class, new Group[0]);
+                Group[] groups = getElementsFromList(children, Group.class);
                 return (T[]) (groups == null? getZeroLengthArrayOfType(type): groups);
             }
             Finally[] finallyArray = getElementAsUnitArray(finallyy, type);
@@ -2660,7 +2920,7 @@ public final class CompilationUnits {
             clonedGrp.initPerformanceVariables();  //this method must be called after all attributes have been set inside the cloned unit as
                                                    //the initilization of performance variables is based on values of some attributes.
 
-            clonedGrp.children = new LinkedList<ICompilationUnit>();
+            clonedGrp.children = new ChildUnitList<ICompilationUnit>();
             clonedGrp.children.addAll(children);
             clonedGrp.isHeadless = isHeadless;
             return clonedGrp;
@@ -2713,8 +2973,6 @@ public final class CompilationUnits {
             /*if (!canMarkExtensionsAsProcessed) {
                 markExtensionsAsProcessed(false);
             }*/
-            markExtensionsAsProcessed(canMarkExtensionsAsProcessed);  //Let's mark the actual extensions processed status on
-                                                                      //the orig unit from which the extendedUnit was cloned.
 
             if (canMarkExtensionsAsProcessed) {  //22 Oct, 24: if after processing the extensions, this unit has achieved the finality then let's update the
                                                  //children of this orig unit to the ones inside the extended unit so its correct structure is available inside
@@ -2729,10 +2987,16 @@ public final class CompilationUnits {
                                                  //orig unit with the ones inside extendedUnit then this orig unit will have only its immediate children and no
                                                  //inherited ones, and other CUs that have extended this orig CU will miss the inherited units resulting in an
                                                  //incomplete structure.
-                this.children = extendedUnit.children;  //TOOD: better if we create clones of each child and then set here. That would safeguard the orig unit
-                                                        //from any changes done later on the extendedUnit under the assumption that 'since extendedUnit is a
-                                                        //cloned instance so any changes to it won't affect the state of the orig unit'.
+                ChildUnitList<ICompilationUnit> extendedChildren = new ChildUnitList<ICompilationUnit>();
+                extendedChildren.addAll(extendedUnit.children);
+                this.children = extendedChildren;  //a list of its own so that any changes done later on the extendedUnit (e.g. merging it with a base unit
+                                                   //in place) don't affect the orig unit which could be in use by the other threads. The list is
+                                                   //published as a whole and hence the threads see either the old or the new one.
             }
+            markExtensionsAsProcessed(canMarkExtensionsAsProcessed);  //Let's mark the actual extensions processed status on
+                                                                      //the orig unit from which the extendedUnit was cloned. Marked only
+                                                                      //after the extended children are in place as the threads seeing the
+                                                                      //unit marked as processed use it as is (without locking).
             return extendedUnit;
         }
 
@@ -2918,8 +3182,14 @@ public final class CompilationUnits {
                                                                                                            //type Group but has the same id then that would not be returned.
                         if (thisSubGroup != null) {
                             //groups require merging
+                            Group thisExtendedSubGroup = thisSubGroup.extend(compilationRuntimeContext, mctr);
+                            if (thisExtendedSubGroup == thisSubGroup) {
+                                thisExtendedSubGroup = thisSubGroup.getClone();  //extend returns the unit itself once its extensions are processed. The
+                                                                                 //unit could be shared (e.g. with the base unit or with the template being
+                                                                                 //evaluated by other threads) and thus must not be merged into in place.
+                            }
                             Group extendedGrp = Group.doExtendFromBase(
-                                                           thisSubGroup.extend(compilationRuntimeContext, mctr),
+                                                           thisExtendedSubGroup,
                                                            thatSubGroup.extend(compilationRuntimeContext, mctr),
                                                            opType,
                                                            extScope,
@@ -3099,7 +3369,7 @@ public final class CompilationUnits {
                                     String returnType) throws XPathExpressionException {
             java.util.Map<String, Object> internalContext = compilationRuntimeContext.getInternalContext();
             if (internalContext == null) {
-                internalContext = new HashMap<String, Object>();
+                internalContext = new ScopedContextMap();
                 compilationRuntimeContext.setInternalContext(internalContext);
             }
             boolean internalContextContainedGroupSerializerType = internalContext.containsKey(PARAM_GROUP_SERIALIZER_TYPE);
@@ -3226,7 +3496,7 @@ public final class CompilationUnits {
         //private static final String CHILDREN_XPATH = "./set";
         //private static final List<String> RECOGNIZED_CHILD_TAGS = Arrays.asList(new String[]{Set.TAG_NAME, Unset.TAG_NAME});
 
-        private List<IExecutable> executables = null;
+        private ChildUnitList<IExecutable> executables = null;
 
         @Override
         public String getTagName() {
@@ -3235,10 +3505,8 @@ public final class CompilationUnits {
 
         @Override
         protected void doCompileChildren(Node n) throws XPathExpressionException {
-            executables = new LinkedList<IExecutable>();  //since mostly we would be operating
-                                                   //sequentially so
-                                                   //LinkedList would be an optimal
-                                                   //choice
+            executables = new ChildUnitList<IExecutable>();  //indexed list as the children are looked up (by id or type) far
+                                                             //more often than they get modified
 
             super.doCompileChildren(n);
         }
@@ -3262,10 +3530,9 @@ public final class CompilationUnits {
                 return null;
             }
             if (executables != null) {
-                for (IExecutable executable : executables) {
-                    if (idOrElseOfChild.equals(executable.getIdOrElse())) {
-                        return executable;
-                    }
+                IExecutable executable = executables.getByIdOrElse(idOrElseOfChild);  //indexed lookup
+                if (executable != null) {
+                    return executable;
                 }
             }
             return null;
@@ -3274,7 +3541,7 @@ public final class CompilationUnits {
         @Override
         @SuppressWarnings("unchecked")
         public <T extends ICompilationUnit> T[] getChildren(Class<T> type) {
-            IExecutable[] executablesArray = areMatchingTypes(IExecutable.class, type) ? getElementsFromList(executables, new IExecutable[0]) : null;
+            IExecutable[] executablesArray = areMatchingTypes(IExecutable.class, type) ? getElementsFromList(executables, IExecutable.class) : null;
             return (T[]) (executablesArray == null ? getZeroLengthArrayOfType(type) : executablesArray);
         }
 
@@ -3298,7 +3565,7 @@ public final class CompilationUnits {
                 return;
             }
             if (this.executables == null) {
-                this.executables = new LinkedList<IExecutable>();
+                this.executables = new ChildUnitList<IExecutable>();
             }
             if (duplicatesOk) {
                 this.executables.addAll(executables);  //fast copy using addAll
@@ -3318,7 +3585,7 @@ public final class CompilationUnits {
         Init getClone() {
             Init clonedInit = newInstance();
             clonedInit.copyAttributes(getAttributes());
-            clonedInit.executables = new LinkedList<IExecutable>();
+            clonedInit.executables = new ChildUnitList<IExecutable>();
             clonedInit.executables.addAll(getExecutables());
             return clonedInit;
         }
@@ -3358,7 +3625,7 @@ public final class CompilationUnits {
         //private static final List<String> RECOGNIZED_CHILD_TAGS = Arrays.asList(new String[]{Using.TAG_NAME, Conditional.TAG_NAME});
 
         private Using using = null;
-        private List<Conditional> conditionals = null;
+        private ChildUnitList<Conditional> conditionals = null;
 
         @Override
         public String getTagName() {
@@ -3367,10 +3634,8 @@ public final class CompilationUnits {
 
         @Override
         protected void doCompileChildren(Node n) throws XPathExpressionException {
-            conditionals = new LinkedList<Conditional>();  //since mostly we would be operating
-                                                           //sequentially so
-                                                           //LinkedList would be an optimal
-                                                           //choice
+            conditionals = new ChildUnitList<Conditional>();  //indexed list as the children are looked up (by id or type) far
+                                                              //more often than they get modified
 
             super.doCompileChildren(n);
         }
@@ -3402,10 +3667,9 @@ public final class CompilationUnits {
                 return using;
             }
             if (conditionals != null) {
-                for (Conditional conditional : conditionals) {
-                    if (idOrElseOfChild.equals(conditional.getIdOrElse())) {
-                        return conditional;
-                    }
+                Conditional conditional = conditionals.getByIdOrElse(idOrElseOfChild);  //indexed lookup
+                if (conditional != null) {
+                    return conditional;
                 }
             }
             return null;
@@ -3415,7 +3679,7 @@ public final class CompilationUnits {
         @SuppressWarnings("unchecked")
         public <T extends ICompilationUnit> T[] getChildren(Class<T> type) {
             Conditional[] conditionalArray = areMatchingTypes(Conditional.class, type) ?
-                                                       getElementsFromList(conditionals, new Conditional[0]) : null;
+                                                       getElementsFromList(conditionals, Conditional.class) : null;
             if (conditionalArray != null) {
                 return (T[]) conditionalArray;
             }
@@ -3566,7 +3830,7 @@ public final class CompilationUnits {
         //private static final String CHILDREN_XPATH = "./valueof | ./get";
         //private static final List<String> RECOGNIZED_CHILD_TAGS = Arrays.asList(new String[]{ValueOf.TAG_NAME, Get.TAG_NAME});
 
-        private List<IEvaluable> evaluables = null;
+        private ChildUnitList<IEvaluable> evaluables = null;
 
         @Override
         public String getTagName() {
@@ -3575,10 +3839,8 @@ public final class CompilationUnits {
 
         @Override
         protected void doCompileChildren(Node n) throws XPathExpressionException {
-            evaluables = new LinkedList<IEvaluable>();  //since mostly we would be operating
-                                                     //sequentially so
-                                                     //LinkedList would be an optimal
-                                                     //choice
+            evaluables = new ChildUnitList<IEvaluable>();  //indexed list as the children are looked up (by id or type) far
+                                                           //more often than they get modified
 
             super.doCompileChildren(n);
         }
@@ -3602,10 +3864,9 @@ public final class CompilationUnits {
                 return null;
             }
             if (evaluables != null) {
-                for (IEvaluable evaluable : evaluables) {
-                    if (idOrElseOfChild.equals(evaluable.getIdOrElse())) {
-                        return evaluable;
-                    }
+                IEvaluable evaluable = evaluables.getByIdOrElse(idOrElseOfChild);  //indexed lookup
+                if (evaluable != null) {
+                    return evaluable;
                 }
             }
             return null;
@@ -3615,7 +3876,7 @@ public final class CompilationUnits {
         @SuppressWarnings("unchecked")
         public <T extends ICompilationUnit> T[] getChildren(Class<T> type) {
             IEvaluable[] evaluablesArray = areMatchingTypes(IEvaluable.class, type) ?
-                                                    getElementsFromList(evaluables, new IEvaluable[0]) : null;
+                                                    getElementsFromList(evaluables, IEvaluable.class) : null;
             return (T[]) (evaluablesArray == null ? getZeroLengthArrayOfType(type) : evaluablesArray);
         }
 
@@ -3657,12 +3918,11 @@ public final class CompilationUnits {
             //initialize variables to use
             java.util.Map<String, Object> varMap = null;
             if (originalInternalContext != null) {
-                varMap = new java.util.HashMap<String, Object>();
-                varMap.putAll(originalInternalContext);  //copy the current internal context
+                varMap = ScopedContextMap.copyOf(originalInternalContext);  //copy the current internal context (constant time fork)
             }
             java.util.Map<String, Object> _varMap = initAndGetAllVariables(compilationRuntimeContext);
             if (varMap == null && _varMap != null) {
-                varMap = _varMap;  //there was no original internal context available. Just use the returned _varMap
+                varMap = ScopedContextMap.copyOf(_varMap);  //there was no original internal context available. Just use the returned _varMap
             } else if (varMap != null && _varMap != null) {
                 varMap.putAll(_varMap);  //merge the two internal contexts
             }
@@ -3684,7 +3944,7 @@ public final class CompilationUnits {
                 return;
             }
             if (this.evaluables == null) {
-                this.evaluables = new LinkedList<IEvaluable>();
+                this.evaluables = new ChildUnitList<IEvaluable>();
             }
             if (duplicatesOk) {
                 this.evaluables.addAll(evaluables);  //fast copy using addAll
@@ -3704,7 +3964,7 @@ public final class CompilationUnits {
         Using getClone() {
             Using clonedUsing = new Using();
             clonedUsing.copyAttributes(getAttributes());
-            clonedUsing.evaluables = new LinkedList<IEvaluable>();
+            clonedUsing.evaluables = new ChildUnitList<IEvaluable>();
             clonedUsing.evaluables.addAll(getEvaluables());
             return clonedUsing;
         }
@@ -3728,7 +3988,7 @@ public final class CompilationUnits {
         /* private static final List<String> RECOGNIZED_CHILD_TAGS = Arrays.asList(
                                                                        new String[]{ValueOf.TAG_NAME, Get.TAG_NAME, Select.TAG_NAME, On.TAG_NAME}); */
 
-        private List<IEvaluable> evaluables = null;
+        private ChildUnitList<IEvaluable> evaluables = null;
         private On on = null;  //'on' condition, if present, must be satisfied in order for this Set CU to execute.
 
         private boolean breakOnFirstValueSet = true;  //using a separate boolean field (and not using the
@@ -3807,10 +4067,8 @@ public final class CompilationUnits {
 
         @Override
         protected void doCompileChildren(Node n) throws XPathExpressionException {
-            evaluables = new LinkedList<IEvaluable>(); // since mostly we would be operating
-                                                  // sequentially so
-                                                  // LinkedList would be an optimal
-                                                  // choice
+            evaluables = new ChildUnitList<IEvaluable>();  //indexed list as the children are looked up (by id or type) far
+                                                           //more often than they get modified
 
             super.doCompileChildren(n);
         }
@@ -3846,10 +4104,9 @@ public final class CompilationUnits {
                 return cu;
             }
             if (evaluables != null) {
-                for (IEvaluable evaluable : evaluables) {
-                    if (idOrElseOfChild.equals(evaluable.getIdOrElse())) {
-                        return evaluable;
-                    }
+                IEvaluable evaluable = evaluables.getByIdOrElse(idOrElseOfChild);  //indexed lookup
+                if (evaluable != null) {
+                    return evaluable;
                 }
             }
             if (on != null && idOrElseOfChild.equals(on.getIdOrElse())) {
@@ -3866,7 +4123,7 @@ public final class CompilationUnits {
                 return (T[]) superChildrenByType;
             }
             IEvaluable[] evaluablesArray = areMatchingTypes(IEvaluable.class, type) ?
-                                             getElementsFromList(evaluables, new IEvaluable[0]) : null;
+                                             getElementsFromList(evaluables, IEvaluable.class) : null;
             if (evaluablesArray != null) {
                 return (T[]) evaluablesArray;
             }
@@ -3896,7 +4153,7 @@ public final class CompilationUnits {
             clonedSet.initPerformanceVariables();  //this method must be called after all attributes have been set inside the cloned unit as
                                                    //the initilization of performance variables is based on values of some attributes.
 
-            clonedSet.evaluables = new LinkedList<IEvaluable>();
+            clonedSet.evaluables = new ChildUnitList<IEvaluable>();
             clonedSet.evaluables.addAll(evaluables);
             return clonedSet;
         }
@@ -3996,12 +4253,20 @@ public final class CompilationUnits {
                 //MapOfMaps provided 'createMapIfMissing' flag is set to false. If 'createMapIfMissing' is set
                 //to true then we would dynamically create the required map and also set it inside MapOfMaps.
                 if (createMapIfMissing && in != null && !"".equals(in.trim())) {
-                    java.util.Map<String, Object> map = new HashMap<String, Object>();
-                    //if (value != null || doOutputNullValue()) {
-                    //    map.put(attribute, value/* == null ? null : value.toString()*/);  //Using the raw value instead of toString
-                    //}
-                    setValueInMap(true, in, map, attribute, value);
-                    mapOfMaps.putMap(in, map);
+                    synchronized (mapOfMaps) {  //the (synchronized view of the) MapOfMaps may be shared by the
+                                                //iterations of a parallel loop. Rechecking under its lock.
+                        mapTmp = mapOfMaps.getMap(in);
+                        if (mapTmp != null) {
+                            setValueInMap(false, in, mapTmp, attribute, value);
+                        } else {
+                            java.util.Map<String, Object> map = new HashMap<String, Object>();
+                            //if (value != null || doOutputNullValue()) {
+                            //    map.put(attribute, value/* == null ? null : value.toString()*/);  //Using the raw value instead of toString
+                            //}
+                            setValueInMap(true, in, map, attribute, value);
+                            mapOfMaps.putMap(in, map);
+                        }
+                    }
                 } else {
                     throw new RuntimeException(
                                          "No output map available inside the MapOfMaps with the name: " + in);
@@ -4059,7 +4324,7 @@ public final class CompilationUnits {
                 //or more valueof CUs. Let's pass such values using the internal context to the transformation
                 //function.
                 if (compilationRuntimeContext.getInternalContext() == null) {
-                    compilationRuntimeContext.setInternalContext(new HashMap<String, Object>());
+                    compilationRuntimeContext.setInternalContext(new ScopedContextMap());
                 }
                 compilationRuntimeContext.getInternalContext().put(evaluable.getId(), value);
             }
@@ -4076,7 +4341,7 @@ public final class CompilationUnits {
         /* private static final List<String> RECOGNIZED_CHILD_TAGS = Arrays.asList(
                                                                        new String[]{Map.TAG_NAME, InternalMap.TAG_NAME, Json.TAG_NAME, On.TAG_NAME}); */
 
-        private List<Map> maps = null;
+        private ChildUnitList<Map> maps = null;
         private On on = null;
 
         @Override
@@ -4113,10 +4378,8 @@ public final class CompilationUnits {
 
         @Override
         protected void doCompileChildren(Node n) throws XPathExpressionException {
-            maps = new LinkedList<Map>();  //since mostly we would be operating
-                                           //sequentially so
-                                           //LinkedList would be an optimal
-                                           //choice
+            maps = new ChildUnitList<Map>();  //indexed list as the children are looked up (by id or type) far
+                                              //more often than they get modified
 
             super.doCompileChildren(n);
         }
@@ -4145,10 +4408,9 @@ public final class CompilationUnits {
                 return null;
             }
             if (maps != null) {
-                for (Map map : maps) {
-                    if (idOrElseOfChild.equals(map.getIdOrElse())) {
-                        return map;
-                    }
+                Map map = maps.getByIdOrElse(idOrElseOfChild);  //indexed lookup
+                if (map != null) {
+                    return map;
                 }
             }
             if (on != null && idOrElseOfChild.equals(on.getIdOrElse())) {
@@ -4160,7 +4422,7 @@ public final class CompilationUnits {
         @Override
         @SuppressWarnings("unchecked")
         public <T extends ICompilationUnit> T[] getChildren(Class<T> type) {
-            Map[] mapsArray = areMatchingTypes(Map.class, type) ? getElementsFromList(maps, new Map[0]) : null;
+            Map[] mapsArray = areMatchingTypes(Map.class, type) ? getElementsFromList(maps, Map.class) : null;
             if (mapsArray != null) {
                 return (T[]) mapsArray;
             }
@@ -4371,7 +4633,7 @@ public final class CompilationUnits {
             if (internalCtx == null) {
                 //internalCtx is null but we would need to set couple of state variables inside the internal context.
                 //Let's initialize the internal context and set the same inside compilation runtime context also.
-                internalCtx = new java.util.HashMap<String, Object>();
+                internalCtx = new ScopedContextMap();
                 compilationRuntimeContext.setInternalContext(internalCtx);
             }
             try {
@@ -4485,6 +4747,8 @@ public final class CompilationUnits {
         private static final String LOOP_INPUT_PARAM_TIMES = "times";
         private static final String LOOP_INPUT_PARAM_ITR_COMBINATOR = "itr-combinator";
         private static final String LOOP_INPUT_PARAM_ITR_JOINER = "itr-joiner";
+        private static final String LOOP_INPUT_PARAM_PARALLELISM = "parallelism";  //max number of iterations to run concurrently. Loop runs
+                                                                                  //sequentially (the default) if not set or if less than 2.
 
         private static String LOOP_STATE_VARIABLE_ITERABLE_SIZE = "iterable-size";
         private static String LOOP_STATE_VARIABLE_START_INDEX = "start-index";
@@ -4706,8 +4970,9 @@ public final class CompilationUnits {
                 //instead of just holding the reference to the internal context we would like to create a copy
                 //of it so that even if the internal context map gets modified by any of the methods of the
                 //processor CU we would still be able to restore back to the original context state cleanly.
-                java.util.Map<String, Object> savedInternalContextCpy = new HashMap<String, Object>();
-                savedInternalContextCpy.putAll(savedInternalContext);
+                //the copy is a constant time fork of the (persistent) internal context map. Only the entries modified
+                //during this getValue request get copied.
+                java.util.Map<String, Object> savedInternalContextCpy = ScopedContextMap.copyOf(savedInternalContext);
                 compilationRuntimeContext.setInternalContext(savedInternalContextCpy);  //savedInternalContext = savedInternalContextCpy;  //refer comment below:
                                                                                         //Updated the reference of internal context map inside compilationRuntimeContext
                                                                                         //for this getValue request as opposed to the previous scheme of using the same reference of
@@ -4840,27 +5105,38 @@ public final class CompilationUnits {
             Object value = null;
             boolean[] singleElemArrayIndicatingWhetherFirstTime = {true};
             long iterationDelayMillisecs = _iterationDelay(internalCtx);
+            int parallelism = endlessLoop? 1: _parallelism(internalCtx);  //an endless loop can only be run sequentially
 
             //variables to control the loop iterations count
             int maxAllowedIterations = getMaxAllowedLoopIterationsCount();
             int itrCount = 0;
 
             try {
-                for (int i = startIndex; endlessLoop? true: (decrement? i > endIndex: i < endIndex); i = decrement? i - 1: i + 1) {
-                    assertLoopIterationsDoesntExceedTheMaxAllowed(itrCount++, maxAllowedIterations);
+                if (parallelism > 1) {
+                    List<Object[]> iterationStates = new ArrayList<>(Math.abs(endIndex - startIndex));
+                    for (int i = startIndex; decrement? i > endIndex: i < endIndex; i = decrement? i - 1: i + 1) {
+                        assertLoopIterationsDoesntExceedTheMaxAllowed(itrCount++, maxAllowedIterations);
+                        iterationStates.add(new Object[]{i});
+                    }
+                    value = loopInParallel(new String[]{LOOP_INDEX}, iterationStates, parallelism,
+                                           iterationDelayMillisecs, compilationRuntimeContext);
+                } else {
+                    for (int i = startIndex; endlessLoop? true: (decrement? i > endIndex: i < endIndex); i = decrement? i - 1: i + 1) {
+                        assertLoopIterationsDoesntExceedTheMaxAllowed(itrCount++, maxAllowedIterations);
 
-                    //set the loop state variables inside internal context
-                    internalCtx.put(LOOP_INDEX, i);
+                        //set the loop state variables inside internal context
+                        internalCtx.put(LOOP_INDEX, i);
 
-                    if (breakk != null && breakk.satisfies(compilationRuntimeContext)) {
-                        break;
-                    }
+                        if (breakk != null && breakk.satisfies(compilationRuntimeContext)) {
+                            break;
+                        }
 
-                    _delay(iterationDelayMillisecs, i != startIndex);  //inject applicable delay between the iterations
+                        _delay(iterationDelayMillisecs, i != startIndex);  //inject applicable delay between the iterations
 
-                    //evaluate the evaluables
-                    value = loopBody(compilationRuntimeContext, singleElemArrayIndicatingWhetherFirstTime, value, internalCtx, LAST_ITR_VALUE);
-                    internalCtx.put(LOOP_VALUE_SO_FAR, value);
+                        //evaluate the evaluables
+                        value = loopBody(compilationRuntimeContext, singleElemArrayIndicatingWhetherFirstTime, value, internalCtx, LAST_ITR_VALUE);
+                        putLoopValueSoFar(internalCtx, LOOP_VALUE_SO_FAR, value);
+                    }
                 }
             } finally {
                 internalCtx.remove(START_INDEX);
@@ -4870,7 +5146,7 @@ public final class CompilationUnits {
                 internalCtx.remove(LAST_ITR_VALUE);
                 internalCtx.remove(LOOP_VALUE_SO_FAR);
             }
-            return value;
+            return loopValue(value);
         }
 
         private Object loopArray(Object array,
@@ -4888,27 +5164,38 @@ public final class CompilationUnits {
                                                               internalCtx);  //holds the consolidated value of the loop calculated so far
             int arrayLength = Array.getLength(array);  //using reflection here to keep the logic of iterating array elements generic.
             long iterationDelayMillisecs = _iterationDelay(internalCtx);
+            int parallelism = _parallelism(internalCtx);
 
             //variables to control the loop iterations count
             int maxAllowedIterations = getMaxAllowedLoopIterationsCount();
             int itrCount = 0;
 
             try {
-                for (int i = 0; i < arrayLength; i++) {
-                    assertLoopIterationsDoesntExceedTheMaxAllowed(itrCount++, maxAllowedIterations);
+                if (parallelism > 1) {
+                    List<Object[]> iterationStates = new ArrayList<>(arrayLength);
+                    for (int i = 0; i < arrayLength; i++) {
+                        assertLoopIterationsDoesntExceedTheMaxAllowed(itrCount++, maxAllowedIterations);
+                        iterationStates.add(new Object[]{Array.get(array, i), i});
+                    }
+                    value = loopInParallel(new String[]{ITEM_VALUE, ITEM_INDEX}, iterationStates, parallelism,
+                                           iterationDelayMillisecs, compilationRuntimeContext);
+                } else {
+                    for (int i = 0; i < arrayLength; i++) {
+                        assertLoopIterationsDoesntExceedTheMaxAllowed(itrCount++, maxAllowedIterations);
 
-                    internalCtx.put(ITEM_VALUE, Array.get(array, i));  //using reflection here to keep the logic of iterating array elements generic.
-                    internalCtx.put(ITEM_INDEX, i);
+                        internalCtx.put(ITEM_VALUE, Array.get(array, i));  //using reflection here to keep the logic of iterating array elements generic.
+                        internalCtx.put(ITEM_INDEX, i);
 
-                    if (breakk != null && breakk.satisfies(compilationRuntimeContext)) {
-                        break;
-                    }
+                        if (breakk != null && breakk.satisfies(compilationRuntimeContext)) {
+                            break;
+                        }
 
-                    _delay(iterationDelayMillisecs, i != 0);  //inject applicable delay between the iterations
+                        _delay(iterationDelayMillisecs, i != 0);  //inject applicable delay between the iterations
 
-                    //evaluate the evaluables
-                    value = loopBody(compilationRuntimeContext, singleElemArrayIndicatingWhetherFirstTime, value, internalCtx, LAST_ITR_VALUE);
-                    internalCtx.put(LOOP_VALUE_SO_FAR, value);
+                        //evaluate the evaluables
+                        value = loopBody(compilationRuntimeContext, singleElemArrayIndicatingWhetherFirstTime, value, internalCtx, LAST_ITR_VALUE);
+                        putLoopValueSoFar(internalCtx, LOOP_VALUE_SO_FAR, value);
+                    }
                 }
             } finally {
                 internalCtx.remove(ITEM_VALUE);
@@ -4916,7 +5203,7 @@ public final class CompilationUnits {
                 internalCtx.remove(LAST_ITR_VALUE);
                 internalCtx.remove(LOOP_VALUE_SO_FAR);
             }
-            return value;
+            return loopValue(value);
         }
 
         private Object loopIterable(Iterable iterable,
@@ -4933,6 +5220,7 @@ public final class CompilationUnits {
             final String LOOP_VALUE_SO_FAR = getStateVariable(LOOP_STATE_VARIABLE_LOOP_VALUE_SO_FAR,
                                                               internalCtx);  //holds the consolidated value of the loop calculated so far
             long iterationDelayMillisecs = _iterationDelay(internalCtx);
+            int parallelism = _parallelism(internalCtx);
             int index = 0;
 
             //variables to control the loop iterations count
@@ -4940,21 +5228,31 @@ public final class CompilationUnits {
             int itrCount = 0;
 
             try {
-                for (Object item: iterable) {  //for (int i = 0; i < iterable.size(); i++) {
-                    assertLoopIterationsDoesntExceedTheMaxAllowed(itrCount++, maxAllowedIterations);
+                if (parallelism > 1) {
+                    List<Object[]> iterationStates = new ArrayList<>();
+                    for (Object item: iterable) {
+                        assertLoopIterationsDoesntExceedTheMaxAllowed(itrCount++, maxAllowedIterations);
+                        iterationStates.add(new Object[]{item, index++});
+                    }
+                    value = loopInParallel(new String[]{ITEM_VALUE, ITEM_INDEX}, iterationStates, parallelism,
+                                           iterationDelayMillisecs, compilationRuntimeContext);
+                } else {
+                    for (Object item: iterable) {  //for (int i = 0; i < iterable.size(); i++) {
+                        assertLoopIterationsDoesntExceedTheMaxAllowed(itrCount++, maxAllowedIterations);
 
-                    internalCtx.put(ITEM_VALUE, item);
-                    internalCtx.put(ITEM_INDEX, index++);
+                        internalCtx.put(ITEM_VALUE, item);
+                        internalCtx.put(ITEM_INDEX, index++);
 
-                    if (breakk != null && breakk.satisfies(compilationRuntimeContext)) {
-                        break;
-                    }
+                        if (breakk != null && breakk.satisfies(compilationRuntimeContext)) {
+                            break;
+                        }
 
-                    _delay(iterationDelayMillisecs, index != 1);  //inject applicable delay between the iterations
+                        _delay(iterationDelayMillisecs, index != 1);  //inject applicable delay between the iterations
 
-                    //evaluate the evaluables
-                    value = loopBody(compilationRuntimeContext, singleElemArrayIndicatingWhetherFirstTime, value, internalCtx, LAST_ITR_VALUE);
-                    internalCtx.put(LOOP_VALUE_SO_FAR, value);
+                        //evaluate the evaluables
+                        value = loopBody(compilationRuntimeContext, singleElemArrayIndicatingWhetherFirstTime, value, internalCtx, LAST_ITR_VALUE);
+                        putLoopValueSoFar(internalCtx, LOOP_VALUE_SO_FAR, value);
+                    }
                 }
             } finally {
                 internalCtx.remove(ITEM_VALUE);
@@ -4962,7 +5260,7 @@ public final class CompilationUnits {
                 internalCtx.remove(LAST_ITR_VALUE);
                 internalCtx.remove(LOOP_VALUE_SO_FAR);
             }
-            return value;
+            return loopValue(value);
         }
 
         private Object loopMap(java.util.Map map,
@@ -4980,6 +5278,7 @@ public final class CompilationUnits {
             final String LOOP_VALUE_SO_FAR = getStateVariable(LOOP_STATE_VARIABLE_LOOP_VALUE_SO_FAR,
                                                               internalCtx);  //holds the consolidated value of the loop calculated so far
             long iterationDelayMillisecs = _iterationDelay(internalCtx);
+            int parallelism = _parallelism(internalCtx);
             int index = 0;
 
             //variables to control the loop iterations count
@@ -4987,23 +5286,34 @@ public final class CompilationUnits {
             int itrCount = 0;
 
             try {
-                for (Object _entry: map.entrySet()) {  //map.forEach((key,item) -> {
-                    assertLoopIterationsDoesntExceedTheMaxAllowed(itrCount++, maxAllowedIterations);
+                if (parallelism > 1) {
+                    List<Object[]> iterationStates = new ArrayList<>(map.size());
+                    for (Object _entry: map.entrySet()) {
+                        assertLoopIterationsDoesntExceedTheMaxAllowed(itrCount++, maxAllowedIterations);
+                        java.util.Map.Entry entry = (java.util.Map.Entry) _entry;
+                        iterationStates.add(new Object[]{entry.getKey(), entry.getValue(), index++});
+                    }
+                    value = loopInParallel(new String[]{ITEM_KEY, ITEM_VALUE, ITEM_INDEX}, iterationStates, parallelism,
+                                           iterationDelayMillisecs, compilationRuntimeContext);
+                } else {
+                    for (Object _entry: map.entrySet()) {  //map.forEach((key,item) -> {
+                        assertLoopIterationsDoesntExceedTheMaxAllowed(itrCount++, maxAllowedIterations);
 
-                    java.util.Map.Entry entry = (java.util.Map.Entry) _entry;
-                    internalCtx.put(ITEM_KEY, entry.getKey());
-                    internalCtx.put(ITEM_VALUE, entry.getValue());
-                    internalCtx.put(ITEM_INDEX, index++);  //this represents the iteration count/index more than the item index in the case of map
+                        java.util.Map.Entry entry = (java.util.Map.Entry) _entry;
+                        internalCtx.put(ITEM_KEY, entry.getKey());
+                        internalCtx.put(ITEM_VALUE, entry.getValue());
+                        internalCtx.put(ITEM_INDEX, index++);  //this represents the iteration count/index more than the item index in the case of map
 
-                    if (breakk != null && breakk.satisfies(compilationRuntimeContext)) {
-                        break;
-                    }
+                        if (breakk != null && breakk.satisfies(compilationRuntimeContext)) {
+                            break;
+                        }
 
-                    _delay(iterationDelayMillisecs, index != 1);  //inject applicable delay between the iterations
+                        _delay(iterationDelayMillisecs, index != 1);  //inject applicable delay between the iterations
 
-                    //evaluate the evaluables
-                    value = loopBody(compilationRuntimeContext, singleElemArrayIndicatingWhetherFirstTime, value, internalCtx, LAST_ITR_VALUE);
-                    internalCtx.put(LOOP_VALUE_SO_FAR, value);
+                        //evaluate the evaluables
+                        value = loopBody(compilationRuntimeContext, singleElemArrayIndicatingWhetherFirstTime, value, internalCtx, LAST_ITR_VALUE);
+                        putLoopValueSoFar(internalCtx, LOOP_VALUE_SO_FAR, value);
+                    }
                 }
             } finally {
                 internalCtx.remove(ITEM_KEY);
@@ -5012,7 +5322,7 @@ public final class CompilationUnits {
                 internalCtx.remove(LAST_ITR_VALUE);
                 internalCtx.remove(LOOP_VALUE_SO_FAR);
             }
-            return value;
+            return loopValue(value);
         }
 
         private int getMaxAllowedLoopIterationsCount() {
@@ -5042,28 +5352,205 @@ public final class CompilationUnits {
                                 String itrValueHolderKey) throws XPathExpressionException {
             Object _value = iteration(compilationRuntimeContext);
             internalCtx.put(itrValueHolderKey, _value);
+            return combine(compilationRuntimeContext, singleElemArrayIndicatingWhetherFirstTime, value, internalCtx, _value);
+        }
+
+        //combines the value of an iteration with the value of the loop calculated so far
+        private Object combine(CompilationRuntimeContext compilationRuntimeContext,
+                               boolean[] singleElemArrayIndicatingWhetherFirstTime,
+                               Object value,
+                               java.util.Map<String, Object> internalCtx,
+                               Object _value) {
             if (isIterationCombinatorDisabled(internalCtx)) {
                 value = _value;
             } else {
                 //Object _value = iterationValueObj;
                 if (_value != null && !"".equals(_value)) {
+                    LoopValue loopValue = value instanceof LoopValue? (LoopValue) value: new LoopValue(value);  //the iteration values are appended
+                                                                                                                //in place instead of concatenating
+                                                                                                                //the consolidated string every time.
                     if (!singleElemArrayIndicatingWhetherFirstTime[0]) {
-                        value += joiner(compilationRuntimeContext.getInternalContext());
+                        loopValue.append(joiner(compilationRuntimeContext.getInternalContext()));
                     } else {
                         singleElemArrayIndicatingWhetherFirstTime[0] = false;
                     }
+                    loopValue.append(_value.toString());
+                    value = loopValue;
                 }
-                if (_value != null && !"".equals(_value)) {
-                    if (value == null) {
-                        value = _value.toString();
-                    } else {
-                        value += _value.toString();
+            }
+            return value;
+        }
+
+        //runs the iterations concurrently (at most 'parallelism' of them at a time), each inside its own forked runtime context
+        //sharing a synchronized view of the external context, and combines the iteration values in the index order. A satisfied break (or a failed iteration) stops the iterations
+        //that follow it from getting started and their values, if any, get discarded. The cancellation is best effort i.e.
+        //the iterations that are already running are allowed to complete. The itr-value and loop-value state variables
+        //are not available to the iterations as they depend on the order of execution.
+        private Object loopInParallel(final String[] stateVariables,
+                                      final List<Object[]> iterationStates,
+                                      int parallelism,
+                                      final long iterationDelayMillisecs,
+                                      CompilationRuntimeContext compilationRuntimeContext) throws XPathExpressionException {
+            final int numIterations = iterationStates.size();
+            final Object[] iterationValues = new Object[numIterations];
+            final Throwable[] iterationFailures = new Throwable[numIterations];
+            final AtomicInteger nextIteration = new AtomicInteger();
+            final AtomicInteger stopAtIteration = new AtomicInteger(numIterations);  //index of the first iteration that satisfied the break
+                                                                                    //or failed. Iterations from this index onwards don't count.
+            final CountDownLatch pendingIterations = new CountDownLatch(numIterations);
+
+            int numWorkers = Math.min(parallelism, numIterations);
+            Runnable[] workers = new Runnable[numWorkers];
+            MapOfMaps externalCtx = compilationRuntimeContext.getExternalContext();
+            MapOfMaps sharedExternalCtx = externalCtx != null? externalCtx.toSynchronized(): null;  //the iterations share (and may modify)
+                                                                                                  //the external context
+            for (int w = 0; w < numWorkers; w++) {
+                //forking the worker contexts here (on the calling thread) as forking reads the internal context being forked.
+                final CompilationRuntimeContext workerContext = compilationRuntimeContext.newIterationContext();
+                workerContext.getInternalContext().remove(LOOP_INPUT_PARAM_PARALLELISM);  //nested loops run sequentially unless they opt in
+                workerContext.setExternalContext(sharedExternalCtx);
+                workers[w] = () -> {
+                    boolean isDelayApplicable = false;
+                    int i;
+                    while ((i = nextIteration.getAndIncrement()) < numIterations) {
+                        try {
+                            if (i >= stopAtIteration.get()) {
+                                continue;  //cancelled
+                            }
+                            CompilationRuntimeContext iterationContext = workerContext.newIterationContext();
+                            java.util.Map<String, Object> iterationInternalCtx = iterationContext.getInternalContext();
+                            Object[] iterationState = iterationStates.get(i);
+                            for (int v = 0; v < stateVariables.length; v++) {
+                                iterationInternalCtx.put(stateVariables[v], iterationState[v]);
+                            }
+
+                            if (breakk != null && breakk.satisfies(iterationContext)) {
+                                stopAt(stopAtIteration, i);
+                                continue;
+                            }
+
+                            _delay(iterationDelayMillisecs, isDelayApplicable);  //the delay applies between the iterations run by the same worker
+                            isDelayApplicable = true;
+
+                            iterationValues[i] = iteration(iterationContext);
+                        } catch (Throwable t) {
+                            iterationFailures[i] = t;
+                            stopAt(stopAtIteration, i);
+                        } finally {
+                            pendingIterations.countDown();
+                        }
                     }
+                };
+            }
+            for (int w = 1; w < numWorkers; w++) {
+                ParallelIterationsExecutor.EXECUTOR.execute(workers[w]);
+            }
+            if (numWorkers > 0) {
+                workers[0].run();  //the calling thread works as well. This ensures that all the iterations get picked even if
+                                   //the executor is busy (e.g. with the outer iterations of nested parallel loops).
+            }
+            try {
+                pendingIterations.await();
+            } catch (InterruptedException ie) {
+                stopAt(stopAtIteration, 0);  //cancel the iterations yet to start
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for the parallel iterations of loop " + getIdOrElse(), ie);
+            }
+
+            int stopAt = stopAtIteration.get();
+            if (stopAt < numIterations && iterationFailures[stopAt] != null) {
+                Throwable t = iterationFailures[stopAt];
+                if (t instanceof XPathExpressionException) {
+                    throw (XPathExpressionException) t;
+                } else if (t instanceof RuntimeException) {
+                    throw (RuntimeException) t;
+                } else if (t instanceof Error) {
+                    throw (Error) t;
                 }
+                throw new RuntimeException(t);
+            }
+
+            Object value = null;
+            boolean[] singleElemArrayIndicatingWhetherFirstTime = {true};
+            java.util.Map<String, Object> internalCtx = compilationRuntimeContext.getInternalContext();
+            for (int i = 0; i < stopAt; i++) {
+                value = combine(compilationRuntimeContext, singleElemArrayIndicatingWhetherFirstTime, value, internalCtx, iterationValues[i]);
             }
             return value;
         }
 
+        //lowers the index of the iteration at which the parallel iterations are to stop
+        private static void stopAt(AtomicInteger stopAtIteration, int iteration) {
+            int stopAt;
+            while (iteration < (stopAt = stopAtIteration.get()) && !stopAtIteration.compareAndSet(stopAt, iteration));
+        }
+
+        //executor of the parallel iterations. Uses virtual threads when the jdk supports them (they suit the iterations that
+        //block e.g. on io) else a fork join pool. Looked up reflectively to stay compatible with the older jdks.
+        private static final class ParallelIterationsExecutor {
+            private static final Executor EXECUTOR = newExecutor();
+
+            private static Executor newExecutor() {
+                try {
+                    return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                } catch (Exception e) {
+                    //virtual threads are not available
+                    return new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                                            ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+                }
+            }
+        }
+
+        //returns the final value of the loop i.e. materializes the consolidated value, if any, into a string.
+        private Object loopValue(Object value) {
+            return value instanceof LoopValue? value.toString(): value;
+        }
+
+        //publishes the consolidated value of the loop calculated so far as the loop-value state variable. The templates
+        //always get to see a string (which doesn't change on the later iterations) but the string is materialized only when
+        //the variable is actually read.
+        private static void putLoopValueSoFar(java.util.Map<String, Object> internalCtx, String key, Object value) {
+            if (!(value instanceof LoopValue)) {
+                internalCtx.put(key, value);
+            } else if (internalCtx instanceof ScopedContextMap) {
+                ((ScopedContextMap) internalCtx).putDeferred(key, ((LoopValue) value).snapshot());
+            } else {
+                internalCtx.put(key, value.toString());
+            }
+        }
+
+        //the consolidated value of the loop calculated so far. The iteration values get appended to it in place and it is
+        //private to the loop i.e. only its strings (see snapshot and toString) are handed out.
+        private static final class LoopValue {
+            private final StringBuilder value = new StringBuilder();
+            private String materializedValue = null;  //cached string of the value. Reset on every append.
+
+            private LoopValue(Object initialValue) {
+                if (initialValue != null) {
+                    value.append(initialValue.toString());
+                }
+            }
+
+            private void append(String str) {
+                value.append(str);
+                materializedValue = null;
+            }
+
+            //returns the supplier of the value as it is now. The value only grows by appending hence its prefix is the snapshot.
+            private Supplier<String> snapshot() {
+                final int length = value.length();
+                return () -> length == value.length()? toString(): value.substring(0, length);
+            }
+
+            @Override
+            public String toString() {
+                if (materializedValue == null) {
+                    materializedValue = value.toString();
+                }
+                return materializedValue;
+            }
+        }
+
         //providing this mechanism to disable combining of iteration results. This approach would be
         //eventually be replaced with option to define a custom combinator when the 'Ref' cu gets introduced.
         private boolean isIterationCombinatorDisabled(java.util.Map<String, Object> internalCtx) {
@@ -5084,6 +5571,20 @@ public final class CompilationUnits {
             return getValue(compilationRuntimeContext);
         }
 
+        //returns the max number of iterations to be run concurrently. Values less than 2 mean that the loop is to be run sequentially.
+        private int _parallelism(java.util.Map<String, Object> internalCtx) {
+            Object parallelismAsObject = internalCtx.get(LOOP_INPUT_PARAM_PARALLELISM);
+            int parallelism = 1;
+            try {
+                if (parallelismAsObject != null) {
+                    parallelism = Integer.parseInt(parallelismAsObject.toString().trim());
+                }
+            } catch(NumberFormatException nfe) {
+                parallelism = 1;
+            }
+            return parallelism;
+        }
+
         //returns -1 if there is no meaningful delay specified. Else returns the delay in millisecs
         private long _iterationDelay(java.util.Map<String, Object> internalCtx) {
             java.util.Map<String, Object> requestContext = internalCtx;
@@ -5209,7 +5710,7 @@ public final class CompilationUnits {
 
         private On on = null;
         private Using using = null;
-        private List<IEvaluable> evaluables = null;
+        private ChildUnitList<IEvaluable> evaluables = null;
 
         private String loggingContext = null;  //this will have the same significance as that of a java class in log messages. This will help identify
                                                //as to which xml file the log statement was defined.
@@ -5232,7 +5733,7 @@ public final class CompilationUnits {
             for (String attribute : ATTRIBUTES) {
                 setAttribute(
                         attribute,
-                        getAttributeValueIffAttributeIsDefined("@" + attribute, n),
+                        getAttributeValueIffAttributeIsDefined(attribute, n),
                         mergeableAttributes.contains(attribute));
             }
             */
@@ -5253,10 +5754,8 @@ public final class CompilationUnits {
 
         @Override
         protected void doCompileChildren(Node n) throws XPathExpressionException {
-            evaluables = new LinkedList<IEvaluable>();  //since mostly we would be operating
-                                                        //sequentially so
-                                                        //LinkedList would be an optimal
-                                                        //choice
+            evaluables = new ChildUnitList<IEvaluable>();  //indexed list as the children are looked up (by id or type) far
+                                                           //more often than they get modified
 
             super.doCompileChildren(n);
         }
@@ -5296,10 +5795,9 @@ public final class CompilationUnits {
                 return on;
             }
             if (evaluables != null) {
-                for (IEvaluable evaluable : evaluables) {
-                    if (idOrElseOfChild.equals(evaluable.getIdOrElse())) {
-                        return evaluable;
-                    }
+                IEvaluable evaluable = evaluables.getByIdOrElse(idOrElseOfChild);  //indexed lookup
+                if (evaluable != null) {
+                    return evaluable;
                 }
             }
             return null;
@@ -5309,7 +5807,7 @@ public final class CompilationUnits {
         @SuppressWarnings("unchecked")
         public <T extends ICompilationUnit> T[] getChildren(Class<T> type) {
             IEvaluable[] evaluableArray = areMatchingTypes(IEvaluable.class, type) ?
-                                                       getElementsFromList(evaluables, new IEvaluable[0]) : null;
+                                                       getElementsFromList(evaluables, IEvaluable.class) : null;
             if (evaluableArray != null) {
                 return (T[]) evaluableArray;
             }
@@ -28,9 +28,6 @@
 
 package org.cuframework.core;
 
-import java.net.URL;
-import java.net.URLClassLoader;
-
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -41,7 +38,7 @@ import org.cuframework.core.CompilationUnits.ICompilationUnit;
 import org.cuframework.config.ConfigManager;
 import org.cuframework.func.FunctionResolver;
 import org.cuframework.func.IFunction;
-import org.cuframework.util.UtilityFunctions;
+import org.cuframework.util.ClasspathLoaders;
 
 /**
  * Compilation Units Namespace.
@@ -143,13 +140,14 @@ public final class CompilationUnitsNamespace {
     //This method can set only 'more' units and not the 'core' units.
     public boolean setCompilationClassForTag(String tagName, String tagClassName) throws ClassNotFoundException, ClassCastException {
         return setCompilationClassForTag(tagName, 
-                                         Class.forName(tagClassName, false, URLClassLoader.newInstance(getClasspath(tagName),
-                                                                                                       getClass().getClassLoader()))
+                                         Class.forName(tagClassName, false, ClasspathLoaders.getClassLoader(getClasspath(tagName),
+                                                                                                            getClass().getClassLoader(),
+                                                                                                            uri))
                                                                                                  .asSubclass(ICompilationUnit.class));
     }
 
-    private URL[] getClasspath(String tagName) {
-        return UtilityFunctions.getClasspathURLs(ConfigManager.getInstance().getClasspath(tagName, uri, null));
+    private Map<String, Object> getClasspath(String tagName) {
+        return ConfigManager.getInstance().getClasspath(tagName, uri, null);
     }
 
     //This method can set only 'more' units and not the 'core' units.
@@ -242,7 +240,9 @@ public final class CompilationUnitsNamespace {
         if (parentNamespaces == null) {
             parentNamespaces = new HashSet<String>();
         }
-        parentNamespaces.add(parentNamespaceURI);
+        if (parentNamespaces.add(parentNamespaceURI)) {
+            CompilationUnits.markFunctionTablesAsModified();  //functions are also resolved through the parent namespaces
+        }
     }
 
     public String[] getParentNamespaces() {
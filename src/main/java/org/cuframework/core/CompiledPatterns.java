@@ -0,0 +1,168 @@
+// Compilation Units Framework: a very generic & powerful data driven programming framework.
+// Copyright (c) 2019 Sidharth Yadav, sidharth_08@yahoo.com
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.cuframework.core;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Process wide bounded caches of the compiled regex patterns and message formats used by the compilation units.
+ * Compiling these once (rather than on every evaluation) matters as they are typically used on per row/item paths
+ * (e.g. extracting the tokens of a tsv line and formatting them into a sql statement).
+ * The sizes of the caches can be controlled using the 'cus.regex.cache.size' and 'cus.message.format.cache.size'
+ * system properties. A size of zero (or less) disables the corresponding cache.
+ * @author Sidharth Yadav
+ *
+ */
+final class CompiledPatterns {
+    private static final String REGEX_CACHE_SIZE_PROPERTY = "cus.regex.cache.size";
+    private static final String MESSAGE_FORMAT_CACHE_SIZE_PROPERTY = "cus.message.format.cache.size";
+    private static final int DEFAULT_CACHE_SIZE = 1000;
+    private static final int REGEX_CACHE_SIZE = getCacheSizeLimit(REGEX_CACHE_SIZE_PROPERTY);
+    private static final int MESSAGE_FORMAT_CACHE_SIZE = getCacheSizeLimit(MESSAGE_FORMAT_CACHE_SIZE_PROPERTY);
+    private static final String REGEX_META_CHARS = "\\^$.|?*+()[]{}";
+
+    private static final Map<String, Pattern> PATTERNS = new ConcurrentHashMap<>();
+    private static final Map<String, MessageFormat> MESSAGE_FORMATS = new ConcurrentHashMap<>();  //prototypes. Never handed out as
+                                                                                                  //MessageFormat is not thread safe.
+
+    private CompiledPatterns() {
+    }
+
+    static Pattern getPattern(String regex) {
+        if (REGEX_CACHE_SIZE <= 0) {
+            return Pattern.compile(regex);
+        }
+        Pattern pattern = PATTERNS.get(regex);
+        if (pattern == null) {
+            pattern = Pattern.compile(regex);  //let it throw the syntax exception, if any. Same as compiling it directly.
+            if (PATTERNS.size() >= REGEX_CACHE_SIZE) {
+                evict(PATTERNS);
+            }
+            PATTERNS.putIfAbsent(regex, pattern);
+        }
+        return pattern;
+    }
+
+    //returns a message format exclusive to the caller (a copy of the cached one) which is safe to use for formatting.
+    static MessageFormat getMessageFormat(String format) {
+        if (MESSAGE_FORMAT_CACHE_SIZE <= 0) {
+            return new MessageFormat(format);
+        }
+        MessageFormat messageFormat = MESSAGE_FORMATS.get(format);
+        if (messageFormat == null) {
+            messageFormat = new MessageFormat(format);
+            if (MESSAGE_FORMATS.size() >= MESSAGE_FORMAT_CACHE_SIZE) {
+                evict(MESSAGE_FORMATS);
+            }
+            MESSAGE_FORMATS.putIfAbsent(format, messageFormat);
+        }
+        return (MessageFormat) messageFormat.clone();  //copying the parsed format is much cheaper than parsing the format again
+    }
+
+    //returns the literal text matched by the passed regex if it has no meta characters (escaped meta characters and the
+    //escapes of tab, new line etc. are fine e.g. '\t' or '\|'). Else returns null.
+    static String getLiteral(String regex) {
+        if (regex == null || regex.isEmpty()) {
+            return null;
+        }
+        StringBuilder literal = null;  //created only if the regex has escapes
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 == regex.length()) {
+                    return null;
+                }
+                char escaped = regex.charAt(++i);
+                switch (escaped) {
+                    case 't': c = '\t'; break;
+                    case 'n': c = '\n'; break;
+                    case 'r': c = '\r'; break;
+                    case 'f': c = '\f'; break;
+                    default:
+                        if (Character.isLetterOrDigit(escaped)) {
+                            return null;  //character classes (e.g. \s), back references, quoting etc.
+                        }
+                        c = escaped;  //escaped meta character e.g. \|
+                }
+                if (literal == null) {
+                    literal = new StringBuilder(regex.substring(0, i - 1));
+                }
+            } else if (REGEX_META_CHARS.indexOf(c) >= 0) {
+                return null;
+            }
+            if (literal != null) {
+                literal.append(c);
+            }
+        }
+        return literal != null? literal.toString(): regex;
+    }
+
+    //splits the value around the (non empty) literal delimiter. Same as splitting using the delimiter's pattern with a
+    //negative limit i.e. the leading and trailing empty tokens are retained.
+    static String[] splitAroundLiteral(String value, String delimiter) {
+        int index = value.indexOf(delimiter);
+        if (index < 0) {
+            return new String[]{value};
+        }
+        List<String> tokens = new ArrayList<>();
+        int start = 0;
+        while (index >= 0) {
+            tokens.add(value.substring(start, index));
+            start = index + delimiter.length();
+            index = value.indexOf(delimiter, start);
+        }
+        tokens.add(value.substring(start));
+        return tokens.toArray(new String[tokens.size()]);
+    }
+
+    private static void evict(Map<String, ?> cache) {
+        //the cache only bounds the memory used and is not an lru. Removing an arbitrary entry is good enough as the
+        //evicted entry, if needed again, would simply be recompiled and recached.
+        Iterator<String> itr = cache.keySet().iterator();
+        if (itr.hasNext()) {
+            itr.next();
+            itr.remove();
+        }
+    }
+
+    private static int getCacheSizeLimit(String property) {
+        String size = System.getProperty(property);
+        try {
+            return size == null? DEFAULT_CACHE_SIZE: Integer.parseInt(size.trim());
+        } catch (NumberFormatException nfe) {
+            return DEFAULT_CACHE_SIZE;
+        }
+    }
+}
@@ -28,11 +28,13 @@
 
 package org.cuframework.core;
 
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.xml.xpath.XPathExpressionException;
 
@@ -44,8 +46,19 @@ import javax.xml.xpath.XPathExpressionException;
 public class CompiledTemplate {
     private String templateId = null;
     private List<CompilationUnits.ICompilationUnit> compilationUnits =
-                                              new ArrayList<CompilationUnits.ICompilationUnit>();
-    private boolean extensionsProcessedBefore = false;  //for optimization
+                                              new CopyOnWriteArrayList<CompilationUnits.ICompilationUnit>();  //the template is shared between the
+                                                                                                             //threads and its units are looked up
+                                                                                                             //far more often than being modified
+                                                                                                             //(only during extensions processing).
+    private volatile boolean extensionsProcessedBefore = false;  //for optimization. Volatile as it is checked without lock by the
+                                                                 //registry before processing the extensions.
+    private long sourceSize = 0;  //size (in bytes) of the source (xml or image) the template was compiled from. Used by the
+                                  //registry to approximate the heap retained by the template.
+    private String selectQuery = null;  //query selecting the units off the source. Used by the registry to recompile the
+                                        //template when its source changes.
+    private Set<String> namespaceURIs = Collections.emptySet();  //namespaces (other than the root one) of the units of the template.
+                                                                //Used by the registry to evict the template when any of these
+                                                                //namespaces gets unloaded.
 
     public CompiledTemplate(String templateId) {
         if (templateId == null || "".equals(templateId.trim())) {
@@ -58,11 +71,38 @@ public class CompiledTemplate {
         return templateId;
     }
 
+    long getSourceSize() {
+        return sourceSize;
+    }
+
+    void setSourceSize(long sourceSize) {
+        this.sourceSize = sourceSize;
+    }
+
+    String getSelectQuery() {
+        return selectQuery;
+    }
+
+    void setSelectQuery(String selectQuery) {
+        this.selectQuery = selectQuery;
+    }
+
+    boolean usesNamespace(String namespaceURI) {
+        return namespaceURIs.contains(namespaceURI);
+    }
+
+    void setNamespaceURIs(Set<String> namespaceURIs) {
+        this.namespaceURIs = namespaceURIs;
+    }
+
     public boolean extensionsProcessed() {
         return extensionsProcessedBefore;
     }
 
-    CompiledTemplate doExtends(CompilationRuntimeContext compilationRuntimeContext,
+    //extends the units of the template. Locked per template as the extended units get published into the template (which the
+    //threads use as is, without locking, once all its units are processed for good). The units (e.g. the base ones shared
+    //by many templates) lock themselves while being extended.
+    synchronized CompiledTemplate doExtends(CompilationRuntimeContext compilationRuntimeContext,
                    CompiledTemplatesRegistry mctr) throws XPathExpressionException {
         if (extensionsProcessedBefore) {
             return this;
@@ -109,8 +149,7 @@ public class CompiledTemplate {
         for (Entry<CompilationUnits.ICompilationUnit, CompilationUnits.ICompilationUnit> entry :
                                                                             extensibleUnits.entrySet()) {
             int index = clonedMct.compilationUnits.indexOf(entry.getKey());
-            clonedMct.compilationUnits.add(index, entry.getValue());
-            clonedMct.compilationUnits.remove(index + 1);
+            clonedMct.compilationUnits.set(index, entry.getValue());  //replacing in place keeps the list intact for the concurrent readers
             if (!areAllExtensibleUnitsMarkedAsProcessed &&
                 entry.getValue() instanceof CompilationUnits.IExtensible &&
                 //CompilationUnits.IExtensible.class.cast(entry.getValue()).areExtensionsMarkedAsProcessed()) {
@@ -124,8 +163,7 @@ public class CompiledTemplate {
                 //the core extensible unit itself is marked as processed so let's update the master copy
                 //with the extended instance
                 //int index = compilationUnits.indexOf(entry.getKey());
-                compilationUnits.add(index, entry.getValue());
-                compilationUnits.remove(index + 1);
+                compilationUnits.set(index, entry.getValue());
             }
         }
         extensionsProcessedBefore = areAllExtensibleUnitsMarkedAsProcessed;
@@ -0,0 +1,346 @@
+// Compilation Units Framework: a very generic & powerful data driven programming framework.
+// Copyright (c) 2019 Sidharth Yadav, sidharth_08@yahoo.com
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.cuframework.core;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import org.cuframework.TemplateCompilationException;
+import org.cuframework.config.ConfigManager;
+
+/**
+ * Compact binary image of a template. The image holds the xml of the units selected by the select query (along with a
+ * shallow copy of their parent elements) already parsed and encoded as a tree of nodes and a table of unique strings
+ * (names, attribute values and texts). Loading an image skips the xml parsing, the xpath selection and the resolution of
+ * the entities; the units are then compiled off the decoded nodes exactly as they would be off the xml.
+ *
+ * The registry prefers the image 'template-file.cui' over the xml 'template-file' when the image was written off the
+ * current content of the xml (the image holds a digest of the xml) or when the xml doesn't exist. The images can be
+ * written using the write methods of this class or for a whole directory using the 'cu.precompile' option of the Runner.
+ * @author Sidharth Yadav
+ *
+ */
+public final class CompiledTemplateImage {
+    public static final String IMAGE_FILE_EXTENSION = ".cui";
+
+    private static final int MAGIC = 0x43554931;  //'CUI1'
+    private static final int FORMAT_VERSION = 2;  //images of any other version are ignored (and the xml is compiled instead)
+    private static final String XML_DIGEST_ALGORITHM = "SHA-256";
+
+    private static final int NODE_END = 0;  //marks the end of the children of an element
+    private static final int NODE_ELEMENT = 1;
+    private static final int NODE_TEXT = 2;
+    private static final int NODE_COMMENT = 3;
+    private static final int NODE_PROCESSING_INSTRUCTION = 4;
+
+    private static final int STRING_NULL = 0;
+    private static final int STRING_NEW = 1;  //followed by the string which is added to the table
+    private static final int STRING_INDEX_OFFSET = 2;  //index of a string in the table + this offset refers the string
+
+    private CompiledTemplateImage() {
+    }
+
+    //writes the image of the xml template file next to it (i.e. as template-file.cui) and returns the image file
+    public static File write(File xmlFile, String selectQuery) throws IOException,
+                                                                      XPathExpressionException,
+                                                                      TemplateCompilationException {
+        File imageFile = new File(xmlFile.getPath() + IMAGE_FILE_EXTENSION);
+        try (InputStream in = new FileInputStream(xmlFile);
+             OutputStream out = new FileOutputStream(imageFile)) {
+            write(in, selectQuery, out);
+        }
+        return imageFile;
+    }
+
+    public static void write(InputStream xml, String selectQuery, OutputStream out) throws IOException,
+                                                                                             XPathExpressionException,
+                                                                                             TemplateCompilationException {
+        byte[] xmlBytes = readFully(xml);
+        NodeList nl = (NodeList) XPathFactory.newInstance().newXPath().evaluate(selectQuery,
+                                                                                parse(new ByteArrayInputStream(xmlBytes)),
+                                                                                XPathConstants.NODESET);
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out));
+        Map<String, Integer> strings = new HashMap<>();
+        dos.writeInt(MAGIC);
+        dos.writeShort(FORMAT_VERSION);
+        writeString(dos, selectQuery, strings);
+        byte[] xmlDigest = digest(xmlBytes);
+        writeVarInt(dos, xmlDigest.length);
+        dos.write(xmlDigest);
+        List<Node> units = new ArrayList<>();
+        for (int i = 0; i < nl.getLength(); i++) {
+            if (nl.item(i).getNodeType() == Node.ELEMENT_NODE) {
+                units.add(nl.item(i));  //nothing else could be compiled into a unit
+            }
+        }
+        writeVarInt(dos, units.size());
+        for (Node unit: units) {
+            Node parent = unit.getParentNode();
+            if (parent != null && parent.getNodeType() == Node.ELEMENT_NODE) {
+                dos.writeByte(NODE_ELEMENT);
+                writeElement(dos, parent, false, strings);
+            } else {
+                dos.writeByte(NODE_END);
+            }
+            writeElement(dos, unit, true, strings);
+        }
+        dos.flush();
+    }
+
+    //returns null if the image is not of the passed select query, is of an unsupported format version or (if the passed
+    //xml is not null) wasn't written off the passed xml. Both the streams are closed.
+    static CompiledTemplate load(String templateUID, InputStream in, InputStream xml, String selectQuery)
+                                                                                        throws IOException,
+                                                                                               XPathExpressionException,
+                                                                                               TemplateCompilationException {
+        byte[] xmlDigest = null;
+        byte[] image = null;
+        try (InputStream imageStream = in; InputStream xmlStream = xml) {
+            xmlDigest = xmlStream != null? digest(readFully(xmlStream)): null;
+            image = readFully(imageStream);  //read up front to know its size (the weight of the template in the registry's
+                                             //cache)
+        }
+        try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(image))) {
+            List<String> strings = new ArrayList<>();
+            if (dis.readInt() != MAGIC || dis.readShort() != FORMAT_VERSION || !selectQuery.equals(readString(dis, strings))) {
+                return null;
+            }
+            byte[] imageXmlDigest = new byte[readVarInt(dis)];
+            dis.readFully(imageXmlDigest);
+            if (xmlDigest != null && !MessageDigest.isEqual(xmlDigest, imageXmlDigest)) {
+                return null;  //the xml has changed since the image was written
+            }
+            boolean namespaceAware = ConfigManager.getInstance().isSystemNamespaceAware();
+            DocumentBuilder documentBuilder = StreamingTemplateCompiler.newDocumentBuilder(namespaceAware);
+            Document parentsDocument = documentBuilder.newDocument();  //holds the decoded parents which are then imported into the fragments
+            CompiledTemplate mct = new CompiledTemplate(templateUID);
+            for (int units = readVarInt(dis); units > 0; units--) {
+                Element parent = dis.readByte() == NODE_ELEMENT?
+                                     readElement(dis, parentsDocument, false, namespaceAware, strings): null;
+                Node fragment = StreamingTemplateCompiler.newFragment(documentBuilder, parent);
+                Document document = fragment.getNodeType() == Node.DOCUMENT_NODE? (Document) fragment: fragment.getOwnerDocument();
+                Node unit = fragment.appendChild(readElement(dis, document, true, namespaceAware, strings));
+                StreamingTemplateCompiler.compileUnit(mct, unit);
+            }
+            mct.setSourceSize(image.length);
+            mct.setSelectQuery(selectQuery);
+            return mct;
+        }
+    }
+
+    private static Document parse(InputStream xml) throws TemplateCompilationException {
+        try {
+            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+            dbf.setCoalescing(true);
+            dbf.setNamespaceAware(true);  //always, so that the image can be loaded by namespace aware as well as unaware systems
+            return dbf.newDocumentBuilder().parse(xml);
+        } catch (Exception e) {
+            throw new TemplateCompilationException(e);
+        }
+    }
+
+    private static void writeElement(DataOutputStream dos, Node element, boolean deep, Map<String, Integer> strings)
+                                                                                                    throws IOException {
+        writeString(dos, element.getNamespaceURI(), strings);
+        writeString(dos, element.getNodeName(), strings);
+        NamedNodeMap attrs = element.getAttributes();
+        writeVarInt(dos, attrs.getLength());
+        for (int i = 0; i < attrs.getLength(); i++) {
+            Node attr = attrs.item(i);
+            writeString(dos, attr.getNamespaceURI(), strings);  //the namespace declarations are written as the attributes
+            writeString(dos, attr.getNodeName(), strings);      //in the xmlns namespace
+            writeString(dos, attr.getNodeValue(), strings);
+        }
+        if (deep) {
+            for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+                switch (child.getNodeType()) {
+                    case Node.ELEMENT_NODE:
+                        dos.writeByte(NODE_ELEMENT);
+                        writeElement(dos, child, true, strings);
+                        break;
+                    case Node.TEXT_NODE:
+                    case Node.CDATA_SECTION_NODE:
+                        dos.writeByte(NODE_TEXT);
+                        writeString(dos, child.getNodeValue(), strings);
+                        break;
+                    case Node.COMMENT_NODE:
+                        dos.writeByte(NODE_COMMENT);
+                        writeString(dos, child.getNodeValue(), strings);
+                        break;
+                    case Node.PROCESSING_INSTRUCTION_NODE:
+                        dos.writeByte(NODE_PROCESSING_INSTRUCTION);
+                        writeString(dos, child.getNodeName(), strings);
+                        writeString(dos, child.getNodeValue(), strings);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        dos.writeByte(NODE_END);
+    }
+
+    private static Element readElement(DataInputStream dis, Document document, boolean deep, boolean namespaceAware,
+                                       List<String> strings) throws IOException {
+        String namespaceURI = readString(dis, strings);
+        String name = readString(dis, strings);
+        Element element = namespaceAware? document.createElementNS(namespaceURI, name): document.createElement(name);
+        for (int attrs = readVarInt(dis); attrs > 0; attrs--) {
+            String attrNamespaceURI = readString(dis, strings);
+            String attrName = readString(dis, strings);
+            String attrValue = readString(dis, strings);
+            if (namespaceAware) {
+                element.setAttributeNS(attrNamespaceURI, attrName, attrValue);
+            } else {
+                element.setAttribute(attrName, attrValue);
+            }
+        }
+        for (int nodeType = dis.readByte(); nodeType != NODE_END; nodeType = dis.readByte()) {
+            if (!deep) {
+                throw new IOException("Corrupt template image: unexpected children of a shallow element");
+            }
+            switch (nodeType) {
+                case NODE_ELEMENT:
+                    element.appendChild(readElement(dis, document, true, namespaceAware, strings));
+                    break;
+                case NODE_TEXT:
+                    element.appendChild(document.createTextNode(readString(dis, strings)));
+                    break;
+                case NODE_COMMENT:
+                    element.appendChild(document.createComment(readString(dis, strings)));
+                    break;
+                case NODE_PROCESSING_INSTRUCTION:
+                    element.appendChild(document.createProcessingInstruction(readString(dis, strings), readString(dis, strings)));
+                    break;
+                default:
+                    throw new IOException("Corrupt template image: unknown node type " + nodeType);
+            }
+        }
+        return element;
+    }
+
+    private static void writeString(DataOutputStream dos, String value, Map<String, Integer> strings) throws IOException {
+        if (value == null) {
+            writeVarInt(dos, STRING_NULL);
+            return;
+        }
+        Integer index = strings.get(value);
+        if (index != null) {
+            writeVarInt(dos, index + STRING_INDEX_OFFSET);
+            return;
+        }
+        strings.put(value, strings.size());
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);  //not writeUTF as it is limited to 64k
+        writeVarInt(dos, STRING_NEW);
+        writeVarInt(dos, bytes.length);
+        dos.write(bytes);
+    }
+
+    private static byte[] digest(byte[] xml) {
+        try {
+            return MessageDigest.getInstance(XML_DIGEST_ALGORITHM).digest(xml);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);  //every java platform is required to support SHA-256
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read = stream.read(buffer); read != -1; read = stream.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static String readString(DataInputStream dis, List<String> strings) throws IOException {
+        int ref = readVarInt(dis);
+        if (ref == STRING_NULL) {
+            return null;
+        }
+        if (ref != STRING_NEW) {
+            return strings.get(ref - STRING_INDEX_OFFSET);
+        }
+        byte[] bytes = new byte[readVarInt(dis)];
+        dis.readFully(bytes);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        strings.add(value);
+        return value;
+    }
+
+    private static void writeVarInt(DataOutputStream dos, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            dos.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        dos.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream dis) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = dis.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt template image: malformed length");
+    }
+}
@@ -0,0 +1,360 @@
+// Compilation Units Framework: a very generic & powerful data driven programming framework.
+// Copyright (c) 2019 Sidharth Yadav, sidharth_08@yahoo.com
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.cuframework.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of the compiled templates held by the registry. Unbounded by default (same as a plain map) but can be bounded by
+ * the number of templates, by their approximate weight (the size of the sources they were compiled from) and by how long
+ * a template can stay idle i.e. unaccessed. Templates beyond the bounds are evicted least recently accessed first.
+ * Pinned templates are never evicted.
+ * The bounds can be controlled using the 'cus.template.cache.max.entries', 'cus.template.cache.max.weight' (bytes) and
+ * 'cus.template.cache.idle.timeout.seconds' system properties (or the registry's configureCache). Zero (or less) means
+ * unbounded.
+ *
+ * The cache also holds the sources of the templates passed in as streams (e.g. the inm templates) so that such templates
+ * can be recompiled once evicted. The sources are bounded as well: their bytes count towards the weight, the sources of
+ * the evicted templates are limited to as many as the templates are and they expire the same way the templates do. The
+ * sources of the evicted templates are the first to go when the weight is exceeded.
+ *
+ * The templates (and the sources) are kept in the order of their last access so that the least recently accessed ones
+ * are evicted straight off the head of the order, i.e. without scanning (and sorting) all of them.
+ * @author Sidharth Yadav
+ *
+ */
+final class CompiledTemplatesCache {
+    private static final String MAX_ENTRIES_PROPERTY = "cus.template.cache.max.entries";
+    private static final String MAX_WEIGHT_PROPERTY = "cus.template.cache.max.weight";
+    private static final String IDLE_TIMEOUT_PROPERTY = "cus.template.cache.idle.timeout.seconds";
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);  //idle templates are swept at most this often
+
+    private final Object lock = new Object();  //guards all the state other than the pinned set and the limits
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();  //least recently accessed first. Moved to the
+                                                                                 //end explicitly on access (the insertion
+                                                                                 //order lets peek and replace not reorder).
+    private final LinkedHashMap<String, Source> evictedSources = new LinkedHashMap<>();  //sources of the evicted (or not yet
+                                                                                         //cached) templates, oldest first
+    private final Set<String> pinned = ConcurrentHashMap.newKeySet();
+
+    private volatile int maxEntries = (int) getLimit(MAX_ENTRIES_PROPERTY);
+    private volatile long maxWeight = getLimit(MAX_WEIGHT_PROPERTY);
+    private volatile long idleTimeoutNanos = TimeUnit.SECONDS.toNanos(getLimit(IDLE_TIMEOUT_PROPERTY));
+
+    private long weight = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long lastSweepNanos = System.nanoTime();
+
+    CompiledTemplate get(String templateUID) {
+        synchronized (lock) {
+            long now = System.nanoTime();
+            Entry entry = entries.get(templateUID);
+            if (entry != null && isIdle(templateUID, entry.lastAccessNanos, now)) {
+                evict(templateUID);  //expired lazily. The sweep would get to it eventually anyway.
+                entry = null;
+            }
+            if (entry == null) {
+                misses++;
+            } else {
+                hits++;
+                entry.lastAccessNanos = now;
+                entries.remove(templateUID);
+                entries.put(templateUID, entry);  //most recently accessed
+            }
+            if (idleTimeoutNanos > 0 && now - lastSweepNanos > SWEEP_INTERVAL_NANOS) {
+                evictIfNeeded(now);
+            }
+            return entry == null? null: entry.template;
+        }
+    }
+
+    //same as get but neither accounted for in the statistics nor refreshes the access time of the template
+    CompiledTemplate peek(String templateUID) {
+        synchronized (lock) {
+            Entry entry = entries.get(templateUID);
+            return entry == null? null: entry.template;
+        }
+    }
+
+    void put(String templateUID, CompiledTemplate mct) {
+        synchronized (lock) {
+            Source source = evictedSources.remove(templateUID);  //(re)compiled off its source
+            Entry replaced = entries.remove(templateUID);
+            if (replaced != null) {
+                weight -= replaced.weight;
+                source = source != null? source: replaced.source;
+            }
+            Entry entry = new Entry(mct, source);
+            entries.put(templateUID, entry);
+            weight += entry.weight;
+            evictIfNeeded(System.nanoTime());
+        }
+    }
+
+    //swaps the cached template with the passed one provided the cached one is still the expected one
+    boolean replace(String templateUID, CompiledTemplate expected, CompiledTemplate mct) {
+        synchronized (lock) {
+            Entry entry = entries.get(templateUID);
+            if (entry == null || entry.template != expected) {
+                return false;
+            }
+            Entry replacement = new Entry(mct, entry.source);
+            replacement.lastAccessNanos = entry.lastAccessNanos;  //reloading isn't an access
+            entries.put(templateUID, replacement);  //retains the position of the template in the access order
+            weight += replacement.weight - entry.weight;
+            evictIfNeeded(System.nanoTime());
+            return true;
+        }
+    }
+
+    //retains the source of the template (to be) compiled off it. Attached to the template once it gets cached.
+    void putSource(String templateUID, Source source) {
+        synchronized (lock) {
+            Entry entry = entries.get(templateUID);
+            Source replaced = entry != null? entry.source: evictedSources.remove(templateUID);
+            weight -= replaced == null? 0: replaced.content.length;
+            if (entry != null) {
+                entry.source = source;
+            } else {
+                evictedSources.put(templateUID, source);
+            }
+            weight += source.content.length;
+            evictIfNeeded(System.nanoTime());
+        }
+    }
+
+    Source getSource(String templateUID) {
+        synchronized (lock) {
+            Entry entry = entries.get(templateUID);
+            if (entry != null) {
+                return entry.source;
+            }
+            Source source = evictedSources.remove(templateUID);
+            if (source != null) {
+                source.lastAccessNanos = System.nanoTime();
+                evictedSources.put(templateUID, source);  //most recently accessed
+            }
+            return source;
+        }
+    }
+
+    boolean hasSource(String templateUID) {
+        synchronized (lock) {
+            Entry entry = entries.get(templateUID);
+            return entry != null? entry.source != null: evictedSources.containsKey(templateUID);
+        }
+    }
+
+    Set<String> getTemplateUIDs() {
+        synchronized (lock) {
+            return Collections.unmodifiableSet(new LinkedHashSet<>(entries.keySet()));  //a snapshot
+        }
+    }
+
+    //evicts the template, even if pinned, retaining its source (if any) to recompile it when asked for again. Returns the
+    //evicted template or null if it wasn't cached.
+    CompiledTemplate invalidate(String templateUID) {
+        synchronized (lock) {
+            Entry entry = entries.get(templateUID);
+            if (entry == null) {
+                return null;
+            }
+            evict(templateUID);
+            evictIfNeeded(System.nanoTime());  //the retained sources could now exceed their bound
+            return entry.template;
+        }
+    }
+
+    //removes the template along with its source
+    CompiledTemplate remove(String templateUID) {
+        synchronized (lock) {
+            Source source = evictedSources.remove(templateUID);
+            weight -= source == null? 0: source.content.length;
+            Entry entry = entries.remove(templateUID);
+            if (entry == null) {
+                return null;
+            }
+            weight -= entry.weight + (entry.source == null? 0: entry.source.content.length);
+            return entry.template;
+        }
+    }
+
+    void pin(String templateUID) {
+        pinned.add(templateUID);
+    }
+
+    void unpin(String templateUID) {
+        if (pinned.remove(templateUID)) {
+            synchronized (lock) {
+                evictIfNeeded(System.nanoTime());  //the bounds could have been exceeded by the template while it was pinned
+            }
+        }
+    }
+
+    void configure(int maxEntries, long maxWeight, long idleTimeoutMillis) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        synchronized (lock) {
+            lastSweepNanos = Long.MIN_VALUE;  //sweep right away
+            evictIfNeeded(System.nanoTime());
+        }
+    }
+
+    CompiledTemplatesRegistry.CacheStatistics getStatistics() {
+        synchronized (lock) {
+            return new CompiledTemplatesRegistry.CacheStatistics(entries.size(), weight, hits, misses, evictions);
+        }
+    }
+
+    //to be called holding the lock
+    private void evictIfNeeded(long now) {
+        int maxEntries = this.maxEntries;
+        long maxWeight = this.maxWeight;
+        long idleTimeoutNanos = this.idleTimeoutNanos;
+        if (maxEntries <= 0 && maxWeight <= 0 && idleTimeoutNanos <= 0) {
+            return;  //unbounded
+        }
+        if (idleTimeoutNanos > 0 && (lastSweepNanos == Long.MIN_VALUE || now - lastSweepNanos > SWEEP_INTERVAL_NANOS)) {
+            sweepIdle(now);
+        }
+        while (maxEntries > 0 && entries.size() > maxEntries && evictEldest(entries.keySet())) {
+            //evicted the least recently accessed template
+        }
+        while (maxEntries > 0 && evictedSources.size() > maxEntries && dropEldestSource()) {
+            //dropped the source of the template evicted the longest ago
+        }
+        while (maxWeight > 0 && weight > maxWeight && (dropEldestSource() || evictEldest(entries.keySet()))) {
+            //the sources of the evicted templates go first, the templates (whose sources then go as well, if need be) next
+        }
+    }
+
+    //evicts the idle templates and drops the idle sources (of the evicted templates)
+    private void sweepIdle(long now) {
+        lastSweepNanos = now;
+        for (String templateUID: new ArrayList<>(entries.keySet())) {
+            Entry entry = entries.get(templateUID);
+            if (isIdle(templateUID, entry.lastAccessNanos, now)) {
+                evict(templateUID);
+            } else if (!pinned.contains(templateUID)) {
+                break;  //the rest have been accessed even later
+            }
+        }
+        for (Iterator<Map.Entry<String, Source>> i = evictedSources.entrySet().iterator(); i.hasNext(); ) {
+            Map.Entry<String, Source> e = i.next();
+            if (isIdle(e.getKey(), e.getValue().lastAccessNanos, now)) {
+                i.remove();
+                weight -= e.getValue().content.length;
+            }
+        }
+    }
+
+    //evicts the least recently accessed template that isn't pinned. Returns false if there is none.
+    private boolean evictEldest(Set<String> templateUIDs) {
+        for (String templateUID: templateUIDs) {
+            if (!pinned.contains(templateUID)) {
+                evict(templateUID);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //drops the source of the template evicted the longest ago. Returns false if there is none.
+    private boolean dropEldestSource() {
+        for (Iterator<Map.Entry<String, Source>> i = evictedSources.entrySet().iterator(); i.hasNext(); ) {
+            Map.Entry<String, Source> e = i.next();
+            if (!pinned.contains(e.getKey())) {
+                i.remove();
+                weight -= e.getValue().content.length;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //evicts the template retaining its source (if any) to recompile it when asked for again
+    private void evict(String templateUID) {
+        Entry entry = entries.remove(templateUID);
+        weight -= entry.weight;
+        evictions++;
+        if (entry.source != null) {
+            entry.source.lastAccessNanos = entry.lastAccessNanos;
+            evictedSources.put(templateUID, entry.source);
+        }
+    }
+
+    private boolean isIdle(String templateUID, long lastAccessNanos, long now) {
+        return idleTimeoutNanos > 0 && now - lastAccessNanos > idleTimeoutNanos && !pinned.contains(templateUID);
+    }
+
+    private static long getLimit(String property) {
+        String limit = System.getProperty(property);
+        try {
+            return limit == null? 0: Long.parseLong(limit.trim());
+        } catch (NumberFormatException nfe) {
+            return 0;
+        }
+    }
+
+    //source of a template passed in as a stream
+    static final class Source {
+        final byte[] content;
+        final String selectQuery;
+        private long lastAccessNanos = System.nanoTime();
+
+        Source(byte[] content, String selectQuery) {
+            this.content = content;
+            this.selectQuery = selectQuery;
+        }
+    }
+
+    private static final class Entry {
+        private final CompiledTemplate template;
+        private final long weight;
+        private Source source;
+        private long lastAccessNanos = System.nanoTime();
+
+        private Entry(CompiledTemplate template, Source source) {
+            this.template = template;
+            this.weight = template.getSourceSize();
+            this.source = source;
+        }
+    }
+}
@@ -32,18 +32,37 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 import javax.xml.xpath.XPathExpressionException;
 
-import org.w3c.dom.NodeList;
-
 import org.cuframework.MapOfMaps;
 import org.cuframework.TemplateCompilationException;
-import org.cuframework.TemplateXPathEngine;
+import org.cuframework.util.logging.LogManager;
 
 /**
  * Registry to load and hold compiled templates.
@@ -55,9 +74,24 @@ public final class CompiledTemplatesRegistry {
 
     private static final String RESOURCE_META_INF_DIR = "META-INF/";
     private static final String INSTALLED_META_INF_DIR = "/tmp/CU-META-INF/";
+    private static final String HOT_RELOAD_PROPERTY = "cus.template.hot.reload";  //if true then the primary lookup directory is
+                                                                                  //watched right away (see startWatching)
+
+    private final CompiledTemplatesCache compiledTemplatesCache = new CompiledTemplatesCache();
+    private final Map<String, InFlightLoad> inFlightLoads = new ConcurrentHashMap<>();  //compilations in progress (keyed by the
+                                                                                        //template uid) that the other callers
+                                                                                        //asking for the same template wait for
+    private final Map<Thread, InFlightLoad> awaitedLoads = new ConcurrentHashMap<>();  //load each thread is waiting for (i.e. the
+                                                                                       //waits-for graph of the loading threads)
+
+    private final Map<String, Set<String>> templateDependents = new ConcurrentHashMap<>();  //templates extending (units of) the
+                                                                                           //keyed template. Recorded while
+                                                                                           //processing the extensions.
+    private final ThreadLocal<String> templateBeingExtended = new ThreadLocal<>();
 
-    private final Map<String, CompiledTemplate> compiledTemplatesCache =
-                                                    new ConcurrentHashMap<String, CompiledTemplate>();
+    private final Object watcherLock = new Object();
+    private boolean watching = false;
+    private TemplatesWatcher templatesWatcher = null;
 
     private static final CompiledTemplatesRegistry CTR = new CompiledTemplatesRegistry();
 
@@ -67,10 +101,21 @@ public final class CompiledTemplatesRegistry {
     private CompilationUnits.IEvaluable templateResolverCU = null;
 
     private CompiledTemplatesRegistry() {
+        if (Boolean.getBoolean(HOT_RELOAD_PROPERTY)) {
+            synchronized (watcherLock) {
+                watching = true;
+                restartWatcher();
+            }
+        }
     }
 
     public void setPrimaryLookupDirectory(String primaryLookupDir) {
         this.primaryLookupDir = primaryLookupDir;
+        synchronized (watcherLock) {
+            if (watching) {
+                restartWatcher();  //the watcher follows the primary lookup directory
+            }
+        }
     }
 
     public String getPrimaryLookupDirectory() {
@@ -106,6 +151,10 @@ public final class CompiledTemplatesRegistry {
         try {
             if (tokens.length > 1) {
                 //id trail specified. Load the template and find the CU
+                String extendingTemplate = templateBeingExtended.get();
+                if (extendingTemplate != null && !extendingTemplate.equals(templateFile)) {
+                    templateDependents.computeIfAbsent(templateFile, k -> ConcurrentHashMap.newKeySet()).add(extendingTemplate);
+                }
                 CompiledTemplate mct = getCompiledTemplate(templateFile);
                 String[] idTrail = new String[tokens.length - 1];
                 System.arraycopy(tokens, 1, idTrail, 0, idTrail.length);
@@ -156,35 +205,502 @@ public final class CompiledTemplatesRegistry {
                                                                         TemplateCompilationException {
         CompiledTemplate mct = compiledTemplatesCache.get(templateFile);
         if (mct == null) {
-            mct = getCompiledTemplate(templateFile,
-                                         getXmlObjectStream(templateFile, primaryLookupDir, secondaryLookupDir),
-                                         selectQuery);
+            mct = loadOnce(templateFile, () -> compileTemplate(templateFile, selectQuery, primaryLookupDir, secondaryLookupDir));
         }
         return mct;
     }
 
+    private CompiledTemplate compileTemplate(String templateFile, String selectQuery,
+                                             String primaryLookupDir, String secondaryLookupDir)
+                                                                 throws XPathExpressionException,
+                                                                        FileNotFoundException,
+                                                                        TemplateCompilationException {
+        CompiledTemplatesCache.Source source = compiledTemplatesCache.getSource(templateFile);  //an evicted (or reloaded)
+                                                                                               //in-memory template
+        if (source != null) {
+            return StreamingTemplateCompiler.compile(templateFile, source.content, source.selectQuery);
+        }
+        CompiledTemplate compiled = getCompiledTemplateFromImage(templateFile, selectQuery,
+                                                                 primaryLookupDir, secondaryLookupDir);
+        return compiled != null? compiled:
+                                 StreamingTemplateCompiler.compile(templateFile,
+                                                                   getXmlObjectStream(templateFile, primaryLookupDir,
+                                                                                      secondaryLookupDir),
+                                                                   selectQuery);
+    }
+
+    //returns the template compiled off its image (see CompiledTemplateImage) if there is an image written off the current
+    //xml of the template (or there is no xml), null otherwise
+    private CompiledTemplate getCompiledTemplateFromImage(String templateFile, String selectQuery,
+                                                          String primaryLookupDir, String secondaryLookupDir)
+                                                                 throws XPathExpressionException,
+                                                                        TemplateCompilationException {
+        InputStream[] imageAndXmlStreams = templateResolverCU == null?
+                                               getImageAndXmlStreams(templateFile, primaryLookupDir, secondaryLookupDir):
+                                               null;
+        if (imageAndXmlStreams == null) {
+            return null;
+        }
+        CompiledTemplate mct = null;
+        try {
+            mct = CompiledTemplateImage.load(templateFile, imageAndXmlStreams[0], imageAndXmlStreams[1], selectQuery);
+            if (mct == null) {
+                log("debug", "getCompiledTemplateFromImage", "Image of the template '" + templateFile + "' is stale or of " +
+                                                            "another select query/format (the xml would be compiled instead)");
+            }
+        } catch (IOException e) {
+            log("warning", "getCompiledTemplateFromImage", "Image of the template '" + templateFile + "' couldn't be loaded " +
+                                                           "(the xml would be compiled instead): " + e);
+        }
+        return mct;
+    }
+
+    private static void log(String logLevel, String methodContext, Object message) {
+        Logger logger = LogManager.instance().getLogger();
+        if (logger != null) {
+            logger.logp(LogManager.getLogLevel(logLevel),
+                        CompiledTemplatesRegistry.class.getName(),
+                        methodContext,
+                        message != null? message.toString(): null);
+        }
+    }
+
+    //returns the streams of the image and of the xml (null if there is no xml) of the template or null if there is no image.
+    //The image is looked up with the same precedence as the xml i.e. in the primary directory first.
+    private InputStream[] getImageAndXmlStreams(String xmlObjectName,
+                                                String primaryLookupDir,
+                                                String secondaryLookupDir) throws TemplateCompilationException {
+        String imageName = xmlObjectName + CompiledTemplateImage.IMAGE_FILE_EXTENSION;
+        File xmlFile = new File(primaryLookupDir + xmlObjectName);
+        File imageFile = new File(primaryLookupDir + imageName);
+        try {
+            if (xmlFile.isFile() || imageFile.isFile()) {
+                return imageFile.isFile() && imageFile.canRead()?
+                           new InputStream[]{new FileInputStream(imageFile),
+                                             xmlFile.isFile()? new FileInputStream(xmlFile): null}:
+                           null;
+            }
+            ClassLoader classLoader = CompiledTemplatesRegistry.class.getClassLoader();
+            URL imageUrl = classLoader.getResource(secondaryLookupDir + imageName);
+            if (imageUrl == null) {
+                return null;
+            }
+            URL xmlUrl = classLoader.getResource(secondaryLookupDir + xmlObjectName);
+            return new InputStream[]{imageUrl.openStream(), xmlUrl != null? xmlUrl.openStream(): null};
+        } catch (IOException e) {
+            throw new TemplateCompilationException(e);
+        }
+    }
+
+    //The passed stream is always closed, even if the template is served off the cache (or off a concurrent compilation)
+    //without reading it.
     public CompiledTemplate getCompiledTemplate(String templateUID, InputStream in, String selectQuery)
                                                               throws XPathExpressionException, TemplateCompilationException {
         CompiledTemplate mct = compiledTemplatesCache.get(templateUID);
-        if (mct == null) {
-            NodeList nl = TemplateXPathEngine.getNodes(selectQuery, in);
-            mct = new CompiledTemplate(templateUID);
-            for (int i = 0; i < nl.getLength(); i++) {
-                CompilationUnits.ICompilationUnit compilationUnit =
-                                            CompilationUnits.getCompilationUnitForTag(nl.item(i).getNamespaceURI(),
-                                                                                      nl.item(i).getNodeName());
-                if (compilationUnit != null) {
-                    compilationUnit.compile(nl.item(i));
-                    mct.addCompilationUnit(compilationUnit);
+        try {
+            if (mct != null) {
+                return mct;
+            }
+            try {
+                mct = loadOnce(templateUID, () -> {
+                    CompiledTemplatesCache.Source source =
+                                                new CompiledTemplatesCache.Source(StreamingTemplateCompiler.readFully(in),
+                                                                                  selectQuery);
+                    CompiledTemplate compiled = StreamingTemplateCompiler.compile(templateUID, source.content,
+                                                                                  selectQuery);  //doesn't retain the DOM
+                    compiledTemplatesCache.putSource(templateUID, source);  //retained (within the bounds of the cache) to
+                                                                            //recompile the template if evicted
+                    return compiled;
+                });
+            } catch (FileNotFoundException fnfe) {
+                throw new TemplateCompilationException(fnfe);  //the template was in flight (and got found missing) as a file
+            }
+            return mct;
+        } finally {
+            try {
+                if (in != null) {
+                    in.close();  //no-op if already read (and closed) by the loader
                 }
+            } catch (IOException e) {
+                //ignore
             }
-            compiledTemplatesCache.put(templateUID, mct);
         }
-        return mct;
+    }
+
+    //compiles the template using the passed loader and caches it unless it is already cached. The concurrent callers
+    //asking for the same (uncached) template wait for the one compilation in flight instead of compiling it on their own.
+    //A failed compilation isn't cached and its failure is rethrown to all the callers that waited for it.
+    //Compiling a template can load the other templates and hence a caller could end up waiting (directly or through the
+    //other loading threads) for a load held by itself, e.g. thread 1 loading A needs B while thread 2 loading B needs A.
+    //Such a caller compiles the template on its own (without caching it) instead of waiting, which would be a deadlock.
+    private CompiledTemplate loadOnce(String templateUID, TemplateLoader loader) throws XPathExpressionException,
+                                                                                         FileNotFoundException,
+                                                                                         TemplateCompilationException {
+        InFlightLoad load = new InFlightLoad();
+        InFlightLoad inFlight = inFlightLoads.putIfAbsent(templateUID, load);
+        if (inFlight != null) {
+            Thread current = Thread.currentThread();
+            awaitedLoads.put(current, inFlight);  //registered before looking for the cycle so that of the threads closing
+            try {                                 //a cycle at once, at least one finds it
+                return waitsForItself(current, inFlight)?
+                           load(loader):  //compiled afresh as it would have been otherwise
+                           inFlight.await();
+            } finally {
+                awaitedLoads.remove(current);
+            }
+        }
+        try {
+            CompiledTemplate mct = compiledTemplatesCache.peek(templateUID);  //the template could have been published by
+            if (mct == null) {                                               //a load that completed since the last lookup
+                mct = load(loader);
+                compiledTemplatesCache.put(templateUID, mct);
+            }
+            load.result.complete(mct);
+            return mct;
+        } catch (XPathExpressionException | FileNotFoundException | TemplateCompilationException | RuntimeException | Error e) {
+            load.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightLoads.remove(templateUID, load);
+        }
+    }
+
+    //compiles the template using the passed loader, recording the namespaces of its units (see evictCompiledTemplatesUsing)
+    private static CompiledTemplate load(TemplateLoader loader) throws XPathExpressionException,
+                                                                       FileNotFoundException,
+                                                                       TemplateCompilationException {
+        Set<String> namespaceURIs = new HashSet<>();
+        Set<String> recording = CompilationUnits.recordNamespacesInUse(namespaceURIs);  //the template could be compiled while
+        try {                                                                           //compiling another one
+            CompiledTemplate mct = loader.load();
+            mct.setNamespaceURIs(namespaceURIs);
+            return mct;
+        } finally {
+            CompilationUnits.recordNamespacesInUse(recording);
+        }
+    }
+
+    //returns true if the load (to be) awaited by the passed thread is held, directly or through the chain of the loads
+    //awaited by the holders, by the passed thread itself
+    private boolean waitsForItself(Thread thread, InFlightLoad awaited) {
+        Set<Thread> visited = new HashSet<>();
+        for (InFlightLoad load = awaited; load != null && visited.add(load.owner); load = awaitedLoads.get(load.owner)) {
+            if (load.owner == thread) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private interface TemplateLoader {
+        CompiledTemplate load() throws XPathExpressionException, FileNotFoundException, TemplateCompilationException;
+    }
+
+    private static final class InFlightLoad {
+        private final Thread owner = Thread.currentThread();
+        private final CompletableFuture<CompiledTemplate> result = new CompletableFuture<>();
+
+        private CompiledTemplate await() throws XPathExpressionException, FileNotFoundException, TemplateCompilationException {
+            try {
+                return result.get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new TemplateCompilationException("Interrupted while waiting for the template to get compiled", ie);
+            } catch (ExecutionException ee) {
+                Throwable cause = ee.getCause();
+                if (cause instanceof XPathExpressionException) {
+                    throw (XPathExpressionException) cause;
+                } else if (cause instanceof FileNotFoundException) {
+                    throw (FileNotFoundException) cause;
+                } else if (cause instanceof TemplateCompilationException) {
+                    throw (TemplateCompilationException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new TemplateCompilationException(cause);
+            }
+        }
+    }
+
+    //compiles the passed templates (resolved the same way as getCompiledTemplate(templateFile) does) in parallel on a
+    //dedicated fork join pool. Meant to be used at the startup so that the first requests don't pay for the compilation.
+    //Returns the timings (along with the failure, if any) of the templates in the order they were passed.
+    public List<WarmUpTiming> warmUp(Collection<String> templateFiles, int parallelism) throws InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            List<ForkJoinTask<WarmUpTiming>> tasks = new ArrayList<>();
+            for (String templateFile: templateFiles) {
+                tasks.add(pool.submit(() -> {
+                    long start = System.nanoTime();
+                    Exception failure = null;
+                    try {
+                        getCompiledTemplate(templateFile);
+                    } catch (Exception e) {
+                        failure = e;
+                    }
+                    return new WarmUpTiming(templateFile, System.nanoTime() - start, failure);
+                }));
+            }
+            List<WarmUpTiming> timings = new ArrayList<>();
+            for (ForkJoinTask<WarmUpTiming> task: tasks) {
+                try {
+                    timings.add(task.get());
+                } catch (ExecutionException ee) {
+                    throw new IllegalStateException(ee.getCause());  //errors (e.g. out of memory)
+                }
+            }
+            return timings;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    //warms up (see warmUp(templateFiles, parallelism)) all the templates (xmls and images) inside the primary lookup
+    //directory and its sub directories
+    public List<WarmUpTiming> warmUpLookupDirectory(int parallelism) throws IOException, InterruptedException {
+        Path lookupDir = Paths.get(primaryLookupDir);
+        Set<String> templateFiles = new TreeSet<>();
+        if (Files.isDirectory(lookupDir)) {
+            try (Stream<Path> paths = Files.walk(lookupDir)) {
+                paths.filter(Files::isRegularFile).forEach(path -> {
+                    String templateFile = lookupDir.relativize(path).toString().replace(File.separatorChar, '/');
+                    if (templateFile.endsWith(CompiledTemplateImage.IMAGE_FILE_EXTENSION)) {
+                        templateFile = templateFile.substring(0, templateFile.length() -
+                                                                 CompiledTemplateImage.IMAGE_FILE_EXTENSION.length());
+                    }
+                    if (templateFile.endsWith(".xml")) {
+                        templateFiles.add(templateFile);
+                    }
+                });
+            }
+        }
+        return warmUp(templateFiles, parallelism);
+    }
+
+    public static final class WarmUpTiming {
+        private final String templateFile;
+        private final long elapsedNanos;
+        private final Exception failure;
+
+        private WarmUpTiming(String templateFile, long elapsedNanos, Exception failure) {
+            this.templateFile = templateFile;
+            this.elapsedNanos = elapsedNanos;
+            this.failure = failure;
+        }
+
+        public String getTemplateFile() {
+            return templateFile;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+
+        //null if the template got compiled (or was already compiled)
+        public Exception getFailure() {
+            return failure;
+        }
+
+        @Override
+        public String toString() {
+            return templateFile + ": " + getElapsedMillis() + "ms" + (failure != null? " (failed: " + failure + ")": "");
+        }
     }
 
     public CompiledTemplate removeCompiledTemplate(String templateUID) {
-        return compiledTemplatesCache.remove(templateUID);
+        return compiledTemplatesCache.remove(templateUID);  //along with its source, if any
+    }
+
+    //evicts the compiled templates having units of the passed namespace, along with the templates extending them (which
+    //could have inherited these units), so that they get recompiled when asked for again. Called when the namespace gets
+    //unloaded (see CompilationUnits.unloadNamespace).
+    void evictCompiledTemplatesUsing(String namespaceURI) {
+        Set<String> templateUIDs = new LinkedHashSet<>();
+        for (String templateUID: compiledTemplatesCache.getTemplateUIDs()) {
+            CompiledTemplate mct = compiledTemplatesCache.peek(templateUID);
+            if (mct != null && mct.usesNamespace(namespaceURI)) {
+                templateUIDs.add(templateUID);
+            }
+        }
+        Deque<String> using = new ArrayDeque<>(templateUIDs);
+        while (!using.isEmpty()) {
+            Set<String> dependents = templateDependents.get(using.poll());
+            for (String dependent: dependents != null? dependents: Collections.<String>emptySet()) {
+                if (templateUIDs.add(dependent)) {
+                    using.add(dependent);
+                }
+            }
+        }
+        for (String templateUID: templateUIDs) {
+            compiledTemplatesCache.invalidate(templateUID);
+        }
+    }
+
+    //bounds the compiled templates cache by the number of templates, by their total weight (approximated by the size in
+    //bytes of the sources they were compiled from) and by how long (in millis) a template can stay unaccessed. Zero (or
+    //less) means unbounded. The templates beyond the bounds are evicted least recently accessed first and get recompiled
+    //when asked for again. The sources retained for the templates passed in as streams count towards the weight and the
+    //sources of the evicted ones are limited to as many as the templates are (see CompiledTemplatesCache).
+    public void configureCache(int maxEntries, long maxWeight, long idleTimeoutMillis) {
+        compiledTemplatesCache.configure(maxEntries, maxWeight, idleTimeoutMillis);
+    }
+
+    //pins the template (compiled or not yet) so that it is never evicted from the cache (it can still be removed)
+    public void pinTemplate(String templateUID) {
+        compiledTemplatesCache.pin(templateUID);
+    }
+
+    public void unpinTemplate(String templateUID) {
+        compiledTemplatesCache.unpin(templateUID);
+    }
+
+    public CacheStatistics getCacheStatistics() {
+        return compiledTemplatesCache.getStatistics();
+    }
+
+    public static final class CacheStatistics {
+        private final int size;
+        private final long weight;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+
+        CacheStatistics(int size, long weight, long hits, long misses, long evictions) {
+            this.size = size;
+            this.weight = weight;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        //approximate, see configureCache
+        public long getWeight() {
+            return weight;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        @Override
+        public String toString() {
+            return "size=" + size + ", weight=" + weight + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions;
+        }
+    }
+
+    //starts watching the primary lookup directory (including its sub directories) for changes to the templates. The changed
+    //templates, if compiled already, get recompiled on the watcher's thread and swapped into the registry so that the
+    //requests don't pay for the recompilation. The executions that got the template before the swap finish on its older
+    //version. The templates extending a changed template (directly or transitively) are recompiled as well as their
+    //extensions were processed against the older version. A template which fails to recompile (e.g. an incomplete save)
+    //is left as is and a deleted one is removed. The watcher follows the primary lookup directory if it is changed.
+    //Watching can also be started right away by setting the 'cus.template.hot.reload' system property to true.
+    public void startWatching() throws IOException {
+        synchronized (watcherLock) {
+            if (templatesWatcher == null) {
+                templatesWatcher = new TemplatesWatcher(this, Paths.get(primaryLookupDir));
+            }
+            watching = true;
+        }
+    }
+
+    public void stopWatching() {
+        synchronized (watcherLock) {
+            watching = false;
+            if (templatesWatcher != null) {
+                templatesWatcher.close();
+                templatesWatcher = null;
+            }
+        }
+    }
+
+    public boolean isWatching() {
+        synchronized (watcherLock) {
+            return watching;
+        }
+    }
+
+    //caller must hold the watcher lock
+    private void restartWatcher() {
+        if (templatesWatcher != null) {
+            templatesWatcher.close();
+            templatesWatcher = null;
+        }
+        if (primaryLookupDir != null && Files.isDirectory(Paths.get(primaryLookupDir))) {
+            try {
+                templatesWatcher = new TemplatesWatcher(this, Paths.get(primaryLookupDir));
+            } catch (IOException e) {
+                log("warning", "restartWatcher", "Templates directory '" + primaryLookupDir + "' couldn't be watched (the " +
+                                                 "templates wouldn't be reloaded on change): " + e);
+            }
+        }
+    }
+
+    //recompiles and swaps (see startWatching) the compiled templates whose xmls are the passed ones, along with the
+    //templates extending them
+    void reloadTemplates(Collection<Path> changedTemplateFiles) {
+        Set<String> templateUIDs = new LinkedHashSet<>();
+        Set<String> candidateUIDs = new HashSet<>(compiledTemplatesCache.getTemplateUIDs());
+        candidateUIDs.addAll(templateDependents.keySet());  //evicted templates could still have (compiled) dependents
+        for (String templateUID: candidateUIDs) {
+            if (!compiledTemplatesCache.hasSource(templateUID) &&
+                    changedTemplateFiles.contains(toLookupPath(templateUID))) {
+                templateUIDs.add(templateUID);
+            }
+        }
+        Deque<String> changed = new ArrayDeque<>(templateUIDs);
+        while (!changed.isEmpty()) {
+            Set<String> dependents = templateDependents.get(changed.poll());
+            for (String dependent: dependents != null? dependents: Collections.<String>emptySet()) {
+                if (templateUIDs.add(dependent)) {
+                    changed.add(dependent);
+                }
+            }
+        }
+        for (String templateUID: templateUIDs) {
+            reloadTemplate(templateUID);
+        }
+    }
+
+    private void reloadTemplate(String templateUID) {
+        CompiledTemplate current = compiledTemplatesCache.peek(templateUID);
+        if (current == null) {
+            return;  //not compiled (or evicted). It would be compiled afresh when asked for.
+        }
+        String selectQuery = current.getSelectQuery() != null? current.getSelectQuery(): "/root/*";
+        try {
+            CompiledTemplate reloaded = load(() -> compileTemplate(templateUID, selectQuery, primaryLookupDir, secondaryLookupDir));
+            compiledTemplatesCache.replace(templateUID, current, reloaded);  //unless removed or reloaded meanwhile
+        } catch (XPathExpressionException | FileNotFoundException | TemplateCompilationException | RuntimeException e) {
+            Path templatePath = toLookupPath(templateUID);
+            if (!Files.exists(templatePath) &&
+                    !Files.exists(templatePath.resolveSibling(templatePath.getFileName() +
+                                                              CompiledTemplateImage.IMAGE_FILE_EXTENSION))) {
+                compiledTemplatesCache.remove(templateUID);  //deleted
+                log("info", "reloadTemplate", "Template '" + templateUID + "' removed as its file got deleted");
+            } else {
+                log("warning", "reloadTemplate", "Template '" + templateUID + "' couldn't be reloaded (its older version " +
+                                                 "is retained): " + e);
+            }
+        }
+    }
+
+    private Path toLookupPath(String templateFile) {
+        return Paths.get(primaryLookupDir, templateFile).toAbsolutePath().normalize();
     }
 
     public CompiledTemplate processExtensions(String forTemplate,
@@ -207,8 +723,19 @@ public final class CompiledTemplatesRegistry {
                                                  CompilationRuntimeContext compilationRuntimeContext) {
         CompiledTemplate processed = mct;
         try {
-            if (mct != null) {
-                processed = mct.doExtends(compilationRuntimeContext, CTR);
+            if (mct != null && !mct.extensionsProcessed()) {  //once processed for good the template is returned as is without locking
+                String extendingTemplate = templateBeingExtended.get();  //the extensions could be processed reentrantly
+                templateBeingExtended.set(mct.getId());
+                try {
+                    processed = mct.doExtends(compilationRuntimeContext, CTR);  //locked per template (and per unit) and hence the
+                                                                                //unrelated templates are extended concurrently
+                } finally {
+                    if (extendingTemplate == null) {
+                        templateBeingExtended.remove();
+                    } else {
+                        templateBeingExtended.set(extendingTemplate);
+                    }
+                }
             }
         } catch (XPathExpressionException e) {
             // TODO log
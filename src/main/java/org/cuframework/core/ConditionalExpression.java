@@ -0,0 +1,276 @@
+// Compilation Units Framework: a very generic & powerful data driven programming framework.
+// Copyright (c) 2019 Sidharth Yadav, sidharth_08@yahoo.com
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.cuframework.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import javax.xml.xpath.XPathExpressionException;
+
+import org.cuframework.core.CompilationUnits.ICondition;
+
+/**
+ * Compiled form of the meta expression of a conditional (e.g. 'not(1) and not(2)'), i.e. a boolean expression over the
+ * identifiers of the conditions. The expression is parsed once into a tree which, when evaluated, evaluates the
+ * conditions lazily and short circuits 'and' and 'or' operations.
+ * Supports the subset of xpath used by the meta expressions: 'and', 'or', 'not(...)', 'true()', 'false()', parenthesis
+ * and the condition identifiers. Expressions beyond this subset (or referring to unknown identifiers) don't compile and
+ * are to be evaluated as xpath.
+ * @author Sidharth Yadav
+ *
+ */
+final class ConditionalExpression {
+    private final Node root;
+
+    private ConditionalExpression(Node root) {
+        this.root = root;
+    }
+
+    boolean evaluate(CompilationRuntimeContext compilationRuntimeContext) throws XPathExpressionException {
+        return root.evaluate(compilationRuntimeContext);
+    }
+
+    //returns null if the expression is not supported by the compiled form.
+    static ConditionalExpression compile(String expression, Function<String, ? extends ICondition> conditionLookup) {
+        if (expression == null) {
+            return null;
+        }
+        for (String keyword: new String[]{Parser.AND, Parser.OR, Parser.NOT, Parser.TRUE, Parser.FALSE}) {
+            if (conditionLookup.apply(keyword) != null) {
+                return null;  //a condition named as a keyword. Ambiguous hence left to xpath.
+            }
+        }
+        Parser parser = new Parser(expression, conditionLookup);
+        Node root = parser.parseOr();
+        return root != null && parser.atEnd()? new ConditionalExpression(root): null;
+    }
+
+    private static abstract class Node {
+        abstract boolean evaluate(CompilationRuntimeContext compilationRuntimeContext) throws XPathExpressionException;
+    }
+
+    private static final class Constant extends Node {
+        private static final Constant TRUE = new Constant(true);
+        private static final Constant FALSE = new Constant(false);
+
+        private final boolean value;
+
+        private Constant(boolean value) {
+            this.value = value;
+        }
+
+        @Override
+        boolean evaluate(CompilationRuntimeContext compilationRuntimeContext) {
+            return value;
+        }
+    }
+
+    private static final class ConditionRef extends Node {
+        private final ICondition condition;
+
+        private ConditionRef(ICondition condition) {
+            this.condition = condition;
+        }
+
+        @Override
+        boolean evaluate(CompilationRuntimeContext compilationRuntimeContext) throws XPathExpressionException {
+            return condition.matches(compilationRuntimeContext);
+        }
+    }
+
+    private static final class Not extends Node {
+        private final Node operand;
+
+        private Not(Node operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        boolean evaluate(CompilationRuntimeContext compilationRuntimeContext) throws XPathExpressionException {
+            return !operand.evaluate(compilationRuntimeContext);
+        }
+    }
+
+    private static final class And extends Node {
+        private final Node[] operands;
+
+        private And(Node[] operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        boolean evaluate(CompilationRuntimeContext compilationRuntimeContext) throws XPathExpressionException {
+            for (Node operand: operands) {
+                if (!operand.evaluate(compilationRuntimeContext)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Or extends Node {
+        private final Node[] operands;
+
+        private Or(Node[] operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        boolean evaluate(CompilationRuntimeContext compilationRuntimeContext) throws XPathExpressionException {
+            for (Node operand: operands) {
+                if (operand.evaluate(compilationRuntimeContext)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    //recursive descent parser. Every parse method returns null if the expression is not supported.
+    private static final class Parser {
+        private static final String AND = "and";
+        private static final String OR = "or";
+        private static final String NOT = "not";
+        private static final String TRUE = "true";
+        private static final String FALSE = "false";
+
+        private final String expression;
+        private final Function<String, ? extends ICondition> conditionLookup;
+        private int pos = 0;
+
+        private Parser(String expression, Function<String, ? extends ICondition> conditionLookup) {
+            this.expression = expression;
+            this.conditionLookup = conditionLookup;
+        }
+
+        private Node parseOr() {
+            Node operand = parseAnd();
+            if (operand == null || !peekName(OR)) {
+                return operand;
+            }
+            List<Node> operands = new ArrayList<>();
+            operands.add(operand);
+            while (operand != null && acceptName(OR)) {
+                operands.add(operand = parseAnd());
+            }
+            return operand != null? new Or(operands.toArray(new Node[operands.size()])): null;
+        }
+
+        private Node parseAnd() {
+            Node operand = parseUnary();
+            if (operand == null || !peekName(AND)) {
+                return operand;
+            }
+            List<Node> operands = new ArrayList<>();
+            operands.add(operand);
+            while (operand != null && acceptName(AND)) {
+                operands.add(operand = parseUnary());
+            }
+            return operand != null? new And(operands.toArray(new Node[operands.size()])): null;
+        }
+
+        private Node parseUnary() {
+            skipWhitespaces();
+            if (accept('(')) {
+                Node node = parseOr();
+                return node != null && accept(')')? node: null;
+            }
+            String name = readName();
+            if (name == null) {
+                return null;
+            }
+            if (accept('(')) {  //function call
+                if (NOT.equals(name)) {
+                    Node operand = parseOr();
+                    return operand != null && accept(')')? new Not(operand): null;
+                } else if (TRUE.equals(name) || FALSE.equals(name)) {
+                    return accept(')')? (TRUE.equals(name)? Constant.TRUE: Constant.FALSE): null;
+                }
+                return null;  //unsupported function
+            }
+            if (AND.equals(name) || OR.equals(name)) {
+                return null;
+            }
+            ICondition condition = conditionLookup.apply(name);
+            return condition != null? new ConditionRef(condition): null;  //unknown identifiers are left to xpath
+        }
+
+        private boolean peekName(String name) {
+            int savedPos = pos;
+            boolean matched = name.equals(readName());
+            pos = savedPos;
+            return matched;
+        }
+
+        private boolean acceptName(String name) {
+            int savedPos = pos;
+            if (name.equals(readName())) {
+                return true;
+            }
+            pos = savedPos;
+            return false;
+        }
+
+        private String readName() {
+            skipWhitespaces();
+            int start = pos;
+            while (pos < expression.length() && isNameChar(expression.charAt(pos))) {
+                pos++;
+            }
+            return pos > start? expression.substring(start, pos): null;
+        }
+
+        private boolean accept(char c) {
+            skipWhitespaces();
+            if (pos < expression.length() && expression.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean atEnd() {
+            skipWhitespaces();
+            return pos == expression.length();
+        }
+
+        private void skipWhitespaces() {
+            while (pos < expression.length() && Character.isWhitespace(expression.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        //same as the characters of a regex word (the condition ids are replaced as words in the xpath form)
+        private static boolean isNameChar(char c) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+        }
+    }
+}
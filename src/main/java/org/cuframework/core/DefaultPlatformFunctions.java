@@ -30,11 +30,13 @@ package org.cuframework.core;
 
 import java.io.File;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Array;
 
 import java.net.URI;
 import java.net.URL;
-import java.net.URLClassLoader;
 
 import java.text.SimpleDateFormat;
 import java.time.Instant;
@@ -44,6 +46,7 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -51,10 +54,12 @@ import java.util.Map;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
 
 import org.cuframework.func.IFunction;
-import org.cuframework.util.UtilityFunctions;
+import org.cuframework.util.ClasspathLoaders;
 
 /**
  * Default Platform Functions.
@@ -62,40 +67,31 @@ import org.cuframework.util.UtilityFunctions;
  *
  */
 final class DefaultPlatformFunctions {
-
-    private static interface ToNumber {
-        Number toNum(Object obj);
+    private static final MethodHandle NO_HANDLE = MethodHandles.constant(Object.class, null);
+    //the classes having cached constructors. Weakly referenced so as not to retain the classes (and their loaders).
+    private static final Set<Class<?>> CLASSES_WITH_CONSTRUCTORS =
+                                         Collections.newSetFromMap(Collections.synchronizedMap(new WeakHashMap<>()));
+    private static final ClassValue<MethodHandle> NO_ARG_CONSTRUCTORS = new ClassValue<MethodHandle>() {
+        @Override
+        protected MethodHandle computeValue(Class<?> type) {
+            CLASSES_WITH_CONSTRUCTORS.add(type);
+            try {
+                return MethodHandles.publicLookup()
+                                    .findConstructor(type, MethodType.methodType(void.class))
+                                    .asType(MethodType.methodType(Object.class));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                return NO_HANDLE;
+            }
+        }
+    };
+    private static final ClassValue<Map<List<Class<?>>, java.lang.reflect.Constructor<?>>> CONSTRUCTORS =
+                                                      new ClassValue<Map<List<Class<?>>, java.lang.reflect.Constructor<?>>>() {
+        @Override
+        protected Map<List<Class<?>>, java.lang.reflect.Constructor<?>> computeValue(Class<?> type) {
+            CLASSES_WITH_CONSTRUCTORS.add(type);
+            return new ConcurrentHashMap<>();
+        }
     };
-    private static ToNumber toNum = (obj) -> {
-                                                 Number number = null;
-                                                 if (obj instanceof Number) {
-                                                     number = (Number) obj;
-                                                 } else if (obj instanceof String) {
-                                                     String str = (String) obj;
-                                                     try {
-                                                         number = Integer.parseInt(str);
-                                                     } catch (NumberFormatException nfe) {
-                                                         try {
-                                                             number = Long.parseLong(str);
-                                                         } catch (NumberFormatException nfe1) {
-                                                             try {
-                                                                 number = Float.parseFloat(str);
-                                                             } catch (NumberFormatException nfe2) {
-                                                                 try {
-                                                                     number = Double.parseDouble(str);
-                                                                 } catch (NumberFormatException nfe3) {
-                                                                     throw nfe3;
-                                                                 }
-                                                             }
-                                                         }
-                                                     }
-                                                 } else if (obj != null) {
-                                                     //null obj value would be pardoned but non-null obj value that is not
-                                                     //a number or String would result in abending of the operation.
-                                                     throw new NumberFormatException("Invalid obj type found for conversion to number");
-                                                 }
-                                                 return number;
-                                             };
 
     public static Map<String, IFunction> getCoreFunctions() {
         Map<String, IFunction> coreFunctions = new HashMap<String, IFunction>();
@@ -103,13 +99,8 @@ final class DefaultPlatformFunctions {
                           (context, expressionRuntimeContext) -> {
                                            context = IFunction.vals(context, expressionRuntimeContext);
                                            Object input = context.length == 1? context[0]: null;
-                                           Number number = null;
-                                           try {
-                                               number = toNum.toNum(input);
-                                           } catch (NumberFormatException nfe3) {
-                                               //number parsing failed. null would be returned.
-                                           }
-                                           return number;
+                                           Number number = Numerics.toNumber(input);
+                                           return number == Numerics.INVALID? null: number;  //null if the number parsing failed
                                        });
         coreFunctions.put("byte",
                           (context, expressionRuntimeContext) -> {
@@ -282,36 +273,7 @@ final class DefaultPlatformFunctions {
                                                           context[0].getClass().isArray()?
                                                               context[0]:
                                                               context;
-                                           Number sum = null;
-                                           Number number = null;
-                                           boolean nonNumericInputFound = false;
-                                           int arrayLength = Array.getLength(input);
-                                           for (int i = 0; i < arrayLength; i++) {
-                                               Object obj = Array.get(input, i);
-                                               try {
-                                                   number = toNum.toNum(obj);
-                                               } catch (NumberFormatException nfe) {
-                                                   nonNumericInputFound = true;
-                                                   break;
-                                               }
-
-                                               if (number != null) {
-                                                   if (sum == null) {
-                                                       sum = number;
-                                                   } else {
-                                                       if (sum instanceof Double || number instanceof Double) {
-                                                           sum = sum.doubleValue() + number.doubleValue();
-                                                       } else if (sum instanceof Float || number instanceof Float) {
-                                                           sum = sum.floatValue() + number.floatValue();
-                                                       } else if (sum instanceof Long || number instanceof Long) {
-                                                           sum = sum.longValue() + number.longValue();
-                                                       } else {
-                                                           sum = sum.intValue() + number.intValue();
-                                                       }
-                                                   }
-                                               }
-                                           }
-                                           return nonNumericInputFound? null: sum;
+                                           return Numerics.sum(input);  //null if a non-numeric input is found
                                        });
         coreFunctions.put("multiply",  //mathematical multiplication of numeric values
                           (context, expressionRuntimeContext) -> {
@@ -321,36 +283,7 @@ final class DefaultPlatformFunctions {
                                                           context[0].getClass().isArray()?
                                                               context[0]:
                                                               context;
-                                           Number multiplication = null;
-                                           Number number = null;
-                                           boolean nonNumericInputFound = false;
-                                           int arrayLength = Array.getLength(input);
-                                           for (int i = 0; i < arrayLength; i++) {
-                                               Object obj = Array.get(input, i);
-                                               try {
-                                                   number = toNum.toNum(obj);
-                                               } catch (NumberFormatException nfe) {
-                                                   nonNumericInputFound = true;
-                                                   break;
-                                               }
-
-                                               if (number != null) {
-                                                   if (multiplication == null) {
-                                                       multiplication = number;
-                                                   } else {
-                                                       if (multiplication instanceof Double || number instanceof Double) {
-                                                           multiplication = multiplication.doubleValue() * number.doubleValue();
-                                                       } else if (multiplication instanceof Float || number instanceof Float) {
-                                                           multiplication = multiplication.floatValue() * number.floatValue();
-                                                       } else if (multiplication instanceof Long || number instanceof Long) {
-                                                           multiplication = multiplication.longValue() * number.longValue();
-                                                       } else {
-                                                           multiplication = multiplication.intValue() * number.intValue();
-                                                       }
-                                                   }
-                                               }
-                                           }
-                                           return nonNumericInputFound? null: multiplication;
+                                           return Numerics.multiply(input);  //null if a non-numeric input is found
                                        });
         coreFunctions.put("subtract",  //mathematical subtraction of numeric values
                           (context, expressionRuntimeContext) -> {
@@ -358,28 +291,9 @@ final class DefaultPlatformFunctions {
                                            if (context.length == 0 || context.length > 2) {
                                                return null;
                                            }
-                                           boolean invalidOperand = false;
-                                           Number first = null;
-                                           Number second = null;
-                                           try {
-                                               first = toNum.toNum(context[0]);
-                                           } catch (NumberFormatException nfe) {
-                                               invalidOperand = true;
-                                           }
-
-                                           if (invalidOperand) {
-                                               return null;
-                                           }
-
-                                           if (context.length == 2) {
-                                               try {
-                                                   second = toNum.toNum(context[1]);
-                                               } catch (NumberFormatException nfe) {
-                                                   invalidOperand = true;
-                                               }
-                                           }
-
-                                           if (invalidOperand) {
+                                           Number first = Numerics.toNumber(context[0]);
+                                           Number second = context.length == 2? Numerics.toNumber(context[1]): null;
+                                           if (first == Numerics.INVALID || second == Numerics.INVALID) {
                                                return null;
                                            }
 
@@ -412,28 +326,9 @@ final class DefaultPlatformFunctions {
                                            if (context.length == 0 || context.length > 2) {
                                                return null;
                                            }
-                                           boolean invalidOperand = false;
-                                           Number first = null;
-                                           Number second = null;
-                                           try {
-                                               first = toNum.toNum(context[0]);
-                                           } catch (NumberFormatException nfe) {
-                                               invalidOperand = true;
-                                           }
-
-                                           if (invalidOperand) {
-                                               return null;
-                                           }
-
-                                           if (context.length == 2) {
-                                               try {
-                                                   second = toNum.toNum(context[1]);
-                                               } catch (NumberFormatException nfe) {
-                                                   invalidOperand = true;
-                                               }
-                                           }
-
-                                           if (invalidOperand) {
+                                           Number first = Numerics.toNumber(context[0]);
+                                           Number second = context.length == 2? Numerics.toNumber(context[1]): null;
+                                           if (first == Numerics.INVALID || second == Numerics.INVALID) {
                                                return null;
                                            }
 
@@ -457,28 +352,9 @@ final class DefaultPlatformFunctions {
                                            if (context.length == 0 || context.length > 2) {
                                                return null;
                                            }
-                                           boolean invalidOperand = false;
-                                           Number first = null;
-                                           Number second = null;
-                                           try {
-                                               first = toNum.toNum(context[0]);
-                                           } catch (NumberFormatException nfe) {
-                                               invalidOperand = true;
-                                           }
-
-                                           if (invalidOperand) {
-                                               return null;
-                                           }
-
-                                           if (context.length == 2) {
-                                               try {
-                                                   second = toNum.toNum(context[1]);
-                                               } catch (NumberFormatException nfe) {
-                                                   invalidOperand = true;
-                                               }
-                                           }
-
-                                           if (invalidOperand) {
+                                           Number first = Numerics.toNumber(context[0]);
+                                           Number second = context.length == 2? Numerics.toNumber(context[1]): null;
+                                           if (first == Numerics.INVALID || second == Numerics.INVALID) {
                                                return null;
                                            }
 
@@ -502,28 +378,9 @@ final class DefaultPlatformFunctions {
                                            if (context.length == 0 || context.length > 2) {
                                                return null;
                                            }
-                                           boolean invalidOperand = false;
-                                           Number first = null;
-                                           Number second = null;
-                                           try {
-                                               first = toNum.toNum(context[0]);
-                                           } catch (NumberFormatException nfe) {
-                                               invalidOperand = true;
-                                           }
-
-                                           if (invalidOperand) {
-                                               return null;
-                                           }
-
-                                           if (context.length == 2) {
-                                               try {
-                                                   second = toNum.toNum(context[1]);
-                                               } catch (NumberFormatException nfe) {
-                                                   invalidOperand = true;
-                                               }
-                                           }
-
-                                           if (invalidOperand) {
+                                           Number first = Numerics.toNumber(context[0]);
+                                           Number second = context.length == 2? Numerics.toNumber(context[1]): null;
+                                           if (first == Numerics.INVALID || second == Numerics.INVALID) {
                                                return null;
                                            }
 
@@ -547,28 +404,9 @@ final class DefaultPlatformFunctions {
                                            if (context.length == 0 || context.length > 2) {
                                                return null;
                                            }
-                                           boolean invalidOperand = false;
-                                           Number first = null;
-                                           Number second = null;
-                                           try {
-                                               first = toNum.toNum(context[0]);
-                                           } catch (NumberFormatException nfe) {
-                                               invalidOperand = true;
-                                           }
-
-                                           if (invalidOperand) {
-                                               return null;
-                                           }
-
-                                           if (context.length == 2) {
-                                               try {
-                                                   second = toNum.toNum(context[1]);
-                                               } catch (NumberFormatException nfe) {
-                                                   invalidOperand = true;
-                                               }
-                                           }
-
-                                           if (invalidOperand) {
+                                           Number first = Numerics.toNumber(context[0]);
+                                           Number second = context.length == 2? Numerics.toNumber(context[1]): null;
+                                           if (first == Numerics.INVALID || second == Numerics.INVALID) {
                                                return null;
                                            }
 
@@ -592,28 +430,9 @@ final class DefaultPlatformFunctions {
                                            if (context.length == 0 || context.length > 2) {
                                                return null;
                                            }
-                                           boolean invalidOperand = false;
-                                           Number first = null;
-                                           Number second = null;
-                                           try {
-                                               first = toNum.toNum(context[0]);
-                                           } catch (NumberFormatException nfe) {
-                                               invalidOperand = true;
-                                           }
-
-                                           if (invalidOperand) {
-                                               return null;
-                                           }
-
-                                           if (context.length == 2) {
-                                               try {
-                                                   second = toNum.toNum(context[1]);
-                                               } catch (NumberFormatException nfe) {
-                                                   invalidOperand = true;
-                                               }
-                                           }
-
-                                           if (invalidOperand) {
+                                           Number first = Numerics.toNumber(context[0]);
+                                           Number second = context.length == 2? Numerics.toNumber(context[1]): null;
+                                           if (first == Numerics.INVALID || second == Numerics.INVALID) {
                                                return null;
                                            }
 
@@ -637,28 +456,9 @@ final class DefaultPlatformFunctions {
                                            if (context.length == 0 || context.length > 2) {
                                                return null;
                                            }
-                                           boolean invalidOperand = false;
-                                           Number first = null;
-                                           Number second = null;
-                                           try {
-                                               first = toNum.toNum(context[0]);
-                                           } catch (NumberFormatException nfe) {
-                                               invalidOperand = true;
-                                           }
-
-                                           if (invalidOperand) {
-                                               return null;
-                                           }
-
-                                           if (context.length == 2) {
-                                               try {
-                                                   second = toNum.toNum(context[1]);
-                                               } catch (NumberFormatException nfe) {
-                                                   invalidOperand = true;
-                                               }
-                                           }
-
-                                           if (invalidOperand) {
+                                           Number first = Numerics.toNumber(context[0]);
+                                           Number second = context.length == 2? Numerics.toNumber(context[1]): null;
+                                           if (first == Numerics.INVALID || second == Numerics.INVALID) {
                                                return null;
                                            }
 
@@ -1741,13 +1541,10 @@ final class DefaultPlatformFunctions {
                                                    Object[] cp = context.length == 2?
                                                                      (Object[]) context[1]:  //classpath should be passed as Object[]
                                                                      null;
-                                                   returnClass = cp == null?
-                                                                     Class.forName(className):
-                                                                     Class.forName(className,
-                                                                                   true,
-                                                                                   URLClassLoader.newInstance(UtilityFunctions.getClasspathURLs(cp),
-                                                                                                              DefaultPlatformFunctions.class.getClassLoader())
-                                                                                  );
+                                                   returnClass = ClasspathLoaders.forName(className,
+                                                                                          cp,
+                                                                                          DefaultPlatformFunctions.class.getClassLoader(),
+                                                                                          null);  //the loader is shared process wide
                                                }
                                            } else if (clazz instanceof Class) {
                                                returnClass = (Class) clazz;
@@ -1770,14 +1567,11 @@ final class DefaultPlatformFunctions {
                                                                  (Object[]) context[2]:  //classpath should be passed as Object[]
                                                                  null;
                                                String className = (String) clazz;
-                                               returnObj = (cp == null?
-                                                                Class.forName(className):
-                                                                Class.forName(className,
-                                                                              true,
-                                                                              URLClassLoader.newInstance(UtilityFunctions.getClasspathURLs(cp),
-                                                                                                         DefaultPlatformFunctions.class.getClassLoader())
-                                                                             )
-                                                           ).getConstructor(argTypes);
+                                               returnObj = getConstructor(ClasspathLoaders.forName(className,
+                                                                                                   cp,
+                                                                                                   DefaultPlatformFunctions.class.getClassLoader(),
+                                                                                                   null),
+                                                                          argTypes);
                                            } else if (clazz instanceof java.lang.reflect.Constructor) {
                                                returnObj = (java.lang.reflect.Constructor) clazz;
                                            }
@@ -1796,14 +1590,10 @@ final class DefaultPlatformFunctions {
                                                                  (Object[]) context[1]:  //classpath should be passed as Object[]
                                                                  null;
                                                String className = (String) clazz;
-                                               returnObj = (cp == null?
-                                                                Class.forName(className):
-                                                                Class.forName(className,
-                                                                              true,
-                                                                              URLClassLoader.newInstance(UtilityFunctions.getClasspathURLs(cp),
-                                                                                                         DefaultPlatformFunctions.class.getClassLoader())
-                                                                             )
-                                                           ).newInstance();
+                                               returnObj = newInstance(ClasspathLoaders.forName(className,
+                                                                                                cp,
+                                                                                                DefaultPlatformFunctions.class.getClassLoader(),
+                                                                                                null));
                                            } else if (clazz instanceof java.lang.reflect.Constructor) {
                                                Object[] args = context.length == 2?
                                                                    (Object[]) context[1]:  //args should be passed as Object[]
@@ -1866,6 +1656,53 @@ final class DefaultPlatformFunctions {
         return coreFunctions;
     }
 
+    //returns the public constructor of the class taking the passed arg types. The constructors are cached per class (and
+    //hence shared) so that the reflective invocations through them get optimized once instead of per lookup.
+    private static java.lang.reflect.Constructor<?> getConstructor(Class<?> clazz, Class<?>[] argTypes) throws NoSuchMethodException {
+        Map<List<Class<?>>, java.lang.reflect.Constructor<?>> constructors = CONSTRUCTORS.get(clazz);
+        List<Class<?>> argTypesKey = argTypes == null? Collections.emptyList(): Arrays.asList(argTypes.clone());
+        java.lang.reflect.Constructor<?> constructor = constructors.get(argTypesKey);
+        if (constructor == null) {
+            constructor = clazz.getConstructor(argTypes);
+            constructors.put(argTypesKey, constructor);
+        }
+        return constructor;
+    }
+
+    //same as Class.newInstance but invokes the cached handle of the no-arg constructor. Falls back to Class.newInstance
+    //(and hence its exceptions) for the classes whose no-arg constructor isn't publicly accessible.
+    private static Object newInstance(Class<?> clazz) throws Exception {
+        MethodHandle constructor = NO_ARG_CONSTRUCTORS.get(clazz);
+        if (constructor == NO_HANDLE) {
+            return clazz.newInstance();
+        }
+        try {
+            return constructor.invokeExact();
+        } catch (Exception | Error e) {
+            throw e;  //thrown as is, same as Class.newInstance does
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    //drops the constructors cached for the classes defined by the passed loaders (e.g. the ones about to be closed)
+    static void forgetClassesOf(Set<ClassLoader> classLoaders) {
+        if (classLoaders.isEmpty()) {
+            return;
+        }
+        List<Class<?>> classes;
+        synchronized (CLASSES_WITH_CONSTRUCTORS) {
+            classes = new ArrayList<>(CLASSES_WITH_CONSTRUCTORS);
+        }
+        for (Class<?> clazz: classes) {
+            if (classLoaders.contains(clazz.getClassLoader())) {
+                NO_ARG_CONSTRUCTORS.remove(clazz);
+                CONSTRUCTORS.remove(clazz);
+                CLASSES_WITH_CONSTRUCTORS.remove(clazz);
+            }
+        }
+    }
+
     private DefaultPlatformFunctions() {
     }
 }
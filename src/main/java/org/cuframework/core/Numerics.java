@@ -0,0 +1,380 @@
+// Compilation Units Framework: a very generic & powerful data driven programming framework.
+// Copyright (c) 2019 Sidharth Yadav, sidharth_08@yahoo.com
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.cuframework.core;
+
+import java.lang.reflect.Array;
+
+/**
+ * Numeric helpers of the platform functions. Strings are converted to numbers by a single pass scanner which classifies
+ * them as int, long or float (the same types, in the same order of preference, the Integer, Long and Float parsers were
+ * tried in) without resorting to the parsers' exceptions. Sums and products are folded over primitive accumulators and
+ * the arrays of ints, longs, floats and doubles are folded without boxing their elements.
+ * @author Sidharth Yadav
+ *
+ */
+final class Numerics {
+    //returned by toNumber for the values that aren't numbers
+    static final Number INVALID = new Number() {
+        private static final long serialVersionUID = 1L;
+        public int intValue() { return 0; }
+        public long longValue() { return 0L; }
+        public float floatValue() { return Float.NaN; }
+        public double doubleValue() { return Double.NaN; }
+        public String toString() { return "INVALID"; }
+    };
+
+    private static final int INT = 0;  //ranks of the numbers. The result of an operation is of the higher rank of the two.
+    private static final int LONG = 1;
+    private static final int FLOAT = 2;
+    private static final int DOUBLE = 3;
+
+    private static final boolean SUM = true;
+    private static final boolean MULTIPLY = false;
+
+    private Numerics() {
+    }
+
+    /**
+     * Returns the passed object if it's a number, the number parsed out of it if it's a string, null if it's null and
+     * INVALID otherwise.
+     */
+    static Number toNumber(Object obj) {
+        return obj instanceof Number? (Number) obj:
+               obj instanceof String? parse((String) obj):
+               obj == null? null:
+               INVALID;  //null obj value would be pardoned but non-null obj value that is not a number or String
+                         //would result in abending of the operation.
+    }
+
+    /**
+     * Parses the string as an Integer, else as a Long, else as a Float. Returns INVALID if it is neither.
+     */
+    static Number parse(String str) {
+        int length = str.length();
+        //integral values i.e. [+-]?[0-9]+ which the Integer and Long parsers accept as is
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (str.charAt(0) == '-' || str.charAt(0) == '+')) {
+            negative = str.charAt(0) == '-';
+            i = 1;
+        }
+        if (i < length) {
+            long limit = negative? Long.MIN_VALUE: -Long.MAX_VALUE;
+            long multiplicationLimit = limit / 10;
+            long result = 0;  //accumulated negatively, same as the Long parser does, to reach Long.MIN_VALUE
+            boolean overflow = false;
+            int j = i;
+            for (; j < length; j++) {
+                int digit = str.charAt(j) - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                if (!overflow) {
+                    if (result < multiplicationLimit || result * 10 < limit + digit) {
+                        overflow = true;
+                    } else {
+                        result = result * 10 - digit;
+                    }
+                }
+            }
+            if (j == length) {
+                if (overflow) {
+                    return Float.parseFloat(str);  //too long for a long but still a valid float
+                }
+                long value = negative? result: -result;
+                return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE? (Number) Integer.valueOf((int) value):
+                                                                                  (Number) Long.valueOf(value);
+            }
+        }
+
+        //floating point values. The Float parser (unlike the Integer and Long ones) ignores the surrounding whitespaces.
+        int start = 0;
+        int end = length;
+        while (start < end && str.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && str.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (isDecimalFloat(str, start, end)) {
+            return Float.parseFloat(str);
+        }
+
+        //the forms not understood by the scanner (hexadecimal floats and the non ascii digits) are left to the parsers
+        if (isHexadecimal(str, start, end) || !isAscii(str)) {
+            return parseByTrial(str);
+        }
+        return INVALID;
+    }
+
+    //[+-]?(NaN|Infinity|(digits(.digits?)?|.digits)([eE][+-]?digits)?[fFdD]?)
+    private static boolean isDecimalFloat(String str, int i, int end) {
+        if (i < end && (str.charAt(i) == '-' || str.charAt(i) == '+')) {
+            i++;
+        }
+        if (str.startsWith("NaN", i)) {
+            return i + 3 == end;
+        }
+        if (str.startsWith("Infinity", i)) {
+            return i + 8 == end;
+        }
+        int digitsStart = i;
+        i = skipDigits(str, i, end);
+        int digits = i - digitsStart;
+        if (i < end && str.charAt(i) == '.') {
+            int fractionStart = ++i;
+            i = skipDigits(str, i, end);
+            digits += i - fractionStart;
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if (i < end && (str.charAt(i) == 'e' || str.charAt(i) == 'E')) {
+            i++;
+            if (i < end && (str.charAt(i) == '-' || str.charAt(i) == '+')) {
+                i++;
+            }
+            int exponentStart = i;
+            i = skipDigits(str, i, end);
+            if (i == exponentStart) {
+                return false;
+            }
+        }
+        if (i < end && "fFdD".indexOf(str.charAt(i)) >= 0) {
+            i++;
+        }
+        return i == end;
+    }
+
+    private static int skipDigits(String str, int i, int end) {
+        while (i < end && str.charAt(i) >= '0' && str.charAt(i) <= '9') {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isHexadecimal(String str, int i, int end) {
+        if (i < end && (str.charAt(i) == '-' || str.charAt(i) == '+')) {
+            i++;
+        }
+        return i + 1 < end && str.charAt(i) == '0' && (str.charAt(i + 1) == 'x' || str.charAt(i + 1) == 'X');
+    }
+
+    private static boolean isAscii(String str) {
+        for (int i = 0; i < str.length(); i++) {
+            if (str.charAt(i) > 0x7f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Number parseByTrial(String str) {
+        try {
+            return Integer.parseInt(str);
+        } catch (NumberFormatException nfe) {
+            try {
+                return Long.parseLong(str);
+            } catch (NumberFormatException nfe1) {
+                try {
+                    return Float.parseFloat(str);
+                } catch (NumberFormatException nfe2) {
+                    return INVALID;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the sum of the numeric values held by the passed array (an Object array or an array of primitives). Null
+     * values are skipped. Returns null if there are no numeric values or if a non-numeric value is found.
+     */
+    static Number sum(Object values) {
+        if (values instanceof int[]) {
+            int[] ints = (int[]) values;
+            if (ints.length == 0) {
+                return null;
+            }
+            int sum = ints[0];
+            for (int i = 1; i < ints.length; i++) {
+                sum += ints[i];
+            }
+            return sum;
+        } else if (values instanceof long[]) {
+            long[] longs = (long[]) values;
+            if (longs.length == 0) {
+                return null;
+            }
+            long sum = longs[0];
+            for (int i = 1; i < longs.length; i++) {
+                sum += longs[i];
+            }
+            return sum;
+        } else if (values instanceof float[]) {
+            float[] floats = (float[]) values;
+            if (floats.length == 0) {
+                return null;
+            }
+            float sum = floats[0];
+            for (int i = 1; i < floats.length; i++) {
+                sum += floats[i];
+            }
+            return sum;
+        } else if (values instanceof double[]) {
+            double[] doubles = (double[]) values;
+            if (doubles.length == 0) {
+                return null;
+            }
+            double sum = doubles[0];
+            for (int i = 1; i < doubles.length; i++) {
+                sum += doubles[i];
+            }
+            return sum;
+        }
+        return fold(values, SUM);
+    }
+
+    /**
+     * Returns the product of the numeric values held by the passed array (an Object array or an array of primitives).
+     * Null values are skipped. Returns null if there are no numeric values or if a non-numeric value is found.
+     */
+    static Number multiply(Object values) {
+        if (values instanceof int[]) {
+            int[] ints = (int[]) values;
+            if (ints.length == 0) {
+                return null;
+            }
+            int product = ints[0];
+            for (int i = 1; i < ints.length; i++) {
+                product *= ints[i];
+            }
+            return product;
+        } else if (values instanceof long[]) {
+            long[] longs = (long[]) values;
+            if (longs.length == 0) {
+                return null;
+            }
+            long product = longs[0];
+            for (int i = 1; i < longs.length; i++) {
+                product *= longs[i];
+            }
+            return product;
+        } else if (values instanceof float[]) {
+            float[] floats = (float[]) values;
+            if (floats.length == 0) {
+                return null;
+            }
+            float product = floats[0];
+            for (int i = 1; i < floats.length; i++) {
+                product *= floats[i];
+            }
+            return product;
+        } else if (values instanceof double[]) {
+            double[] doubles = (double[]) values;
+            if (doubles.length == 0) {
+                return null;
+            }
+            double product = doubles[0];
+            for (int i = 1; i < doubles.length; i++) {
+                product *= doubles[i];
+            }
+            return product;
+        }
+        return fold(values, MULTIPLY);
+    }
+
+    //folds the values one by one into an accumulator of the higher rank of the two, same as the boxed operations did.
+    //The first value is returned as is if it's the only numeric one.
+    private static Number fold(Object values, boolean sum) {
+        Object[] objects = values instanceof Object[]? (Object[]) values: null;
+        int length = objects != null? objects.length: Array.getLength(values);
+        Number first = null;
+        int count = 0;
+        int rank = INT;
+        long integralValue = 0;  //the accumulator for the INT (held as an int) and the LONG ranks
+        float floatValue = 0;
+        double doubleValue = 0;
+        for (int i = 0; i < length; i++) {
+            Number number = toNumber(objects != null? objects[i]: Array.get(values, i));
+            if (number == INVALID) {
+                return null;
+            }
+            if (number == null) {
+                continue;
+            }
+            int numberRank = rankOf(number);
+            if (count == 0) {
+                first = number;
+                rank = numberRank;
+                count++;
+                continue;
+            }
+            int resultRank = Math.max(rank, numberRank);
+            if (count == 1) {  //the accumulator starts off the first value itself
+                integralValue = resultRank == INT? first.intValue(): first.longValue();
+                floatValue = first.floatValue();
+                doubleValue = first.doubleValue();
+            } else if (resultRank != rank) {  //promote the accumulator
+                if (resultRank == FLOAT) {
+                    floatValue = integralValue;
+                } else if (resultRank == DOUBLE) {
+                    doubleValue = rank == FLOAT? floatValue: integralValue;
+                }
+            }
+            switch (resultRank) {
+                case DOUBLE:
+                    doubleValue = sum? doubleValue + number.doubleValue(): doubleValue * number.doubleValue();
+                    break;
+                case FLOAT:
+                    floatValue = sum? floatValue + number.floatValue(): floatValue * number.floatValue();
+                    break;
+                case LONG:
+                    integralValue = sum? integralValue + number.longValue(): integralValue * number.longValue();
+                    break;
+                default:
+                    integralValue = sum? (int) integralValue + number.intValue(): (int) integralValue * number.intValue();
+            }
+            rank = resultRank;
+            count++;
+        }
+        return count == 0? null:
+               count == 1? first:
+               rank == DOUBLE? (Number) doubleValue:
+               rank == FLOAT? (Number) floatValue:
+               rank == LONG? (Number) integralValue:
+               (Number) (int) integralValue;
+    }
+
+    private static int rankOf(Number number) {
+        return number instanceof Double? DOUBLE:
+               number instanceof Float? FLOAT:
+               number instanceof Long? LONG:
+               INT;
+    }
+}
@@ -0,0 +1,732 @@
+// Compilation Units Framework: a very generic & powerful data driven programming framework.
+// Copyright (c) 2019 Sidharth Yadav, sidharth_08@yahoo.com
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.cuframework.core;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Map to be used as the internal context of the compilation runtime context.
+ * Internally it is a persistent (structurally shared) hash array mapped trie which allows creation of a new scope (a
+ * copy of the map) in constant time. Changes made to a scope are not visible to the map it was forked from and vice
+ * versa, i.e. the semantics are that of creating a full copy of the map. Only the trie nodes touched by a change are
+ * copied and that too just once per scope.
+ * The map which gets handed out to the templates (e.g. by the internal-map unit) is a plain java.util.HashMap, as
+ * the templates get to see its type. The map falls back to being a HashMap once it has been handed out (see asHashMap).
+ * Values can also be put deferred (see putDeferred) in which case they are computed only when first read.
+ * Not thread safe (same as the compilation runtime context).
+ * @author Sidharth Yadav
+ *
+ */
+public final class ScopedContextMap extends AbstractMap<String, Object> {
+    private static final Object NOT_FOUND = new Object();
+
+    private Node root = null;
+    private int size = 0;  //count of entries excluding the null key entry
+    private boolean hasNullKey = false;
+    private Object nullKeyValue = null;
+    private Object editToken = new Object();  //nodes created with this token are exclusively owned by this map and can be
+                                              //modified in place. All other nodes are shared and are copied before modification.
+    private final ChangeTracker changeTracker = new ChangeTracker();  //reused across changes to avoid allocation
+    private HashMap<String, Object> published = null;  //set once the map gets handed out as a HashMap. All the entries are
+                                                       //then held by it (and the trie is dropped).
+    private HashMap<String, PendingValue> pendingValues = null;  //values put deferred since the map was last handed out.
+                                                                 //Held aside as the HashMap can't compute them on read.
+
+    private Set<Map.Entry<String, Object>> entrySet = null;
+
+    public ScopedContextMap() {
+    }
+
+    public ScopedContextMap(Map<String, Object> map) {
+        if (map != null) {
+            putAll(map);
+        }
+    }
+
+    private ScopedContextMap(ScopedContextMap forkFrom) {
+        this.root = forkFrom.root;
+        this.size = forkFrom.size;
+        this.hasNullKey = forkFrom.hasNullKey;
+        this.nullKeyValue = forkFrom.nullKeyValue;
+    }
+
+    //returns a new scope of this map in constant time. The returned map starts with the same entries as this map but changes
+    //made to either of the two maps thereafter are not visible to the other.
+    public ScopedContextMap fork() {
+        if (published != null) {
+            ScopedContextMap copy = new ScopedContextMap(published);  //a full copy, same as it used to be before this map
+                                                                      //existed
+            if (pendingValues != null) {
+                for (Map.Entry<String, PendingValue> entry: pendingValues.entrySet()) {
+                    if (entry.getValue().isCurrent(entry.getKey(), published)) {
+                        copy.putUnresolved(entry.getKey(), entry.getValue().value);  //stays deferred (and shared)
+                    }
+                }
+            }
+            return copy;
+        }
+        editToken = new Object();  //the nodes owned thus far are now shared with the fork and must not be modified in place
+        return new ScopedContextMap(this);
+    }
+
+    //returns a copy of the passed map. The copy is made in constant time if the passed map is itself a ScopedContextMap.
+    public static ScopedContextMap copyOf(Map<String, Object> map) {
+        return map instanceof ScopedContextMap? ((ScopedContextMap) map).fork(): new ScopedContextMap(map);
+    }
+
+    //returns the entries of this map as a java.util.HashMap, which is what the internal context used to be and what the
+    //templates (and the functions) handed the complete internal context get to see. The returned map is live i.e. it is the
+    //map backing this one from there on, and hence the changes made through either of the two are visible to the other,
+    //except for the values put deferred thereafter which the returned map gets to see once they are read (through this
+    //map) or the map is handed out again. Forking the map thereafter copies all the entries.
+    public HashMap<String, Object> asHashMap() {
+        if (published != null) {
+            resolvePendingValues();
+        } else {
+            published = new HashMap<>(this);  //computes the values put deferred thus far
+            root = null;
+            size = 0;
+            hasNullKey = false;
+            nullKeyValue = null;
+        }
+        return published;
+    }
+
+    @Override
+    public int size() {
+        if (published != null) {
+            resolvePendingValues();
+            return published.size();
+        }
+        return hasNullKey? size + 1: size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        if (published != null) {
+            resolvePendingValues();
+            return published.isEmpty();
+        }
+        return size == 0 && !hasNullKey;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (published != null) {
+            DeferredValue pendingValue = removePendingValue(key);
+            if (pendingValue != null) {
+                published.put((String) key, pendingValue.get());  //the handed out map gets to see the value too
+            }
+            return published.get(key);
+        }
+        if (key == null) {
+            return hasNullKey? resolve(nullKeyValue): null;
+        }
+        return root == null? null: resolve(root.find(0, hash(key), key, null));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (published != null) {
+            return getPendingValue(key) != null || published.containsKey(key);
+        }
+        if (key == null) {
+            return hasNullKey;
+        }
+        return root != null && root.find(0, hash(key), key, NOT_FOUND) != NOT_FOUND;
+    }
+
+    //returns the previous value. A value put deferred which hasn't been read yet is returned as null i.e. it isn't
+    //computed just to be replaced (the callers interested in the previous value get it first).
+    @Override
+    public Object put(String key, Object value) {
+        if (published != null) {
+            DeferredValue pendingValue = removePendingValue(key);
+            Object previousValue = published.put(key, value);
+            return pendingValue != null? pendingValue.peek(): previousValue;
+        }
+        return peek(putUnresolved(key, value));
+    }
+
+    //puts the value and returns the previous one as is i.e. without computing it if it was put deferred
+    private Object putUnresolved(String key, Object value) {
+        if (key == null) {
+            Object previousValue = nullKeyValue;
+            hasNullKey = true;
+            nullKeyValue = value;
+            return previousValue;
+        }
+        changeTracker.reset();
+        Node node = root == null? BitmapIndexedNode.EMPTY: root;
+        root = node.assoc(editToken, 0, hash(key), key, value, changeTracker);
+        if (changeTracker.leafAddedOrRemoved) {
+            size++;
+        }
+        Object previousValue = changeTracker.previousValue;
+        changeTracker.reset();  //releasing the reference
+        return previousValue;
+    }
+
+    //puts a value which is computed (by the passed supplier) only when it is first read, if at all. The value must not
+    //depend on the state which changes after the call i.e. the supplier is expected to return a snapshot. Meant for the
+    //values which are costly to compute and are updated far more often than they are read (e.g. the consolidated value of
+    //a loop which is updated on every iteration).
+    public void putDeferred(String key, Supplier<?> valueSupplier) {
+        DeferredValue deferredValue = new DeferredValue(valueSupplier);
+        if (published != null) {
+            if (pendingValues == null) {
+                pendingValues = new HashMap<>();
+            }
+            pendingValues.put(key, new PendingValue(deferredValue, key, published));  //the value being replaced isn't
+                                                                                      //computed
+        } else {
+            putUnresolved(key, deferredValue);  //the value being replaced isn't computed
+        }
+    }
+
+    //returns the value put deferred for the key since the map was handed out unless the key has been changed through the
+    //handed out map since
+    private DeferredValue getPendingValue(Object key) {
+        PendingValue pendingValue = pendingValues != null? pendingValues.get(key): null;
+        if (pendingValue == null) {
+            return null;
+        }
+        if (!pendingValue.isCurrent(key, published)) {
+            pendingValues.remove(key);  //superseded
+            return null;
+        }
+        return pendingValue.value;
+    }
+
+    private DeferredValue removePendingValue(Object key) {
+        DeferredValue pendingValue = getPendingValue(key);
+        if (pendingValue != null) {
+            pendingValues.remove(key);
+        }
+        return pendingValue;
+    }
+
+    //computes the values put deferred since the map was handed out into the handed out map
+    private void resolvePendingValues() {
+        if (pendingValues != null) {
+            HashMap<String, PendingValue> values = pendingValues;
+            pendingValues = null;
+            for (Map.Entry<String, PendingValue> entry: values.entrySet()) {
+                if (entry.getValue().isCurrent(entry.getKey(), published)) {
+                    published.put(entry.getKey(), entry.getValue().value.get());
+                }
+            }
+        }
+    }
+
+    private static Object resolve(Object value) {
+        return value instanceof DeferredValue? ((DeferredValue) value).get(): value;
+    }
+
+    //returns the value as is or, if put deferred, its computed value (null if not computed yet)
+    private static Object peek(Object value) {
+        return value instanceof DeferredValue? ((DeferredValue) value).peek(): value;
+    }
+
+    //a value put deferred. Computed on the first read and then held as is. The forks of a map share its values and could
+    //be read by different threads (e.g. by the iterations of a parallel loop) in which case the value may get computed
+    //more than once, which is fine as the supplier returns a snapshot.
+    private static final class DeferredValue {
+        private volatile Supplier<?> valueSupplier;  //nulled (after the value is set) once the value is computed
+        private Object value = null;
+
+        private DeferredValue(Supplier<?> valueSupplier) {
+            this.valueSupplier = valueSupplier;
+        }
+
+        private Object get() {
+            Supplier<?> supplier = valueSupplier;
+            if (supplier != null) {
+                value = supplier.get();
+                valueSupplier = null;  //releasing the reference
+            }
+            return value;
+        }
+
+        private Object peek() {
+            return valueSupplier == null? value: null;
+        }
+    }
+
+    //a value put deferred after the map was handed out along with the entry of the handed out map it replaces, to tell
+    //whether the key has been changed through the handed out map since (in which case that change wins)
+    private static final class PendingValue {
+        private final DeferredValue value;
+        private final boolean replacedPresent;
+        private final Object replacedValue;
+
+        private PendingValue(DeferredValue value, Object key, HashMap<String, Object> published) {
+            this.value = value;
+            this.replacedPresent = published.containsKey(key);
+            this.replacedValue = published.get(key);
+        }
+
+        private boolean isCurrent(Object key, HashMap<String, Object> published) {
+            return published.get(key) == replacedValue && published.containsKey(key) == replacedPresent;
+        }
+    }
+
+    @Override
+    public Object remove(Object key) {
+        if (published != null) {
+            DeferredValue pendingValue = removePendingValue(key);
+            Object previousValue = published.remove(key);
+            return pendingValue != null? pendingValue.get(): previousValue;
+        }
+        return resolve(removeUnresolved(key));
+    }
+
+    //removes the key and returns its previous value as is i.e. without computing it if it was put deferred
+    private Object removeUnresolved(Object key) {
+        if (key == null) {
+            Object previousValue = nullKeyValue;
+            hasNullKey = false;
+            nullKeyValue = null;
+            return previousValue;
+        }
+        if (root == null) {
+            return null;
+        }
+        changeTracker.reset();
+        root = root.without(editToken, 0, hash(key), key, changeTracker);
+        if (changeTracker.leafAddedOrRemoved) {
+            size--;
+        }
+        Object previousValue = changeTracker.previousValue;
+        changeTracker.reset();  //releasing the reference
+        return previousValue;
+    }
+
+    @Override
+    public void clear() {
+        if (published != null) {
+            pendingValues = null;
+            published.clear();
+            return;
+        }
+        root = null;  //nodes, even if owned, are just dropped and never modified
+        size = 0;
+        hasNullKey = false;
+        nullKeyValue = null;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        if (published != null) {
+            resolvePendingValues();
+            return published.entrySet();
+        }
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<String, Object>>() {
+                @Override
+                public Iterator<Map.Entry<String, Object>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return ScopedContextMap.this.size();
+                }
+
+                @Override
+                public void clear() {
+                    ScopedContextMap.this.clear();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int mask(int hash, int shift) {
+        return (hash >>> shift) & 0x01f;
+    }
+
+    private static int bitpos(int hash, int shift) {
+        return 1 << mask(hash, shift);
+    }
+
+    private static final class ChangeTracker {
+        private boolean leafAddedOrRemoved = false;
+        private Object previousValue = null;
+
+        private void reset() {
+            leafAddedOrRemoved = false;
+            previousValue = null;
+        }
+    }
+
+    //Nodes store the entries as (key, value) pairs inside an array. A null key indicates that the value is a child node.
+    private interface Node {
+        Object find(int shift, int hash, Object key, Object notFound);
+        Node assoc(Object edit, int shift, int hash, Object key, Object value, ChangeTracker changeTracker);
+        Node without(Object edit, int shift, int hash, Object key, ChangeTracker changeTracker);  //returns null if node becomes empty
+        Object[] getArray();
+    }
+
+    private static final class BitmapIndexedNode implements Node {
+        private static final BitmapIndexedNode EMPTY = new BitmapIndexedNode(null, 0, new Object[0]);
+
+        private final Object edit;
+        private int bitmap;
+        private Object[] array;
+
+        BitmapIndexedNode(Object edit, int bitmap, Object[] array) {
+            this.edit = edit;
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        public Object[] getArray() {
+            return array;
+        }
+
+        @Override
+        public Object find(int shift, int hash, Object key, Object notFound) {
+            int bit = bitpos(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return notFound;
+            }
+            int idx = index(bit);
+            Object keyOrNull = array[2 * idx];
+            Object valueOrNode = array[2 * idx + 1];
+            if (keyOrNull == null) {
+                return ((Node) valueOrNode).find(shift + 5, hash, key, notFound);
+            }
+            return key.equals(keyOrNull)? valueOrNode: notFound;
+        }
+
+        @Override
+        public Node assoc(Object edit, int shift, int hash, Object key, Object value, ChangeTracker changeTracker) {
+            int bit = bitpos(hash, shift);
+            int idx = index(bit);
+            if ((bitmap & bit) != 0) {
+                Object keyOrNull = array[2 * idx];
+                Object valueOrNode = array[2 * idx + 1];
+                if (keyOrNull == null) {
+                    Node node = ((Node) valueOrNode).assoc(edit, shift + 5, hash, key, value, changeTracker);
+                    return node == valueOrNode? this: editAndSet(edit, 2 * idx + 1, node);
+                }
+                if (key.equals(keyOrNull)) {
+                    changeTracker.previousValue = valueOrNode;
+                    return valueOrNode == value? this: editAndSet(edit, 2 * idx + 1, value);
+                }
+                changeTracker.leafAddedOrRemoved = true;
+                BitmapIndexedNode editable = ensureEditable(edit);
+                editable.array[2 * idx] = null;
+                editable.array[2 * idx + 1] = createNode(edit, shift + 5, keyOrNull, valueOrNode, hash, key, value);
+                return editable;
+            }
+            changeTracker.leafAddedOrRemoved = true;
+            int n = Integer.bitCount(bitmap);
+            if (edit == this.edit && 2 * n < array.length) {
+                //owned node with spare capacity. Let's insert in place.
+                System.arraycopy(array, 2 * idx, array, 2 * (idx + 1), 2 * (n - idx));
+                array[2 * idx] = key;
+                array[2 * idx + 1] = value;
+                bitmap |= bit;
+                return this;
+            }
+            Object[] newArray = new Object[2 * (n + (edit == null? 1: 4))];  //owned nodes get spare capacity for in place inserts
+            System.arraycopy(array, 0, newArray, 0, 2 * idx);
+            newArray[2 * idx] = key;
+            newArray[2 * idx + 1] = value;
+            System.arraycopy(array, 2 * idx, newArray, 2 * (idx + 1), 2 * (n - idx));
+            if (edit == this.edit) {
+                array = newArray;
+                bitmap |= bit;
+                return this;
+            }
+            return new BitmapIndexedNode(edit, bitmap | bit, newArray);
+        }
+
+        @Override
+        public Node without(Object edit, int shift, int hash, Object key, ChangeTracker changeTracker) {
+            int bit = bitpos(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int idx = index(bit);
+            Object keyOrNull = array[2 * idx];
+            Object valueOrNode = array[2 * idx + 1];
+            if (keyOrNull == null) {
+                Node node = ((Node) valueOrNode).without(edit, shift + 5, hash, key, changeTracker);
+                if (node == valueOrNode) {
+                    return this;
+                }
+                return node != null? editAndSet(edit, 2 * idx + 1, node): editAndRemovePair(edit, bit, idx);
+            }
+            if (key.equals(keyOrNull)) {
+                changeTracker.leafAddedOrRemoved = true;
+                changeTracker.previousValue = valueOrNode;
+                return editAndRemovePair(edit, bit, idx);
+            }
+            return this;
+        }
+
+        private BitmapIndexedNode ensureEditable(Object edit) {
+            if (this.edit == edit) {
+                return this;
+            }
+            int n = Integer.bitCount(bitmap);
+            Object[] newArray = new Object[2 * (n + 1)];
+            System.arraycopy(array, 0, newArray, 0, 2 * n);
+            return new BitmapIndexedNode(edit, bitmap, newArray);
+        }
+
+        private BitmapIndexedNode editAndSet(Object edit, int i, Object a) {
+            BitmapIndexedNode editable = ensureEditable(edit);
+            editable.array[i] = a;
+            return editable;
+        }
+
+        private BitmapIndexedNode editAndRemovePair(Object edit, int bit, int i) {
+            if (bitmap == bit) {
+                return null;
+            }
+            BitmapIndexedNode editable = ensureEditable(edit);
+            editable.bitmap ^= bit;
+            Object[] editableArray = editable.array;
+            System.arraycopy(editableArray, 2 * (i + 1), editableArray, 2 * i, editableArray.length - 2 * (i + 1));
+            editableArray[editableArray.length - 2] = null;
+            editableArray[editableArray.length - 1] = null;
+            return editable;
+        }
+
+        private static Node createNode(Object edit, int shift, Object key1, Object value1, int key2hash, Object key2, Object value2) {
+            int key1hash = hash(key1);
+            if (key1hash == key2hash) {
+                return new HashCollisionNode(edit, key1hash, 2, new Object[]{key1, value1, key2, value2});
+            }
+            ChangeTracker changeTracker = new ChangeTracker();  //the caller has already accounted for the leaf being added
+            return EMPTY.assoc(edit, shift, key1hash, key1, value1, changeTracker)
+                        .assoc(edit, shift, key2hash, key2, value2, changeTracker);
+        }
+    }
+
+    private static final class HashCollisionNode implements Node {
+        private final Object edit;
+        private final int hash;
+        private int count;
+        private Object[] array;
+
+        HashCollisionNode(Object edit, int hash, int count, Object[] array) {
+            this.edit = edit;
+            this.hash = hash;
+            this.count = count;
+            this.array = array;
+        }
+
+        @Override
+        public Object[] getArray() {
+            return array;
+        }
+
+        private int findIndex(Object key) {
+            for (int i = 0; i < 2 * count; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public Object find(int shift, int hash, Object key, Object notFound) {
+            int idx = findIndex(key);
+            return idx < 0? notFound: array[idx + 1];
+        }
+
+        @Override
+        public Node assoc(Object edit, int shift, int hash, Object key, Object value, ChangeTracker changeTracker) {
+            if (hash == this.hash) {
+                int idx = findIndex(key);
+                if (idx != -1) {
+                    changeTracker.previousValue = array[idx + 1];
+                    if (array[idx + 1] == value) {
+                        return this;
+                    }
+                    HashCollisionNode editable = ensureEditable(edit);
+                    editable.array[idx + 1] = value;
+                    return editable;
+                }
+                changeTracker.leafAddedOrRemoved = true;
+                Object[] newArray = new Object[2 * (count + 1)];
+                System.arraycopy(array, 0, newArray, 0, 2 * count);
+                newArray[2 * count] = key;
+                newArray[2 * count + 1] = value;
+                if (edit == this.edit) {
+                    array = newArray;
+                    count++;
+                    return this;
+                }
+                return new HashCollisionNode(edit, this.hash, count + 1, newArray);
+            }
+            //nest it inside a bitmap indexed node
+            return new BitmapIndexedNode(null, bitpos(this.hash, shift), new Object[]{null, this})
+                           .assoc(edit, shift, hash, key, value, changeTracker);
+        }
+
+        @Override
+        public Node without(Object edit, int shift, int hash, Object key, ChangeTracker changeTracker) {
+            int idx = findIndex(key);
+            if (idx == -1) {
+                return this;
+            }
+            changeTracker.leafAddedOrRemoved = true;
+            changeTracker.previousValue = array[idx + 1];
+            if (count == 1) {
+                return null;
+            }
+            HashCollisionNode editable = ensureEditable(edit);
+            Object[] editableArray = editable.array;
+            editableArray[idx] = editableArray[2 * count - 2];  //move the last pair in place of the removed one
+            editableArray[idx + 1] = editableArray[2 * count - 1];
+            editableArray[2 * count - 2] = null;
+            editableArray[2 * count - 1] = null;
+            editable.count--;
+            return editable;
+        }
+
+        private HashCollisionNode ensureEditable(Object edit) {
+            if (this.edit == edit) {
+                return this;
+            }
+            Object[] newArray = new Object[2 * count];
+            System.arraycopy(array, 0, newArray, 0, 2 * count);
+            return new HashCollisionNode(edit, hash, count, newArray);
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+        private final Object[][] arrayStack = new Object[8][];  //trie depth can't exceed 7 levels (32 bit hash / 5 bits per level)
+        private final int[] indexStack = new int[8];
+        private int depth = -1;
+        private boolean nullKeyPending = hasNullKey;
+        private Map.Entry<String, Object> next = null;
+        private Map.Entry<String, Object> lastReturned = null;
+
+        EntryIterator() {
+            if (root != null) {
+                depth = 0;
+                arrayStack[0] = root.getArray();
+                indexStack[0] = 0;
+            }
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            if (nullKeyPending) {
+                nullKeyPending = false;
+                next = new Entry(null, resolve(nullKeyValue));
+                return;
+            }
+            while (depth >= 0) {
+                Object[] array = arrayStack[depth];
+                int i = indexStack[depth];
+                if (i >= array.length) {
+                    arrayStack[depth--] = null;
+                    continue;
+                }
+                indexStack[depth] = i + 2;
+                Object keyOrNull = array[i];
+                Object valueOrNode = array[i + 1];
+                if (keyOrNull != null) {
+                    next = new Entry((String) keyOrNull, resolve(valueOrNode));
+                    return;
+                }
+                if (valueOrNode instanceof Node) {  //null key and null value indicate unused capacity of the array
+                    depth++;
+                    arrayStack[depth] = ((Node) valueOrNode).getArray();
+                    indexStack[depth] = 0;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<String, Object> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = next;
+            advance();
+            return lastReturned;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            editToken = new Object();  //the nodes being iterated must not be modified in place
+            removeUnresolved(lastReturned.getKey());
+            lastReturned = null;
+        }
+    }
+
+    private final class Entry extends AbstractMap.SimpleEntry<String, Object> {
+        Entry(String key, Object value) {
+            super(key, value);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            editToken = new Object();  //the nodes being iterated, if any, must not be modified in place
+            ScopedContextMap.this.put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+// Compilation Units Framework: a very generic & powerful data driven programming framework.
+// Copyright (c) 2019 Sidharth Yadav, sidharth_08@yahoo.com
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.cuframework.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.xpath.XPathExpressionException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.Text;
+
+import org.cuframework.TemplateCompilationException;
+import org.cuframework.TemplateXPathEngine;
+import org.cuframework.config.ConfigManager;
+
+/**
+ * Compiles the templates from the StAX event stream of their xml without building (and retaining) the DOM of the whole
+ * document. Every unit selected by the select query is compiled from a DOM fragment that is materialized only for the
+ * duration of its compilation. The fragment holds the selected element along with a shallow copy of the document root
+ * (so that the namespace declarations resolve as they would in the full document). The compilation units drop their
+ * reference to the source node once compiled and hence the fragments become garbage right after the compilation. A fragment
+ * however isn't a valid context for the xpath expressions (which could refer to the siblings of the unit, the other children
+ * of the root etc) and hence the templates having any unit that evaluates xpath expressions at runtime are compiled (all
+ * over again) off their complete DOM, which such templates retain as they always did.
+ *
+ * Only the select queries of the form '/root-name/*' (the one used by default) are streamed. The other queries, as well as
+ * the documents which the streaming parser rejects, are compiled off the complete DOM as before. Streaming can be disabled
+ * altogether by setting the 'cus.template.streaming.compilation' system property to false.
+ * @author Sidharth Yadav
+ *
+ */
+final class StreamingTemplateCompiler {
+    private static final String STREAMING_COMPILATION_PROPERTY = "cus.template.streaming.compilation";
+    private static final boolean STREAMING_COMPILATION_ENABLED =
+                                    Boolean.parseBoolean(System.getProperty(STREAMING_COMPILATION_PROPERTY, "true"));
+    private static final String RELEASABLE_NODE_CONTEXT = "cus.releasable.node.context";  //user data key marking the fragment documents
+    private static final String NODE_CONTEXT_REQUIRED = "cus.node.context.required";  //user data key marking the fragments having
+                                                                                      //units that need the node at runtime
+    private static final Pattern STREAMABLE_SELECT_QUERY = Pattern.compile("^\\s*/([\\w.\\-]+)/\\*\\s*$");
+
+    private StreamingTemplateCompiler() {
+    }
+
+    //returns the name of the root element selected by the query if the query can be streamed, null otherwise
+    static String getStreamableRootName(String selectQuery) {
+        if (!STREAMING_COMPILATION_ENABLED || selectQuery == null) {
+            return null;
+        }
+        Matcher matcher = STREAMABLE_SELECT_QUERY.matcher(selectQuery);
+        return matcher.matches()? matcher.group(1): null;
+    }
+
+    //true if the node belongs to a fragment materialized by this compiler, i.e. the compilation units need not retain it
+    //beyond their compilation unless they need it at runtime.
+    static boolean isNodeContextReleasable(Node n) {
+        Document document = n == null? null: n.getNodeType() == Node.DOCUMENT_NODE? (Document) n: n.getOwnerDocument();
+        return document != null && document.getUserData(RELEASABLE_NODE_CONTEXT) != null;
+    }
+
+    //marks the fragment of the passed node as having a unit that needs its node at runtime. The template of such a fragment
+    //is compiled off its complete DOM instead.
+    static void markNodeContextRequired(Node n) {
+        Document document = n.getNodeType() == Node.DOCUMENT_NODE? (Document) n: n.getOwnerDocument();
+        document.setUserData(NODE_CONTEXT_REQUIRED, Boolean.TRUE, null);
+    }
+
+    static CompiledTemplate compile(String templateUID, InputStream in, String selectQuery)
+                                                      throws XPathExpressionException, TemplateCompilationException {
+        return compile(templateUID, readFully(in), selectQuery);  //buffered (instead of parsing straight off the stream) to be
+                                                                  //able to fall back to the DOM if the streaming parser rejects
+                                                                  //the document
+    }
+
+    static CompiledTemplate compile(String templateUID, byte[] content, String selectQuery)
+                                                      throws XPathExpressionException, TemplateCompilationException {
+        String rootName = getStreamableRootName(selectQuery);
+        CompiledTemplate mct = new CompiledTemplate(templateUID);
+        boolean streamed = false;
+        if (rootName != null) {
+            try {
+                streamed = compileStreamed(mct, content, rootName);
+                if (!streamed) {
+                    mct = new CompiledTemplate(templateUID);  //some unit needs the document as its xpath context
+                }
+            } catch (XMLStreamException xse) {
+                mct = new CompiledTemplate(templateUID);  //e.g. an undeclared namespace prefix in a namespace unaware
+                                                          //system. Let's leave the verdict to the DOM parser.
+            }
+        }
+        if (!streamed) {
+            NodeList nl = TemplateXPathEngine.getNodes(selectQuery, new ByteArrayInputStream(content));
+            for (int i = 0; i < nl.getLength(); i++) {
+                compileUnit(mct, nl.item(i));
+            }
+        }
+        mct.setSourceSize(content.length);
+        mct.setSelectQuery(selectQuery);
+        return mct;
+    }
+
+    //returns the (shallow) copy of the passed parent inside a new fragment document. The node context of the units compiled
+    //from the fragment can be released.
+    static Node newFragment(DocumentBuilder documentBuilder, Element parent) {
+        Document fragment = documentBuilder.newDocument();
+        fragment.setUserData(RELEASABLE_NODE_CONTEXT, Boolean.TRUE, null);
+        return parent == null? fragment: fragment.appendChild(fragment.importNode(parent, false));
+    }
+
+    static void compileUnit(CompiledTemplate mct, Node n) throws XPathExpressionException {
+        CompilationUnits.ICompilationUnit compilationUnit =
+                                    CompilationUnits.getCompilationUnitForTag(n.getNamespaceURI(), n.getNodeName());
+        if (compilationUnit != null) {
+            compilationUnit.compile(n);
+            mct.addCompilationUnit(compilationUnit);
+        }
+    }
+
+    //returns false if the template needs to be compiled off its DOM
+    private static boolean compileStreamed(CompiledTemplate mct, byte[] content, String rootName)
+                                                      throws XMLStreamException, XPathExpressionException,
+                                                             TemplateCompilationException {
+        boolean namespaceAware = ConfigManager.getInstance().isSystemNamespaceAware();
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);  //same as the DOM parser (cdata merged into text)
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);  //always, so as to get the namespace declarations
+                                                                                //reported separately from the attributes
+        DocumentBuilder documentBuilder = newDocumentBuilder(namespaceAware);
+        XMLStreamReader reader = factory.createXMLStreamReader(new ByteArrayInputStream(content));
+        try {
+            while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT) {
+                //skip the prolog
+            }
+            if (!reader.isStartElement() || !isSelectedRoot(reader, rootName, namespaceAware)) {
+                return true;  //the query selects nothing
+            }
+            Document rootDocument = documentBuilder.newDocument();
+            Element root = createElement(rootDocument, reader, namespaceAware);  //prototype of the root of every fragment
+            Node current = null;  //null while at the root level
+            while (reader.hasNext()) {
+                int event = reader.next();
+                switch (event) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        if (current == null) {
+                            current = newFragment(documentBuilder, root);
+                        }
+                        current = current.appendChild(createElement(current.getOwnerDocument(), reader, namespaceAware));
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        if (current == null) {
+                            return true;  //end of the root
+                        }
+                        Node parent = current.getParentNode();
+                        if (parent.getParentNode().getNodeType() == Node.DOCUMENT_NODE) {
+                            compileUnit(mct, current);  //selected element completely read
+                            if (current.getOwnerDocument().getUserData(NODE_CONTEXT_REQUIRED) != null) {
+                                return false;
+                            }
+                            parent = null;  //the fragment isn't referred anymore
+                        }
+                        current = parent;
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (current != null) {
+                            Node lastChild = current.getLastChild();
+                            if (lastChild != null && lastChild.getNodeType() == Node.TEXT_NODE) {
+                                ((Text) lastChild).appendData(reader.getText());  //coalesce as the DOM parser does
+                            } else {
+                                current.appendChild(current.getOwnerDocument().createTextNode(reader.getText()));
+                            }
+                        }
+                        break;
+                    case XMLStreamConstants.COMMENT:
+                        if (current != null) {
+                            current.appendChild(current.getOwnerDocument().createComment(reader.getText()));
+                        }
+                        break;
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        if (current != null) {
+                            current.appendChild(current.getOwnerDocument().createProcessingInstruction(reader.getPITarget(),
+                                                                                                       reader.getPIData()));
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return true;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static boolean isSelectedRoot(XMLStreamReader reader, String rootName, boolean namespaceAware) {
+        String prefix = reader.getPrefix();
+        if (namespaceAware) {
+            String namespaceURI = reader.getNamespaceURI();
+            return rootName.equals(reader.getLocalName()) && (namespaceURI == null || namespaceURI.isEmpty());
+        }
+        return rootName.equals(prefix == null || prefix.isEmpty()? reader.getLocalName(): prefix + ":" + reader.getLocalName());
+    }
+
+    private static Element createElement(Document document, XMLStreamReader reader, boolean namespaceAware) {
+        Element element = namespaceAware? document.createElementNS(emptyToNull(reader.getNamespaceURI()), getQName(reader.getPrefix(),
+                                                                                                                    reader.getLocalName())):
+                                          document.createElement(getQName(reader.getPrefix(), reader.getLocalName()));
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            String name = prefix == null || prefix.isEmpty()? XMLConstants.XMLNS_ATTRIBUTE: XMLConstants.XMLNS_ATTRIBUTE + ":" + prefix;
+            String uri = reader.getNamespaceURI(i) == null? "": reader.getNamespaceURI(i);
+            if (namespaceAware) {
+                element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, name, uri);
+            } else {
+                element.setAttribute(name, uri);
+            }
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String name = getQName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i));
+            if (namespaceAware) {
+                element.setAttributeNS(emptyToNull(reader.getAttributeNamespace(i)), name, reader.getAttributeValue(i));
+            } else {
+                element.setAttribute(name, reader.getAttributeValue(i));
+            }
+        }
+        return element;
+    }
+
+    private static String getQName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty()? localName: prefix + ":" + localName;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty()? null: value;
+    }
+
+    static DocumentBuilder newDocumentBuilder(boolean namespaceAware) throws TemplateCompilationException {
+        try {
+            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+            dbf.setNamespaceAware(namespaceAware);
+            return dbf.newDocumentBuilder();
+        } catch (Exception e) {
+            throw new TemplateCompilationException(e);
+        }
+    }
+
+    static byte[] readFully(InputStream in) throws TemplateCompilationException {
+        if (in == null) {
+            throw new TemplateCompilationException("Template stream is null");
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (Exception e) {
+            throw new TemplateCompilationException(e);
+        } finally {
+            try {
+                in.close();
+            } catch (Exception e) {
+                //ignore
+            }
+        }
+    }
+}
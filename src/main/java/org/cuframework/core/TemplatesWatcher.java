@@ -0,0 +1,165 @@
+// Compilation Units Framework: a very generic & powerful data driven programming framework.
+// Copyright (c) 2019 Sidharth Yadav, sidharth_08@yahoo.com
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.cuframework.core;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.cuframework.util.logging.LogManager;
+
+/**
+ * Watches the primary lookup directory of the registry (including its sub directories) for changes to the templates
+ * (xmls and their images) and has the registry reload the changed ones on the watcher's (daemon) thread. See
+ * CompiledTemplatesRegistry.startWatching.
+ * @author Sidharth Yadav
+ *
+ */
+final class TemplatesWatcher {
+    private static final long SETTLE_MILLIS = 100;  //changes arriving within this interval are reloaded together (editors
+                                                    //and copies typically fire several events per file)
+
+    private final CompiledTemplatesRegistry registry;
+    private final Path lookupDir;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+    private final Thread watcherThread;
+
+    TemplatesWatcher(CompiledTemplatesRegistry registry, Path lookupDir) throws IOException {
+        this.registry = registry;
+        this.lookupDir = lookupDir.toAbsolutePath().normalize();
+        this.watchService = FileSystems.getDefault().newWatchService();
+        try {
+            watchTree(this.lookupDir);
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+        watcherThread = new Thread(this::watch, "cu-templates-watcher");
+        watcherThread.setDaemon(true);  //mustn't keep the jvm alive
+        watcherThread.start();
+    }
+
+    Path getLookupDirectory() {
+        return lookupDir;
+    }
+
+    void close() {
+        try {
+            watchService.close();  //wakes up the watcher thread which then exits
+        } catch (IOException e) {
+            log("warning", "close", "Watch service of '" + lookupDir + "' couldn't be closed: " + e);
+        }
+    }
+
+    private static void log(String logLevel, String methodContext, Object message) {
+        Logger logger = LogManager.instance().getLogger();
+        if (logger != null) {
+            logger.logp(LogManager.getLogLevel(logLevel),
+                        TemplatesWatcher.class.getName(),
+                        methodContext,
+                        message != null? message.toString(): null);
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                Set<Path> changedTemplates = new LinkedHashSet<>();
+                WatchKey key = watchService.take();
+                do {
+                    collectChangedTemplates(key, changedTemplates);
+                    key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                } while (key != null);
+                registry.reloadTemplates(changedTemplates);
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            //closed
+        }
+    }
+
+    //collects the (xml) paths of the templates changed as per the events of the key. A change to the image of a template
+    //is taken as a change to the template itself.
+    private void collectChangedTemplates(WatchKey key, Set<Path> changedTemplates) {
+        Path dir = watchedDirs.get(key);
+        for (WatchEvent<?> event: key.pollEvents()) {
+            if (dir == null || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                continue;  //missed events. The templates would be picked up as and when they change next.
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                try {
+                    watchTree(path);
+                } catch (IOException e) {
+                    log("warning", "collectChangedTemplates", "Directory '" + path + "' couldn't be watched (its " +
+                                                              "templates wouldn't be reloaded on change): " + e);
+                }
+                continue;
+            }
+            String fileName = path.getFileName().toString();
+            if (fileName.endsWith(CompiledTemplateImage.IMAGE_FILE_EXTENSION)) {
+                fileName = fileName.substring(0, fileName.length() - CompiledTemplateImage.IMAGE_FILE_EXTENSION.length());
+                path = path.resolveSibling(fileName);
+            }
+            if (fileName.endsWith(".xml")) {
+                changedTemplates.add(path);
+            }
+        }
+        if (!key.reset()) {
+            watchedDirs.remove(key);  //the directory is gone
+        }
+    }
+
+    private void watchTree(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                watchedDirs.put(dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                                           StandardWatchEventKinds.ENTRY_MODIFY,
+                                                           StandardWatchEventKinds.ENTRY_DELETE), dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -28,10 +28,15 @@
 
 package org.cuframework.el;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.MatchResult;
 import java.util.regex.Pattern;
@@ -45,7 +50,7 @@ import org.cuframework.core.CompilationUnits;
 import org.cuframework.core.CompilationUnits.ICompilationUnit;
 import org.cuframework.core.CompilationUnits.IEvaluable;
 import org.cuframework.func.IFunction;
-import org.cuframework.util.UtilityFunctions;
+import org.cuframework.util.AccessorPath;
 
 import org.w3c.dom.Node;
 
@@ -62,9 +67,209 @@ public class EL {
     private static final String DOLLAR_REGEX = "(?:(?<!\\\\|\\$)(\\${3}(([\\w-]+)?:)?([\\w-]+)\\(([^\\)]*)\\);?|\\${2}(([\\w-]+)(\\.[\\w-]+)*(\\[[0-9]*\\])*);?|(?:\\$xpath|\\$)\\(([^\\)]*)\\);?|\\${1}(?=[\\w-:])((([\\w-]+)?:)?(?:((?=[\\w-]|(?:\\[\\]))([\\w-]+)?(\\.[\\w-]+)*(\\[[0-9]*\\])*)?));?))";  //this would also match $:[]; along with $:; and always null for missing accessor hierarchy.
     private static final String ATR_REGEX = "(?:(?<!\\\\)@(?=[\\w-\\|.:])(([\\w-.:]+)?(\\|(r|c|x|n|N)?)?);?)";
     private static final String DOLLAR_AND_ATR_REGEX = DOLLAR_REGEX + "|" + ATR_REGEX;
+    private static final Pattern DOLLAR_AND_ATR_PATTERN = Pattern.compile(DOLLAR_AND_ATR_REGEX);  //compiled once as Pattern instances are
+                                                                                                  //immutable and safe for use by multiple
+                                                                                                  //concurrent threads.
+
+    /**
+     * Parsers available for processing cu expressions.
+     *
+     */
+    public enum ParsingMode {
+        REGEX,  //the original regex driven tokenizer. Retained as a compatibility mode.
+        RECURSIVE_DESCENT;  //single pass, character level parser. This is the default.
+    }
+
+    private static final String PARSING_MODE_PROPERTY = "cus.el.parsing.mode";
+    private static final ParsingMode PARSING_MODE = getDefaultParsingMode();
+
+    private static final String PARSE_CACHE_SIZE_PROPERTY = "cus.el.parse.cache.size";
+    private static final int DEFAULT_PARSE_CACHE_SIZE = 10000;
+    private static final int PARSE_CACHE_SIZE = getSizeLimit(PARSE_CACHE_SIZE_PROPERTY, DEFAULT_PARSE_CACHE_SIZE);
+    private static final Map<ParsingMode, Map<String, Expression>> PARSE_CACHES = getParseCaches();  //process wide caches (one per parsing mode)
+                                                                                                     //of parsed (and frozen) expressions keyed by
+                                                                                                     //the input string. Frozen expressions are
+                                                                                                     //immutable and hence can be safely shared across
+                                                                                                     //templates, cus and threads. Once full, the
+                                                                                                     //newer inputs are parsed but not cached.
+    private static final String DYNAMIC_PARSE_CACHE_SIZE_PROPERTY = "cus.el.dynamic.parse.cache.size";
+    private static final int DEFAULT_DYNAMIC_PARSE_CACHE_SIZE = 256;
+    private static final int DYNAMIC_PARSE_CACHE_SIZE = getSizeLimit(DYNAMIC_PARSE_CACHE_SIZE_PROPERTY,
+                                                                     DEFAULT_DYNAMIC_PARSE_CACHE_SIZE);
+    private static final Map<String, Expression> DYNAMIC_PARSE_CACHE = getDynamicParseCache();  //small lru cache of the expressions
+                                                                                                 //built at runtime (e.g. by $(...)) which,
+                                                                                                 //unlike the template expressions, are
+                                                                                                 //unbounded in number and kept out of the
+                                                                                                 //process wide caches.
+    private static final String COMPILATION_THRESHOLD_PROPERTY = "cus.el.compilation.threshold";
+    private static final int COMPILATION_THRESHOLD = getCompilationThreshold();  //number of evaluations after which a (frozen) expression
+                                                                                 //is compiled into a flattened chain of closures. A value
+                                                                                 //<= 0 (the default) disables the compilation tier.
+
+    private static final AtomicLong PARSE_CACHE_HITS = new AtomicLong();
+    private static final AtomicLong PARSE_CACHE_MISSES = new AtomicLong();
 
     public static Expression parse(String input) {
-        return toSingularExpression(getTokens(input));
+        return parse(input, PARSING_MODE);
+    }
+
+    public static Expression parse(String input, ParsingMode parsingMode) {
+        Map<String, Expression> parseCache = PARSE_CACHES.get(parsingMode);
+        if (input == null || PARSE_CACHE_SIZE <= 0) {
+            return freeze(doParse(input, parsingMode));
+        }
+        Expression expression = parseCache.get(input);
+        if (expression != null) {
+            PARSE_CACHE_HITS.incrementAndGet();
+            return expression;
+        }
+        PARSE_CACHE_MISSES.incrementAndGet();
+        expression = freeze(doParse(input, parsingMode));
+        if (expression != null && parseCache.size() < PARSE_CACHE_SIZE) {  //null is returned only for empty inputs and that is
+                                                                             //cheap enough to be recomputed each time. Not evicting
+                                                                             //the cached (and likely still used) expressions when
+                                                                             //full as the bound may be exceeded only by a few racing
+                                                                             //puts.
+            Expression existing = parseCache.putIfAbsent(input, expression);
+            if (existing != null) {
+                expression = existing;  //some other thread parsed the same input concurrently. Let's use the one already cached.
+            }
+        }
+        return expression;
+    }
+
+    /**
+     * Parses an expression built at runtime (e.g. the value of a $(...) expression). Such expressions are cached in a
+     * separate small lru cache so that the arbitrary strings don't fill up the process wide cache of template expressions.
+     */
+    static Expression parseDynamic(String input) {
+        if (input == null || DYNAMIC_PARSE_CACHE_SIZE <= 0) {
+            return parse(input);
+        }
+        Expression expression;
+        synchronized (DYNAMIC_PARSE_CACHE) {
+            expression = DYNAMIC_PARSE_CACHE.get(input);
+        }
+        if (expression != null) {
+            PARSE_CACHE_HITS.incrementAndGet();
+            return expression;
+        }
+        PARSE_CACHE_MISSES.incrementAndGet();
+        expression = freeze(doParse(input, PARSING_MODE));
+        if (expression != null) {
+            synchronized (DYNAMIC_PARSE_CACHE) {
+                DYNAMIC_PARSE_CACHE.put(input, expression);
+            }
+        }
+        return expression;
+    }
+
+    private static Expression doParse(String input, ParsingMode parsingMode) {
+        return parsingMode == ParsingMode.REGEX?
+                   toSingularExpression(getTokens(input)):
+                   new ExpressionParser(input).parse();
+    }
+
+    public static ParsingMode getParsingMode() {
+        return PARSING_MODE;
+    }
+
+    private static ParsingMode getDefaultParsingMode() {
+        String mode = System.getProperty(PARSING_MODE_PROPERTY);
+        try {
+            return mode == null? ParsingMode.RECURSIVE_DESCENT: ParsingMode.valueOf(mode.trim().toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException iae) {
+            return ParsingMode.RECURSIVE_DESCENT;
+        }
+    }
+
+    private static int getCompilationThreshold() {
+        String threshold = System.getProperty(COMPILATION_THRESHOLD_PROPERTY);
+        try {
+            return threshold == null? 0: Integer.parseInt(threshold.trim());
+        } catch (NumberFormatException nfe) {
+            return 0;
+        }
+    }
+
+    public static int getCompilationThresholdValue() {
+        return COMPILATION_THRESHOLD;
+    }
+
+    private static Map<ParsingMode, Map<String, Expression>> getParseCaches() {
+        Map<ParsingMode, Map<String, Expression>> parseCaches = new EnumMap<>(ParsingMode.class);
+        for (ParsingMode parsingMode: ParsingMode.values()) {
+            parseCaches.put(parsingMode, new ConcurrentHashMap<String, Expression>());
+        }
+        return parseCaches;
+    }
+
+    private static Map<String, Expression> getDynamicParseCache() {
+        return new LinkedHashMap<String, Expression>(16, 0.75f, true) {  //access ordered
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Expression> eldest) {
+                return size() > DYNAMIC_PARSE_CACHE_SIZE;
+            }
+        };
+    }
+
+    private static int getSizeLimit(String property, int defaultSize) {
+        String size = System.getProperty(property);
+        try {
+            return size == null? defaultSize: Integer.parseInt(size.trim());
+        } catch (NumberFormatException nfe) {
+            return defaultSize;
+        }
+    }
+
+    public static long getParseCacheHits() {
+        return PARSE_CACHE_HITS.get();
+    }
+
+    public static long getParseCacheMisses() {
+        return PARSE_CACHE_MISSES.get();
+    }
+
+    public static int getParseCacheSize() {
+        int size = 0;
+        for (Map<String, Expression> parseCache: PARSE_CACHES.values()) {
+            size += parseCache.size();
+        }
+        return size;
+    }
+
+    public static int getParseCacheSizeLimitValue() {
+        return PARSE_CACHE_SIZE;
+    }
+
+    public static int getDynamicParseCacheSize() {
+        synchronized (DYNAMIC_PARSE_CACHE) {
+            return DYNAMIC_PARSE_CACHE.size();
+        }
+    }
+
+    public static int getDynamicParseCacheSizeLimitValue() {
+        return DYNAMIC_PARSE_CACHE_SIZE;
+    }
+
+    public static void clearParseCache() {
+        for (Map<String, Expression> parseCache: PARSE_CACHES.values()) {
+            parseCache.clear();
+        }
+        synchronized (DYNAMIC_PARSE_CACHE) {
+            DYNAMIC_PARSE_CACHE.clear();
+        }
+        PARSE_CACHE_HITS.set(0);
+        PARSE_CACHE_MISSES.set(0);
+    }
+
+    private static Expression freeze(Expression expression) {
+        if (expression != null) {
+            expression.freeze();
+        }
+        return expression;
     }
 
     private static Expression toSingularExpression(List<Expression> exprs) {
@@ -80,8 +285,7 @@ public class EL {
     }
 
     private static List<Expression> getTokens(String input) {
-        Pattern pattern = Pattern.compile(DOLLAR_AND_ATR_REGEX);
-        Matcher m = pattern.matcher(input);
+        Matcher m = DOLLAR_AND_ATR_PATTERN.matcher(input);
         int collectionEndIndex = 0;
         List<Expression> tokensList = new LinkedList<>();
         while (m.find()) {
@@ -201,6 +405,406 @@ public class EL {
         return new int[]{openingParenthesisIndex, balancedAtIndex};
     }
 
+    /**
+     * Single pass, character level (recursive descent) parser for cu expressions. Produces the same expression
+     * trees as the regex driven tokenizer (see getTokens(...)) but visits every character of the input only once.
+     * The only deliberate deviation is that the commas appearing inside a $(...) or $xpath(...) block which itself
+     * is passed as a function param are not treated as function params separators.
+     *
+     */
+    private static final class ExpressionParser {
+        private final String input;
+        private final int[] closingParenthesisIndexes;  //index of the balancing ')' for every '(' in the input; -1 if unbalanced
+        private final int[] nextClosingParenthesisIndexes;  //index of the first ')' found at or after every index of the input; -1 if none
+        private int tokenEndIndex = -1;  //end index (exclusive) of the token most recently read by readToken(...)
+
+        ExpressionParser(String input) {
+            this.input = input;
+            int length = input.length();
+            closingParenthesisIndexes = new int[length];
+            nextClosingParenthesisIndexes = new int[length + 1];
+            int[] openingParenthesisStack = new int[length];
+            int stackSize = 0;
+            for (int i = 0; i < length; i++) {
+                closingParenthesisIndexes[i] = -1;
+                char c = input.charAt(i);
+                if (c == '(') {
+                    openingParenthesisStack[stackSize++] = i;
+                } else if (c == ')' && stackSize > 0) {
+                    closingParenthesisIndexes[openingParenthesisStack[--stackSize]] = i;
+                }
+            }
+            nextClosingParenthesisIndexes[length] = -1;
+            for (int i = length - 1; i >= 0; i--) {
+                nextClosingParenthesisIndexes[i] = input.charAt(i) == ')'? i: nextClosingParenthesisIndexes[i + 1];
+            }
+        }
+
+        Expression parse() {
+            return toSingularExpression(parseTokens(0, input.length()));
+        }
+
+        private List<Expression> parseTokens(int from, int to) {
+            List<Expression> tokensList = new ArrayList<>();
+            int textStartIndex = from;
+            int i = from;
+            while (i < to) {
+                Expression token = readToken(i, from, to);
+                if (token == null) {
+                    i++;
+                    continue;
+                }
+                if (textStartIndex < i) {
+                    tokensList.add(new PlainText(input.substring(textStartIndex, i)));
+                }
+                tokensList.add(token);
+                i = textStartIndex = tokenEndIndex;
+            }
+            if (textStartIndex < to) {
+                tokensList.add(new PlainText(input.substring(textStartIndex, to)));
+            }
+            return tokensList;
+        }
+
+        //parses the function params and returns one expression per param. Params are separated by the commas
+        //which are not part of any nested expression (e.g. nested function call). Every param is trimmed.
+        private List<Expression> parseParams(int from, int to) {
+            List<Expression> params = new ArrayList<>();
+            if (isBlank(from, to)) {
+                return params;
+            }
+            List<Expression> paramTokens = new ArrayList<>();
+            int paramStartIndex = from;
+            int textStartIndex = from;
+            int i = from;
+            while (i < to) {
+                if (input.charAt(i) == ',') {
+                    addTrimmedText(paramTokens, textStartIndex, i, paramStartIndex, i);
+                    params.add(toParam(paramTokens));
+                    paramTokens = new ArrayList<>();
+                    paramStartIndex = textStartIndex = ++i;
+                    continue;
+                }
+                Expression token = readToken(i, from, to);
+                if (token == null) {
+                    i++;
+                    continue;
+                }
+                addTrimmedText(paramTokens, textStartIndex, i, paramStartIndex, -1);
+                paramTokens.add(token);
+                i = textStartIndex = tokenEndIndex;
+            }
+            addTrimmedText(paramTokens, textStartIndex, to, paramStartIndex, to);
+            params.add(toParam(paramTokens));
+            return params;
+        }
+
+        //adds the text between the specified indexes as plain text. Leading whitespaces are trimmed if the text starts
+        //the param and trailing whitespaces are trimmed if the text ends the param.
+        private void addTrimmedText(List<Expression> paramTokens, int from, int to, int paramStartIndex, int paramEndIndex) {
+            if (from == paramStartIndex) {
+                while (from < to && input.charAt(from) <= ' ') {
+                    from++;
+                }
+            }
+            if (to == paramEndIndex) {
+                while (to > from && input.charAt(to - 1) <= ' ') {
+                    to--;
+                }
+            }
+            if (from < to) {
+                paramTokens.add(new PlainText(input.substring(from, to)));
+            }
+        }
+
+        private Expression toParam(List<Expression> paramTokens) {
+            if (paramTokens.size() == 0) {
+                //the param string was empty. Let's return a null token so as to not disturb the params sequence.
+                return new PlainText(null);
+            }
+            return toSingularExpression(paramTokens);
+        }
+
+        private boolean isBlank(int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (input.charAt(i) > ' ') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        //reads the token starting at the specified index. Returns null if no token starts at the index.
+        private Expression readToken(int index, int from, int to) {
+            char c = input.charAt(index);
+            if (c == '$') {
+                char previous = index == from? 0: input.charAt(index - 1);
+                return previous == '\\' || previous == '$'? null: readDollar(index, from, to);
+            } else if (c == '@') {
+                char previous = index == from? 0: input.charAt(index - 1);
+                return previous == '\\'? null: readAtTheRate(index, to);
+            }
+            return null;
+        }
+
+        private Expression readDollar(int index, int from, int to) {
+            if (startsWith("$$$", index, to)) {
+                return readTripleDollar(index, from, to);
+            } else if (startsWith("$$", index, to)) {
+                return readDoubleDollar(index, to);
+            }
+            Expression expression = null;
+            if (startsWith("$xpath(", index, to)) {
+                expression = readGenericDollarOrXPath(index, index + "$xpath".length(), from, to, true);
+            } else if (startsWith("$(", index, to)) {
+                expression = readGenericDollarOrXPath(index, index + 1, from, to, false);
+            }
+            return expression != null? expression: readSingleDollar(index, to);
+        }
+
+        private Expression readTripleDollar(int index, int from, int to) {
+            int idStartIndex = index + 3;
+            int wordEndIndex = skipWord(idStartIndex, to);
+            String fnNamespaceGroup = null;
+            String fnNamespace = null;
+            if (wordEndIndex < to && input.charAt(wordEndIndex) == ':') {
+                fnNamespaceGroup = input.substring(idStartIndex, wordEndIndex + 1);
+                fnNamespace = wordEndIndex > idStartIndex? input.substring(idStartIndex, wordEndIndex): null;
+                idStartIndex = wordEndIndex + 1;
+                wordEndIndex = skipWord(idStartIndex, to);
+            }
+            int openingParenthesisIndex = wordEndIndex;
+            if (wordEndIndex == idStartIndex || !hasClosingParenthesis(openingParenthesisIndex, to)) {
+                return null;
+            }
+            int closingParenthesisIndex = getClosingParenthesisIndex(openingParenthesisIndex, from, to);
+            int fnCallEndIndex = skipSemicolon(closingParenthesisIndex + 1, to);
+            TripleDollar td = new TripleDollar(input.substring(index, fnCallEndIndex));
+            td.setFnNamespaceGroup(fnNamespaceGroup);
+            td.setFnNamespace(fnNamespace);
+            td.setId(input.substring(idStartIndex, wordEndIndex));
+            td.setParamExpressions(parseParams(openingParenthesisIndex + 1, closingParenthesisIndex));
+            tokenEndIndex = fnCallEndIndex;  //set only after the params are parsed as parsing of params overwrites it
+            return td;
+        }
+
+        private Expression readDoubleDollar(int index, int to) {
+            int accessorHierarchyStartIndex = index + 2;
+            int idEndIndex = skipWord(accessorHierarchyStartIndex, to);
+            if (idEndIndex == accessorHierarchyStartIndex) {
+                return null;
+            }
+            int accessorHierarchyEndIndex = skipAccessors(idEndIndex, to);
+            tokenEndIndex = skipSemicolon(accessorHierarchyEndIndex, to);
+            DoubleDollar dd = new DoubleDollar(input.substring(index, tokenEndIndex));
+            dd.setAccessorHierarchy(input.substring(accessorHierarchyStartIndex, accessorHierarchyEndIndex));
+            dd.setId(input.substring(accessorHierarchyStartIndex, idEndIndex));
+            return dd;
+        }
+
+        private Expression readGenericDollarOrXPath(int index, int openingParenthesisIndex, int from, int to, boolean isXPath) {
+            if (!hasClosingParenthesis(openingParenthesisIndex, to)) {
+                return null;
+            }
+            int closingParenthesisIndex = getClosingParenthesisIndex(openingParenthesisIndex, from, to);
+            Expression associatedExpression = toSingularExpression(parseTokens(openingParenthesisIndex + 1, closingParenthesisIndex));
+            tokenEndIndex = skipSemicolon(closingParenthesisIndex + 1, to);  //set only after the associated expression is parsed as
+                                                                             //parsing of the same overwrites it
+            String rawExpression = input.substring(index, tokenEndIndex);
+            if (isXPath) {
+                XPathExpression xpath = new XPathExpression(rawExpression);
+                xpath.setAssociatedExpression(associatedExpression);
+                return xpath;
+            }
+            GenericDollar gd = new GenericDollar(rawExpression);
+            gd.setAssociatedExpression(associatedExpression);
+            return gd;
+        }
+
+        private Expression readSingleDollar(int index, int to) {
+            int containerStartIndex = index + 1;
+            if (containerStartIndex >= to ||
+                    !(isWordChar(input.charAt(containerStartIndex)) || input.charAt(containerStartIndex) == ':')) {
+                return null;
+            }
+            String containerName = null;
+            int accessorHierarchyStartIndex = containerStartIndex;
+            int wordEndIndex = skipWord(containerStartIndex, to);
+            if (wordEndIndex < to && input.charAt(wordEndIndex) == ':') {
+                containerName = wordEndIndex > containerStartIndex? input.substring(containerStartIndex, wordEndIndex): null;
+                accessorHierarchyStartIndex = wordEndIndex + 1;
+            }
+            String accessorHierarchy = null;
+            String id = null;
+            int accessorHierarchyEndIndex = accessorHierarchyStartIndex;
+            if (accessorHierarchyStartIndex < to &&
+                    (isWordChar(input.charAt(accessorHierarchyStartIndex)) ||
+                     startsWith("[]", accessorHierarchyStartIndex, to))) {
+                int idEndIndex = skipWord(accessorHierarchyStartIndex, to);
+                id = idEndIndex > accessorHierarchyStartIndex? input.substring(accessorHierarchyStartIndex, idEndIndex): null;
+                accessorHierarchyEndIndex = skipAccessors(idEndIndex, to);
+                accessorHierarchy = input.substring(accessorHierarchyStartIndex, accessorHierarchyEndIndex);
+            }
+            tokenEndIndex = skipSemicolon(accessorHierarchyEndIndex, to);
+            SingleDollar sd = new SingleDollar(input.substring(index, tokenEndIndex));
+            sd.setContainerName(containerName);
+            sd.setAccessorHierarchy(accessorHierarchy);
+            sd.setId(id);
+            return sd;
+        }
+
+        private Expression readAtTheRate(int index, int to) {
+            int idStartIndex = index + 1;
+            if (idStartIndex >= to || !(isAttributeNameChar(input.charAt(idStartIndex)) || input.charAt(idStartIndex) == '|')) {
+                return null;
+            }
+            int idEndIndex = idStartIndex;
+            while (idEndIndex < to && isAttributeNameChar(input.charAt(idEndIndex))) {
+                idEndIndex++;
+            }
+            int i = idEndIndex;
+            String computationHint = null;
+            if (i < to && input.charAt(i) == '|') {
+                i++;
+                if (i < to && "rcxnN".indexOf(input.charAt(i)) != -1) {
+                    computationHint = String.valueOf(input.charAt(i));
+                    i++;
+                }
+            }
+            tokenEndIndex = skipSemicolon(i, to);
+            AtTheRate atr = new AtTheRate(input.substring(index, tokenEndIndex));
+            atr.setId(idEndIndex > idStartIndex? input.substring(idStartIndex, idEndIndex): null);
+            atr.setComputationHint(computationHint);
+            return atr;
+        }
+
+        //skips accessors like .field and [] or [2] e.g. '.field[2][]' in '$var.field[2][]'
+        private int skipAccessors(int index, int to) {
+            while (index + 1 < to && input.charAt(index) == '.' && isWordChar(input.charAt(index + 1))) {
+                index = skipWord(index + 1, to);
+            }
+            while (index < to && input.charAt(index) == '[') {
+                int i = index + 1;
+                while (i < to && input.charAt(i) >= '0' && input.charAt(i) <= '9') {
+                    i++;
+                }
+                if (i >= to || input.charAt(i) != ']') {
+                    break;
+                }
+                index = i + 1;
+            }
+            return index;
+        }
+
+        private int skipWord(int index, int to) {
+            while (index < to && isWordChar(input.charAt(index))) {
+                index++;
+            }
+            return index;
+        }
+
+        private int skipSemicolon(int index, int to) {
+            return index < to && input.charAt(index) == ';'? index + 1: index;
+        }
+
+        private boolean startsWith(String prefix, int index, int to) {
+            return index + prefix.length() <= to && input.startsWith(prefix, index);
+        }
+
+        private boolean hasClosingParenthesis(int openingParenthesisIndex, int to) {
+            if (openingParenthesisIndex >= to || input.charAt(openingParenthesisIndex) != '(') {
+                return false;
+            }
+            int closingParenthesisIndex = nextClosingParenthesisIndexes[openingParenthesisIndex + 1];
+            return closingParenthesisIndex != -1 && closingParenthesisIndex < to;
+        }
+
+        private int getClosingParenthesisIndex(int openingParenthesisIndex, int from, int to) {
+            int closingParenthesisIndex = closingParenthesisIndexes[openingParenthesisIndex];
+            if (closingParenthesisIndex == -1 || closingParenthesisIndex >= to) {
+                throw new RuntimeException("Misplaced parenthesis starting at index " + (openingParenthesisIndex - from) +
+                                                                            " in the expression " + input.substring(from, to));
+            }
+            return closingParenthesisIndex;
+        }
+
+        private static boolean isWordChar(char c) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-';
+        }
+
+        private static boolean isAttributeNameChar(char c) {
+            return isWordChar(c) || c == '.' || c == ':';
+        }
+    }
+
+    /**
+     * Compiled (flattened) form of an expression.
+     *
+     */
+    @FunctionalInterface
+    interface CompiledExpression {
+        Object getValue(ExpressionRuntimeContext erc) throws XPathExpressionException;
+    }
+
+    private static final class CompiledForm {
+        private final int functionTablesVersion;  //version of the function tables at the time of compilation
+        private final CompiledExpression compiledExpression;
+
+        CompiledForm(int functionTablesVersion, CompiledExpression compiledExpression) {
+            this.functionTablesVersion = functionTablesVersion;
+            this.compiledExpression = compiledExpression;
+        }
+    }
+
+    private static final class ResolvedFunction {
+        private final IFunction function;  //null if the function could not be resolved in the namespace
+
+        ResolvedFunction(IFunction function) {
+            this.function = function;
+        }
+    }
+
+    private static final class CompiledFunctionCall implements CompiledExpression {
+        private final String fnId;
+        private final String namespace;
+        private final boolean isNamespaceInherited;  //true if the function is to be resolved in the namespace of the cu
+        private final Expression[] params;
+        private final Map<String, ResolvedFunction> resolvedFunctions = new ConcurrentHashMap<>();  //frozen expressions are shared
+                                                                                                   //across cus (of different
+                                                                                                   //namespaces) and hence the
+                                                                                                   //function is resolved once per
+                                                                                                   //namespace. The compiled form
+                                                                                                   //(and this cache) is discarded
+                                                                                                   //when the function tables change.
+
+        CompiledFunctionCall(String fnId, String namespace, boolean isNamespaceInherited, Expression[] params) {
+            this.fnId = fnId;
+            this.namespace = namespace;
+            this.isNamespaceInherited = isNamespaceInherited;
+            this.params = params;
+        }
+
+        @Override
+        public Object getValue(ExpressionRuntimeContext erc) throws XPathExpressionException {
+            String ns = isNamespaceInherited? erc.getCompilationUnit().getNamespaceURI(): namespace;
+            if (ns == null) {
+                ns = CompilationUnits.ROOT_CU_NAMESPACE_URI;  //the namespace a null uri resolves to
+            }
+            ResolvedFunction resolved = resolvedFunctions.get(ns);
+            if (resolved == null) {
+                resolved = resolvedFunctions.computeIfAbsent(ns,
+                                                             key -> new ResolvedFunction(CompilationUnits.resolveFunction(key, fnId)));
+            }
+            IFunction func = resolved.function;
+            try {
+                return func == null? null: func.invoke(params.clone(), erc);  //cloning to keep the params array safe from
+                                                                              //modifications made by the function, if any
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
     public static abstract class Expression {
         enum Type {
             VAR_VALUE("$"),
@@ -214,21 +818,54 @@ public class EL {
             GROUP_OF_EXPRESSIONS("goe");
 
             private String id = null;
+            private final String[] typeWideNullReplacementLookups;
             private Type(String id) {
                 this.id = id;
+                this.typeWideNullReplacementLookups = new String[]{"eval." + id + ".*.null"};
             }
             public String getId() {
                 return id;
             }
+            private String getTypeWideNullReplacementLookup() {
+                return typeWideNullReplacementLookups[0];
+            }
+            private String[] getTypeWideNullReplacementLookups() {
+                return typeWideNullReplacementLookups;  //shared array. Never to be modified.
+            }
         }
+        private static final String[] NO_NULL_REPLACEMENT_LOOKUPS = new String[0];
         protected String id = null;
         protected String expression = null;
         protected boolean isDynamic = false;
+        private boolean frozen = false;  //set once the expression has been completely parsed. A frozen expression is immutable.
+        private String[] nullReplacementLookups = null;  //built once the expression is frozen
+        private volatile CompiledForm compiledForm = null;  //applicable only to frozen expressions
+        private int evaluationsCount = 0;  //deliberately not synchronized. An approximate count is good enough to decide upon the
+                                           //compilation of the expression.
 
         public Expression(String rawExpression) {
             this.expression = rawExpression;
         }
 
+        //marks this expression (and its child expressions, if any) as immutable
+        void freeze() {
+            if (frozen) {
+                return;
+            }
+            nullReplacementLookups = buildNullReplacementLookups();  //the id can no longer change and hence the keys can be built once
+            frozen = true;
+        }
+
+        protected boolean isFrozen() {
+            return frozen;
+        }
+
+        protected void checkNotFrozen() {
+            if (frozen) {
+                throw new UnsupportedOperationException("Expression [" + expression + "] is immutable and cannot be modified.");
+            }
+        }
+
         public String getId() {
             return id;
         }
@@ -243,41 +880,80 @@ public class EL {
 
         public abstract void setId(String id);
         public abstract Type getType();
+
+        //returns true if the evaluation of this expression (or of any of its child expressions) could need the node of the
+        //evaluating compilation unit, i.e. as the context of the xpath evaluations.
+        public boolean requiresNodeContext() {
+            return false;
+        }
         protected abstract Object doGetValue(ExpressionRuntimeContext erc) throws XPathExpressionException;
 
         public final Object getValue(ExpressionRuntimeContext erc) throws XPathExpressionException {
+            if (COMPILATION_THRESHOLD > 0 && frozen) {
+                CompiledForm compiled = compiledForm;
+                if (compiled != null) {
+                    if (compiled.functionTablesVersion == CompilationUnits.getFunctionTablesVersion()) {
+                        return compiled.compiledExpression.getValue(erc);
+                    }
+                    compiledForm = null;  //function tables have changed since the compilation and the function references resolved
+                    evaluationsCount = 0; //by the compiled form could be stale. Let's fall back to the interpreter. The expression
+                                          //would get recompiled once it again crosses the compilation threshold.
+                } else if (++evaluationsCount >= COMPILATION_THRESHOLD) {
+                    compiled = new CompiledForm(CompilationUnits.getFunctionTablesVersion(), compile());
+                    compiledForm = compiled;
+                    return compiled.compiledExpression.getValue(erc);
+                }
+            }
             return getNullableValue(doGetValue(erc), erc.getCompilationRuntimeContext());
         }
 
         private Object getNullableValue(Object value, CompilationRuntimeContext compilationRuntimeContext) {
-            if (value == null) {
-                Map<String, Object> immutableInternalContext = compilationRuntimeContext.getImmutableInternalContext();
-                String[] nullReplacementLookups = getNullReplacementLookups();
-                if (nullReplacementLookups != null && immutableInternalContext != null) {
-                    for (String lookupKey: nullReplacementLookups) {
-                        if (immutableInternalContext.containsKey(lookupKey)) {
-                            value = immutableInternalContext.get(lookupKey);
-                            break;
-                        }
-                    }
-                }
-            }
-            return value;
+            return value == null? getNullReplacementValue(getNullReplacementLookups(), compilationRuntimeContext): value;
+        }
+
+        private static Object getNullReplacementValue(String[] nullReplacementLookups,
+                                                      CompilationRuntimeContext compilationRuntimeContext) {
+            return compilationRuntimeContext.getInternalContextValue(nullReplacementLookups);
+        }
+
+        //returns the compiled form of this expression. The compiled form evaluates to the same value as getValue(...) does
+        //but avoids the per evaluation overheads of the interpreter (e.g. building of null replacement lookup keys, virtual
+        //dispatch through the child expressions, resolution of functions etc). Sub classes should override it to flatten
+        //themselves and their child expressions.
+        CompiledExpression compile() {
+            return withNullReplacement(this::doGetValue);
+        }
+
+        //wraps the compiled expression so as to return the configured null replacement, if any, when it evaluates to null.
+        //The null replacement lookup keys are computed only once.
+        final CompiledExpression withNullReplacement(final CompiledExpression compiledExpression) {
+            final String[] nullReplacementLookups = getNullReplacementLookups();
+            return erc -> {
+                Object value = compiledExpression.getValue(erc);
+                return value != null? value: getNullReplacementValue(nullReplacementLookups, erc.getCompilationRuntimeContext());
+            };
         }
 
         private String[] getNullReplacementLookups() {
+            String[] lookups = nullReplacementLookups;
+            return lookups != null? lookups: buildNullReplacementLookups();  //id of an expression can change until it is frozen
+                                                                             //and hence the keys are built every time until then.
+        }
+
+        private String[] buildNullReplacementLookups() {
             String EVAL = "eval";
             String NULL = "null";
             Type type = getType();
             if (type == null) {
-                return new String[0];
+                return NO_NULL_REPLACEMENT_LOOKUPS;
             }
             boolean idApplicable = getId() != null &&
                                    (type == Type.VAR_VALUE || type == Type.EVALUABLE_VALUE ||
                                     type == Type.FUNCTION_CALL || type == Type.ATTRIBUTE_VALUE);
-            return idApplicable ? new String[]{EVAL + "." + getType().getId() + "." + getId() + "." + NULL,
-                                               EVAL + "." + getType().getId() + ".*." + NULL} :
-                                  new String[]{EVAL + "." + getType().getId() + ".*." + NULL};
+            //the keys for the type wide (*) lookups are shared by all expressions of the type
+            return idApplicable ? new String[]{EVAL + "." + type.getId() + "." + getId() + "." + NULL,
+                                               type.getTypeWideNullReplacementLookup()} :
+                                  type.getTypeWideNullReplacementLookups();
         }
 
         public String toString() {
@@ -294,6 +970,7 @@ public class EL {
 
         @Override
         public void setId(String id) {
+            checkNotFrozen();
             this.id = id;
         }
 
@@ -302,6 +979,12 @@ public class EL {
             return Type.TEXT;
         }
 
+        @Override
+        CompiledExpression compile() {
+            final String text = expression;
+            return text != null? erc -> text: withNullReplacement(erc -> null);
+        }
+
         @Override
         protected Object doGetValue(ExpressionRuntimeContext erc)
                                                         throws XPathExpressionException {
@@ -313,6 +996,7 @@ public class EL {
         private String containerName = null;  //name of the containing map. e.g. 'CONTEXT-MAP in $CONTEXT-MAP:var.field[]'
                                               //If null, the var would be looked for inside the internal map.
         private String accessorHierarchy = null;  //var accessor hierarchy e.g. 'var.field[] in $CONTEXT-MAP:var.field[]'
+        private AccessorPath accessorPath = null;  //parsed accessor hierarchy
 
         public SingleDollar(String rawExpression) {
             super(rawExpression);
@@ -321,6 +1005,7 @@ public class EL {
 
         @Override
         public void setId(String id) {
+            checkNotFrozen();
             this.id = id;
         }
 
@@ -330,6 +1015,7 @@ public class EL {
         }
 
         public void setContainerName(String containerName) {
+            checkNotFrozen();
             this.containerName = containerName;
         }
 
@@ -338,7 +1024,9 @@ public class EL {
         }
 
         public void setAccessorHierarchy(String accessorHierarchy) {
+            checkNotFrozen();
             this.accessorHierarchy = accessorHierarchy;
+            this.accessorPath = accessorHierarchy == null? null: AccessorPath.parse(accessorHierarchy, null);
         }
 
         public String getAccessorHierarchy() {
@@ -361,7 +1049,7 @@ public class EL {
             if (accessorHierarchy == null) {
                 value = varContainer;
             } else {
-                value = UtilityFunctions.getValue(accessorHierarchy, varContainer);
+                value = varContainer == null? null: accessorPath.getValue(varContainer);
                 if (value == null && "this".equals(accessorHierarchy)) {  //Even if the token was $this first preference is given
                                                                           //to resolving it through context map lookups. If that
                                                                           //returns a null value it would be considered for
@@ -377,8 +1065,13 @@ public class EL {
         }
     }
 
+    //$$ (cu value accessor) expression. The accessor path is parsed once (when the expression is built) but the child cu
+    //isn't bound to the expression. A frozen expression is shared (through the parse cache) by all the cus using the same
+    //expression text, and the runtime extensions replace the children of a published cu, so the child is looked up on every
+    //evaluation through the cu's getChild which is served off the indexed snapshot of its children (no scan, no allocation).
     private static class DoubleDollar extends Expression {
         private String accessorHierarchy = null;  //cuid accessor hierarchy e.g. 'cuid.field[] in $$cuid.field[]'
+        private AccessorPath accessorPath = null;  //parsed accessor hierarchy
 
         public DoubleDollar(String rawExpression) {
             super(rawExpression);
@@ -387,6 +1080,7 @@ public class EL {
 
         @Override
         public void setId(String id) {
+            checkNotFrozen();
             if (id == null || "".equals(id.trim())) {
                 throw new IllegalArgumentException("CU id cannot be null");
             }
@@ -399,30 +1093,49 @@ public class EL {
         }
 
         public void setAccessorHierarchy(String accessorHierarchy) {
+            checkNotFrozen();
             this.accessorHierarchy = accessorHierarchy;
+            this.accessorPath = accessorHierarchy == null? null: AccessorPath.parse(accessorHierarchy, null);
         }
 
         public String getAccessorHierarchy() {
             return accessorHierarchy;
         }
 
+        @Override
+        CompiledExpression compile() {
+            final String _id = id;  //the child cu is looked up on every evaluation (see above)
+            final AccessorPath effectiveAccessorPath = getEffectiveAccessorPath();
+            return withNullReplacement(erc -> getValue(erc.getCompilationUnit().getChild(_id),
+                                                       _id,
+                                                       effectiveAccessorPath,
+                                                       erc.getCompilationRuntimeContext()));
+        }
+
         @Override
         protected Object doGetValue(ExpressionRuntimeContext erc)
                                                         throws XPathExpressionException {
             ICompilationUnit cu = erc.getCompilationUnit();
-            CompilationRuntimeContext compilationRuntimeContext = erc.getCompilationRuntimeContext();
+            return getValue(cu.getChild(id), id, getEffectiveAccessorPath(), erc.getCompilationRuntimeContext());
+        }
 
+        //returns the accessor path to be applied on the value of the child cu or null if the value is to be returned as is
+        private AccessorPath getEffectiveAccessorPath() {
             boolean accessorHierarchyIsPresent = id != null &&
                                                  accessorHierarchy != null &&
                                                  !id.equals(accessorHierarchy);
-            ICompilationUnit childCU = cu.getChild(id);
+            return accessorHierarchyIsPresent? accessorPath: null;
+        }
+
+        private static Object getValue(ICompilationUnit childCU,
+                                       String id,
+                                       AccessorPath accessorPath,
+                                       CompilationRuntimeContext compilationRuntimeContext) throws XPathExpressionException {
             Object _value = null;
             if (childCU instanceof IEvaluable) {
                 _value = ((IEvaluable) childCU).getValue(compilationRuntimeContext);
-                if (_value != null && accessorHierarchyIsPresent) {
-                    Map<String, Object> containerMap = new HashMap<>();
-                    containerMap.put(id, _value);
-                    _value = UtilityFunctions.getValue(accessorHierarchy, containerMap);
+                if (_value != null && accessorPath != null) {
+                    _value = accessorPath.getValue(id, _value);  //looked up as if inside a map holding just the value
                 }
             }
             return _value;
@@ -441,6 +1154,7 @@ public class EL {
 
         @Override
         public void setId(String id) {
+            checkNotFrozen();
             if (id == null || "".equals(id.trim())) {
                 throw new IllegalArgumentException("Function id cannot be null");
             }
@@ -453,6 +1167,7 @@ public class EL {
         }
 
         public void setFnNamespaceGroup(String fnNamespaceGroupWithColon) {
+            checkNotFrozen();
             this.fnNamespaceGroupWithColon = fnNamespaceGroupWithColon;
         }
 
@@ -465,6 +1180,7 @@ public class EL {
         }
 
         public void setFnNamespace(String namespace) {
+            checkNotFrozen();
             this.namespace = namespace;
         }
 
@@ -473,6 +1189,7 @@ public class EL {
         }
 
         public void setParams(List<Expression> unprocessedParams) {
+            checkNotFrozen();
             if (unprocessedParams == null) {
                 return;
             }
@@ -495,15 +1212,15 @@ public class EL {
                 for (Expression exprToRestore: hashcodedExpressions) {
                     param = param.replace("" + exprToRestore.getExpression().hashCode(), exprToRestore.getExpression());
                 }
-                List<Expression> exprs = getTokens(param.trim());  //opting to trim the param value here to ensure that white spaces
+                Expression paramExpression = parse(param.trim(), ParsingMode.REGEX);  //opting to trim the param value here to ensure that white spaces
                                                                    //before/after the function params separator (comma(,)) doesn't produce
                                                                    //different results (e.g. $$$equals($1,$2) And $$$equals($1, $2) should
                                                                    //be treated the same). If starting/trailing whitespaces are needed to
                                                                    //be part of string then achieve the same by defining a corresponding
                                                                    //variable in internal or external contexts and using the same in the
                                                                    //funtion call e.g. $$$equals($1,$2) And $$$equals($1,$WHITESPACE;$2)
-                if (exprs.size() > 0) {
-                    paramsAsExpressions.add(toSingularExpression(exprs));
+                if (paramExpression != null) {
+                    paramsAsExpressions.add(paramExpression);
                 } else {
                     //this can only be the case when the param string to be parsed was empty ("").
                     //we should append a null token in this case or else the param sequence would disturb and results can be unpredictable.
@@ -512,10 +1229,50 @@ public class EL {
             }
         }
 
+        //sets the already processed (one expression per function param) param expressions
+        void setParamExpressions(List<Expression> paramsAsExpressions) {
+            checkNotFrozen();
+            this.paramsAsExpressions = paramsAsExpressions == null? new LinkedList<Expression>(): paramsAsExpressions;
+        }
+
         public List<Expression> getParams() {
             return paramsAsExpressions;
         }
 
+        @Override
+        public boolean requiresNodeContext() {
+            for (Expression param: paramsAsExpressions) {
+                if (param != null && param.requiresNodeContext()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        void freeze() {
+            if (isFrozen()) {
+                return;
+            }
+            for (Expression param: paramsAsExpressions) {
+                param.freeze();
+            }
+            paramsAsExpressions = Collections.unmodifiableList(new ArrayList<>(paramsAsExpressions));
+            super.freeze();
+        }
+
+        @Override
+        CompiledExpression compile() {
+            if (id == null) {
+                return withNullReplacement(erc -> null);
+            }
+            boolean isNamespaceInherited = (namespace == null || "".equals(namespace)) && !isRootNamespaceIndicated();
+            return withNullReplacement(new CompiledFunctionCall(id,
+                                                                namespace,
+                                                                isNamespaceInherited,
+                                                                paramsAsExpressions.toArray(new Expression[0])));
+        }
+
         @Override
         protected Object doGetValue(ExpressionRuntimeContext erc)
                                                         throws XPathExpressionException {
@@ -554,6 +1311,7 @@ public class EL {
 
         @Override
         public void setId(String id) {
+            checkNotFrozen();
             this.id = id;
         }
 
@@ -563,6 +1321,7 @@ public class EL {
         }
 
         public void setAssociatedExpression(Expression associatedSingularExpression) {
+            checkNotFrozen();
             this.associatedSingularExpression = associatedSingularExpression;
         }
 
@@ -570,6 +1329,35 @@ public class EL {
             return associatedSingularExpression;
         }
 
+        @Override
+        public boolean requiresNodeContext() {
+            return true;  //the expression to evaluate is known only at runtime and could turn out to be an xpath expression
+        }
+
+        @Override
+        void freeze() {
+            if (associatedSingularExpression != null) {
+                associatedSingularExpression.freeze();
+            }
+            super.freeze();
+        }
+
+        @Override
+        CompiledExpression compile() {
+            if (associatedSingularExpression == null) {
+                return withNullReplacement(erc -> null);
+            }
+            final CompiledExpression associatedExpression = associatedSingularExpression.compile();
+            return withNullReplacement(erc -> {
+                Object value = associatedExpression.getValue(erc);
+                if (value instanceof String) {
+                    Expression expression = parseDynamic(value.toString());
+                    value = expression == null? null: expression.getValue(erc);
+                }
+                return value;
+            });
+        }
+
         @Override
         protected Object doGetValue(ExpressionRuntimeContext erc)
                                                         throws XPathExpressionException {
@@ -580,7 +1368,7 @@ public class EL {
             Object value = evaluatedAssociatedSingularExpression;
             if (evaluatedAssociatedSingularExpression instanceof String) {
                 String newInputExpression = evaluatedAssociatedSingularExpression.toString();
-                Expression expression = toSingularExpression(getTokens(newInputExpression));
+                Expression expression = parseDynamic(newInputExpression);  //served from the dynamic parse cache for repeated evaluations
                 if (expression != null) {
                     value = expression.getValue(erc);
                 } else {
@@ -601,6 +1389,7 @@ public class EL {
 
         @Override
         public void setId(String id) {
+            checkNotFrozen();
             this.id = id;
         }
 
@@ -610,6 +1399,7 @@ public class EL {
         }
 
         public void setAssociatedExpression(Expression associatedSingularExpression) {
+            checkNotFrozen();
             this.associatedSingularExpression = associatedSingularExpression;
         }
 
@@ -617,6 +1407,38 @@ public class EL {
             return associatedSingularExpression;
         }
 
+        @Override
+        public boolean requiresNodeContext() {
+            return true;
+        }
+
+        @Override
+        void freeze() {
+            if (associatedSingularExpression != null) {
+                associatedSingularExpression.freeze();
+            }
+            super.freeze();
+        }
+
+        @Override
+        CompiledExpression compile() {
+            if (associatedSingularExpression == null) {
+                return withNullReplacement(erc -> null);
+            }
+            final CompiledExpression associatedExpression = associatedSingularExpression.compile();
+            return withNullReplacement(erc -> {
+                Object value = associatedExpression.getValue(erc);
+                if (value instanceof String) {
+                    Object node = erc.getAdditionalContext(ExpressionRuntimeContext.ADDITIONAL_CONTEXT_NODE);
+                    Object xpath = erc.getAdditionalContext(ExpressionRuntimeContext.ADDITIONAL_CONTEXT_XPATH);
+                    if (node instanceof Node && xpath instanceof XPath) {
+                        value = ((XPath) xpath).evaluate(value.toString(), (Node) node, XPathConstants.STRING);
+                    }
+                }
+                return value;
+            });
+        }
+
         @Override
         protected Object doGetValue(ExpressionRuntimeContext erc)
                                                         throws XPathExpressionException {
@@ -650,6 +1472,7 @@ public class EL {
 
         @Override
         public void setId(String id) {
+            checkNotFrozen();
             this.id = id;
         }
 
@@ -659,6 +1482,7 @@ public class EL {
         }
 
         public void setComputationHint(String computationHint) {
+            checkNotFrozen();
             this.computationHint = computationHint;
         }
 
@@ -666,6 +1490,24 @@ public class EL {
             return computationHint;
         }
 
+        @Override
+        CompiledExpression compile() {
+            final String attributeName = getId();
+            if (attributeName == null) {
+                return withNullReplacement(erc -> erc.getCompilationUnit().getAttributeNames());
+            }
+            String cHint = computationHint == null? "r": computationHint;
+            switch(cHint) {
+                case "c":
+                case "x": return withNullReplacement(erc -> erc.getCompilationUnit().
+                                                                 getAttribute(attributeName, erc.getCompilationRuntimeContext()));
+                case "n": return withNullReplacement(erc -> erc.getCompilationUnit().isAttributeNative(attributeName));
+                case "N": return withNullReplacement(erc -> !erc.getCompilationUnit().isAttributeNative(attributeName));
+                case "r":
+                default: return withNullReplacement(erc -> erc.getCompilationUnit().getAttribute(attributeName));
+            }
+        }
+
         @Override
         protected Object doGetValue(ExpressionRuntimeContext erc)
                                                         throws XPathExpressionException {
@@ -712,6 +1554,7 @@ public class EL {
 
         @Override
         public void setId(String id) {
+            checkNotFrozen();
             this.id = id;
         }
 
@@ -722,6 +1565,7 @@ public class EL {
 
         //returns true if added
         public boolean add(Expression expression) {
+            checkNotFrozen();
             if (expression == null) {
                 return false;
             }
@@ -740,6 +1584,7 @@ public class EL {
         }
 
         public void setAll(List<Expression> expressions) {
+            checkNotFrozen();
             isDynamic = false;
             if (expressions == null) {
                 this.expressions.clear();
@@ -755,6 +1600,49 @@ public class EL {
             return expressions;
         }
 
+        @Override
+        public boolean requiresNodeContext() {
+            for (Expression expression: expressions) {
+                if (expression.requiresNodeContext()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        void freeze() {
+            if (isFrozen()) {
+                return;
+            }
+            for (Expression expression: expressions) {
+                expression.freeze();
+            }
+            expressions = Collections.unmodifiableList(new ArrayList<>(expressions));
+            super.freeze();
+        }
+
+        @Override
+        CompiledExpression compile() {
+            if (expressions.size() == 0) {
+                return withNullReplacement(erc -> null);
+            } else if (expressions.size() == 1) {
+                return withNullReplacement(expressions.get(0).compile());
+            }
+            final CompiledExpression[] compiledExpressions = new CompiledExpression[expressions.size()];
+            int index = 0;
+            for (Expression expression: expressions) {
+                compiledExpressions[index++] = expression.compile();
+            }
+            return erc -> {  //concatenated value is never null and hence no null replacement is needed
+                StringBuilder strBuilder = new StringBuilder();
+                for (CompiledExpression compiledExpression: compiledExpressions) {
+                    strBuilder.append(compiledExpression.getValue(erc));
+                }
+                return strBuilder.toString();
+            };
+        }
+
         @Override
         protected Object doGetValue(ExpressionRuntimeContext erc)
                                                         throws XPathExpressionException {
@@ -28,14 +28,11 @@
 
 package org.cuframework.func;
 
-import java.net.URL;
-import java.net.URLClassLoader;
-
 import java.util.HashMap;
 import java.util.Map;
 
 import org.cuframework.el.ExpressionRuntimeContext;
-import org.cuframework.util.UtilityFunctions;
+import org.cuframework.util.ClasspathLoaders;
 
 /**
  * A custom java function defined in a class.
@@ -52,6 +49,7 @@ public class ClassFunction extends GenericCUAccessor implements IFunction {
     private IFunction func = null;
 
     private Map<String, Object> inheritedClasspath = null;
+    private String namespaceURI = null;  //namespace defining the function. Owns the class loader of the function's classpath.
 
     public ClassFunction(String templateId, String cuAccessorPath) {
         super(templateId, cuAccessorPath);
@@ -61,6 +59,10 @@ public class ClassFunction extends GenericCUAccessor implements IFunction {
         this.inheritedClasspath = inheritedClasspath;
     }
 
+    public void setNamespaceURI(String namespaceURI) {
+        this.namespaceURI = namespaceURI;
+    }
+
     @Override
     protected Object _cu(Object[] context,
                          ExpressionRuntimeContext expressionRuntimeContext) throws Exception {
@@ -103,14 +105,8 @@ public class ClassFunction extends GenericCUAccessor implements IFunction {
             }
 
             if (fnClassName != null) {
-                func = (fnCp == null?
-                            Class.forName(fnClassName):
-                            Class.forName(fnClassName,
-                                          true,
-                                          URLClassLoader.newInstance(UtilityFunctions.getClasspathURLs(fnCp),
-                                                                     getClass().getClassLoader())
-                                         )
-                       ).asSubclass(IFunction.class).newInstance();
+                func = ClasspathLoaders.forName(fnClassName, fnCp, getClass().getClassLoader(), namespaceURI)
+                                       .asSubclass(IFunction.class).newInstance();
             }
         }
         return func != null? func.invoke(context, expressionRuntimeContext): null;
@@ -106,6 +106,7 @@ public final class FunctionResolver {
                             ((ClassFunction) func).setInheritedClasspath(ConfigManager.
                                                                                getInstance().
                                                                                     getClasspath(null, namespaceURI, null));
+                            ((ClassFunction) func).setNamespaceURI(namespaceURI);
                         } else {
                             func = new GenericCUAccessor(mct.getId(),
                                                          mct.getId() + CompiledTemplatesRegistry.TEMPLATE_PATH_SPLITTER + cu.getIdOrElse());
@@ -113,6 +114,7 @@ public final class FunctionResolver {
                         functionsRepository.get(MORE_FUNCTIONS).put(cu.getIdOrElse(), func);
                     }
                 }
+                CompilationUnits.markFunctionTablesAsModified();
             }
         } catch(Exception e) {
             //TODO log
@@ -57,13 +57,18 @@ public class NamespaceConfigurer {
 
     //the inputMap is supposed to contain the namespace objects
     public static void configure(Map<String, Object> inputMap) throws ClassNotFoundException {
-        for (Entry<String, Object> entry: inputMap.entrySet()) {
-            String cuid = entry.getKey();
-            Object nsConfigMap = entry.getValue();
-            if (nsConfigMap instanceof Map) {
-                 HierarchicalConfig nshconfig = initNamespaceConfiguration((Map<String, Object>) nsConfigMap);
-                 log("info", NamespaceConfigurer.class.getName(), "configure-namespace", cuid + " [" + nshconfig.getId() + "] :: done");
+        try {
+            for (Entry<String, Object> entry: inputMap.entrySet()) {
+                String cuid = entry.getKey();
+                Object nsConfigMap = entry.getValue();
+                if (nsConfigMap instanceof Map) {
+                     HierarchicalConfig nshconfig = initNamespaceConfiguration((Map<String, Object>) nsConfigMap);
+                     log("info", NamespaceConfigurer.class.getName(), "configure-namespace", cuid + " [" + nshconfig.getId() + "] :: done");
+                }
             }
+        } finally {
+            ConfigManager.getInstance().configChanged();  //the namespace configs share the containers (e.g. the cu attributes maps)
+                                                          //of the input map, changes to which aren't tracked by the configs
         }
     }
 
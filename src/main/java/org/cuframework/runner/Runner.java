@@ -28,21 +28,35 @@
 
 package org.cuframework.runner;
 
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.InputStream;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.logging.Logger;
 
 import javax.xml.xpath.XPathExpressionException;
 
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
 import org.cuframework.MapOfMaps;
 import org.cuframework.TemplateCompilationException;
+import org.cuframework.TemplateXPathEngine;
 import org.cuframework.core.CompilationRuntimeContext;
 import org.cuframework.core.CompilationUnits;
 import org.cuframework.core.CompilationUnits.ICompilationUnit;
 import org.cuframework.core.CompilationUnits.Group;
 import org.cuframework.core.CompiledTemplate;
+import org.cuframework.core.CompiledTemplateImage;
 import org.cuframework.core.CompiledTemplatesRegistry;
 import org.cuframework.ns.NamespaceConfigurer;
 import org.cuframework.util.logging.LogManager;
@@ -58,9 +72,12 @@ public class Runner {
     //sys props
     protected static final String SYS_PROP_CU_DIR = "cu.dir";
     protected static final String SYS_PROP_DEFAULT_CU_START_FILE = "cu.start";
+    protected static final String SYS_PROP_PRECOMPILE = "cu.precompile";  //if true then the templates inside the cu dir are just
+                                                                          //precompiled into their images (instead of being run)
 
     //other props
     protected static final String CU_NAMESPACES_GROUP_ID = "-namespaces-";
+    private static final String DEFAULT_TEMPLATE_SELECT_QUERY = "/root/*";  //the one used by the registry by default
 
     //runner context identifier keys
     protected static final String DEFAULT_CU_DIR = "DEFAULT_CU_DIR";
@@ -133,6 +150,10 @@ public class Runner {
         Runner runner = new Runner();
         runner.doInit();
         try {
+            if (Boolean.getBoolean(SYS_PROP_PRECOMPILE)) {
+                runner.precompile(CompiledTemplatesRegistry.getInstance().getPrimaryLookupDirectory());
+                return;
+            }
             String cuFile = System.getProperty("cu.start");  //CU Template File - The Starting Point
             if (cuFile == null) {
                 cuFile = "cu-start.xml";  //default cu starting template file
@@ -144,6 +165,50 @@ public class Runner {
         }
     }
 
+    //writes the image (see CompiledTemplateImage) of every xml template inside the directory (and its sub directories) so
+    //that the subsequent runs load the templates off their images instead of parsing the xmls. The other xml files (i.e. the
+    //ones which aren't templates) are skipped.
+    //subclasses can override as needed
+    protected void precompile(String cuDir) throws Exception {
+        List<Path> xmlFiles;
+        try (Stream<Path> paths = Files.walk(Paths.get(cuDir))) {
+            xmlFiles = paths.filter(path -> Files.isRegularFile(path) && path.toString().endsWith(".xml"))
+                            .sorted()
+                            .collect(Collectors.toList());
+        }
+        int precompiled = 0;
+        for (Path xmlFile: xmlFiles) {
+            if (!isTemplate(xmlFile)) {
+                log("debug", "precompile", "Skipped '" + xmlFile + "' (not a template)");
+                continue;
+            }
+            File imageFile = CompiledTemplateImage.write(xmlFile.toFile(), DEFAULT_TEMPLATE_SELECT_QUERY);
+            log("info", "precompile", "Template '" + xmlFile + "' precompiled into '" + imageFile + "'");
+            precompiled++;
+        }
+        log("info", "precompile", precompiled + " template(s) precompiled inside '" + cuDir + "'");
+    }
+
+    //returns true if the select query of the registry selects any compilation unit off the xml file. The elements of the
+    //namespaces other than the default one are taken as units as well since the namespaces get configured only at runtime.
+    //subclasses can override as needed
+    protected boolean isTemplate(Path xmlFile) {
+        try (InputStream in = Files.newInputStream(xmlFile)) {
+            NodeList nl = TemplateXPathEngine.getNodes(DEFAULT_TEMPLATE_SELECT_QUERY, in);
+            for (int i = 0; i < nl.getLength(); i++) {
+                Node n = nl.item(i);
+                if (n.getNodeType() == Node.ELEMENT_NODE &&
+                    (n.getNamespaceURI() != null || n.getNodeName().indexOf(':') >= 0 ||
+                     CompilationUnits.getCompilationClassForTag(null, n.getNodeName()) != null)) {
+                    return true;
+                }
+            }
+        } catch (Exception e) {
+            log("debug", "precompile", "'" + xmlFile + "' couldn't be parsed: " + e);  //not an xml template either
+        }
+        return false;
+    }
+
     //subclasses can override as needed
     protected void run(String cuFile) throws Exception {
         Map<String, String> runnerContext = getRunnerContext();
@@ -64,8 +64,8 @@ class JSONSerializerForGroupCU implements ICompilationUnitSerializer {
 
     private String buildJson(CompilationRuntimeContext compilationRuntimeContext, Group groupToSerialize)
                                                                         throws XPathExpressionException {
-        SerializationPolicy selfSerializationPolicy = groupToSerialize.getSelfSerializationPolicyRuntime();
-        SerializationPolicy childSerializationPolicy = groupToSerialize.getChildSerializationPolicyRuntime();
+        SerializationPolicy selfSerializationPolicy = groupToSerialize.getSelfSerializationPolicyRuntime(compilationRuntimeContext);
+        SerializationPolicy childSerializationPolicy = groupToSerialize.getChildSerializationPolicyRuntime(compilationRuntimeContext);
 
         if (selfSerializationPolicy == SerializationPolicy.NONE) {
             return "";  //we will not attempt serialization on this group at all
@@ -270,11 +270,13 @@ class JSONSerializerForGroupCU implements ICompilationUnitSerializer {
             /********************************************************************************************/
             //adjust serialization policies of child group according to the policies of the parent group.
             if (childSerializationPolicyOfParentGroup != SerializationPolicy.ALL) {
-                subgroupToSerialize.setSelfSerializationPolicyRuntime(childSerializationPolicyOfParentGroup);
+                subgroupToSerialize.setSelfSerializationPolicyRuntime(childSerializationPolicyOfParentGroup,
+                                                                      compilationRuntimeContext);
             } else {
                 //if the child serialization policy of the current group is ALL then we don't want
                 //to make any change to the self serialization policy of the child group.
-                subgroupToSerialize.setSelfSerializationPolicyRuntime(subgroupToSerialize.getSelfSerializationPolicy());
+                subgroupToSerialize.setSelfSerializationPolicyRuntime(subgroupToSerialize.getSelfSerializationPolicy(),
+                                                                      compilationRuntimeContext);
             }
             /********************************************************************************************/
 
@@ -283,8 +285,10 @@ class JSONSerializerForGroupCU implements ICompilationUnitSerializer {
             //reset the runtime serialization policies of the child group to its original ones to ensure there
             //is no side effects on its future serialization that might take place in a different context (e.g.
             //attempt to find and serialize this child group independently).
-            subgroupToSerialize.setSelfSerializationPolicyRuntime(subgroupToSerialize.getSelfSerializationPolicy());
-            subgroupToSerialize.setChildSerializationPolicyRuntime(subgroupToSerialize.getChildSerializationPolicy());
+            subgroupToSerialize.setSelfSerializationPolicyRuntime(subgroupToSerialize.getSelfSerializationPolicy(),
+                                                                  compilationRuntimeContext);
+            subgroupToSerialize.setChildSerializationPolicyRuntime(subgroupToSerialize.getChildSerializationPolicy(),
+                                                                   compilationRuntimeContext);
         }
 
         if (groupAsJsonTmp == null &&  //this can heppen, e.g. in cases like when the selfSerializationPolicy
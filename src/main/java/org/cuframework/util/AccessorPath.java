@@ -0,0 +1,243 @@
+// Compilation Units Framework: a very generic & powerful data driven programming framework.
+// Copyright (c) 2019 Sidharth Yadav, sidharth_08@yahoo.com
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.cuframework.util;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parsed form of a key hierarchy (e.g. 'a.b[2][].c') used to do a nested lookup inside a map. The hierarchy is parsed once
+ * into its steps i.e. the keys and the list/array indices (if any) following the keys, so that the lookups themselves
+ * neither split/match the hierarchy nor allocate.
+ * The paths parsed off the hierarchies built at runtime are cached, the size of the cache being controlled using the
+ * 'cus.accessor.path.cache.size' system property. A size of zero (or less) disables the cache.
+ * @author Sidharth Yadav
+ *
+ */
+public final class AccessorPath {
+    public static final String DEFAULT_DELIMITER = "\\.";  //regex
+
+    private static final String CACHE_SIZE_PROPERTY = "cus.accessor.path.cache.size";
+    private static final int CACHE_SIZE = getCacheSizeLimit();
+    private static final Map<String, Map<String, AccessorPath>> CACHE = new ConcurrentHashMap<>();  //keyed by the delimiter
+                                                                                                    //and then the hierarchy
+    private static final Map<String, Pattern> DELIMITERS = new ConcurrentHashMap<>();
+
+    private static final Pattern KEY_AND_INDICES = Pattern.compile("(^[\\w-$*&@#:;,.|<>%!~\\/\\\\(){}+ ]+)((\\[[0-9]*\\]| )*)$");
+    private static final Pattern INDEX = Pattern.compile("\\[([0-9]*)\\]+");
+    private static final int SIZE = -1;  //index representing '[]' i.e. the size of the indexed object
+    private static final int[] NO_INDICES = new int[0];
+
+    private static final String SIZE_KEY = "[]";  //the key which, if not found inside the map, represents the size of the map
+
+    private final String[] keys;
+    private final int[][] indices;  //indices following the key of the same step
+    private final String[][] rawIndices;  //the indices as specified. Used only to fail the lookups (the same way as
+                                          //before) over the indices too large to be parsed.
+
+    private AccessorPath(String[] keys, int[][] indices, String[][] rawIndices) {
+        this.keys = keys;
+        this.indices = indices;
+        this.rawIndices = rawIndices;
+    }
+
+    /**
+     * Parses the key hierarchy into a path. The delimiter, if specified, should be a regular expression (e.g. '\.' for a
+     * dot, which is also the default used if the delimiter is null).
+     */
+    public static AccessorPath parse(String keyHierarchy, String keyHierarchyDelimiter) {
+        if (keyHierarchy == null) {
+            throw new IllegalArgumentException("Key hierarchy cannot be null");
+        }
+        String delimiter = keyHierarchyDelimiter == null? DEFAULT_DELIMITER: keyHierarchyDelimiter;
+        Pattern delimiterPattern = DELIMITERS.get(delimiter);
+        if (delimiterPattern == null) {
+            delimiterPattern = Pattern.compile(delimiter);
+            if (DELIMITERS.size() < CACHE_SIZE) {
+                DELIMITERS.putIfAbsent(delimiter, delimiterPattern);
+            }
+        }
+        String[] segments = delimiterPattern.split(keyHierarchy);  //same as String.split
+        String[] keys = new String[segments.length];
+        int[][] indices = new int[segments.length][];
+        String[][] rawIndices = new String[segments.length][];
+        for (int i = 0; i < segments.length; i++) {
+            Matcher matcher = KEY_AND_INDICES.matcher(segments[i]);
+            String indicesString = null;
+            if (matcher.find()) {
+                //if the segment is 'mykey[10][2]' then group 1 is 'mykey' and group 2 is '[10][2]'
+                keys[i] = matcher.group(1);
+                indicesString = matcher.group(2);
+            } else {
+                keys[i] = segments[i];  //used as is
+            }
+            indices[i] = NO_INDICES;
+            if (indicesString != null && !indicesString.isEmpty()) {
+                List<String> raw = new ArrayList<>();
+                Matcher indexMatcher = INDEX.matcher(indicesString);
+                while (indexMatcher.find()) {
+                    raw.add(indexMatcher.group(1));
+                }
+                indices[i] = new int[raw.size()];
+                for (int j = 0; j < raw.size(); j++) {
+                    String index = raw.get(j);
+                    try {
+                        indices[i][j] = index.isEmpty()? SIZE: Integer.parseInt(index);
+                    } catch (NumberFormatException nfe) {
+                        indices[i][j] = Integer.MIN_VALUE;  //fails the lookup (see rawIndices)
+                        rawIndices[i] = raw.toArray(new String[raw.size()]);
+                    }
+                }
+            }
+        }
+        return new AccessorPath(keys, indices, rawIndices);
+    }
+
+    /**
+     * Returns the (cached) path parsed off the key hierarchy. See parse.
+     */
+    public static AccessorPath of(String keyHierarchy, String keyHierarchyDelimiter) {
+        if (CACHE_SIZE <= 0) {
+            return parse(keyHierarchy, keyHierarchyDelimiter);
+        }
+        String delimiter = keyHierarchyDelimiter == null? DEFAULT_DELIMITER: keyHierarchyDelimiter;
+        Map<String, AccessorPath> paths = CACHE.get(delimiter);
+        AccessorPath path = paths != null? paths.get(keyHierarchy): null;
+        if (path == null) {
+            path = parse(keyHierarchy, delimiter);
+            if (paths == null) {
+                if (CACHE.size() >= CACHE_SIZE) {
+                    return path;  //too many delimiters to cache the paths of
+                }
+                paths = CACHE.computeIfAbsent(delimiter, d -> new ConcurrentHashMap<>());
+            }
+            if (paths.size() >= CACHE_SIZE) {
+                //the cache only bounds the memory used and is not an lru. Removing an arbitrary entry is good enough.
+                Iterator<String> itr = paths.keySet().iterator();
+                if (itr.hasNext()) {
+                    itr.next();
+                    itr.remove();
+                }
+            }
+            paths.putIfAbsent(keyHierarchy, path);
+        }
+        return path;
+    }
+
+    /**
+     * Does the nested lookup inside the map. Returns null if the hierarchy breaks i.e. if any of the intermediate values
+     * isn't a map (or can't be indexed as specified).
+     */
+    public Object getValue(Map<String, Object> map) {
+        return map == null? null: getValue(map, null, null);
+    }
+
+    /**
+     * Same as getValue(map) over a map holding just the passed key and value, but without creating the map.
+     */
+    public Object getValue(String key, Object value) {
+        return getValue(null, key, value);
+    }
+
+    //looks up the path inside the map or (if the map is null) the single entry represented by the passed key and value
+    private Object getValue(Map<String, Object> map, String singleKey, Object singleValue) {
+        for (int i = 0; i < keys.length; i++) {
+            String key = keys[i];
+            int size;
+            Object value;
+            if (map != null) {
+                value = map.get(key);
+                size = value == null && SIZE_KEY.equals(key)? map.size(): 0;
+            } else {
+                value = key.equals(singleKey)? singleValue: null;
+                size = 1;
+            }
+            if (indices[i].length > 0 && value != null) {
+                value = getIndexValue(i, value);
+            } else if (value == null && SIZE_KEY.equals(key)) {
+                value = size;  //the size of the map
+            }
+
+            if (i == keys.length - 1) {
+                return value;  //last step
+            } else if (value instanceof Map) {
+                map = (Map<String, Object>) value;
+            } else {
+                break;  //the steps have not yet exhausted and we came across an object which is not a map.
+                        //There is no point in continuing and null would be returned.
+            }
+        }
+        return null;
+    }
+
+    //applies the indices of the step to the passed (list or array) value
+    private Object getIndexValue(int step, Object indexTarget) {
+        Object value = null;
+        int[] stepIndices = indices[step];
+        for (int j = 0; j < stepIndices.length; j++) {
+            int index = stepIndices[j];
+            if (index == Integer.MIN_VALUE) {
+                Integer.parseInt(rawIndices[step][j]);  //throws the same exception as the lookup always did
+            }
+            if (indexTarget instanceof List) {
+                value = index == SIZE? ((List) indexTarget).size():
+                                       ((List) indexTarget).get(index);  //if out of bounds then let an exception be thrown
+            } else if (indexTarget != null && indexTarget.getClass().isArray()) {
+                value = index == SIZE? Array.getLength(indexTarget):
+                                       Array.get(indexTarget, index);  //if out of bounds then let an exception be thrown
+            } else if (indexTarget instanceof Collection && index == SIZE) {
+                value = ((Collection) indexTarget).size();
+            } else if (indexTarget instanceof Map && index == SIZE) {
+                value = ((Map) indexTarget).size();
+            } else {
+                //the access chain broke as it no longer points to an object that supports the indexed operation (the
+                //collections other than the lists don't as the order of their elements isn't guaranteed)
+                return null;
+            }
+            indexTarget = value;
+        }
+        return value;
+    }
+
+    private static int getCacheSizeLimit() {
+        String size = System.getProperty(CACHE_SIZE_PROPERTY);
+        try {
+            return size == null? 1000: Integer.parseInt(size.trim());
+        } catch (NumberFormatException nfe) {
+            return 1000;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+// Compilation Units Framework: a very generic & powerful data driven programming framework.
+// Copyright (c) 2019 Sidharth Yadav, sidharth_08@yahoo.com
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.cuframework.util;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import org.cuframework.util.logging.LogManager;
+
+/**
+ * Cache of the class loaders created for the classpaths given to the functions, namespaces and units. A loader is created
+ * once per distinct classpath (i.e. the list of its resolved urls) and parent loader, and is shared by all its users
+ * instead of each call creating (and throwing away, along with the classes loaded and the jit work done on them) a loader of
+ * its own. The urls are kept in the configured order, as that decides which copy of a class present in more than one jar
+ * gets loaded, and hence the same entries in a different order make a different loader. The classes loaded through a
+ * loader are cached as well.
+ * Every user of a loader is recorded as its owner (e.g. the namespace the loader was created for). Releasing an owner, e.g.
+ * when its namespace gets unloaded, closes the loaders no other owner uses. The loaders acquired without an owner (e.g. the
+ * ones of the classpaths built dynamically by the templates) are shared process wide and are bounded in number
+ * (cus.classpath.shared.loaders.max, 32 by default). Once the bound is crossed the least recently used of them is dropped
+ * from the cache, though not closed as the classes loaded through it could still be in use (and load other classes off
+ * its jars), and hence gets reclaimed along with its classes once these are no longer reachable. closeAll closes all the
+ * loaders.
+ * @author Sidharth Yadav
+ *
+ */
+public final class ClasspathLoaders {
+    private static final String SHARED_OWNER = "";  //owner of the loaders acquired without one
+    private static final String MAX_SHARED_LOADERS_PROPERTY = "cus.classpath.shared.loaders.max";
+    private static final int MAX_SHARED_LOADERS = readMaxSharedLoaders();
+
+    private static final Map<Key, Loader> LOADERS_BY_CLASSPATH = new ConcurrentHashMap<>();  //keyed by the classpath as given
+    private static final Map<Key, Loader> LOADERS_BY_URLS = new ConcurrentHashMap<>();  //keyed by the resolved urls
+    private static final Set<Loader> SHARED_LOADERS = new HashSet<>();  //the loaders owned by the shared owner. Guarded by LOCK
+    private static final Object LOCK = new Object();  //guards the creation and the release of the loaders
+
+    private ClasspathLoaders() {
+    }
+
+    /**
+     * Returns the class of the passed name loaded (and initialized) through the loader of the passed classpath, or through
+     * the parent loader if the classpath is null.
+     *
+     * @param className
+     *            name of the class
+     * @param classpath
+     *            the classpath entries (jar locations) or null
+     * @param parent
+     *            the parent of the classpath loader
+     * @param owner
+     *            the owner (e.g. the namespace uri) of the loader or null if the loader is to be shared process wide
+     */
+    public static Class<?> forName(String className,
+                                   Object[] classpath,
+                                   ClassLoader parent,
+                                   String owner) throws ClassNotFoundException {
+        return classpath == null? Class.forName(className, true, parent):
+                                  getLoader(toEntries(classpath), parent, owner).forName(className);
+    }
+
+    /**
+     * Same as {@link #forName(String, Object[], ClassLoader, String)} with the classpath entries being the values of the
+     * passed map.
+     */
+    public static Class<?> forName(String className,
+                                   Map<String, Object> classpath,
+                                   ClassLoader parent,
+                                   String owner) throws ClassNotFoundException {
+        return classpath == null? Class.forName(className, true, parent):
+                                  getLoader(toEntries(classpath.values()), parent, owner).forName(className);
+    }
+
+    /**
+     * Returns the (shared) class loader of the passed classpath.
+     */
+    public static ClassLoader getClassLoader(Map<String, Object> classpath, ClassLoader parent, String owner) {
+        return getLoader(toEntries(classpath == null? Collections.emptyList(): classpath.values()), parent, owner).classLoader;
+    }
+
+    /**
+     * Releases the loaders acquired by the passed owner. The loaders not used by any other owner are closed.
+     *
+     * @param owner
+     *            the owner whose loaders are to be released
+     */
+    public static void release(String owner) {
+        if (owner == null) {
+            return;  //the shared loaders are closed only by closeAll
+        }
+        synchronized (LOCK) {
+            for (Loader loader: new ArrayList<>(LOADERS_BY_URLS.values())) {
+                if (loader.owners.remove(owner) && loader.owners.isEmpty()) {
+                    close(loader);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the loaders used only by the passed owner, i.e. the ones its release would close.
+     *
+     * @param owner
+     *            the owner whose loaders are to be returned
+     */
+    public static Set<ClassLoader> getExclusiveClassLoaders(String owner) {
+        Set<ClassLoader> classLoaders = new HashSet<>();
+        if (owner == null) {
+            return classLoaders;
+        }
+        synchronized (LOCK) {
+            for (Loader loader: LOADERS_BY_URLS.values()) {
+                if (loader.owners.contains(owner) && loader.owners.size() == 1) {
+                    classLoaders.add(loader.classLoader);
+                }
+            }
+        }
+        return classLoaders;
+    }
+
+    /**
+     * Closes all the loaders.
+     */
+    public static void closeAll() {
+        synchronized (LOCK) {
+            for (Loader loader: new ArrayList<>(LOADERS_BY_URLS.values())) {
+                close(loader);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of the loaders cached.
+     */
+    public static int size() {
+        return LOADERS_BY_URLS.size();
+    }
+
+    /**
+     * Returns the maximum number of the loaders shared process wide (i.e. the ones acquired without an owner) that are kept.
+     */
+    public static int getMaxSharedLoaders() {
+        return MAX_SHARED_LOADERS;
+    }
+
+    private static int readMaxSharedLoaders() {
+        String max = System.getProperty(MAX_SHARED_LOADERS_PROPERTY);
+        try {
+            return max == null? 32: Math.max(1, Integer.parseInt(max.trim()));
+        } catch (NumberFormatException nfe) {
+            return 32;
+        }
+    }
+
+    private static Loader getLoader(List<String> entries, ClassLoader parent, String owner) {
+        owner = owner == null? SHARED_OWNER: owner;
+        Key classpathKey = new Key(parent, entries);
+        Loader loader = LOADERS_BY_CLASSPATH.get(classpathKey);
+        if (loader != null && loader.owners.contains(owner)) {
+            loader.lastUsed = System.nanoTime();
+            return loader;
+        }
+        synchronized (LOCK) {
+            loader = LOADERS_BY_CLASSPATH.get(classpathKey);
+            if (loader == null) {
+                URL[] urls = UtilityFunctions.getClasspathURLs(entries.toArray());  //resolved outside the fast path only
+                List<String> urlsInOrder = new ArrayList<>(urls.length);
+                for (URL url: urls) {
+                    urlsInOrder.add(url.toExternalForm());
+                }
+                Key urlsKey = new Key(parent, urlsInOrder);
+                loader = LOADERS_BY_URLS.get(urlsKey);
+                if (loader == null) {
+                    loader = new Loader(urlsKey, URLClassLoader.newInstance(urls, parent));
+                    LOADERS_BY_URLS.put(urlsKey, loader);
+                }
+                loader.classpathKeys.add(classpathKey);
+                LOADERS_BY_CLASSPATH.put(classpathKey, loader);
+            }
+            if (loader.owners.add(owner) && SHARED_OWNER.equals(owner)) {
+                SHARED_LOADERS.add(loader);
+                if (SHARED_LOADERS.size() > MAX_SHARED_LOADERS) {
+                    dropEldestSharedLoader(loader);
+                }
+            }
+            loader.lastUsed = System.nanoTime();
+        }
+        return loader;
+    }
+
+    //drops the least recently used of the shared loaders other than the passed one. Called while holding the lock.
+    private static void dropEldestSharedLoader(Loader except) {
+        Loader eldest = null;
+        for (Loader loader: SHARED_LOADERS) {
+            if (loader != except && (eldest == null || loader.lastUsed - eldest.lastUsed < 0)) {
+                eldest = loader;
+            }
+        }
+        if (eldest != null) {
+            SHARED_LOADERS.remove(eldest);
+            eldest.owners.remove(SHARED_OWNER);
+            if (eldest.owners.isEmpty()) {
+                forget(eldest);  //not closed, refer the class comments
+            }
+        }
+    }
+
+    private static void close(Loader loader) {
+        forget(loader);
+        try {
+            loader.classLoader.close();
+        } catch (IOException e) {
+            log("warning", "close", "Couldn't close the class loader of " + loader.urlsKey.classpath + ": " + e);
+        }
+    }
+
+    private static void log(String logLevel, String methodContext, Object message) {
+        Logger logger = LogManager.instance().getLogger();
+        if (logger != null) {
+            logger.logp(LogManager.getLogLevel(logLevel),
+                        ClasspathLoaders.class.getName(),
+                        methodContext,
+                        message != null? message.toString(): null);
+        }
+    }
+
+    //removes the loader from the cache
+    private static void forget(Loader loader) {
+        LOADERS_BY_URLS.remove(loader.urlsKey);
+        for (Key classpathKey: loader.classpathKeys) {
+            LOADERS_BY_CLASSPATH.remove(classpathKey);
+        }
+        SHARED_LOADERS.remove(loader);
+        loader.classes.clear();
+    }
+
+    //the entries of a classpath, same as the ones used to resolve its urls, in the configured order
+    private static List<String> toEntries(Object[] classpath) {
+        List<String> entries = new ArrayList<>(classpath.length);
+        for (Object value: classpath) {
+            if (value != null) {
+                entries.add(value.toString().trim());
+            }
+        }
+        return entries;
+    }
+
+    private static List<String> toEntries(Collection<Object> classpath) {
+        return toEntries(classpath.toArray());
+    }
+
+    private static final class Key {
+        private final ClassLoader parent;
+        private final List<String> classpath;
+        private final int hash;
+
+        private Key(ClassLoader parent, List<String> classpath) {
+            this.parent = parent;
+            this.classpath = classpath;
+            this.hash = 31 * System.identityHashCode(parent) + classpath.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) obj;
+            return parent == key.parent && hash == key.hash && Objects.equals(classpath, key.classpath);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Loader {
+        private final Key urlsKey;
+        private final URLClassLoader classLoader;
+        private final Set<Key> classpathKeys = new HashSet<>();  //the classpaths resolved to the urls of this loader
+        private final Set<String> owners = ConcurrentHashMap.newKeySet();
+        private final Map<String, Class<?>> classes = new ConcurrentHashMap<>();
+        private long lastUsed;  //nano time of the last acquisition. Not volatile as it is only a hint for the eviction
+
+        private Loader(Key urlsKey, URLClassLoader classLoader) {
+            this.urlsKey = urlsKey;
+            this.classLoader = classLoader;
+        }
+
+        private Class<?> forName(String className) throws ClassNotFoundException {
+            Class<?> clazz = classes.get(className);
+            if (clazz == null) {
+                clazz = Class.forName(className, true, classLoader);
+                classes.put(className, clazz);
+            }
+            return clazz;
+        }
+    }
+}
@@ -35,7 +35,7 @@ import java.net.URLConnection;
 import java.net.JarURLConnection;
 import java.net.MalformedURLException;
 
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.StringTokenizer;
 
@@ -64,14 +64,15 @@ class JarClasspathResolver {
         Attributes main_attributes=manifest.getMainAttributes();
         String[] classpathEntries=getJarClasspathEntries(jar_url, jar_file, (String) main_attributes.getValue(Attributes.Name.CLASS_PATH));
 
-        Set<URL> _all_cp_urls = toURLs(classpathEntries);
+        Set<URL> _all_cp_urls = new LinkedHashSet<>();  //the jar itself followed by its manifest classpath, in order
         _all_cp_urls.add(jar_url);
+        _all_cp_urls.addAll(toURLs(classpathEntries));
 
         return _all_cp_urls;
     }
 
     private static Set<URL> toURLs(String[] entries) throws MalformedURLException {
-        Set<URL> urls = new HashSet<>();
+        Set<URL> urls = new LinkedHashSet<>();
         for (int i=0; i<entries.length; i++) {
             urls.add(new URL(entries[i]));
         }
@@ -0,0 +1,305 @@
+// Compilation Units Framework: a very generic & powerful data driven programming framework.
+// Copyright (c) 2019 Sidharth Yadav, sidharth_08@yahoo.com
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.cuframework.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dependency free streaming JSON parser. Objects are returned as (insertion ordered) maps, arrays as lists, strings as
+ * strings, numbers as Integer, Long or Double (whichever is the narrowest to hold the value), true/false as Boolean and
+ * null as null.
+ * The parser is lenient in the same ways as the javascript object literals (which the json values used to be evaluated
+ * as), i.e. it also accepts single quoted strings, unquoted (identifier) keys and trailing commas.
+ * @author Sidharth Yadav
+ *
+ */
+public final class JsonParser {
+    private static final int BUFFER_SIZE = 4096;
+
+    private final Reader reader;
+    private final char[] buffer;
+    private int bufferLength = 0;
+    private int bufferPosition = 0;
+    private long position = 0;  //position of the next char within the stream. Used for error reporting.
+    private final StringBuilder scratch = new StringBuilder();  //reused for accumulating strings and numbers
+
+    private JsonParser(Reader reader, int bufferSize) {
+        this.reader = reader;
+        this.buffer = new char[bufferSize];
+    }
+
+    public static Object parse(String json) {
+        if (json == null) {
+            return null;
+        }
+        return parse(new StringReader(json), Math.max(16, Math.min(json.length(), BUFFER_SIZE)));
+    }
+
+    public static Object parse(Reader reader) {
+        return parse(reader, BUFFER_SIZE);
+    }
+
+    private static Object parse(Reader reader, int bufferSize) {
+        JsonParser parser = new JsonParser(reader, bufferSize);
+        Object value = parser.readValue();
+        if (parser.skipWhitespace() != -1) {
+            throw parser.error("Unexpected content after the json value");
+        }
+        return value;
+    }
+
+    private int peek() {
+        if (bufferPosition == bufferLength) {
+            try {
+                int read;
+                do {
+                    read = reader.read(buffer, 0, buffer.length);
+                } while (read == 0);
+                if (read < 0) {
+                    return -1;
+                }
+                bufferLength = read;
+                bufferPosition = 0;
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+        return buffer[bufferPosition];
+    }
+
+    private int next() {
+        int c = peek();
+        if (c != -1) {
+            bufferPosition++;
+            position++;
+        }
+        return c;
+    }
+
+    private int skipWhitespace() {
+        int c = peek();
+        while (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+            next();
+            c = peek();
+        }
+        return c;
+    }
+
+    private void expect(char expected) {
+        int c = next();
+        if (c != expected) {
+            throw error("Expected '" + expected + "' but found " + describe(c));
+        }
+    }
+
+    private Object readValue() {
+        int c = skipWhitespace();
+        switch (c) {
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case '"':
+            case '\'':
+                return readString();
+            case 't':
+                readLiteral("true");
+                return Boolean.TRUE;
+            case 'f':
+                readLiteral("false");
+                return Boolean.FALSE;
+            case 'n':
+                readLiteral("null");
+                return null;
+            default:
+                if (c == '-' || c == '+' || c == '.' || (c >= '0' && c <= '9')) {
+                    return readNumber();
+                }
+                throw error("Unexpected " + describe(c));
+        }
+    }
+
+    private Map<String, Object> readObject() {
+        expect('{');
+        Map<String, Object> map = new LinkedHashMap<>();
+        int c = skipWhitespace();
+        while (c != '}') {
+            String key = c == '"' || c == '\''? readString(): readIdentifier();
+            if (skipWhitespace() != ':') {
+                throw error("Expected ':' after the key '" + key + "'");
+            }
+            next();
+            map.put(key, readValue());
+            c = skipWhitespace();
+            if (c == ',') {
+                next();
+                c = skipWhitespace();  //a trailing comma (i.e. followed by '}') is tolerated
+            } else if (c != '}') {
+                throw error("Expected ',' or '}' but found " + describe(c));
+            }
+        }
+        next();
+        return map;
+    }
+
+    private List<Object> readArray() {
+        expect('[');
+        List<Object> list = new ArrayList<>();
+        int c = skipWhitespace();
+        while (c != ']') {
+            list.add(readValue());
+            c = skipWhitespace();
+            if (c == ',') {
+                next();
+                c = skipWhitespace();  //a trailing comma (i.e. followed by ']') is tolerated
+            } else if (c != ']') {
+                throw error("Expected ',' or ']' but found " + describe(c));
+            }
+        }
+        next();
+        return list;
+    }
+
+    private String readString() {
+        int quote = next();
+        StringBuilder sb = scratch;
+        sb.setLength(0);
+        while (true) {
+            int c = next();
+            if (c == quote) {
+                return sb.toString();
+            }
+            switch (c) {
+                case -1:
+                    throw error("Unterminated string");
+                case '\\':
+                    readEscapeSequence(sb);
+                    break;
+                default:
+                    sb.append((char) c);
+            }
+        }
+    }
+
+    private void readEscapeSequence(StringBuilder sb) {
+        int c = next();
+        switch (c) {
+            case 'b': sb.append('\b'); break;
+            case 'f': sb.append('\f'); break;
+            case 'n': sb.append('\n'); break;
+            case 'r': sb.append('\r'); break;
+            case 't': sb.append('\t'); break;
+            case 'u':
+                int codeUnit = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(next(), 16);
+                    if (digit < 0) {
+                        throw error("Invalid unicode escape sequence");
+                    }
+                    codeUnit = (codeUnit << 4) | digit;
+                }
+                sb.append((char) codeUnit);
+                break;
+            case -1:
+                throw error("Unterminated string");
+            default:
+                sb.append((char) c);  //covers \" \' \\ \/ and the redundant escapes
+        }
+    }
+
+    private String readIdentifier() {
+        StringBuilder sb = scratch;
+        sb.setLength(0);
+        int c = peek();
+        while (c != -1 && (Character.isJavaIdentifierPart(c) || c == '-')) {
+            sb.append((char) next());
+            c = peek();
+        }
+        if (sb.length() == 0) {
+            throw error("Expected a key but found " + describe(c));
+        }
+        return sb.toString();
+    }
+
+    private void readLiteral(String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            if (next() != literal.charAt(i)) {
+                throw error("Invalid literal. Expected '" + literal + "'");
+            }
+        }
+    }
+
+    private Number readNumber() {
+        StringBuilder sb = scratch;
+        sb.setLength(0);
+        boolean isDecimal = false;
+        int c = peek();
+        while (c != -1 && ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E')) {
+            isDecimal |= c == '.' || c == 'e' || c == 'E';
+            sb.append((char) next());
+            c = peek();
+        }
+        String number = sb.toString();
+        try {
+            if (!isDecimal) {
+                long l = Long.parseLong(number);
+                if (l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE) {
+                    return (int) l;
+                }
+                return l;
+            }
+            return Double.parseDouble(number);
+        } catch (NumberFormatException nfe) {
+            if (!isDecimal) {
+                try {
+                    return Double.parseDouble(number);  //integral value too big for a long
+                } catch (NumberFormatException nfe2) {
+                    //fall through
+                }
+            }
+            throw error("Invalid number '" + number + "'");
+        }
+    }
+
+    private static String describe(int c) {
+        return c == -1? "end of input": "'" + (char) c + "'";
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + position);
+    }
+}
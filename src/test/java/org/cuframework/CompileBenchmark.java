@@ -0,0 +1,84 @@
+package org.cuframework;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import org.cuframework.core.CompilationUnits;
+import org.cuframework.core.CompiledTemplatesRegistry;
+import org.cuframework.util.UtilityFunctions;
+
+/**
+ * Micro benchmark for the compilation of templates into compilation units. Parses all the templates under
+ * src/test/resources (templates and tests) once and then reports the time taken to compile their top level nodes
+ * repeatedly. The xml parsing is excluded from the measurement.
+ *
+ * Not a unit test (and hence not picked by surefire). Run it directly using its main method after compiling the tests
+ * from the project directory. The number of measured runs can be overridden by passing it as the program argument.
+ *
+ * @author Sidharth Yadav
+ */
+public class CompileBenchmark {
+    private static final String[] TEMPLATE_DIRECTORIES = {"src/test/resources/templates", "src/test/resources/tests"};
+    private static final int DEFAULT_RUNS = 200;
+    private static final int WARMUP_RUNS = 50;
+
+    public static void main(String[] args) throws Exception {
+        int runs = args.length > 0? Integer.parseInt(args[0]): DEFAULT_RUNS;
+        List<Node> nodes = loadNodes();
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            compile(nodes);
+        }
+        int units = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            units += compile(nodes);
+        }
+        long elapsedMicros = (System.nanoTime() - start) / 1_000;
+        System.out.println("templates-nodes=" + nodes.size() + ", runs=" + runs + ", units-compiled=" + units +
+                           ", time=" + elapsedMicros / 1_000 + "ms, time-per-run=" + elapsedMicros / runs + "us");
+    }
+
+    private static List<Node> loadNodes() throws Exception {
+        List<Node> nodes = new ArrayList<>();
+        for (String directory: TEMPLATE_DIRECTORIES) {
+            File[] files = new File(directory).listFiles((dir, name) -> name.endsWith(".xml"));
+            if (files == null) {
+                throw new IllegalStateException("Templates directory not found: " + directory);
+            }
+            Arrays.sort(files);
+            for (File file: files) {
+                try (InputStream in = new FileInputStream(file)) {
+                    //load through the registry once so that the namespaces defined by the templates get registered
+                    CompiledTemplatesRegistry.getInstance().getCompiledTemplate("compile-benchmark-" + file.getName(), in, "/root/*");
+                }
+                try (InputStream in = new FileInputStream(file)) {
+                    NodeList nl = TemplateXPathEngine.getNodes("/root/*", in);
+                    for (int i = 0; i < nl.getLength(); i++) {
+                        nodes.add(nl.item(i));
+                    }
+                }
+            }
+        }
+        return nodes;
+    }
+
+    private static int compile(List<Node> nodes) throws Exception {
+        int compiled = 0;
+        for (Node n: nodes) {
+            CompilationUnits.ICompilationUnit cu =
+                CompilationUnits.getCompilationUnitForTag(n.getNamespaceURI(), UtilityFunctions.getLocalOrNodeName(n));
+            if (cu != null) {
+                cu.compile(n);
+                compiled++;
+            }
+        }
+        return compiled;
+    }
+}
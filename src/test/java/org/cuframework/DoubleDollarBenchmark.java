@@ -0,0 +1,94 @@
+package org.cuframework;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.cuframework.core.CompilationRuntimeContext;
+import org.cuframework.core.CompilationUnits;
+import org.cuframework.core.CompiledTemplate;
+import org.cuframework.core.CompiledTemplatesRegistry;
+import org.cuframework.el.EL;
+import org.cuframework.el.ExpressionRuntimeContext;
+
+/**
+ * Micro benchmark for the $$ (cu value accessor) expressions. Evaluates 1, 2 and 4 level paths ($$v, $$v.a and
+ * $$v.a.b.c) against a unit whose child 'v' returns a nested map, and reports the time taken per evaluation along with
+ * the time taken to get the value of the child directly (i.e. the share of the child's own evaluation).
+ *
+ * Not a unit test (and hence not picked by surefire). Run it directly using its main method after compiling the tests.
+ * The number of evaluations can be overridden by passing it as the program argument.
+ *
+ * @author Sidharth Yadav
+ */
+public class DoubleDollarBenchmark {
+    private static final String[] EXPRESSIONS = {"$$v", "$$v.a", "$$v.a.b.c"};
+    private static final int DEFAULT_EVALUATIONS = 1_000_000;
+    private static final int WARMUP_EVALUATIONS = 200_000;
+
+    public static void main(String[] args) throws Exception {
+        int evaluations = args.length > 0? Integer.parseInt(args[0]): DEFAULT_EVALUATIONS;
+        CompilationUnits.Group group = compileGroup();
+        CompilationRuntimeContext crc = new CompilationRuntimeContext();
+        MapOfMaps mapOfMaps = new MapOfMaps();
+        mapOfMaps.putMap("BENCH-MAP", Collections.singletonMap("v", nest("c", "value", "b", "a")));
+        crc.setExternalContext(mapOfMaps);
+        ExpressionRuntimeContext erc = ExpressionRuntimeContext.newInstance(group, crc);
+        CompilationUnits.IEvaluable child = (CompilationUnits.IEvaluable) group.getChild("v");
+        for (int i = 0; i < WARMUP_EVALUATIONS; i++) {
+            child.getValue(crc);
+        }
+        long directStart = System.nanoTime();
+        for (int i = 0; i < evaluations; i++) {
+            child.getValue(crc);
+        }
+        long directNanos = System.nanoTime() - directStart;
+        System.out.println("direct, evaluations=" + evaluations + ", time=" + directNanos / 1_000_000 +
+                           "ms, time-per-evaluation=" + directNanos / evaluations + "ns");
+        for (String expression: EXPRESSIONS) {
+            EL.Expression parsedExpression = EL.parse(expression);
+            evaluate(parsedExpression, erc, WARMUP_EVALUATIONS);
+            long start = System.nanoTime();
+            Object value = evaluate(parsedExpression, erc, evaluations);
+            long elapsedNanos = System.nanoTime() - start;
+            System.out.println("expression=" + expression + ", evaluations=" + evaluations + ", value=" + value +
+                               ", time=" + elapsedNanos / 1_000_000 + "ms, time-per-evaluation=" +
+                               elapsedNanos / evaluations + "ns");
+        }
+    }
+
+    private static CompilationUnits.Group compileGroup() throws Exception {
+        String template = "<root>" +
+                            "<group id=\"bench\">" +
+                              "<valueof id=\"v\" key=\"v\"><map name=\"BENCH-MAP\"/></valueof>" +
+                            "</group>" +
+                          "</root>";
+        CompiledTemplate mct = CompiledTemplatesRegistry.getInstance()
+                                         .getCompiledTemplate("double-dollar-benchmark",
+                                                              new ByteArrayInputStream(template.getBytes(StandardCharsets.UTF_8)),
+                                                              "/root/*");
+        return CompiledTemplatesRegistry.getInstance().getCompilationUnit(mct, new String[]{"bench"}, CompilationUnits.Group.class);
+    }
+
+    private static Object evaluate(EL.Expression expression, ExpressionRuntimeContext erc, int evaluations) throws Exception {
+        Object value = null;
+        for (int i = 0; i < evaluations; i++) {
+            value = expression.getValue(erc);
+        }
+        return value;
+    }
+
+    //nests the value under the passed keys, the last key being the outermost one
+    private static Map<String, Object> nest(String innermostKey, Object value, String... keys) {
+        Map<String, Object> map = new HashMap<>();
+        map.put(innermostKey, value);
+        for (String key: keys) {
+            Map<String, Object> outerMap = new HashMap<>();
+            outerMap.put(key, map);
+            map = outerMap;
+        }
+        return map;
+    }
+}
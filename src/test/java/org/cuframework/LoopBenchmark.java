@@ -0,0 +1,67 @@
+package org.cuframework;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.cuframework.core.CompilationRuntimeContext;
+import org.cuframework.core.CompilationUnits;
+import org.cuframework.core.CompiledTemplate;
+import org.cuframework.core.CompiledTemplatesRegistry;
+
+/**
+ * Micro benchmark for the consolidation of loop iteration values. Loops over 10k, 100k and 1M iterations, each
+ * iteration producing a small string, and reports the time taken to get the combined value of the loop.
+ *
+ * Not a unit test (and hence not picked by surefire). Run it directly using its main method after compiling the tests.
+ * The loop sizes can be overridden by passing them as the program arguments.
+ *
+ * @author Sidharth Yadav
+ */
+public class LoopBenchmark {
+    private static final int[] DEFAULT_SIZES = {10_000, 100_000, 1_000_000};
+    private static final int WARMUP_RUNS = 2;
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        for (int size: sizes) {
+            CompilationUnits.Loop loop = compileLoop(size);
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                run(loop);
+            }
+            long start = System.nanoTime();
+            Object value = run(loop);
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            System.out.println("iterations=" + size + ", output-length=" + (value != null? value.toString().length(): 0) +
+                               ", time=" + elapsedMillis + "ms");
+        }
+    }
+
+    private static CompilationUnits.Loop compileLoop(int size) throws Exception {
+        String template = "<root>" +
+                            "<loop id=\"bench\">" +
+                              "<using>" +
+                                "<valueof id=\"times\" default=\"" + size + "\"/>" +
+                                "<valueof id=\"itr-joiner\" default=\"&#10;\"/>" +
+                              "</using>" +
+                              "<group>item\t$bench_index</group>" +
+                            "</loop>" +
+                          "</root>";
+        CompiledTemplate mct = CompiledTemplatesRegistry.getInstance()
+                                         .getCompiledTemplate("loop-benchmark-" + size,
+                                                              new ByteArrayInputStream(template.getBytes(StandardCharsets.UTF_8)),
+                                                              "/root/*");
+        return CompiledTemplatesRegistry.getInstance().getCompilationUnit(mct, new String[]{"bench"}, CompilationUnits.Loop.class);
+    }
+
+    private static Object run(CompilationUnits.Loop loop) throws Exception {
+        CompilationRuntimeContext crc = new CompilationRuntimeContext();
+        crc.setExternalContext(new MapOfMaps());
+        return loop.execute(crc);
+    }
+}
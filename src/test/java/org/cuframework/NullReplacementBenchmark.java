@@ -0,0 +1,85 @@
+package org.cuframework;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.management.ThreadMXBean;
+
+import org.cuframework.core.CompilationRuntimeContext;
+import org.cuframework.core.CompilationUnits;
+import org.cuframework.core.CompiledTemplate;
+import org.cuframework.core.CompiledTemplatesRegistry;
+
+/**
+ * Micro benchmark for the null replacements of the EL expressions. Evaluates a unit whose value refers to 8 variables
+ * none of which is set (and hence every reference is resolved off the eval.$.*.null replacement) and reports the bytes
+ * allocated per evaluation along with the bytes allocated by the same unit when all the variables are set (i.e. the
+ * share of the evaluation which doesn't involve the null replacements). The allocations are measured off the thread
+ * allocation counter of the jvm (com.sun.management.ThreadMXBean) which, unlike the timings, doesn't vary with the jit,
+ * the gc or the load on the machine.
+ *
+ * Not a unit test (and hence not picked by surefire). Run it directly using its main method after compiling the tests.
+ * The number of evaluations can be overridden by passing it as the program argument.
+ *
+ * @author Sidharth Yadav
+ */
+public class NullReplacementBenchmark {
+    private static final int VARIABLES = 8;
+    private static final int DEFAULT_EVALUATIONS = 200_000;
+    private static final int WARMUP_EVALUATIONS = 50_000;
+
+    public static void main(String[] args) throws Exception {
+        int evaluations = args.length > 0? Integer.parseInt(args[0]): DEFAULT_EVALUATIONS;
+        ThreadMXBean threadMXBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();  //hotspot (and openj9) specific
+        if (!threadMXBean.isThreadAllocatedMemorySupported()) {
+            throw new UnsupportedOperationException("Thread allocation counter not supported by the jvm");
+        }
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+        for (boolean varsSet: new boolean[]{true, false}) {
+            CompilationUnits.ExecutableGroup group = compileGroup(varsSet);
+            CompilationRuntimeContext crc = new CompilationRuntimeContext();
+            crc.setExternalContext(new MapOfMaps());
+            evaluate(group, crc, WARMUP_EVALUATIONS);
+            long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+            Object value = evaluate(group, crc, evaluations);
+            long allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            System.out.println((varsSet? "vars-set": "null-replaced") + ", evaluations=" + evaluations +
+                               ", value=" + value + ", allocated=" + allocatedBytes / 1024 +
+                               "KB, allocated-per-evaluation=" + allocatedBytes / evaluations + "B");
+        }
+    }
+
+    private static CompilationUnits.ExecutableGroup compileGroup(boolean varsSet) throws Exception {
+        StringBuilder using = new StringBuilder("<get id=\"eval.$.*.null\" default=\"-\"/>");
+        StringBuilder references = new StringBuilder();
+        for (int i = 0; i < VARIABLES; i++) {
+            if (varsSet) {
+                using.append("<get id=\"var").append(i).append("\" default=\"+\"/>");
+            }
+            references.append("$var").append(i).append(';');
+        }
+        String template = "<root>" +
+                            "<executable-group id=\"bench\">" +
+                              "<using>" + using + "</using>" +
+                              "<get id=\"v\">" + references + "</get>" +
+                            "</executable-group>" +
+                          "</root>";
+        String templateUID = "null-replacement-benchmark-" + varsSet;
+        CompiledTemplate mct = CompiledTemplatesRegistry.getInstance()
+                                         .getCompiledTemplate(templateUID,
+                                                              new ByteArrayInputStream(template.getBytes(StandardCharsets.UTF_8)),
+                                                              "/root/*");
+        return CompiledTemplatesRegistry.getInstance().getCompilationUnit(mct, new String[]{"bench"}, CompilationUnits.ExecutableGroup.class);
+    }
+
+    private static Object evaluate(CompilationUnits.ExecutableGroup group, CompilationRuntimeContext crc, int evaluations)
+                                                                                                   throws Exception {
+        Object value = null;
+        for (int i = 0; i < evaluations; i++) {
+            value = group.execute(crc);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,88 @@
+package org.cuframework;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.cuframework.util.AccessorPath;
+import org.cuframework.util.UtilityFunctions;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the nested map lookups done using the accessor paths i.e. the key hierarchies (e.g. 'a.b[2][].c') parsed into
+ * their steps.
+ *
+ * @author Sidharth Yadav
+ */
+public class TestAccessorPath {
+
+    @Test
+    public void keysAndIndicesAreResolved() {
+        Map<String, Object> map = newMap();
+        Assert.assertEquals("v", UtilityFunctions.getValue("a.b.c", map));
+        Assert.assertEquals("y", UtilityFunctions.getValue("list[1]", map));
+        Assert.assertEquals(3, UtilityFunctions.getValue("list[]", map));
+        Assert.assertEquals(2, UtilityFunctions.getValue("array[1][]", map));
+        Assert.assertEquals("q", UtilityFunctions.getValue("array[1][1]", map));
+        Assert.assertEquals("w", UtilityFunctions.getValue("maps[0].k", map));
+        Assert.assertEquals(2, UtilityFunctions.getValue("set[]", map));
+        Assert.assertEquals(1, UtilityFunctions.getValue("a.[]", map));  //size of the map
+        Assert.assertEquals("with space", UtilityFunctions.getValue("key with space", map));
+        Assert.assertEquals("literal", UtilityFunctions.getValue("a=b", map));  //not a key and indices, looked up as is
+    }
+
+    @Test
+    public void brokenHierarchiesResolveToNull() {
+        Map<String, Object> map = newMap();
+        Assert.assertNull(UtilityFunctions.getValue("a.missing.c", map));
+        Assert.assertNull(UtilityFunctions.getValue("list.x", map));  //not a map
+        Assert.assertNull(UtilityFunctions.getValue("set[0]", map));  //unordered collection
+        Assert.assertNull(UtilityFunctions.getValue("a[0]", map));  //a map isn't indexable
+        Assert.assertNull(UtilityFunctions.getValue("a.b.c[0]", map));
+        Assert.assertNull(UtilityFunctions.getValue(null, map));
+        Assert.assertNull(UtilityFunctions.getValue("a", null));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void outOfBoundsIndexFails() {
+        UtilityFunctions.getValue("list[5]", newMap());
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void unparsableIndexFails() {
+        UtilityFunctions.getValue("list[99999999999]", newMap());
+    }
+
+    @Test
+    public void customDelimiterAndSingleEntryLookups() {
+        Map<String, Object> map = newMap();
+        Assert.assertEquals("v", UtilityFunctions.getValue("a/b/c", "/", map));
+        Assert.assertEquals("v", UtilityFunctions.getValue("a.b.c", "\\.", map));
+        Assert.assertSame(AccessorPath.of("a.b", null), AccessorPath.of("a.b", "\\."));  //cached
+
+        AccessorPath path = AccessorPath.parse("list[2]", null);
+        Assert.assertEquals("z", path.getValue("list", map.get("list")));
+        Assert.assertNull(path.getValue("other", map.get("list")));
+        Assert.assertEquals(1, AccessorPath.parse("[]", null).getValue("list", "x"));
+    }
+
+    private static Map<String, Object> newMap() {
+        Map<String, Object> c = new HashMap<>();
+        c.put("c", "v");
+        Map<String, Object> b = new HashMap<>();
+        b.put("b", c);
+        Map<String, Object> map = new HashMap<>();
+        map.put("a", b);
+        map.put("list", Arrays.asList("x", "y", "z"));
+        map.put("array", new Object[]{"p", new String[]{"o", "q"}});
+        map.put("maps", Arrays.asList(Collections.singletonMap("k", "w")));
+        map.put("set", new HashSet<>(Arrays.asList(1, 2)));
+        map.put("key with space", "with space");
+        map.put("a=b", "literal");
+        return map;
+    }
+}
@@ -0,0 +1,227 @@
+package org.cuframework;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.cuframework.core.CompilationRuntimeContext;
+import org.cuframework.core.CompilationUnits;
+import org.cuframework.core.CompiledTemplate;
+import org.cuframework.core.CompiledTemplatesRegistry;
+import org.cuframework.util.ClasspathLoaders;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the sharing of the class loaders created for the classpaths, the order of their urls, their release along with
+ * their owners (e.g. the namespaces), the eviction of the templates using the unloaded namespaces and the bound on the
+ * loaders shared process wide.
+ *
+ * @author Sidharth Yadav
+ */
+public class TestClasspathLoaders {
+    //the parent of the classpath loaders. Doesn't see the test classes and hence these get loaded from the jar.
+    private static final ClassLoader PARENT = ClassLoader.getSystemClassLoader().getParent();
+    private static final String RESOURCE = "cu-loaders-order.txt";
+
+    @Test
+    public void loadersAreSharedPerClasspathAndClosedWithTheirOwners() throws Exception {
+        Path jar = createJar();
+        try {
+            String entry = toEntry(jar);
+            int loaders = ClasspathLoaders.size();
+            Class<?> probe = ClasspathLoaders.forName(Probe.class.getName(), new Object[]{entry}, PARENT, "urn:loaders-a");
+            Assert.assertNotSame(Probe.class, probe);  //loaded off the jar
+            Assert.assertSame(probe, ClasspathLoaders.forName(Probe.class.getName(), new Object[]{" " + entry + " ", null},
+                                                              PARENT, "urn:loaders-b"));
+            Assert.assertEquals(loaders + 1, ClasspathLoaders.size());
+
+            ClasspathLoaders.release("urn:loaders-a");  //still used by the other owner
+            Assert.assertEquals(loaders + 1, ClasspathLoaders.size());
+            Assert.assertSame(probe, ClasspathLoaders.forName(Probe.class.getName(), new Object[]{entry}, PARENT, "urn:loaders-b"));
+
+            CompilationUnits.setCompilationClassForTag("urn:loaders-b", "probe", CompilationUnits.Group.class);
+            Assert.assertTrue(CompilationUnits.unloadNamespace("urn:loaders-b"));
+            Assert.assertFalse(CompilationUnits.unloadNamespace("urn:loaders-b"));
+            Assert.assertEquals(loaders, ClasspathLoaders.size());
+            Assert.assertNotSame(probe, ClasspathLoaders.forName(Probe.class.getName(), new Object[]{entry}, PARENT, "urn:loaders-c"));
+        } finally {
+            ClasspathLoaders.release("urn:loaders-c");
+            Files.delete(jar);
+        }
+    }
+
+    @Test
+    public void nullClasspathLoadsThroughParent() throws Exception {
+        int loaders = ClasspathLoaders.size();
+        Assert.assertSame(Probe.class, ClasspathLoaders.forName(Probe.class.getName(), (Object[]) null,
+                                                                Probe.class.getClassLoader(), null));
+        Assert.assertEquals(loaders, ClasspathLoaders.size());
+    }
+
+    @Test
+    public void unloadingNamespaceEvictsTheTemplatesUsingIt() throws Exception {
+        String namespaceURI = "urn:loaders-unload:" + System.nanoTime();
+        String templateUID = "loaders-unload-" + System.nanoTime();
+        String otherTemplateUID = templateUID + "-other";
+        byte[] template = ("<root xmlns:p=\"" + namespaceURI + "\">" +
+                             "<group id=\"units\"><p:probe id=\"probe\"/><valueof id=\"plain\">1</valueof></group>" +
+                           "</root>").getBytes(StandardCharsets.UTF_8);
+        byte[] otherTemplate = "<root><valueof id=\"plain\">2</valueof></root>".getBytes(StandardCharsets.UTF_8);
+        Path jar = createJar();
+        CompiledTemplatesRegistry registry = CompiledTemplatesRegistry.getInstance();
+        try {
+            ClassLoader parent = new ClassLoader(TestClasspathLoaders.class.getClassLoader()) {
+                @Override
+                protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                    if (name.startsWith(ProbeUnit.class.getName())) {
+                        throw new ClassNotFoundException(name);  //loaded off the jar
+                    }
+                    return super.loadClass(name, resolve);
+                }
+            };
+            Class<?> probeUnit = ClasspathLoaders.forName(ProbeUnit.class.getName(), new Object[]{toEntry(jar)}, parent, namespaceURI);
+            CompilationUnits.setCompilationClassForTag(namespaceURI, "probe", probeUnit.asSubclass(CompilationUnits.ICompilationUnit.class));
+            CompiledTemplate mct = registry.getCompiledTemplate(templateUID, new ByteArrayInputStream(template), "/root/*");
+            CompiledTemplate other = registry.getCompiledTemplate(otherTemplateUID, new ByteArrayInputStream(otherTemplate), "/root/*");
+            Assert.assertSame(probeUnit, getUnits(mct).getChild("probe").getClass());
+
+            Assert.assertTrue(CompilationUnits.unloadNamespace(namespaceURI));  //closes the loader of the probe unit
+            CompiledTemplate recompiled = registry.getCompiledTemplate(templateUID, new ByteArrayInputStream(template), "/root/*");
+            Assert.assertNotSame(mct, recompiled);  //recompiled off its retained source
+            Assert.assertNull(getUnits(recompiled).getChild("probe"));  //the namespace is no longer there
+            Assert.assertEquals("1", evaluate(getUnits(recompiled).getChild("plain")));
+            evaluate(getUnits(recompiled));  //the units loading classes lazily (off the closed loader) would fail here
+            Assert.assertSame(other, registry.getCompiledTemplate(otherTemplateUID, new ByteArrayInputStream(otherTemplate),
+                                                                  "/root/*"));
+        } finally {
+            CompilationUnits.unloadNamespace(namespaceURI);
+            registry.removeCompiledTemplate(templateUID);
+            registry.removeCompiledTemplate(otherTemplateUID);
+            Files.delete(jar);
+        }
+    }
+
+    private static CompilationUnits.Group getUnits(CompiledTemplate mct) {
+        return CompiledTemplatesRegistry.getInstance().getCompilationUnit(mct, new String[]{"units"}, CompilationUnits.Group.class);
+    }
+
+    private static Object evaluate(CompilationUnits.ICompilationUnit cu) throws Exception {
+        CompilationRuntimeContext compilationRuntimeContext = new CompilationRuntimeContext();
+        compilationRuntimeContext.setExternalContext(new MapOfMaps());
+        return ((CompilationUnits.IEvaluable) cu).getValue(compilationRuntimeContext);
+    }
+
+    @Test
+    public void classpathOrderIsKept() throws Exception {
+        Path first = createJar("first");
+        Path second = createJar("second");
+        try {
+            Assert.assertEquals("first", readResource(toEntry(first), toEntry(second)));
+            Assert.assertEquals("second", readResource(toEntry(second), toEntry(first)));
+        } finally {
+            ClasspathLoaders.release("urn:loaders-order");
+            Files.delete(first);
+            Files.delete(second);
+        }
+    }
+
+    @Test
+    public void sharedLoadersAreBounded() throws Exception {
+        Path jar = createJar("shared");
+        try {
+            String entry = toEntry(jar);
+            int loaders = ClasspathLoaders.size();
+            Class<?> eldest = ClasspathLoaders.forName(Probe.class.getName(), new Object[]{entry}, newParent(), null);
+            for (int i = 0; i < ClasspathLoaders.getMaxSharedLoaders(); i++) {  //each parent makes a loader of its own
+                ClasspathLoaders.forName(Probe.class.getName(), new Object[]{entry}, newParent(), null);
+            }
+            Assert.assertTrue(ClasspathLoaders.size() <= loaders + ClasspathLoaders.getMaxSharedLoaders());
+            Assert.assertNotNull(eldest.getClassLoader().getResource(RESOURCE));  //dropped but not closed
+            Assert.assertNotSame(eldest, ClasspathLoaders.forName(Probe.class.getName(), new Object[]{entry},
+                                                                  eldest.getClassLoader().getParent(), null));
+        } finally {
+            Files.delete(jar);
+        }
+    }
+
+    private static ClassLoader newParent() {
+        return new URLClassLoader(new URL[0], PARENT);
+    }
+
+    //reads the resource present in both the jars through the loader of the passed classpath
+    private static String readResource(String... entries) throws Exception {
+        Map<String, Object> classpath = new LinkedHashMap<>();
+        for (int i = 0; i < entries.length; i++) {
+            classpath.put("cp" + i, entries[i]);
+        }
+        ClassLoader loader = ClasspathLoaders.getClassLoader(classpath, PARENT, "urn:loaders-order");
+        try (InputStream in = loader.getResourceAsStream(RESOURCE)) {
+            byte[] content = new byte[64];
+            int length = in.read(content);
+            return new String(content, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String toEntry(Path jar) {
+        return jar.toAbsolutePath().toString().replace('\\', '/').replaceFirst("^/", "");
+    }
+
+    private static Path createJar() throws Exception {
+        return createJar(null);
+    }
+
+    //creates a jar holding the probe classes and, if passed, the resource with the passed content
+    private static Path createJar(String resourceContent) throws Exception {
+        Path jar = Files.createTempFile("cu-loaders", ".jar");
+        Manifest manifest = new Manifest();  //the classpath resolution reads the manifest of the jar
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        try (OutputStream out = Files.newOutputStream(jar);
+             JarOutputStream jarOut = new JarOutputStream(out, manifest)) {
+            for (Class<?> clazz: new Class<?>[]{Probe.class, ProbeUnit.class, ProbeUnit.Lazy.class}) {
+                String classFile = clazz.getName().replace('.', '/') + ".class";
+                try (InputStream in = clazz.getClassLoader().getResourceAsStream(classFile)) {
+                    jarOut.putNextEntry(new JarEntry(classFile));
+                    byte[] buffer = new byte[4096];
+                    for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                        jarOut.write(buffer, 0, read);
+                    }
+                    jarOut.closeEntry();
+                }
+            }
+            if (resourceContent != null) {
+                jarOut.putNextEntry(new JarEntry(RESOURCE));
+                jarOut.write(resourceContent.getBytes(StandardCharsets.UTF_8));
+                jarOut.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    public static class Probe {
+    }
+
+    //unit loading a class (off its jar) only when evaluated
+    public static class ProbeUnit extends CompilationUnits.ValueOf {
+        @Override
+        protected Object doGetValue(CompilationRuntimeContext compilationRuntimeContext) {
+            return Lazy.VALUE;
+        }
+
+        static class Lazy {
+            static final String VALUE = new String("lazy");  //not a constant so that the class gets loaded
+        }
+    }
+}
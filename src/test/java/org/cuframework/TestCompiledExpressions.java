@@ -0,0 +1,74 @@
+package org.cuframework;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.cuframework.core.CompilationRuntimeContext;
+import org.cuframework.core.CompilationUnits;
+import org.cuframework.core.CompiledTemplate;
+import org.cuframework.core.CompiledTemplatesRegistry;
+import org.cuframework.el.EL;
+import org.cuframework.el.ExpressionRuntimeContext;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests that the interpreted and the compiled expressions evaluate to the same values. The default test run evaluates
+ * the expressions below in the interpreter while the 'compiled-expressions' run (see pom.xml) evaluates them, along with
+ * the cunit test suites, with 'cus.el.compilation.threshold' set to 1 i.e. in their compiled form.
+ *
+ * @author Sidharth Yadav
+ */
+public class TestCompiledExpressions {
+    private static final Object[][] EXPRESSIONS = {
+        {"$TEST-MAP:s;", "a,b,c"},
+        {"[$TEST-MAP:s;]", "[a,b,c]"},
+        {"$TEST-MAP:missing;", null},
+        {"$$$int($$$length($TEST-MAP:s))", 5},
+        {"$$$:length($TEST-MAP:s)", 5},  //resolved in the root namespace
+        {"$$$isnull($TEST-MAP:missing)", true},
+        {"$$$not($$$true())", false},
+        {"$$$sum(1, 2, 3)", 6},
+        {"$$$ifelse($$$isnull($TEST-MAP:missing), yes, no)", "yes"},
+        {"$$$tolist($$$array($TEST-MAP:s, $TEST-MAP:missing))", Arrays.asList("a,b,c", null)},
+        {"$($TEST-MAP:expr);", "a,b,c"},
+        {"$$$unknown-function($TEST-MAP:s)", null},
+    };
+
+    @Test
+    public void interpretedAndCompiledExpressionsEvaluateAlike() throws Exception {
+        String templateUID = "compiled-expressions-" + System.nanoTime();
+        String template = "<root><group id=\"g\"/></root>";
+        CompiledTemplatesRegistry registry = CompiledTemplatesRegistry.getInstance();
+        CompiledTemplate mct = registry.getCompiledTemplate(templateUID,
+                                                            new ByteArrayInputStream(template.getBytes(StandardCharsets.UTF_8)),
+                                                            "/root/*");
+        try {
+            CompilationUnits.Group group = registry.getCompilationUnit(mct, new String[]{"g"}, CompilationUnits.Group.class);
+            CompilationRuntimeContext crc = new CompilationRuntimeContext();
+            MapOfMaps mapOfMaps = new MapOfMaps();
+            Map<String, Object> testMap = new HashMap<>();
+            testMap.put("s", "a,b,c");
+            testMap.put("expr", "$TEST-MAP:s");
+            mapOfMaps.putMap("TEST-MAP", testMap);
+            crc.setExternalContext(mapOfMaps);
+            ExpressionRuntimeContext erc = ExpressionRuntimeContext.newInstance(group, crc);
+
+            for (Object[] expressionAndValue: EXPRESSIONS) {
+                EL.Expression expression = EL.parse((String) expressionAndValue[0]);
+                for (int i = 0; i < 3; i++) {  //crosses the compilation threshold, if enabled
+                    Assert.assertEquals("Value of " + expressionAndValue[0] + " (compilation threshold: " +
+                                                                                EL.getCompilationThresholdValue() + ")",
+                                        expressionAndValue[1],
+                                        expression.getValue(erc));
+                }
+            }
+        } finally {
+            registry.removeCompiledTemplate(templateUID);
+        }
+    }
+}
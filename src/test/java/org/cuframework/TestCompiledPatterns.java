@@ -0,0 +1,155 @@
+package org.cuframework;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.cuframework.core.CompilationRuntimeContext;
+import org.cuframework.core.CompilationUnits;
+import org.cuframework.core.CompiledTemplate;
+import org.cuframework.core.CompiledTemplatesRegistry;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the extraction expressions (the plain text ones being split without the regex machinery) against splitting and
+ * matching using the compiled regex directly, and the formatting of the values using the cached message formats from
+ * multiple threads at once.
+ *
+ * @author Sidharth Yadav
+ */
+public class TestCompiledPatterns {
+    private static final String[] DELIMITERS = {",", "::", "\t", "\\t", "\\n", "\\|", "\\.", "\\\\", "\\$", "\\(", "\\[",
+                                                "a", "|", ".", "\\s", "\\s+", "[,;]", ",|;", "\\Q.\\E", "\\d", "^", "$",
+                                                "(,)", "x*"};
+    private static final String[] VALUES = {"", "a", ",", ",,", ",a", "a,", "a,,b", ",a,b,", "a::b:::c", "::", "a\tb\t",
+                                            "\ta", "a\nb", "x|y|", "|x", "a.b.", "...", "\\a\\", "$a$", "(a(", "[a[",
+                                            " a  b ", "a;b,c", "1a2", "aaa"};
+    private static final String MESSAGE_FORMAT = "{0}: {1,number,#.##} {2,date,yyyy-MM-dd HH:mm:ss.SSS} ''{3}''";
+    private static final int THREADS = 8;
+    private static final int FORMATS_PER_THREAD = 2_000;
+
+    @Test
+    public void extractionSplitsAsTheRegex() throws Exception {
+        StringBuilder units = new StringBuilder();
+        for (int i = 0; i < DELIMITERS.length; i++) {
+            units.append("<valueof id=\"split-").append(i).append("\" key=\"value\" extractionExpression=\"")
+                 .append(escape(DELIMITERS[i])).append("\"><map name=\"PATTERNS-MAP\"/></valueof>");
+        }
+        CompilationUnits.Group group = compile("compiled-patterns-split", units.toString());
+        try {
+            for (int i = 0; i < DELIMITERS.length; i++) {
+                CompilationUnits.IEvaluable unit = (CompilationUnits.IEvaluable) group.getChild("split-" + i);
+                for (String value: VALUES) {
+                    String[] expected = Pattern.compile(DELIMITERS[i]).split(value, -1);
+                    Object tokens = unit.getValue(newContext(value));
+                    Assert.assertArrayEquals("'" + value + "' split around '" + DELIMITERS[i] + "' as " + Arrays.toString((Object[]) tokens),
+                                             expected, (Object[]) tokens);
+                }
+            }
+        } finally {
+            CompiledTemplatesRegistry.getInstance().removeCompiledTemplate("compiled-patterns-split");
+        }
+    }
+
+    @Test
+    public void extractionReturnsTheMatcherGroup() throws Exception {
+        String regex = "(\\w+)\\.(\\d+)";
+        String units = "<valueof id=\"group-0\" key=\"value\" matcherGroup=\"0\" extractionExpression=\"" + regex + "\">" +
+                         "<map name=\"PATTERNS-MAP\"/>" +
+                       "</valueof>" +
+                       "<valueof id=\"group-2\" key=\"value\" matcherGroup=\"2\" extractionExpression=\"" + regex + "\">" +
+                         "<map name=\"PATTERNS-MAP\"/>" +
+                       "</valueof>";
+        CompilationUnits.Group group = compile("compiled-patterns-group", units);
+        try {
+            for (String value: new String[]{"v.12", "x v.12 w.3", "v.", "", "a.b.7"}) {
+                for (int matcherGroup: new int[]{0, 2}) {
+                    Matcher matcher = Pattern.compile(regex).matcher(value);
+                    String expected = matcher.find()? matcher.group(matcherGroup): null;
+                    CompilationUnits.IEvaluable unit = (CompilationUnits.IEvaluable) group.getChild("group-" + matcherGroup);
+                    Assert.assertEquals(value, expected, unit.getValue(newContext(value)));
+                }
+            }
+        } finally {
+            CompiledTemplatesRegistry.getInstance().removeCompiledTemplate("compiled-patterns-group");
+        }
+    }
+
+    @Test
+    public void cachedMessageFormatIsSafeToUseConcurrently() throws Exception {
+        String units = "<valueof id=\"formatted\" key=\"value\" messageFormat=\"" + escape(MESSAGE_FORMAT) + "\">" +
+                         "<map name=\"PATTERNS-MAP\"/>" +
+                       "</valueof>";
+        CompilationUnits.Group group = compile("compiled-patterns-format", units);
+        CompilationUnits.IEvaluable unit = (CompilationUnits.IEvaluable) group.getChild("formatted");
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                results.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        start.await();
+                        for (int i = 0; i < FORMATS_PER_THREAD; i++) {
+                            Object[] args = {"thread-" + thread, i * 1.25 + thread, new Date(thread * 86_400_000_000L + i * 7_777L),
+                                             i};
+                            Assert.assertEquals(new MessageFormat(MESSAGE_FORMAT).format(args),
+                                                unit.getValue(newContext(args)));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Void> result: results) {
+                result.get();  //rethrows (wrapped inside ExecutionException) the failure of any of the threads
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            CompiledTemplatesRegistry.getInstance().removeCompiledTemplate("compiled-patterns-format");
+        }
+    }
+
+    private static CompilationUnits.Group compile(String templateUID, String units) throws Exception {
+        String template = "<root><group id=\"patterns\">" + units + "</group></root>";
+        CompiledTemplate mct = CompiledTemplatesRegistry.getInstance()
+                                         .getCompiledTemplate(templateUID,
+                                                              new ByteArrayInputStream(template.getBytes(StandardCharsets.UTF_8)),
+                                                              "/root/*");
+        return CompiledTemplatesRegistry.getInstance().getCompilationUnit(mct, new String[]{"patterns"},
+                                                                          CompilationUnits.Group.class);
+    }
+
+    private static CompilationRuntimeContext newContext(Object value) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("value", value);
+        MapOfMaps mapOfMaps = new MapOfMaps();
+        mapOfMaps.putMap("PATTERNS-MAP", map);
+        CompilationRuntimeContext compilationRuntimeContext = new CompilationRuntimeContext();
+        compilationRuntimeContext.setExternalContext(mapOfMaps);
+        return compilationRuntimeContext;
+    }
+
+    private static String escape(String attributeValue) {
+        return attributeValue.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;")
+                             .replace("\t", "&#9;").replace("\n", "&#10;");
+    }
+}
@@ -0,0 +1,436 @@
+package org.cuframework;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cuframework.core.CompilationRuntimeContext;
+import org.cuframework.core.CompiledTemplate;
+import org.cuframework.core.CompiledTemplatesRegistry;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the loading of the templates by the compiled templates registry i.e. the single flight compilation of the
+ * templates requested concurrently (including the ones loading each other), the parallel warm up of the templates and
+ * the bounded eviction of the cached ones (and of the sources retained to recompile them). Also tests the concurrent
+ * processing of the extensions of the shared templates.
+ *
+ * @author Sidharth Yadav
+ */
+public class TestCompiledTemplatesRegistry {
+    private static final int THREADS = 16;
+    private static final String TEMPLATE = "<root><group id=\"single-flight\"><valueof id=\"v\" default=\"1\"/></group></root>";
+
+    @Test
+    public void concurrentCallersShareOneCompilation() throws Exception {
+        String templateUID = "single-flight-" + System.nanoTime();
+        AtomicInteger streamsRead = new AtomicInteger();
+        List<Object> compiled = getConcurrently(templateUID, TEMPLATE, streamsRead);
+        try {
+            Assert.assertEquals("The template should have been compiled just once", 1, streamsRead.get());
+            for (Object mct: compiled) {
+                Assert.assertSame(compiled.get(0), mct);
+            }
+        } finally {
+            CompiledTemplatesRegistry.getInstance().removeCompiledTemplate(templateUID);
+        }
+    }
+
+    @Test
+    public void failedCompilationIsSharedButNotCached() throws Exception {
+        String templateUID = "single-flight-failure-" + System.nanoTime();
+        AtomicInteger streamsRead = new AtomicInteger();
+        List<Object> outcomes = getConcurrently(templateUID, "<root><group>", streamsRead);
+        Assert.assertEquals("The template should have been compiled just once", 1, streamsRead.get());
+        for (Object outcome: outcomes) {
+            Assert.assertTrue("Expected the failure but got " + outcome, outcome instanceof TemplateCompilationException);
+        }
+        CompiledTemplate mct = CompiledTemplatesRegistry.getInstance().getCompiledTemplate(
+                                      templateUID, new ByteArrayInputStream(TEMPLATE.getBytes(StandardCharsets.UTF_8)), "/root/*");
+        try {
+            Assert.assertEquals(1, mct.getCompilationUnits().length);  //the failure wasn't cached
+        } finally {
+            CompiledTemplatesRegistry.getInstance().removeCompiledTemplate(templateUID);
+        }
+    }
+
+    @Test
+    public void crossThreadLoadCycleDoesNotDeadlock() throws Exception {
+        String prefix = "load-cycle-" + System.nanoTime() + "-";
+        CountDownLatch bothLoading = new CountDownLatch(2);
+        ExecutorService executor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);  //a deadlocked thread shouldn't keep the jvm alive
+            return thread;
+        });
+        try {
+            //the thread loading A needs B (while being read, its stream asks for B) and the one loading B needs A
+            Future<CompiledTemplate> a = executor.submit(() -> getInMemory(prefix + "A",
+                                                                           new CyclicStream(prefix + "B", bothLoading)));
+            Future<CompiledTemplate> b = executor.submit(() -> getInMemory(prefix + "B",
+                                                                           new CyclicStream(prefix + "A", bothLoading)));
+            Assert.assertEquals(1, a.get(30, TimeUnit.SECONDS).getCompilationUnits().length);
+            Assert.assertEquals(1, b.get(30, TimeUnit.SECONDS).getCompilationUnits().length);
+            Assert.assertSame(a.get(), CompiledTemplatesRegistry.getInstance().getCompiledTemplate(prefix + "A"));
+            Assert.assertSame(b.get(), CompiledTemplatesRegistry.getInstance().getCompiledTemplate(prefix + "B"));
+        } finally {
+            executor.shutdownNow();
+            CompiledTemplatesRegistry.getInstance().removeCompiledTemplate(prefix + "A");
+            CompiledTemplatesRegistry.getInstance().removeCompiledTemplate(prefix + "B");
+        }
+    }
+
+    @Test
+    public void streamsOfTheCachedTemplatesAreClosed() throws Exception {
+        String templateUID = "closed-streams-" + System.nanoTime();
+        try {
+            getInMemory(templateUID);
+            boolean[] closed = {false};
+            CompiledTemplatesRegistry.getInstance().getCompiledTemplate(templateUID, new ByteArrayInputStream(new byte[0]) {
+                @Override
+                public void close() {
+                    closed[0] = true;
+                }
+            }, "/root/*");
+            Assert.assertTrue("The stream of the cached template wasn't closed", closed[0]);
+        } finally {
+            CompiledTemplatesRegistry.getInstance().removeCompiledTemplate(templateUID);
+        }
+    }
+
+    @Test
+    public void warmUpCompilesAllTemplatesOfLookupDirectory() throws Exception {
+        CompiledTemplatesRegistry registry = CompiledTemplatesRegistry.getInstance();
+        String savedLookupDir = registry.getPrimaryLookupDirectory();
+        String lookupDir = "src/test/resources/templates/";
+        registry.setPrimaryLookupDirectory(lookupDir);
+        List<CompiledTemplatesRegistry.WarmUpTiming> timings = null;
+        try {
+            timings = registry.warmUpLookupDirectory(4);
+            File[] templates = new File(lookupDir).listFiles((dir, name) -> name.endsWith(".xml"));
+            Assert.assertEquals(templates.length, timings.size());
+            for (CompiledTemplatesRegistry.WarmUpTiming timing: timings) {
+                Assert.assertNull(timing.toString(), timing.getFailure());
+                Assert.assertSame(registry.getCompiledTemplate(timing.getTemplateFile()),
+                                  registry.getCompiledTemplate(timing.getTemplateFile()));
+            }
+        } finally {
+            if (timings != null) {
+                for (CompiledTemplatesRegistry.WarmUpTiming timing: timings) {
+                    registry.removeCompiledTemplate(timing.getTemplateFile());
+                }
+            }
+            registry.setPrimaryLookupDirectory(savedLookupDir);
+        }
+    }
+
+    @Test
+    public void leastRecentlyAccessedTemplatesAreEvictedUnlessPinned() throws Exception {
+        CompiledTemplatesRegistry registry = CompiledTemplatesRegistry.getInstance();
+        String prefix = "bounded-cache-" + System.nanoTime() + "-";
+        registry.pinTemplate(prefix + 0);
+        try {
+            getInMemory(prefix + 0);
+            registry.configureCache(1, 0, 0);  //evicts all but the pinned template
+            Assert.assertEquals(1, registry.getCacheStatistics().getSize());
+            registry.configureCache(3, 0, 0);
+            getInMemory(prefix + 1);
+            getInMemory(prefix + 2);
+            getInMemory(prefix + 1);  //accessed later than 2
+            long evictions = registry.getCacheStatistics().getEvictions();
+            getInMemory(prefix + 3);  //evicts 2
+            Assert.assertEquals(evictions + 1, registry.getCacheStatistics().getEvictions());
+            Assert.assertEquals(3, registry.getCacheStatistics().getSize());
+            CompiledTemplatesRegistry.CacheStatistics statistics = registry.getCacheStatistics();
+            Assert.assertNotNull(registry.getCompiledTemplate(prefix + 0));  //pinned
+            Assert.assertNotNull(registry.getCompiledTemplate(prefix + 1));
+            Assert.assertEquals(statistics.getHits() + 2, registry.getCacheStatistics().getHits());
+
+            //the evicted template is recompiled off its retained source, even if asked for as a file
+            CompiledTemplate mct = registry.getCompiledTemplate(prefix + 2);
+            Assert.assertEquals(statistics.getMisses() + 1, registry.getCacheStatistics().getMisses());
+            Assert.assertEquals(1, mct.getCompilationUnits().length);
+        } finally {
+            registry.configureCache(0, 0, 0);
+            registry.unpinTemplate(prefix + 0);
+            for (int i = 0; i < 4; i++) {
+                registry.removeCompiledTemplate(prefix + i);
+            }
+        }
+    }
+
+    @Test
+    public void idleTemplatesExpire() throws Exception {
+        CompiledTemplatesRegistry registry = CompiledTemplatesRegistry.getInstance();
+        String templateUID = "idle-" + System.nanoTime();
+        CompiledTemplate mct = getInMemory(templateUID);
+        try {
+            registry.configureCache(0, 0, 100);
+            Thread.sleep(200);
+            CompiledTemplate recompiled = registry.getCompiledTemplate(templateUID);
+            Assert.assertNotSame("The idle template should have been evicted", mct, recompiled);
+            Assert.assertSame(recompiled, registry.getCompiledTemplate(templateUID));
+        } finally {
+            registry.configureCache(0, 0, 0);
+            registry.removeCompiledTemplate(templateUID);
+        }
+    }
+
+    @Test
+    public void templatesAreEvictedByWeight() throws Exception {
+        CompiledTemplatesRegistry registry = CompiledTemplatesRegistry.getInstance();
+        String templateUID = "weighted-" + System.nanoTime();
+        try {
+            getInMemory(templateUID);
+            Assert.assertTrue(registry.getCacheStatistics().getWeight() >= TEMPLATE.length());
+            registry.configureCache(0, 1, 0);
+            Assert.assertEquals(0, registry.getCacheStatistics().getWeight());
+        } finally {
+            registry.configureCache(0, 0, 0);
+            registry.removeCompiledTemplate(templateUID);
+        }
+    }
+
+    @Test
+    public void retainedSourcesCountTowardsTheBounds() throws Exception {
+        CompiledTemplatesRegistry registry = CompiledTemplatesRegistry.getInstance();
+        String prefix = "bounded-sources-" + System.nanoTime() + "-";
+        long templateWeight = TEMPLATE.getBytes(StandardCharsets.UTF_8).length;  //the source weighs the same
+        try {
+            registry.configureCache(0, 3 * templateWeight, 0);
+            getInMemory(prefix + 0);
+            getInMemory(prefix + 1);  //evicts 0 but retains its source
+            Assert.assertEquals(3 * templateWeight, registry.getCacheStatistics().getWeight());
+            getInMemory(prefix + 2);  //drops the source of 0 first and then evicts 1 (retaining its source)
+            Assert.assertEquals(1, registry.getCacheStatistics().getSize());
+            Assert.assertEquals(3 * templateWeight, registry.getCacheStatistics().getWeight());
+            assertNotRecompilable(prefix + 0);
+
+            registry.configureCache(2, 0, 0);
+            for (int i = 3; i < 7; i++) {
+                getInMemory(prefix + i);  //evicts 1 (already), 2, 3 and 4 retaining the sources of the latest 2 only
+            }
+            Assert.assertEquals(2, registry.getCacheStatistics().getSize());
+            assertNotRecompilable(prefix + 2);
+            Assert.assertEquals(1, registry.getCompiledTemplate(prefix + 4).getCompilationUnits().length);
+        } finally {
+            registry.configureCache(0, 0, 0);
+            for (int i = 0; i < 7; i++) {
+                registry.removeCompiledTemplate(prefix + i);
+            }
+        }
+    }
+
+    @Test
+    public void boundedCacheIsSafeToUseConcurrently() throws Exception {
+        CompiledTemplatesRegistry registry = CompiledTemplatesRegistry.getInstance();
+        String prefix = "bounded-concurrent-" + System.nanoTime() + "-";
+        int templates = 64;
+        int maxEntries = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            registry.configureCache(maxEntries, 0, 60_000);
+            List<Future<Void>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final int thread = t;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 500; i++) {
+                        CompiledTemplate mct = getInMemory(prefix + (i * 7 + thread) % templates);
+                        Assert.assertEquals(1, mct.getCompilationUnits().length);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<Void> result: results) {
+                result.get();
+            }
+            Assert.assertTrue(registry.getCacheStatistics().getSize() <= maxEntries);
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            registry.configureCache(0, 0, 0);
+            for (int i = 0; i < templates; i++) {
+                registry.removeCompiledTemplate(prefix + i);
+            }
+        }
+    }
+
+    @Test
+    public void extensionsOfSharedTemplatesAreProcessedConcurrently() throws Exception {
+        CompiledTemplatesRegistry registry = CompiledTemplatesRegistry.getInstance();
+        String prefix = "concurrent-extensions-" + System.nanoTime() + "-";
+        String baseUID = prefix + "base";
+        int derivedTemplates = 8;
+        getInMemory(baseUID, new ByteArrayInputStream(("<root>" +
+                                                          "<group id=\"base\" inherited=\"yes\"><valueof id=\"b\" default=\"1\"/>" +
+                                                            "<group id=\"inner\"><extends default=\"" + baseUID + "#mixin\"/></group>" +
+                                                          "</group>" +
+                                                          "<group id=\"mixin\"><valueof id=\"m\" default=\"2\"/></group>" +
+                                                        "</root>").getBytes(StandardCharsets.UTF_8)));
+        List<CompiledTemplate> derived = new ArrayList<>();
+        for (int i = 0; i < derivedTemplates; i++) {
+            derived.add(getInMemory(prefix + i, new ByteArrayInputStream(("<root><group id=\"derived\">" +
+                                                                            "<extends default=\"" + baseUID + "#base\"/>" +
+                                                                            "<valueof id=\"d\" default=\"3\"/>" +
+                                                                          "</group></root>").getBytes(StandardCharsets.UTF_8))));
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                results.add(executor.submit(() -> {
+                    CompilationRuntimeContext compilationRuntimeContext = new CompilationRuntimeContext();
+                    compilationRuntimeContext.setExternalContext(new MapOfMaps());
+                    start.await();
+                    for (int i = 0; i < derivedTemplates; i++) {
+                        CompiledTemplate processed = registry.processExtensions(derived.get((i + thread) % derivedTemplates),
+                                                                                compilationRuntimeContext);
+                        for (String[] idTrail: new String[][]{{"derived", "b"}, {"derived", "d"}, {"derived", "inner", "m"}}) {
+                            Assert.assertNotNull(String.join("/", idTrail) + " is missing",
+                                                 processed.findCompilationUnit(idTrail));
+                        }
+                        Assert.assertEquals("yes", processed.findCompilationUnit(new String[]{"derived"}).getAttribute("inherited"));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<Void> result: results) {
+                result.get();
+            }
+            for (CompiledTemplate mct: derived) {
+                Assert.assertTrue(mct.extensionsProcessed());
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            registry.removeCompiledTemplate(baseUID);
+            for (int i = 0; i < derivedTemplates; i++) {
+                registry.removeCompiledTemplate(prefix + i);
+            }
+        }
+    }
+
+    //the template is neither cached nor has its source retained i.e. it can only be looked up as a file
+    private static void assertNotRecompilable(String templateUID) throws Exception {
+        try {
+            CompiledTemplatesRegistry.getInstance().getCompiledTemplate(templateUID);
+            Assert.fail(templateUID + " should have been evicted along with its source");
+        } catch (FileNotFoundException | TemplateCompilationException e) {
+            //expected
+        }
+    }
+
+    private static CompiledTemplate getInMemory(String templateUID) throws Exception {
+        return getInMemory(templateUID, new ByteArrayInputStream(TEMPLATE.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static CompiledTemplate getInMemory(String templateUID, InputStream in) throws Exception {
+        return CompiledTemplatesRegistry.getInstance().getCompiledTemplate(templateUID, in, "/root/*");
+    }
+
+    //requests the template from multiple threads at once and returns what each of them got (the template or the failure).
+    //Every thread passes a stream of its own which is slow to read so that all of them ask while the template is in flight.
+    private static List<Object> getConcurrently(String templateUID, String template, AtomicInteger streamsRead)
+                                                                                                   throws Exception {
+        byte[] content = template.getBytes(StandardCharsets.UTF_8);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                results.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        start.await();
+                        try {
+                            return CompiledTemplatesRegistry.getInstance().getCompiledTemplate(
+                                                  templateUID, new SlowStream(content, streamsRead), "/root/*");
+                        } catch (TemplateCompilationException tce) {
+                            return tce;
+                        }
+                    }
+                }));
+            }
+            start.countDown();
+            List<Object> outcomes = new ArrayList<>();
+            for (Future<Object> result: results) {
+                outcomes.add(result.get());
+            }
+            return outcomes;
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    //stream of the template which, when first read, waits for the other loading thread to be reading its stream as well
+    //and then loads the other template (i.e. the template being read depends upon the other one)
+    private static final class CyclicStream extends ByteArrayInputStream {
+        private final String otherTemplateUID;
+        private final CountDownLatch bothLoading;
+        private boolean read = false;
+
+        private CyclicStream(String otherTemplateUID, CountDownLatch bothLoading) {
+            super(TEMPLATE.getBytes(StandardCharsets.UTF_8));
+            this.otherTemplateUID = otherTemplateUID;
+            this.bothLoading = bothLoading;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            if (!read) {
+                read = true;
+                bothLoading.countDown();
+                try {
+                    bothLoading.await();
+                    getInMemory(otherTemplateUID);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return super.read(b, off, len);
+        }
+    }
+
+    private static final class SlowStream extends ByteArrayInputStream {
+        private final AtomicInteger streamsRead;
+        private boolean read = false;
+
+        private SlowStream(byte[] content, AtomicInteger streamsRead) {
+            super(content);
+            this.streamsRead = streamsRead;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            if (!read) {
+                read = true;
+                streamsRead.incrementAndGet();
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.read(b, off, len);
+        }
+    }
+}
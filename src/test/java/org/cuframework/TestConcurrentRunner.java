@@ -0,0 +1,101 @@
+package org.cuframework;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.cuframework.core.CompiledTemplatesRegistry;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Stress test runner which executes the cunit tests concurrently from multiple threads. All the threads share
+ * the same compiled templates (cached inside the compiled templates registry), hence the test would fail if any
+ * per evaluation state leaks into the shared compilation units. The templates are evicted from the registry beforehand
+ * and the threads start together, so the compilation and the extensions processing of the templates (and the first
+ * executions of the units) race too.
+ *
+ * The number of threads and the number of runs per thread can be controlled using the 'cu.stress.threads' and
+ * 'cu.stress.iterations' system properties.
+ *
+ * @author Sidharth Yadav
+ */
+public class TestConcurrentRunner extends TestRunner {
+    private static final int THREADS = Integer.getInteger("cu.stress.threads", 8);
+    private static final int ITERATIONS = Integer.getInteger("cu.stress.iterations", 5);
+    private static final String RESOURCES_DIR = "./src/test/resources/tests/";
+
+    private static File[] testDefinitions = null;
+
+    @BeforeClass
+    public static void findTestDefinitions() {
+        String cuLookupDir = System.getProperty(SYS_PROP_CU_DIR) != null?
+                                      System.getProperty(SYS_PROP_CU_DIR): RESOURCES_DIR;
+        testDefinitions = new File(cuLookupDir).listFiles(new FileFilter() {
+            public boolean accept(File f) {
+                return f.getName().endsWith(".xml");
+            }
+        });
+    }
+
+    @Test
+    @Override
+    public void runCunitTests() throws Exception {
+        if (testDefinitions == null || testDefinitions.length == 0) {
+            log("info", "run-cunit-tests-concurrently", "No tests to run");
+            return;
+        }
+
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final int offset = t;
+                results.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        start.await();
+                        for (int i = 0; i < ITERATIONS; i++) {
+                            for (int j = 0; j < testDefinitions.length; j++) {
+                                //every thread starts from a different test to maximize the overlap
+                                run(testDefinitions[(j + offset) % testDefinitions.length].getName());
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Void> result : results) {
+                result.get();  //rethrows (wrapped inside ExecutionException) the failure of any of the threads
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    @Override
+    protected void doInit() {
+        super.doInit();
+        evictCompiledTemplates();  //the templates compiled by the other runners (if any) would otherwise be shared as is
+    }
+
+    private static void evictCompiledTemplates() {
+        for (String directory: new String[]{"tests", "templates"}) {
+            File[] files = new File("src/test/resources", directory).listFiles();
+            for (File file: files != null? files: new File[0]) {
+                CompiledTemplatesRegistry.getInstance().removeCompiledTemplate(file.getName());
+                CompiledTemplatesRegistry.getInstance().removeCompiledTemplate("../templates/" + file.getName());
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package org.cuframework;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+
+import org.cuframework.core.CompilationRuntimeContext;
+import org.cuframework.core.CompilationUnits;
+import org.cuframework.core.CompiledTemplate;
+import org.cuframework.core.CompiledTemplatesRegistry;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the evaluation of the meta expressions of the conditionals against the xpath evaluation they originally did
+ * (i.e. the condition ids replaced by the outcomes of the conditions and the resulting text evaluated as xpath), on the
+ * table driven cases as well as on the randomly generated expressions, and checks that the conditions not needed for
+ * the outcome are not evaluated.
+ *
+ * @author Sidharth Yadav
+ */
+public class TestConditionalExpression {
+    private static final String[] CONDITION_IDS = {"1", "2", "3"};
+    private static final String[] CONDITION_VALUES = {"true", "false", null};  //null i.e. the condition's value is missing
+    private static final String[] EXPRESSIONS = {
+        "1", "not(1)", "true()", "false()", "1 and 2", "1 or 2", "1 and 2 or 3", "1 or 2 and 3", "(1 or 2) and 3",
+        "1 and (2 or 3)", "not(1 and 2)", "not(1) or not(2)", "not(not(1))", "1 and not(2 or 3)", " 1  and\n2 ",
+        "((1))", "true() and 1", "false() or 2", "1 or 2 or 3", "1 and 2 and 3",
+        "1 and 9", "1 = 2", "count(1) > 0", "1 and", "or 1", "(1", "not 1", ""};  //the ones beyond the compiled subset too
+    private static final int RANDOM_EXPRESSIONS = 300;
+
+    @Test
+    public void tableDrivenExpressionsEvaluateAsXPath() throws Exception {
+        assertSameAsXPath(EXPRESSIONS, "conditional-expressions");
+    }
+
+    @Test
+    public void randomExpressionsEvaluateAsXPath() throws Exception {
+        Random random = new Random(11);
+        String[] expressions = new String[RANDOM_EXPRESSIONS];
+        for (int i = 0; i < expressions.length; i++) {
+            expressions[i] = randomExpression(random, 4);
+        }
+        assertSameAsXPath(expressions, "random-conditional-expressions");
+    }
+
+    @Test
+    public void andOrShortCircuit() throws Exception {
+        String[][] cases = {  //expression, values of the conditions 1, 2 and 3, conditions expected to be evaluated
+            {"1 or 2", "true", "false", "false", "1"},
+            {"1 or 2", "false", "true", "false", "12"},
+            {"1 and 2", "false", "true", "true", "1"},
+            {"1 and 2", null, "true", "true", "1"},
+            {"1 and 2 or 3", "false", "true", "true", "13"},
+            {"1 or 2 and 3", "true", "true", "true", "1"},
+            {"not(1) and 2", "true", "true", "true", "1"},
+            {"false() and 1", "true", "true", "true", ""},
+            {"true() or 1", "true", "true", "true", ""},
+        };
+        String[] expressions = new String[cases.length];
+        for (int i = 0; i < cases.length; i++) {
+            expressions[i] = cases[i][0];
+        }
+        CompilationUnits.Group group = compile(expressions, "conditional-short-circuit");
+        try {
+            for (int i = 0; i < cases.length; i++) {
+                TruthTable truthTable = new TruthTable(cases[i][1], cases[i][2], cases[i][3]);
+                CompilationUnits.Conditional conditional = (CompilationUnits.Conditional) group.getChild("e" + i);
+                conditional.matches(truthTable.newContext());
+                Assert.assertEquals(cases[i][0], cases[i][4], String.join("", truthTable.evaluated));
+            }
+        } finally {
+            CompiledTemplatesRegistry.getInstance().removeCompiledTemplate("conditional-short-circuit");
+        }
+    }
+
+    private static void assertSameAsXPath(String[] expressions, String templateUID) throws Exception {
+        CompilationUnits.Group group = compile(expressions, templateUID);
+        try {
+            for (int i = 0; i < expressions.length; i++) {
+                String expression = expressions[i];
+                CompilationUnits.Conditional conditional = (CompilationUnits.Conditional) group.getChild("e" + i);
+                for (String value1: CONDITION_VALUES) {
+                    for (String value2: CONDITION_VALUES) {
+                        for (String value3: CONDITION_VALUES) {
+                            TruthTable truthTable = new TruthTable(value1, value2, value3);
+                            String outcome = outcome(() -> conditional.matches(truthTable.newContext()));
+                            String expected = outcome(() -> evaluateAsXPath(expression, conditional, truthTable));
+                            Assert.assertEquals("'" + expression + "' with " + value1 + ", " + value2 + ", " + value3,
+                                                expected, outcome);
+                        }
+                    }
+                }
+            }
+        } finally {
+            CompiledTemplatesRegistry.getInstance().removeCompiledTemplate(templateUID);
+        }
+    }
+
+    //the original evaluation of the meta expressions
+    private static boolean evaluateAsXPath(String expression, CompilationUnits.Conditional conditional,
+                                           TruthTable truthTable) throws Exception {
+        for (String id: CONDITION_IDS) {
+            CompilationUnits.Condition condition = (CompilationUnits.Condition) conditional.getChild(id);
+            expression = expression.replaceAll("\\b" + id + "\\b",
+                                               Boolean.toString(condition.matches(truthTable.newContext())) + "()");
+        }
+        return (Boolean) XPathFactory.newInstance().newXPath().evaluate(expression, (Object) null, XPathConstants.BOOLEAN);
+    }
+
+    //the outcome or else the failure (just its presence) of an evaluation
+    private static String outcome(Evaluation evaluation) {
+        try {
+            return String.valueOf(evaluation.evaluate());
+        } catch (Exception e) {
+            return "failure";
+        }
+    }
+
+    private static CompilationUnits.Group compile(String[] expressions, String templateUID) throws Exception {
+        StringBuilder template = new StringBuilder("<root><group id=\"conditionals\">");
+        for (int i = 0; i < expressions.length; i++) {
+            template.append("<conditional id=\"e").append(i).append("\" expression=\"")
+                    .append(expressions[i].replace("\n", "&#10;")).append("\">");
+            for (String id: CONDITION_IDS) {
+                template.append("<condition id=\"").append(id).append("\" expression=\"true\">")
+                        .append("<valueof key=\"").append(id).append("\"><map name=\"TRUTH-TABLE\"/></valueof>")
+                        .append("</condition>");
+            }
+            template.append("</conditional>");
+        }
+        template.append("</group></root>");
+        CompiledTemplate mct = CompiledTemplatesRegistry.getInstance()
+                                         .getCompiledTemplate(templateUID,
+                                                              new ByteArrayInputStream(template.toString()
+                                                                                               .getBytes(StandardCharsets.UTF_8)),
+                                                              "/root/*");
+        return CompiledTemplatesRegistry.getInstance().getCompilationUnit(mct, new String[]{"conditionals"},
+                                                                          CompilationUnits.Group.class);
+    }
+
+    private static String randomExpression(Random random, int depth) {
+        int choice = random.nextInt(depth > 0? 8: 3);
+        switch (choice) {
+            case 0:
+            case 1:
+                return CONDITION_IDS[random.nextInt(CONDITION_IDS.length)];
+            case 2:
+                return random.nextBoolean()? "true()": "false()";
+            case 3:
+                return "not(" + randomExpression(random, depth - 1) + ")";
+            case 4:
+                return "(" + randomExpression(random, depth - 1) + ")";
+            case 5:
+            case 6:
+                return randomExpression(random, depth - 1) + " and " + randomExpression(random, depth - 1);
+            default:
+                return randomExpression(random, depth - 1) + " or " + randomExpression(random, depth - 1);
+        }
+    }
+
+    private interface Evaluation {
+        boolean evaluate() throws Exception;
+    }
+
+    //values of the conditions, served off a map which records the conditions evaluated
+    private static final class TruthTable extends HashMap<String, Object> {
+        private final List<String> evaluated = new ArrayList<>();
+
+        private TruthTable(String value1, String value2, String value3) {
+            put(CONDITION_IDS[0], value1);
+            put(CONDITION_IDS[1], value2);
+            put(CONDITION_IDS[2], value3);
+        }
+
+        @Override
+        public Object get(Object key) {
+            evaluated.add(String.valueOf(key));
+            return super.get(key);
+        }
+
+        private CompilationRuntimeContext newContext() {
+            MapOfMaps mapOfMaps = new MapOfMaps();
+            mapOfMaps.putMap("TRUTH-TABLE", this);
+            CompilationRuntimeContext compilationRuntimeContext = new CompilationRuntimeContext();
+            compilationRuntimeContext.setExternalContext(mapOfMaps);
+            return compilationRuntimeContext;
+        }
+    }
+}
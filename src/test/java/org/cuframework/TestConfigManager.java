@@ -0,0 +1,88 @@
+package org.cuframework;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.cuframework.config.ConfigManager;
+import org.cuframework.config.ConfigManager.HierarchicalConfig;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the resolution of the cu configs by the config manager i.e. the resolved lookups are reused until the configs
+ * change (through any of the mutators of the configs) and are resolved afresh once they do.
+ *
+ * @author Sidharth Yadav
+ */
+public class TestConfigManager {
+    private static final String NODE = "config-test-node";
+
+    @Test
+    public void resolutionsAreReusedUntilConfigsChange() {
+        ConfigManager cm = ConfigManager.getInstance();
+        String namespaceURI = "urn:config-test:" + System.nanoTime();
+        HierarchicalConfig nsConfig = cm.getNamespaceConfig(namespaceURI, true);
+        nsConfig.put("cu." + NODE + ".flat", "1");
+        nsConfig.put("cumetadata." + NODE + ".mergeable-attrs", "style");
+
+        Map<String, Object> attributes = cm.getAttributes(NODE, NODE, namespaceURI, null);
+        Assert.assertEquals("1", attributes.get("flat"));
+        Assert.assertSame(attributes, cm.getAttributes(NODE, NODE, namespaceURI, null));
+        Assert.assertTrue(cm.getNamesOfMergeableAttributes(NODE, NODE, namespaceURI, null).contains("style"));
+        Assert.assertNull(cm.getMetadataValue(NODE, NODE, namespaceURI, null, "tokenizer"));
+
+        //a change to the config itself
+        nsConfig.put("cu." + NODE + ".flat", "2");
+        Assert.assertEquals("2", cm.getAttributes(NODE, NODE, namespaceURI, null).get("flat"));
+
+        //a downstream config linked afterwards
+        HierarchicalConfig nodeConfig = new HierarchicalConfig(NODE);
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("tokenizer", ",");
+        nodeConfig.put(HierarchicalConfig.STANDARD_CONTAINER__METADATA, metadata);
+        nsConfig.linkDownstreamConfig(NODE, nodeConfig);
+        Assert.assertEquals(",", cm.getMetadataValue(NODE, NODE, namespaceURI, null, "tokenizer"));
+
+        //a change inside a nested container, notified explicitly
+        metadata.put("tokenizer", ";");
+        cm.configChanged();
+        Assert.assertEquals(";", cm.getMetadataValue(NODE, NODE, namespaceURI, null, "tokenizer"));
+
+        //a config replaced altogether
+        cm.putConfig("namespace://" + namespaceURI, new HierarchicalConfig("namespace://" + namespaceURI));
+        Assert.assertNull(cm.getAttributes(NODE, NODE, namespaceURI, null).get("flat"));
+        Assert.assertNull(cm.getMetadataValue(NODE, NODE, namespaceURI, null, "tokenizer"));
+    }
+
+    @Test
+    public void everyMutatorOfTheConfigInvalidatesTheResolutions() {
+        ConfigManager cm = ConfigManager.getInstance();
+        String namespaceURI = "urn:config-test-mutators:" + System.nanoTime();
+        HierarchicalConfig nsConfig = cm.getNamespaceConfig(namespaceURI, true);
+        String key = "cu." + NODE + ".flat";
+        nsConfig.put(key, "0");
+        List<Consumer<HierarchicalConfig>> mutators = Arrays.asList(
+            config -> config.replace(key, "1"),
+            config -> config.replace(key, "1", "2"),
+            config -> config.compute(key, (k, v) -> "3"),
+            config -> config.computeIfPresent(key, (k, v) -> "4"),
+            config -> config.merge(key, "5", (v1, v2) -> v2),
+            config -> config.replaceAll((k, v) -> key.equals(k)? "6": v),
+            config -> config.remove(key, "6"),
+            config -> config.putIfAbsent(key, "8"),
+            config -> {
+                config.remove(key);
+                config.computeIfAbsent(key, k -> "9");
+            });
+        String[] expected = {"1", "2", "3", "4", "5", "6", null, "8", "9"};
+        for (int i = 0; i < mutators.size(); i++) {
+            cm.getAttributes(NODE, NODE, namespaceURI, null);  //resolved (and cached) before the mutation
+            mutators.get(i).accept(nsConfig);
+            Assert.assertEquals("mutator " + i, expected[i], cm.getAttributes(NODE, NODE, namespaceURI, null).get("flat"));
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package org.cuframework;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.ref.Reference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import org.cuframework.core.CompilationUnits;
+import org.cuframework.core.CompiledTemplate;
+import org.cuframework.core.CompiledTemplatesRegistry;
+import org.cuframework.util.UtilityFunctions;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests that compiling the templates by walking their DOM builds the same unit trees as the xpath based compilation did.
+ * The xpath view of a template (the nodes selected by '@*' and '*|text()', i.e. no comments, processing instructions or
+ * namespace declarations and a single text node for the adjacent text/cdata nodes) is copied into a new template and
+ * the unit trees compiled off both the templates are compared field by field. The separate text nodes that turn
+ * adjacent in the copy are kept apart by an (empty) comment.
+ *
+ * @author Sidharth Yadav
+ */
+public class TestDomWalkCompilation {
+    private static final String[] TEMPLATE_DIRECTORIES = {"src/test/resources/templates", "src/test/resources/tests"};
+    private static final String MIXED_TEMPLATE =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<!-- leading comment -->\n" +
+            "<root xmlns:x=\"urn:x\">\n" +
+            "  <?leading-pi data?>\n" +
+            "  <group id=\"text-blocks\" tbt=\"child\" serializableNodeName=\"blocks\">" +
+                "<!-- comment -->first<![CDATA[ cdata <raw> ]]> text" +
+                "<?pi in the text?>" +
+                "<valueof id=\"value\" x:note=\"prefixed\">$CONFIG:a</valueof>" +
+                "after<!-- comment --><![CDATA[cdata only]]>" +
+                "<valueof id=\"last\">  <!-- before the text -->text after a comment  </valueof>" +
+              "</group>\n" +
+            "  <group id=\"namespaces\" name=\"ns\" xmlns:y=\"urn:y\" y:a=\"1\">\n" +
+            "    <set attribute=\"a\" in=\"OUTPUT\" createMapIfMissing=\"true\"><valueof><![CDATA[$CONFIG:a]]></valueof></set>\n" +
+            "    <group id=\"default-namespace\" xmlns=\"\"><valueof id=\"v\">x<!-- c -->y</valueof></group>\n" +
+            "  </group>\n" +
+            "</root>\n";
+
+    private static final String[] UNCOMPARED_FIELDS = {"nodeContext", "cuch", "snapshot", "sourceSize"};  //the dom node,
+                                                                                                       //the caches and
+                                                                                                       //the template size
+
+    @Test
+    public void domWalkAndXPathBuildTheSameTrees() throws Exception {
+        int compared = 0;
+        for (String directory: TEMPLATE_DIRECTORIES) {
+            File[] files = new File(directory).listFiles((dir, name) -> name.endsWith(".xml"));
+            Assert.assertNotNull("Templates directory not found: " + directory, files);
+            Arrays.sort(files);
+            for (File file: files) {
+                assertSameTrees(file.getName(), Files.readAllBytes(file.toPath()));
+                compared++;
+            }
+        }
+        Assert.assertTrue(compared > 0);
+    }
+
+    @Test
+    public void domWalkSkipsWhatXPathDoesNotSee() throws Exception {
+        assertSameTrees("mixed", MIXED_TEMPLATE.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void domWalkSeesTheAdjacentTextNodesAsOne() throws Exception {
+        //the template parsers coalesce the cdata into the text. Compiling the units off a non coalescing parse instead.
+        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setNamespaceAware(true);
+        Document document = documentBuilderFactory.newDocumentBuilder()
+                                                  .parse(new ByteArrayInputStream(MIXED_TEMPLATE.getBytes(StandardCharsets.UTF_8)));
+        Document xpathView = documentBuilderFactory.newDocumentBuilder().newDocument();
+        XPath xpath = XPathFactory.newInstance().newXPath();
+        int compared = 0;
+        for (Node n = document.getDocumentElement().getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n.getNodeType() == Node.ELEMENT_NODE) {
+                CompilationUnits.Group expected = new CompilationUnits.Group();
+                expected.compile(xpathView.appendChild(copy(n, xpathView, xpath)));
+                xpathView.removeChild(xpathView.getDocumentElement());
+                CompilationUnits.Group actual = new CompilationUnits.Group();
+                actual.compile(n);
+                Assert.assertEquals(String.join("\n", describe(expected)), String.join("\n", describe(actual)));
+                compared++;
+            }
+        }
+        Assert.assertEquals(2, compared);
+    }
+
+    private static void assertSameTrees(String name, byte[] template) throws Exception {
+        List<String> expected = describe(compile(toXPathView(template)));
+        List<String> actual = describe(compile(template));
+        Assert.assertTrue(name + " compiled into an empty tree", expected.size() > 1);
+        Assert.assertEquals("Units compiled off " + name, String.join("\n", expected), String.join("\n", actual));
+    }
+
+    private static CompiledTemplate compile(byte[] template) throws Exception {
+        String templateUID = "dom-walk-compilation";  //same uid for both the compilations as it shows up in the trees
+        CompiledTemplatesRegistry registry = CompiledTemplatesRegistry.getInstance();
+        try {
+            return registry.getCompiledTemplate(templateUID, new ByteArrayInputStream(template), "/root/*");
+        } finally {
+            registry.removeCompiledTemplate(templateUID);
+        }
+    }
+
+    //copies the nodes of the template as selected by the xpath expressions used by the xpath based compilation
+    private static byte[] toXPathView(byte[] template) throws Exception {
+        Element root = (Element) TemplateXPathEngine.getNode("/*", new ByteArrayInputStream(template));
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        XPath xpath = XPathFactory.newInstance().newXPath();
+        document.appendChild(copy(root, document, xpath));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TransformerFactory.newInstance().newTransformer().transform(new DOMSource(document), new StreamResult(out));
+        return out.toByteArray();
+    }
+
+    private static Node copy(Node n, Document document, XPath xpath) throws Exception {
+        if (n.getNodeType() != Node.ELEMENT_NODE) {
+            return n.getNodeType() == Node.CDATA_SECTION_NODE?  //the (first) node standing for the text run
+                       document.createCDATASection(n.getNodeValue()):
+                       document.createTextNode(n.getNodeValue());
+        }
+        if (CompilationUnits.CuText.TAG_NAME.equals(UtilityFunctions.getLocalOrNodeName(n))) {
+            return document.importNode(n, true);  //the cu-text keeps its markup (comments included) as is
+        }
+        Element element = document.createElementNS(n.getNamespaceURI(), n.getNodeName());
+        NodeList attributes = (NodeList) xpath.evaluate("@*", n, XPathConstants.NODESET);
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Node attribute = attributes.item(i);
+            element.setAttributeNS(attribute.getNamespaceURI(), attribute.getNodeName(), attribute.getNodeValue());
+        }
+        NodeList children = (NodeList) xpath.evaluate("*|text()", n, XPathConstants.NODESET);
+        for (int i = 0; i < children.getLength(); i++) {
+            if (i > 0 && children.item(i).getNodeType() != Node.ELEMENT_NODE &&
+                                                        children.item(i - 1).getNodeType() != Node.ELEMENT_NODE) {
+                element.appendChild(document.createComment(""));  //keeps the separate text nodes (e.g. the ones
+                                                                  //separated by a comment) from being merged
+            }
+            element.appendChild(copy(children.item(i), document, xpath));
+        }
+        return element;
+    }
+
+    //describes the object graph of the passed template (its units, their attributes, expressions and child units) as the
+    //sorted list of the paths of its leaf values. The objects reached again are described by the path they were first
+    //reached by.
+    private static List<String> describe(Object root) throws IllegalAccessException {
+        List<String> description = new ArrayList<>();
+        describe("template", root, description, new IdentityHashMap<>());
+        return description;
+    }
+
+    private static void describe(String path, Object o, List<String> description, Map<Object, String> visited)
+                                                                                          throws IllegalAccessException {
+        if (o == null || o instanceof String || o instanceof Number || o instanceof Boolean || o instanceof Character ||
+                                                                                                o instanceof Enum) {
+            description.add(path + " = " + o);
+            return;
+        }
+        if (o instanceof Node || o instanceof Reference || o instanceof Class || o instanceof ClassLoader ||
+                                                                                            o instanceof Thread) {
+            return;
+        }
+        String firstPath = visited.putIfAbsent(o, path);
+        if (firstPath != null) {
+            description.add(path + " -> " + firstPath);
+            return;
+        }
+        if (o.getClass().isArray()) {
+            for (int i = 0; i < Array.getLength(o); i++) {
+                describe(path + "[" + i + "]", Array.get(o, i), description, visited);
+            }
+        } else if (o instanceof Map) {
+            List<String> entries = new ArrayList<>();
+            for (Map.Entry<?, ?> entry: ((Map<?, ?>) o).entrySet()) {
+                List<String> entryDescription = new ArrayList<>();
+                describe(path + "{" + entry.getKey() + "}", entry.getValue(), entryDescription, visited);
+                entries.addAll(entryDescription);
+            }
+            entries.sort(null);  //the hash maps iterate in an arbitrary order
+            description.addAll(entries);
+        } else if (o instanceof Collection) {
+            int i = 0;
+            for (Object element: (Collection<?>) o) {
+                describe(path + "[" + i++ + "]", element, description, visited);
+            }
+        } else if (!o.getClass().getName().startsWith("java")) {
+            description.add(path + " : " + o.getClass().getName());
+            for (Class<?> c = o.getClass(); c != null && !c.getName().startsWith("java"); c = c.getSuperclass()) {
+                for (Field field: c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers()) &&
+                                                        !Arrays.asList(UNCOMPARED_FIELDS).contains(field.getName())) {
+                        field.setAccessible(true);
+                        describe(path + "." + field.getName(), field.get(o), description, visited);
+                    }
+                }
+            }
+        }
+    }
+}
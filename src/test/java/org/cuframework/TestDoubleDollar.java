@@ -0,0 +1,94 @@
+package org.cuframework;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.cuframework.core.CompilationRuntimeContext;
+import org.cuframework.core.CompilationUnits;
+import org.cuframework.core.CompiledTemplate;
+import org.cuframework.core.CompiledTemplatesRegistry;
+import org.cuframework.el.EL;
+import org.cuframework.el.ExpressionRuntimeContext;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the resolution of the $$ (cu value accessor) expressions, which are shared by all the units using the same
+ * expression text while their child units get resolved per unit, and hence follow the children inherited through
+ * the runtime extensions.
+ *
+ * @author Sidharth Yadav
+ */
+public class TestDoubleDollar {
+
+    @Test
+    public void sharedExpressionResolvesTheChildOfEachUnit() throws Exception {
+        String templateUID = "double-dollar-" + System.nanoTime();
+        String template = "<root>" +
+                            "<group id=\"first\"><valueof id=\"v\" key=\"first\"><map name=\"TEST-MAP\"/></valueof></group>" +
+                            "<group id=\"second\"><valueof id=\"v\" key=\"second\"><map name=\"TEST-MAP\"/></valueof></group>" +
+                            "<group id=\"none\"/>" +
+                          "</root>";
+        CompiledTemplatesRegistry registry = CompiledTemplatesRegistry.getInstance();
+        CompiledTemplate mct = registry.getCompiledTemplate(templateUID,
+                                                            new ByteArrayInputStream(template.getBytes(StandardCharsets.UTF_8)),
+                                                            "/root/*");
+        try {
+            CompilationRuntimeContext crc = new CompilationRuntimeContext();
+            MapOfMaps mapOfMaps = new MapOfMaps();
+            java.util.Map<String, Object> testMap = new java.util.HashMap<>();
+            testMap.put("first", Collections.singletonMap("a", Collections.singletonMap("b", "1")));
+            testMap.put("second", Collections.singletonMap("a", Collections.singletonMap("b", "2")));
+            mapOfMaps.putMap("TEST-MAP", testMap);
+            crc.setExternalContext(mapOfMaps);
+
+            EL.Expression expression = EL.parse("$$v.a.b");
+            String[] groups = {"first", "second", "none"};
+            String[] expectedValues = {"1", "2", null};
+            for (int i = 0; i < 10; i++) {  //the units take turns
+                for (int g = 0; g < groups.length; g++) {
+                    CompilationUnits.Group group = registry.getCompilationUnit(mct, new String[]{groups[g]},
+                                                                               CompilationUnits.Group.class);
+                    Assert.assertEquals(expectedValues[g],
+                                        expression.getValue(ExpressionRuntimeContext.newInstance(group, crc)));
+                }
+            }
+            CompilationUnits.Group first = registry.getCompilationUnit(mct, new String[]{"first"}, CompilationUnits.Group.class);
+            Assert.assertEquals(Collections.singletonMap("b", "1"),
+                                EL.parse("$$v.a").getValue(ExpressionRuntimeContext.newInstance(first, crc)));
+            Assert.assertNull(EL.parse("$$v.x").getValue(ExpressionRuntimeContext.newInstance(first, crc)));
+        } finally {
+            registry.removeCompiledTemplate(templateUID);
+        }
+    }
+
+    @Test
+    public void childrenInheritedAtRuntimeAreResolved() throws Exception {
+        String templateUID = "double-dollar-extends-" + System.nanoTime();
+        String template = "<root>" +
+                            "<group id=\"base\"><valueof id=\"inherited\" key=\"base\"><map name=\"TEST-MAP\"/></valueof></group>" +
+                            "<group id=\"derived\"><extends default=\"" + templateUID + "#base\"/></group>" +
+                          "</root>";
+        CompiledTemplatesRegistry registry = CompiledTemplatesRegistry.getInstance();
+        CompiledTemplate mct = registry.getCompiledTemplate(templateUID,
+                                                            new ByteArrayInputStream(template.getBytes(StandardCharsets.UTF_8)),
+                                                            "/root/*");
+        try {
+            CompilationRuntimeContext crc = new CompilationRuntimeContext();
+            MapOfMaps mapOfMaps = new MapOfMaps();
+            mapOfMaps.putMap("TEST-MAP", Collections.singletonMap("base", "1"));
+            crc.setExternalContext(mapOfMaps);
+
+            EL.Expression expression = EL.parse("$$inherited");
+            CompilationUnits.Group derived = registry.getCompilationUnit(mct, new String[]{"derived"}, CompilationUnits.Group.class);
+            Assert.assertNull(expression.getValue(ExpressionRuntimeContext.newInstance(derived, crc)));  //not inherited yet
+            derived.extend(crc, registry);  //replaces the children of the derived unit with the inherited ones
+            Assert.assertNotNull(derived.getChild("inherited"));
+            Assert.assertEquals("1", expression.getValue(ExpressionRuntimeContext.newInstance(derived, crc)));
+        } finally {
+            registry.removeCompiledTemplate(templateUID);
+        }
+    }
+}
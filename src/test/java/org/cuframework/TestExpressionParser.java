@@ -0,0 +1,151 @@
+package org.cuframework;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.cuframework.el.EL;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Tests the recursive descent expression parser against the regex based parser i.e. both the parsers should build the
+ * same expression trees for the attribute values and texts of the test templates as well as for a random corpus. The
+ * one intended difference, the commas inside a $(...) param of a function call, is tested separately.
+ *
+ * @author Sidharth Yadav
+ */
+public class TestExpressionParser {
+    private static final String[] RESOURCES_DIRS = {"./src/test/resources/tests/", "./src/test/resources/templates/"};
+    private static final String[] RANDOM_CORPUS_TOKENS = {"$", "$$", "$$$", "$$$:", "@", "@@", "(", ")", ",", ", ", ";", ":",
+                                                          ".", "[", "]", "\\", " ", "a", "b1", "var", "field", "CONTEXT-MAP",
+                                                          "fn", "ns:", "length", "-", "_", "#", "'", "\"", "x.y[]", "|c", "|r"};
+
+    @Test
+    public void parsersAgreeOnTheTestTemplates() throws Exception {
+        Set<String> corpus = new LinkedHashSet<>();
+        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setNamespaceAware(true);
+        for (String resourcesDir: RESOURCES_DIRS) {
+            File[] templates = new File(resourcesDir).listFiles((dir, name) -> name.endsWith(".xml"));
+            Assert.assertNotNull(templates);
+            for (File template: templates) {
+                collectExpressions(documentBuilderFactory.newDocumentBuilder().parse(template), corpus);
+            }
+        }
+        Assert.assertTrue("Too small a corpus: " + corpus.size(), corpus.size() > 1000);
+        for (String input: corpus) {
+            assertSameTrees(input);
+        }
+    }
+
+    @Test
+    public void parsersAgreeOnARandomCorpus() {
+        Random random = new Random(20261017L);  //fixed seed to keep the failures reproducible
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder input = new StringBuilder();
+            int tokens = 1 + random.nextInt(12);
+            for (int t = 0; t < tokens; t++) {
+                input.append(RANDOM_CORPUS_TOKENS[random.nextInt(RANDOM_CORPUS_TOKENS.length)]);
+            }
+            assertSameTrees(input.toString());
+        }
+    }
+
+    @Test
+    public void commasInsideAGenericDollarParamAreNotSplit() {
+        String input = "$$$fn($($CONTEXT-MAP:a, b);, c)";
+        EL.Expression expression = EL.parse(input, EL.ParsingMode.RECURSIVE_DESCENT);
+        Assert.assertEquals("[GenericDollar($($CONTEXT-MAP:a, b);), PlainText(c)]", describeParams(expression).toString());
+        Assert.assertEquals(3, describeParams(EL.parse(input, EL.ParsingMode.REGEX)).size());  //the regex parser splits them
+    }
+
+    private static void collectExpressions(Node node, Set<String> corpus) {
+        if (node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.CDATA_SECTION_NODE) {
+            if (!"".equals(node.getNodeValue().trim())) {
+                corpus.add(node.getNodeValue());
+            }
+        }
+        NamedNodeMap attributes = node.getAttributes();
+        for (int i = 0; attributes != null && i < attributes.getLength(); i++) {
+            corpus.add(attributes.item(i).getNodeValue());
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            collectExpressions(child, corpus);
+        }
+    }
+
+    private static void assertSameTrees(String input) {
+        Assert.assertEquals("Trees of '" + input + "'",
+                            describe(input, EL.ParsingMode.REGEX),
+                            describe(input, EL.ParsingMode.RECURSIVE_DESCENT));
+    }
+
+    private static String describe(String input, EL.ParsingMode parsingMode) {
+        try {
+            return describe(EL.parse(input, parsingMode));
+        } catch (RuntimeException re) {
+            return "error";
+        }
+    }
+
+    //describes the tree through the (private) state of its expressions i.e. their strings, flags and child expressions
+    private static String describe(Object expression) {
+        if (expression == null) {
+            return "null";
+        }
+        StringBuilder description = new StringBuilder(expression.getClass().getSimpleName()).append("{");
+        for (Class<?> clazz = expression.getClass(); clazz != Object.class; clazz = clazz.getSuperclass()) {
+            for (Field field: clazz.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                Object value;
+                try {
+                    field.setAccessible(true);
+                    value = field.get(expression);
+                } catch (IllegalAccessException iae) {
+                    throw new AssertionError(iae);
+                }
+                if (value instanceof EL.Expression) {
+                    description.append(field.getName()).append("=").append(describe(value)).append(";");
+                } else if (value instanceof List) {
+                    List<String> elements = new ArrayList<>();
+                    for (Object element: (List<?>) value) {
+                        elements.add(describe(element));
+                    }
+                    description.append(field.getName()).append("=").append(elements).append(";");
+                } else if (field.getType() == String.class || field.getType() == boolean.class) {
+                    description.append(field.getName()).append("=").append(value).append(";");
+                }  //the derived state (e.g. the parsed accessor paths and the null replacement lookups) is left out
+            }
+        }
+        return description.append("}").toString();
+    }
+
+    private static List<String> describeParams(EL.Expression functionCall) {
+        Assert.assertEquals("TripleDollar", functionCall.getClass().getSimpleName());
+        List<String> params = new ArrayList<>();
+        try {
+            Method getParams = functionCall.getClass().getMethod("getParams");
+            getParams.setAccessible(true);  //public method of a private class
+            for (Object param: (List<?>) getParams.invoke(functionCall)) {
+                params.add(param.getClass().getSimpleName() + "(" + ((EL.Expression) param).getExpression() + ")");
+            }
+        } catch (ReflectiveOperationException roe) {
+            throw new AssertionError(roe);
+        }
+        return params;
+    }
+}
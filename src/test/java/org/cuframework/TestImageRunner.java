@@ -0,0 +1,122 @@
+package org.cuframework;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.cuframework.core.CompiledTemplate;
+import org.cuframework.core.CompiledTemplateImage;
+import org.cuframework.core.CompiledTemplatesRegistry;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test runner which executes the cunit tests off the precompiled images of the templates. The test and the template
+ * xmls are copied into a temporary directory, precompiled (the same way as the 'cu.precompile' option of the Runner
+ * does) and then deleted, so the tests would fail unless the registry loads the templates off their images.
+ *
+ * @author Sidharth Yadav
+ */
+public class TestImageRunner extends TestRunner {
+    private static final String[] TEMPLATE_DIRECTORIES = {"tests", "templates"};  //relative to src/test/resources
+    private static final String TEMPLATES_DIR_REFERENCE = "../templates/";  //as referred by the tests
+    private static final String[][] NON_TEMPLATES = {{"data.xml", "<data><group id=\"g\"/></data>"},
+                                                     {"no-units.xml", "<root><unknown-tag/></root>"},
+                                                     {"malformed.xml", "<root><group id=\"g\"></root>"}};
+
+    private static Path imagesDir = null;
+
+    @Override
+    protected Map<String, String> getRunnerContext() {
+        Map<String, String> runnerContext = super.getRunnerContext();
+        runnerContext.put(DEFAULT_CU_DIR, imagesDir.resolve("tests") + File.separator);
+        return runnerContext;
+    }
+
+    @BeforeClass
+    public static void precompileTemplates() throws Exception {
+        imagesDir = Files.createTempDirectory("cu-images");
+        for (String directory: TEMPLATE_DIRECTORIES) {
+            Path source = Paths.get("src/test/resources", directory);
+            Path target = Files.createDirectories(imagesDir.resolve(directory));
+            try (Stream<Path> xmlFiles = Files.list(source)) {
+                for (Path xmlFile: (Iterable<Path>) xmlFiles.filter(path -> path.toString().endsWith(".xml"))::iterator) {
+                    Files.copy(xmlFile, target.resolve(xmlFile.getFileName()));
+                }
+            }
+        }
+        for (String[] nonTemplate: NON_TEMPLATES) {
+            Files.write(imagesDir.resolve(nonTemplate[0]), nonTemplate[1].getBytes(StandardCharsets.UTF_8));
+        }
+        new TestImageRunner().precompile(imagesDir.toString());
+        try (Stream<Path> paths = Files.walk(imagesDir)) {
+            for (Path path: (Iterable<Path>) paths.filter(path -> path.toString().endsWith(".xml"))::iterator) {
+                Files.delete(path);  //only the images are left behind
+            }
+        }
+    }
+
+    @AfterClass
+    public static void deleteImages() throws IOException {
+        try (Stream<Path> paths = Files.walk(imagesDir)) {
+            for (Path path: (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    public void nonTemplatesAreNotPrecompiled() {
+        for (String[] nonTemplate: NON_TEMPLATES) {
+            Assert.assertFalse(nonTemplate[0] + " got precompiled",
+                               Files.exists(imagesDir.resolve(nonTemplate[0] + CompiledTemplateImage.IMAGE_FILE_EXTENSION)));
+        }
+    }
+
+    @Test
+    @Override
+    public void runCunitTests() throws Exception {
+        try (Stream<Path> images = Files.list(imagesDir.resolve("tests"))) {
+            for (Path image: (Iterable<Path>) images::iterator) {
+                String imageName = image.getFileName().toString();
+                String testDefinition = imageName.substring(0, imageName.length() -
+                                                               CompiledTemplateImage.IMAGE_FILE_EXTENSION.length());
+                //the xmls are gone and hence the templates can only be compiled off their images
+                CompiledTemplate mct = CompiledTemplatesRegistry.getInstance().getCompiledTemplate(testDefinition);
+                Assert.assertTrue("No units compiled off the image of " + testDefinition, mct.getCompilationUnits().length > 0);
+            }
+        }
+        super.runCunitTests();
+    }
+
+    @Override
+    protected void doInit() {
+        super.doInit();
+        evictCompiledTemplates();  //the templates compiled off the xmls by the other runners (if any) shouldn't be used
+    }
+
+    @Override
+    protected void doFinally() {
+        evictCompiledTemplates();  //nor should the ones compiled off the images be used by the others
+        super.doFinally();
+    }
+
+    private static void evictCompiledTemplates() {
+        for (String directory: TEMPLATE_DIRECTORIES) {
+            File[] files = new File("src/test/resources", directory).listFiles();
+            for (File file: files != null? files: new File[0]) {
+                CompiledTemplatesRegistry.getInstance().removeCompiledTemplate(file.getName());
+                CompiledTemplatesRegistry.getInstance().removeCompiledTemplate(TEMPLATES_DIR_REFERENCE + file.getName());
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.cuframework;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cuframework.core.CompilationRuntimeContext;
+import org.cuframework.core.CompilationUnits;
+import org.cuframework.core.CompiledTemplate;
+import org.cuframework.core.CompiledTemplatesRegistry;
+import org.cuframework.util.JsonParser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the lenient json parser used by the json cu i.e. the standard json values along with the javascript object
+ * literal leniencies (single quoted strings, unquoted keys and trailing commas) and the reported error positions. Also
+ * tests the (read only) parsed trees shared by the json cu.
+ *
+ * @author Sidharth Yadav
+ */
+public class TestJsonParser {
+    @Test
+    public void parsesObjectsAndArraysInOrder() {
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("z", 1);
+        expected.put("a", Arrays.asList(true, false, null, "s"));
+        expected.put("m", new LinkedHashMap<>());
+        Object parsed = JsonParser.parse(" {\"z\": 1, \"a\" : [true,false, null ,\"s\"],\n\t\"m\":{}} ");
+        Assert.assertEquals(expected, parsed);
+        Assert.assertEquals(Arrays.asList("z", "a", "m"), Arrays.asList(((Map<?, ?>) parsed).keySet().toArray()));
+        Assert.assertNull(JsonParser.parse((String) null));
+        Assert.assertNull(JsonParser.parse("null"));
+        Assert.assertEquals(Arrays.asList(), JsonParser.parse("[ ]"));
+    }
+
+    @Test
+    public void decodesEscapeSequences() {
+        Assert.assertEquals("\"\\/\b\f\n\r\t'", JsonParser.parse("\"\\\"\\\\\\/\\b\\f\\n\\r\\t\\'\""));
+        Assert.assertEquals("A\u00e9\u20ac", JsonParser.parse("\"\\u0041\\u00E9\\u20ac\""));
+        Assert.assertEquals("\ud83d\ude00", JsonParser.parse("\"\\ud83d\\ude00\""));  //surrogate pair
+        Assert.assertEquals("q", JsonParser.parse("\"\\q\""));  //redundant escape
+        assertError("\"\\u00g1\"", "Invalid unicode escape sequence", 6);
+        assertError("\"\\u00", "Invalid unicode escape sequence", 5);
+    }
+
+    @Test
+    public void acceptsTheJavascriptLeniencies() {
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("key", "it's");
+        expected.put("$other_key-1", Arrays.asList(1, "two"));
+        expected.put("quoted", "say \"hi\"");
+        Assert.assertEquals(expected,
+                            JsonParser.parse("{key: \"it's\", $other_key-1: [1, 'two',], 'quoted': 'say \"hi\"',}"));
+        assertError("{: 1}", "Expected a key but found ':'", 1);
+        assertError("[1,,]", "Unexpected ','", 3);
+    }
+
+    @Test
+    public void narrowsTheNumbers() {
+        List<?> numbers = (List<?>) JsonParser.parse("[0, -7, 2147483647, -2147483648, 2147483648, -2147483649,"
+                                                     + " 9223372036854775807, 9223372036854775808, 1.5, -2e3, 1E2, .5]");
+        List<Object> expected = Arrays.asList(0, -7, Integer.MAX_VALUE, Integer.MIN_VALUE, 2147483648L, -2147483649L,
+                                              Long.MAX_VALUE, 9223372036854775808d, 1.5d, -2000d, 100d, 0.5d);
+        Assert.assertEquals(expected, numbers);
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals("Type of " + expected.get(i), expected.get(i).getClass(), numbers.get(i).getClass());
+        }
+        Assert.assertEquals(1e30d, JsonParser.parse("1000000000000000000000000000000"));
+        assertError("[1-2]", "Invalid number '1-2'", 4);
+        assertError("1.2.3", "Invalid number '1.2.3'", 5);
+    }
+
+    @Test
+    public void reportsTheErrorPositions() {
+        assertError("{\"a\" 1}", "Expected ':' after the key 'a'", 5);
+        assertError("{\"a\": 1 \"b\": 2}", "Expected ',' or '}' but found '\"'", 8);
+        assertError("[1 2]", "Expected ',' or ']' but found '2'", 3);
+        assertError("{\"a\": tru}", "Invalid literal. Expected 'true'", 10);
+        assertError("\"abc", "Unterminated string", 4);
+        assertError("{\"a\": [1, 2", "Expected ',' or ']' but found end of input", 11);
+        assertError("", "Unexpected end of input", 0);
+        assertError("  @", "Unexpected '@'", 2);
+    }
+
+    @Test
+    public void rejectsTrailingContent() {
+        assertError("{} {}", "Unexpected content after the json value", 3);
+        assertError("[1]]", "Unexpected content after the json value", 3);
+        assertError("true false", "Unexpected content after the json value", 5);
+        Assert.assertEquals(Boolean.TRUE, JsonParser.parse("true \n\t"));
+    }
+
+    @Test
+    public void parsesAcrossTheBufferBoundaries() {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 5000; i++) {
+            json.append(i == 0? "": ",").append("{\"key\":\"value\\u0020").append(i).append("\"}");
+        }
+        json.append("]");
+        List<?> list = (List<?>) JsonParser.parse(new StringReader(json.toString()));
+        Assert.assertEquals(5000, list.size());
+        Assert.assertEquals("value 4999", ((Map<?, ?>) list.get(4999)).get("key"));
+        Assert.assertEquals(list, JsonParser.parse(json.toString()));
+    }
+
+    @Test
+    public void jsonUnitSharesTheReadOnlyTreesOfTheRecentPayloads() throws Exception {
+        String templateUID = "json-parser-cache-" + System.nanoTime();
+        String template = "<root><json id=\"json\" container=\"CONFIG\" name=\"payload\"/></root>";
+        CompiledTemplatesRegistry registry = CompiledTemplatesRegistry.getInstance();
+        CompiledTemplate mct = registry.getCompiledTemplate(templateUID,
+                                                            new ByteArrayInputStream(template.getBytes(StandardCharsets.UTF_8)),
+                                                            "/root/*");
+        try {
+            CompilationUnits.Json json = registry.getCompilationUnit(mct, new String[]{"json"}, CompilationUnits.Json.class);
+            Map<String, Object> config = new HashMap<>();
+            MapOfMaps mapOfMaps = new MapOfMaps();
+            mapOfMaps.putMap("CONFIG", config);
+            CompilationRuntimeContext compilationRuntimeContext = new CompilationRuntimeContext();
+            compilationRuntimeContext.setExternalContext(mapOfMaps);
+
+            String payload = "{\"list\": [1, {\"k\": \"v\"}]}";
+            config.put("payload", payload);
+            Map<?, ?> tree = (Map<?, ?>) json.getValue(null, compilationRuntimeContext);
+            Assert.assertSame(tree, json.getValue(null, compilationRuntimeContext));  //parsed once
+            Assert.assertEquals(Arrays.asList(1, Collections.singletonMap("k", "v")),
+                                json.getValue("list", compilationRuntimeContext));
+            assertReadOnly(() -> ((Map<?, ?>) tree).clear());
+            assertReadOnly(() -> ((List<?>) tree.get("list")).clear());
+            assertReadOnly(() -> ((Map<?, ?>) ((List<?>) tree.get("list")).get(1)).clear());
+
+            for (int i = 0; i < 100; i++) {  //pushes out the first payload
+                config.put("payload", "{\"i\": " + i + "}");
+                Assert.assertEquals(i, json.getValue("i", compilationRuntimeContext));
+            }
+            config.put("payload", payload);
+            Map<?, ?> reparsed = (Map<?, ?>) json.getValue(null, compilationRuntimeContext);
+            Assert.assertNotSame(tree, reparsed);
+            Assert.assertEquals(tree, reparsed);
+        } finally {
+            registry.removeCompiledTemplate(templateUID);
+        }
+    }
+
+    private static void assertReadOnly(Runnable modification) {
+        try {
+            modification.run();
+            Assert.fail("The shared json tree shouldn't be modifiable");
+        } catch (UnsupportedOperationException uoe) {
+            //expected
+        }
+    }
+
+    private static void assertError(String json, String message, int position) {
+        try {
+            Assert.fail("Parsed " + JsonParser.parse(json));
+        } catch (IllegalArgumentException iae) {
+            Assert.assertEquals(message + " at position " + position, iae.getMessage());
+        }
+    }
+}
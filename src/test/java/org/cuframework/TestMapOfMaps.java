@@ -0,0 +1,146 @@
+package org.cuframework;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.cuframework.core.CompilationRuntimeContext;
+import org.cuframework.core.CompilationUnits;
+import org.cuframework.core.CompiledTemplate;
+import org.cuframework.core.CompiledTemplatesRegistry;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the map of maps i.e. the lazily read system map and the overlay of a shared parent by the child map of maps,
+ * which copies the inherited maps on write.
+ *
+ * @author Sidharth Yadav
+ */
+public class TestMapOfMaps {
+    private static final String SYSTEM_MAP = MapOfMaps.Name.SYSTEM_MAP.getKey();
+
+    @Test
+    public void systemMapReadsThroughTheSystemProperties() {
+        String property = "cu.test.map-of-maps." + System.nanoTime();
+        Map<String, Object> systemMap = new MapOfMaps().getMap(SYSTEM_MAP);
+        Assert.assertTrue(systemMap.get("CURRENT_TIME") instanceof Date);
+        Assert.assertEquals(System.getProperty("java.version"), systemMap.get("java.version"));
+        Assert.assertFalse(systemMap.containsKey(property));
+        System.setProperty(property, "1");
+        try {
+            Assert.assertEquals("1", systemMap.get(property));
+            Assert.assertEquals(systemMap.get(property), systemMap.entrySet().stream()
+                                                                  .filter(entry -> property.equals(entry.getKey()))
+                                                                  .findFirst().get().getValue());
+        } finally {
+            System.clearProperty(property);
+        }
+        Assert.assertEquals("1", systemMap.get(property));  //iterated and hence snapshotted
+
+        systemMap = new MapOfMaps().getMap(SYSTEM_MAP);
+        systemMap.put("java.version", "modified");
+        Assert.assertEquals("modified", systemMap.get("java.version"));
+        Assert.assertEquals(System.getProperty("java.version"), new MapOfMaps().getMap(SYSTEM_MAP).get("java.version"));
+        systemMap.remove("java.version");
+        Assert.assertFalse(systemMap.containsKey("java.version"));
+    }
+
+    @Test
+    public void childOverlaysImmutableParent() {
+        MapOfMaps shared = new MapOfMaps();
+        Map<String, Object> config = new HashMap<>();
+        config.put("k", "shared");
+        shared.putMap("CONFIG", config);
+        shared.putMap("CONTEXT", new HashMap<>(config));
+        MapOfMaps parent = shared.toImmutable();
+
+        MapOfMaps child = new MapOfMaps(parent);
+        Assert.assertSame(parent, child.getParent());
+        Assert.assertEquals("shared", child.getMap("CONFIG").get("k"));
+        Map<String, Object> inherited = child.getMap("CONFIG");
+        inherited.put("k", "modified");  //copied on write
+        Assert.assertEquals("modified", inherited.get("k"));
+        Assert.assertEquals("modified", child.getMap("CONFIG").get("k"));
+        Assert.assertEquals("shared", parent.getMap("CONFIG").get("k"));
+        try {
+            parent.putMap("OTHER", new HashMap<>());
+            Assert.fail("The immutable parent shouldn't be modifiable");
+        } catch (UnsupportedOperationException uoe) {
+            //expected
+        }
+
+        Map<String, Object> context = new HashMap<>();
+        child.putMap("CONTEXT", context);  //shadows the parent's one
+        child.getMap("CONTEXT").put("k", "child");
+        Assert.assertEquals("child", child.getMap("CONTEXT").get("k"));
+        Assert.assertEquals("shared", parent.getMap("CONTEXT").get("k"));
+        Assert.assertNotNull(child.getMap("OUTPUT", true));
+        Assert.assertNull(parent.getMap("OUTPUT"));
+        Assert.assertNotSame(parent.getMap(SYSTEM_MAP), child.getMap(SYSTEM_MAP));  //every child has its own CURRENT_TIME
+        Assert.assertEquals("child", child.toImmutable().getMap("CONTEXT").get("k"));
+        Assert.assertEquals("modified", child.toImmutable().getMap("CONFIG").get("k"));
+        Assert.assertEquals("shared", new MapOfMaps(parent).getMap("CONFIG").get("k"));
+    }
+
+    @Test
+    public void mapsAreIteratedByName() {
+        MapOfMaps mapOfMaps = new MapOfMaps();
+        for (String mapName: new String[]{"OUTPUT", "A-MAP", "Z-MAP", "CONTEXT-MAP"}) {
+            mapOfMaps.putMap(mapName, new HashMap<>());
+        }
+        Assert.assertEquals(Arrays.asList("A-MAP", "CONTEXT-MAP", "OUTPUT", SYSTEM_MAP, "Z-MAP"),
+                            new ArrayList<>(mapOfMaps.getMapOfMaps().keySet()));
+        MapOfMaps child = new MapOfMaps(mapOfMaps.toImmutable());
+        child.putMap("B-MAP", new HashMap<>());
+        child.putMap("A-MAP", new HashMap<>());
+        Assert.assertEquals(Arrays.asList("A-MAP", "B-MAP", SYSTEM_MAP), new ArrayList<>(child.getMapOfMaps().keySet()));
+        Assert.assertEquals(Arrays.asList("A-MAP", "B-MAP", "CONTEXT-MAP", "OUTPUT", SYSTEM_MAP, "Z-MAP"),
+                            new ArrayList<>(child.toImmutable().getMapOfMaps().keySet()));
+    }
+
+    @Test
+    public void setThroughChildDoesNotModifyTheParent() throws Exception {
+        String templateUID = "map-of-maps-set-" + System.nanoTime();
+        String template = "<root>" +
+                            "<set id=\"set\" attribute=\"k\" in=\"CONFIG\"><valueof id=\"v\">child</valueof></set>" +
+                          "</root>";
+        CompiledTemplatesRegistry registry = CompiledTemplatesRegistry.getInstance();
+        CompiledTemplate mct = registry.getCompiledTemplate(templateUID,
+                                                            new ByteArrayInputStream(template.getBytes(StandardCharsets.UTF_8)),
+                                                            "/root/*");
+        try {
+            CompilationUnits.Set set = registry.getCompilationUnit(mct, new String[]{"set"}, CompilationUnits.Set.class);
+            for (boolean immutableParent: new boolean[]{true, false}) {
+                MapOfMaps shared = new MapOfMaps();
+                Map<String, Object> config = new HashMap<>();
+                config.put("k", "shared");
+                config.put("other", "shared");
+                shared.putMap("CONFIG", config);
+                MapOfMaps parent = immutableParent? shared.toImmutable(): shared;
+
+                MapOfMaps child = new MapOfMaps(parent);
+                Map<String, Object> inherited = child.getMap("CONFIG");  //obtained before the write
+                set.execute(newContext(child));
+                Assert.assertEquals("child", child.getMap("CONFIG").get("k"));
+                Assert.assertEquals("child", inherited.get("k"));
+                Assert.assertEquals("shared", child.getMap("CONFIG").get("other"));
+                Assert.assertEquals("shared", parent.getMap("CONFIG").get("k"));
+                Assert.assertEquals("shared", new MapOfMaps(parent).getMap("CONFIG").get("k"));  //e.g. the next request
+            }
+        } finally {
+            registry.removeCompiledTemplate(templateUID);
+        }
+    }
+
+    private static CompilationRuntimeContext newContext(MapOfMaps mapOfMaps) {
+        CompilationRuntimeContext compilationRuntimeContext = new CompilationRuntimeContext();
+        compilationRuntimeContext.setExternalContext(mapOfMaps);
+        return compilationRuntimeContext;
+    }
+}
@@ -0,0 +1,136 @@
+package org.cuframework;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import org.cuframework.core.CompilationUnits;
+import org.cuframework.func.IFunction;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the numeric platform functions against the trial and error parsing (Integer, else Long, else Float, else Double
+ * parser) and the boxed folding of the values they originally did, i.e. the results must be of the same types and values.
+ *
+ * @author Sidharth Yadav
+ */
+public class TestNumericFunctions {
+    private static final String[] STRINGS = {"0", "-0", "+7", "007", "42", "-42", "2147483647", "2147483648", "-2147483648",
+                                             "-2147483649", "9223372036854775807", "9223372036854775808",
+                                             "-9223372036854775808", "-9223372036854775809", "123456789012345678901234",
+                                             "1.5", "-1.5", ".5", "5.", "1e3", "1E-3", "1.5e+2", "2f", "2.5D", " 12 ", "\t3\n",
+                                             "NaN", "-Infinity", "+Infinity", "0x10", "0x1p3", "١٢", "", " ", "-",
+                                             "+", ".", "e5", "1e", "1e+", "1.2.3", "12L", "1,000", "abc", "Infinityf", "--1",
+                                             "1 2", "0x", "1_000"};
+
+    @Test
+    public void numbersAreParsedAsBefore() throws Exception {
+        IFunction number = function("number");
+        for (String str: STRINGS) {
+            Object expected = null;
+            try {
+                expected = parseByTrial(str);
+            } catch (NumberFormatException nfe) {
+                //null is returned for the non numbers
+            }
+            assertSame(str, expected, number.invoke(new Object[]{str}, null));
+        }
+    }
+
+    @Test
+    public void arithmeticResultsAreAsBefore() throws Exception {
+        Object[][] inputs = {{"1", "2", "3"}, {"1", "2147483647"}, {"1", "2", "1.5"}, {"1.5", "2", "3"}, {"1", 2L, 2.5f, 1.25d},
+                             {new BigDecimal("1.5"), "2"}, {new BigDecimal("1.5"), 2.0d}, {(byte) 3}, {(byte) 3, (short) 4},
+                             {null, "5", null}, {null}, {}, {"1", "x"}, {"1", new Object()}, {"9223372036854775807", "1"},
+                             {"1", "2", "9223372036854775808"}, {3.0f, 2L, 7}};
+        for (Object[] input: inputs) {
+            for (boolean sum: new boolean[]{true, false}) {
+                IFunction function = function(sum? "sum": "multiply");
+                String message = (sum? "sum": "multiply") + Arrays.asList(input);
+                assertSame(message, foldByBoxing(input, sum), function.invoke(input.clone(), null));
+                assertSame(message, foldByBoxing(input, sum), function.invoke(new Object[]{input.clone()}, null));
+            }
+        }
+        Object[][] primitiveArrays = {{new int[]{1, 2, Integer.MAX_VALUE}, 1 + 2 + Integer.MAX_VALUE, 2 * Integer.MAX_VALUE},
+                                      {new long[]{3L, 4L}, 7L, 12L}, {new float[]{1.5f, 2f}, 3.5f, 3f},
+                                      {new double[]{1.5d, 2d}, 3.5d, 3d}, {new int[0], null, null},
+                                      {new short[]{2, 3}, 5, 6}, {new short[]{2}, (short) 2, (short) 2}};
+        for (Object[] primitiveArray: primitiveArrays) {
+            assertSame("sum", primitiveArray[1], function("sum").invoke(new Object[]{primitiveArray[0]}, null));
+            assertSame("multiply", primitiveArray[2], function("multiply").invoke(new Object[]{primitiveArray[0]}, null));
+        }
+    }
+
+    @Test
+    public void binaryOperationsRejectNonNumbers() throws Exception {
+        Assert.assertEquals(1.5f, function("subtract").invoke(new Object[]{"3", "1.5"}, null));
+        Assert.assertEquals(3L, function("div").invoke(new Object[]{"6000000000", "2000000000"}, null));
+        Assert.assertEquals(1.0f, function("mod").invoke(new Object[]{"7", " 3"}, null));  //a padded value parses as a float
+        Assert.assertEquals(Boolean.TRUE, function("lt").invoke(new Object[]{"2", "10"}, null));
+        Assert.assertNull(function("gte").invoke(new Object[]{"2", "ten"}, null));
+        Assert.assertNull(function("div").invoke(new Object[]{"x", "1"}, null));
+    }
+
+    private static IFunction function(String name) {
+        IFunction function = CompilationUnits.resolveFunction(null, name);
+        Assert.assertNotNull(name, function);
+        return function;
+    }
+
+    private static void assertSame(String message, Object expected, Object actual) {
+        Assert.assertEquals(message, expected, actual);
+        Assert.assertEquals(message, expected == null? null: expected.getClass(), actual == null? null: actual.getClass());
+    }
+
+    //the original conversion of the values to numbers
+    private static Number parseByTrial(Object obj) {
+        if (obj instanceof Number || obj == null) {
+            return (Number) obj;
+        } else if (obj instanceof String) {
+            String str = (String) obj;
+            try {
+                return Integer.parseInt(str);
+            } catch (NumberFormatException nfe) {
+                try {
+                    return Long.parseLong(str);
+                } catch (NumberFormatException nfe1) {
+                    try {
+                        return Float.parseFloat(str);
+                    } catch (NumberFormatException nfe2) {
+                        return Double.parseDouble(str);
+                    }
+                }
+            }
+        }
+        throw new NumberFormatException("Invalid obj type found for conversion to number");
+    }
+
+    //the original folding of the values
+    private static Number foldByBoxing(Object[] values, boolean sum) {
+        Number result = null;
+        for (Object obj: values) {
+            Number number;
+            try {
+                number = parseByTrial(obj);
+            } catch (NumberFormatException nfe) {
+                return null;
+            }
+            if (number == null) {
+                continue;
+            }
+            if (result == null) {
+                result = number;
+            } else if (result instanceof Double || number instanceof Double) {
+                result = sum? result.doubleValue() + number.doubleValue(): result.doubleValue() * number.doubleValue();
+            } else if (result instanceof Float || number instanceof Float) {
+                result = sum? result.floatValue() + number.floatValue(): result.floatValue() * number.floatValue();
+            } else if (result instanceof Long || number instanceof Long) {
+                result = sum? result.longValue() + number.longValue(): result.longValue() * number.longValue();
+            } else {
+                result = sum? result.intValue() + number.intValue(): result.intValue() * number.intValue();
+            }
+        }
+        return result;
+    }
+}
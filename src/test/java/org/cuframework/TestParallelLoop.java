@@ -0,0 +1,71 @@
+package org.cuframework;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.cuframework.core.CompilationRuntimeContext;
+import org.cuframework.core.CompilationUnits;
+import org.cuframework.core.CompiledTemplate;
+import org.cuframework.core.CompiledTemplatesRegistry;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the parallel loop i.e. the iterations run concurrently and modify the external context (shared by them through
+ * a synchronized view of the map of maps).
+ *
+ * @author Sidharth Yadav
+ */
+public class TestParallelLoop {
+    private static final int ITERATIONS = 20000;
+
+    @Test
+    public void iterationsWriteIntoTheExternalContext() throws Exception {
+        String templateUID = "parallel-loop-" + System.nanoTime();
+        String template = "<root><group id=\"ploop-group\">" +
+                            "<loop id=\"ploop\">" +
+                              "<using>" +
+                                "<valueof id=\"times\" default=\"" + ITERATIONS + "\"/>" +
+                                "<valueof id=\"parallelism\" default=\"8\"/>" +
+                              "</using>" +
+                              "<group><init>" +
+                                "<set attribute=\"item-$ploop_index\" in=\"OUTPUT\" createMapIfMissing=\"true\">" +
+                                  "<valueof>$ploop_index</valueof>" +
+                                "</set>" +
+                                "<set attribute=\"$ploop_index\" in=\"SHARED\"><valueof>$ploop_index</valueof></set>" +
+                              "</init></group>" +
+                            "</loop>" +
+                          "</group></root>";
+        CompiledTemplatesRegistry registry = CompiledTemplatesRegistry.getInstance();
+        CompiledTemplate mct = registry.getCompiledTemplate(templateUID,
+                                                            new ByteArrayInputStream(template.getBytes(StandardCharsets.UTF_8)),
+                                                            "/root/*");
+        try {
+            CompilationUnits.Group group = registry.getCompilationUnit(mct, new String[]{"ploop-group"},
+                                                                       CompilationUnits.Group.class);
+            for (int run = 0; run < 5; run++) {
+                MapOfMaps mapOfMaps = new MapOfMaps();
+                Map<String, Object> shared = new TreeMap<>();  //not thread safe on its own
+                mapOfMaps.putMap("SHARED", shared);
+                CompilationRuntimeContext compilationRuntimeContext = new CompilationRuntimeContext();
+                compilationRuntimeContext.setExternalContext(mapOfMaps);
+                group.getValue(compilationRuntimeContext);
+
+                Map<String, Object> output = mapOfMaps.getMap("OUTPUT");  //created by one of the iterations
+                Assert.assertNotNull(output);
+                Assert.assertEquals(ITERATIONS, output.size());
+                Assert.assertEquals(ITERATIONS, shared.size());
+                for (int i = 0; i < ITERATIONS; i++) {
+                    Assert.assertEquals(String.valueOf(i), String.valueOf(output.get("item-" + i)));
+                    Assert.assertEquals(String.valueOf(i), String.valueOf(shared.get(String.valueOf(i))));
+                }
+                Assert.assertSame(mapOfMaps, compilationRuntimeContext.getExternalContext());
+            }
+        } finally {
+            registry.removeCompiledTemplate(templateUID);
+        }
+    }
+}
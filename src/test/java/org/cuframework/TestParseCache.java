@@ -0,0 +1,104 @@
+package org.cuframework;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.cuframework.core.CompilationRuntimeContext;
+import org.cuframework.core.CompilationUnits;
+import org.cuframework.core.CompiledTemplate;
+import org.cuframework.core.CompiledTemplatesRegistry;
+import org.cuframework.el.EL;
+import org.cuframework.el.ExpressionRuntimeContext;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the parse caches of the expression language i.e. the process wide (bounded) cache of the template expressions
+ * and the separate small lru cache of the expressions built at runtime by $(...).
+ *
+ * @author Sidharth Yadav
+ */
+public class TestParseCache {
+    @Before
+    @After
+    public void clearParseCache() {
+        EL.clearParseCache();
+    }
+
+    @Test
+    public void repeatedInputsAreServedFromTheCache() {
+        EL.Expression expression = EL.parse("$TEST-MAP:hit and $TEST-MAP:miss");
+        Assert.assertEquals(0, EL.getParseCacheHits());
+        Assert.assertEquals(1, EL.getParseCacheMisses());
+        Assert.assertEquals(1, EL.getParseCacheSize());
+
+        Assert.assertSame(expression, EL.parse("$TEST-MAP:hit and $TEST-MAP:miss"));
+        Assert.assertEquals(1, EL.getParseCacheHits());
+        Assert.assertNotSame(expression, EL.parse("$TEST-MAP:hit and  $TEST-MAP:miss"));
+        Assert.assertEquals(2, EL.getParseCacheMisses());
+        Assert.assertEquals(2, EL.getParseCacheSize());
+
+        EL.Expression regexParsed = EL.parse("$TEST-MAP:hit and $TEST-MAP:miss", EL.ParsingMode.REGEX);
+        Assert.assertNotSame(expression, regexParsed);  //cached per parsing mode
+        Assert.assertSame(regexParsed, EL.parse("$TEST-MAP:hit and $TEST-MAP:miss", EL.ParsingMode.REGEX));
+    }
+
+    @Test
+    public void fullCacheKeepsTheCachedExpressions() {
+        int limit = EL.getParseCacheSizeLimitValue();
+        EL.Expression first = EL.parse("$TEST-MAP:bound-0");
+        for (int i = 1; i < limit + 10; i++) {
+            EL.parse("$TEST-MAP:bound-" + i);
+        }
+        Assert.assertEquals(limit, EL.getParseCacheSize());
+        Assert.assertSame(first, EL.parse("$TEST-MAP:bound-0"));  //not evicted
+        EL.Expression uncached = EL.parse("$TEST-MAP:bound-" + limit);
+        Assert.assertNotSame(uncached, EL.parse("$TEST-MAP:bound-" + limit));
+        Assert.assertEquals(limit, EL.getParseCacheSize());
+    }
+
+    @Test
+    public void runtimeExpressionsAreKeptOutOfTheProcessWideCache() throws Exception {
+        String templateUID = "parse-cache-" + System.nanoTime();
+        String template = "<root><group id=\"g\"/></root>";
+        CompiledTemplatesRegistry registry = CompiledTemplatesRegistry.getInstance();
+        CompiledTemplate mct = registry.getCompiledTemplate(templateUID,
+                                                            new ByteArrayInputStream(template.getBytes(StandardCharsets.UTF_8)),
+                                                            "/root/*");
+        try {
+            CompilationUnits.Group group = registry.getCompilationUnit(mct, new String[]{"g"}, CompilationUnits.Group.class);
+            CompilationRuntimeContext crc = new CompilationRuntimeContext();
+            MapOfMaps mapOfMaps = new MapOfMaps();
+            Map<String, Object> testMap = new HashMap<>();
+            mapOfMaps.putMap("TEST-MAP", testMap);
+            crc.setExternalContext(mapOfMaps);
+            ExpressionRuntimeContext erc = ExpressionRuntimeContext.newInstance(group, crc);
+
+            EL.Expression expression = EL.parse("$($TEST-MAP:expr);");
+            int limit = EL.getDynamicParseCacheSizeLimitValue();
+            for (int i = 0; i < limit * 2; i++) {
+                testMap.put("expr", "$TEST-MAP:value-" + i);
+                testMap.put("value-" + i, "v" + i);
+                Assert.assertEquals("v" + i, expression.getValue(erc));
+            }
+            Assert.assertEquals(1, EL.getParseCacheSize());  //only the template expression
+            Assert.assertEquals(limit, EL.getDynamicParseCacheSize());
+
+            long misses = EL.getParseCacheMisses();
+            testMap.put("expr", "$TEST-MAP:value-" + (limit * 2 - 1));  //most recent
+            Assert.assertEquals("v" + (limit * 2 - 1), expression.getValue(erc));
+            Assert.assertEquals(misses, EL.getParseCacheMisses());
+            testMap.put("expr", "$TEST-MAP:value-0");  //evicted
+            Assert.assertEquals("v0", expression.getValue(erc));
+            Assert.assertEquals(misses + 1, EL.getParseCacheMisses());
+            Assert.assertEquals(limit, EL.getDynamicParseCacheSize());
+        } finally {
+            registry.removeCompiledTemplate(templateUID);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.cuframework;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.lang.ref.Reference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import org.cuframework.core.CompilationRuntimeContext;
+import org.cuframework.core.CompilationUnits;
+import org.cuframework.core.CompiledTemplate;
+import org.cuframework.core.CompiledTemplatesRegistry;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Memory footprint test for the compiled templates. The registry streams the templates and the units compiled off the
+ * streamed fragments don't retain any DOM node, except for the templates having units that evaluate xpath expressions at
+ * runtime, which retain their complete DOM (so that the document relative xpaths resolve as they always did). Checked by
+ * walking the object graph of the compiled templates for the DOM nodes reachable from them.
+ *
+ * @author Sidharth Yadav
+ */
+public class TestTemplateFootprint {
+    private static final String[] TEMPLATE_DIRECTORIES = {"src/test/resources/templates", "src/test/resources/tests"};
+
+    @Test
+    public void streamedTemplatesRetainNoDomOrTheCompleteDom() throws Exception {
+        int streamed = 0;
+        for (String directory: TEMPLATE_DIRECTORIES) {
+            File[] files = new File(directory).listFiles((dir, name) -> name.endsWith(".xml"));
+            Assert.assertNotNull("Templates directory not found: " + directory, files);
+            Arrays.sort(files);
+            for (File file: files) {
+                byte[] template = Files.readAllBytes(file.toPath());
+                Set<Document> documents = getRetainedDocuments(compile("template-footprint-" + file.getName(), template));
+                if (documents.isEmpty()) {
+                    streamed++;
+                    continue;
+                }
+                Assert.assertEquals(file + " retains more than one document", 1, documents.size());
+                Document document = documents.iterator().next();
+                Assert.assertEquals(file + " retains a fragment instead of the complete document",
+                                    countChildElements(TemplateXPathEngine.getNodes("/*", new ByteArrayInputStream(template)).item(0)),
+                                    countChildElements(document.getDocumentElement()));
+            }
+        }
+        Assert.assertTrue("None of the templates was compiled without retaining the DOM", streamed > 0);
+    }
+
+    @Test
+    public void unitsWithoutRuntimeXPathsRetainNoDom() throws Exception {
+        String template = "<root>" +
+                            "<valueof id=\"escaped\">\\$xpath(/root)</valueof>" +
+                            "<valueof id=\"not-evaluated\" evalExtent=\"D\">$xpath(/root)</valueof>" +
+                            "<valueof id=\"skipped\">EVAL.NONE</valueof>" +
+                            "<group id=\"group\"><valueof id=\"function\">$$$concat(x,y)</valueof></group>" +
+                          "</root>";
+        Assert.assertEquals(Collections.emptySet(), getRetainedDocuments(compile("template-footprint-no-xpath", template)));
+    }
+
+    @Test
+    public void documentRelativeXPathsSeeTheWholeDocument() throws Exception {
+        String template = "<root>" +
+                            "<other>7</other>" +
+                            "<valueof id=\"absolute\">$xpath(/root/other)</valueof>" +
+                            "<valueof id=\"siblings\">$xpath(count(../*))</valueof>" +
+                            "<valueof id=\"preceding\">$xpath(count(preceding-sibling::*))</valueof>" +
+                          "</root>";
+        CompiledTemplate mct = compile("template-footprint-xpath", template);
+        Assert.assertEquals(1, getRetainedDocuments(mct).size());
+        Assert.assertEquals("7", evaluate(mct, "absolute"));
+        Assert.assertEquals("4", evaluate(mct, "siblings"));
+        Assert.assertEquals("3", evaluate(mct, "preceding"));
+    }
+
+    private static CompiledTemplate compile(String templateUID, String template) throws Exception {
+        return compile(templateUID, template.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static CompiledTemplate compile(String templateUID, byte[] template) throws Exception {
+        CompiledTemplatesRegistry registry = CompiledTemplatesRegistry.getInstance();
+        CompiledTemplate mct = registry.getCompiledTemplate(templateUID, new ByteArrayInputStream(template), "/root/*");
+        registry.removeCompiledTemplate(templateUID);
+        return mct;
+    }
+
+    private static Object evaluate(CompiledTemplate mct, String unitId) throws Exception {
+        CompilationRuntimeContext compilationRuntimeContext = new CompilationRuntimeContext();
+        compilationRuntimeContext.setExternalContext(new MapOfMaps());
+        return ((CompilationUnits.IEvaluable) mct.findCompilationUnit(new String[]{unitId})).getValue(compilationRuntimeContext);
+    }
+
+    private static int countChildElements(Node n) {
+        int count = 0;
+        for (Node child = n.getFirstChild(); child != null; child = child.getNextSibling()) {
+            count += child instanceof Element? 1: 0;
+        }
+        return count;
+    }
+
+    //returns the documents of the DOM nodes reachable from the instance fields of the passed template (and of the objects
+    //they refer, transitively). The jdk objects other than the collections, maps and arrays aren't looked into.
+    private static Set<Document> getRetainedDocuments(Object root) throws IllegalAccessException {
+        Set<Document> documents = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Object o = pending.pop();
+            if (!visited.add(o)) {
+                continue;
+            }
+            if (o instanceof Node) {
+                Node n = (Node) o;
+                documents.add(n.getNodeType() == Node.DOCUMENT_NODE? (Document) n: n.getOwnerDocument());
+            } else if (o instanceof Reference || o instanceof Class || o instanceof ClassLoader || o instanceof Thread) {
+                continue;  //not retained (references) or not owned by the template
+            } else if (o.getClass().isArray()) {
+                if (!o.getClass().getComponentType().isPrimitive()) {
+                    for (int i = 0; i < Array.getLength(o); i++) {
+                        push(pending, Array.get(o, i));
+                    }
+                }
+            } else if (o instanceof Map) {
+                for (Map.Entry<?, ?> entry: ((Map<?, ?>) o).entrySet()) {
+                    push(pending, entry.getKey());
+                    push(pending, entry.getValue());
+                }
+            } else if (o instanceof Collection) {
+                for (Object element: (Collection<?>) o) {
+                    push(pending, element);
+                }
+            } else if (!o.getClass().getName().startsWith("java")) {
+                for (Class<?> c = o.getClass(); c != null && !c.getName().startsWith("java"); c = c.getSuperclass()) {
+                    for (Field field: c.getDeclaredFields()) {
+                        if (!Modifier.isStatic(field.getModifiers()) && !field.getType().isPrimitive()) {
+                            field.setAccessible(true);
+                            push(pending, field.get(o));
+                        }
+                    }
+                }
+            }
+        }
+        return documents;
+    }
+
+    private static void push(Deque<Object> pending, Object o) {
+        if (o != null) {
+            pending.push(o);
+        }
+    }
+}
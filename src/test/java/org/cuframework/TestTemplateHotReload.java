@@ -0,0 +1,82 @@
+package org.cuframework;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.cuframework.core.CompilationRuntimeContext;
+import org.cuframework.core.CompiledTemplate;
+import org.cuframework.core.CompiledTemplatesRegistry;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the hot reload of the templates i.e. a template changed inside the watched lookup directory gets recompiled and
+ * swapped into the registry in the background, along with the templates extending it, while the older version stays
+ * intact for its existing users.
+ *
+ * @author Sidharth Yadav
+ */
+public class TestTemplateHotReload {
+    private static final long TIMEOUT_MILLIS = 30_000;
+
+    @Test
+    public void changedTemplateAndItsDependentsAreReloaded() throws Exception {
+        CompiledTemplatesRegistry registry = CompiledTemplatesRegistry.getInstance();
+        String savedLookupDir = registry.getPrimaryLookupDirectory();
+        Path lookupDir = Files.createTempDirectory("cu-hot-reload");
+        write(lookupDir.resolve("base.xml"), "old");
+        Files.write(lookupDir.resolve("derived.xml"),
+                    ("<root><group id=\"derived\"><extends default=\"base.xml#base\"/></group></root>").getBytes(StandardCharsets.UTF_8));
+        registry.setPrimaryLookupDirectory(lookupDir.toString() + "/");
+        try {
+            registry.startWatching();
+            CompiledTemplate base = registry.getCompiledTemplate("base.xml");
+            CompiledTemplate derived = registry.getCompiledTemplate("derived.xml");
+            Assert.assertNotNull(findExtended(registry, "old"));
+
+            write(lookupDir.resolve("base.xml"), "new");
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while ((registry.getCompiledTemplate("base.xml") == base || registry.getCompiledTemplate("derived.xml") == derived) &&
+                   System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            Assert.assertNotSame("The changed template wasn't reloaded", base, registry.getCompiledTemplate("base.xml"));
+            Assert.assertNotSame("The dependent template wasn't reloaded", derived, registry.getCompiledTemplate("derived.xml"));
+            Assert.assertNotNull(findExtended(registry, "new"));
+            Assert.assertNull(findExtended(registry, "old"));
+            Assert.assertNotNull("The older version should be left intact",
+                                 base.findCompilationUnit(new String[]{"base", "old"}));
+        } finally {
+            registry.stopWatching();
+            registry.removeCompiledTemplate("base.xml");
+            registry.removeCompiledTemplate("derived.xml");
+            registry.setPrimaryLookupDirectory(savedLookupDir);
+            delete(lookupDir);
+        }
+    }
+
+    private static Object findExtended(CompiledTemplatesRegistry registry, String childId) {
+        CompilationRuntimeContext crc = new CompilationRuntimeContext();
+        crc.setExternalContext(new MapOfMaps());
+        CompiledTemplate processed = registry.processExtensions("derived.xml", crc);
+        return processed.findCompilationUnit(new String[]{"derived", childId});
+    }
+
+    private static void write(Path template, String childId) throws IOException {
+        Files.write(template, ("<root><group id=\"base\"><valueof id=\"" + childId + "\" default=\"1\"/></group></root>")
+                                                                                          .getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path: (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.cuframework.core;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the immutable (linear probing) table holding the attributes of a compilation unit. Placed in the package of the
+ * (package private) table.
+ *
+ * @author Sidharth Yadav
+ */
+public class TestAttributeTable {
+    @Test
+    public void collidingKeysAreProbed() {
+        Assert.assertEquals("Aa".hashCode(), "BB".hashCode());
+        Assert.assertEquals("AaAa".hashCode(), "BBBB".hashCode());
+        AttributeTable table = AttributeTable.EMPTY.with("Aa", "1").with("BB", "2").with("AaAa", "3").with("BBBB", "4");
+        Assert.assertEquals(4, table.size());
+        Assert.assertEquals("1", table.get("Aa"));
+        Assert.assertEquals("2", table.get("BB"));
+        Assert.assertEquals("3", table.get("AaAa"));
+        Assert.assertEquals("4", table.get("BBBB"));
+        Assert.assertEquals("2", table.get(new String("BB")));  //not interned
+        Assert.assertNull(table.get("AaBB"));  //same hash as well but missing
+        Assert.assertFalse(table.containsKey("AaBB"));
+        Assert.assertNull(table.get(null));
+        Assert.assertNull(AttributeTable.EMPTY.get("Aa"));
+    }
+
+    @Test
+    public void replacementsLeaveTheTableAsIs() {
+        AttributeTable table = AttributeTable.EMPTY.with("id", "a").with("name", "n");
+        Assert.assertSame(table, table.with("id", "a"));  //same value
+        Assert.assertSame(table, table.with("id", new String("a")));
+
+        AttributeTable replaced = table.with("id", "b");
+        Assert.assertNotSame(table, replaced);
+        Assert.assertEquals("a", table.get("id"));
+        Assert.assertEquals("b", replaced.get("id"));
+        Assert.assertEquals("n", replaced.get("name"));
+        Assert.assertEquals(2, replaced.size());
+
+        AttributeTable added = table.with("type", "t");
+        Assert.assertFalse(table.containsKey("type"));
+        Assert.assertEquals(2, table.size());
+        Assert.assertEquals(3, added.size());
+    }
+
+    @Test
+    public void tableGrowsAndKeepsItsAttributes() {
+        AttributeTable table = AttributeTable.EMPTY;
+        for (int i = 0; i < 100; i++) {
+            table = table.with("attribute-" + i, "value-" + i);
+            Assert.assertEquals(i + 1, table.size());
+        }
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(table.containsKey("attribute-" + i));
+            Assert.assertEquals("value-" + i, table.get("attribute-" + i));
+        }
+        Assert.assertFalse(table.containsKey("attribute-100"));
+
+        Properties properties = table.toProperties();
+        Assert.assertEquals(100, properties.size());
+        Assert.assertEquals("value-42", properties.getProperty("attribute-42"));
+    }
+
+    @Test
+    public void namesAreReturnedAsACopy() {
+        AttributeTable table = AttributeTable.EMPTY.with("id", "a").with("name", "n");
+        Set<String> names = table.names();
+        Assert.assertEquals(new HashSet<>(Arrays.asList("id", "name")), names);
+        Assert.assertNotSame(names, table.names());
+
+        names.add("type");  //modifiable, same as Properties.stringPropertyNames()
+        names.remove("id");
+        Assert.assertEquals(new HashSet<>(Arrays.asList("id", "name")), table.names());
+        Assert.assertFalse(table.containsKey("type"));
+        Assert.assertTrue(AttributeTable.EMPTY.names().isEmpty());
+    }
+}
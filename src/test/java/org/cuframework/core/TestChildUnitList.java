@@ -0,0 +1,122 @@
+package org.cuframework.core;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.cuframework.MapOfMaps;
+import org.cuframework.core.CompilationUnits.ICompilationUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the indexed list holding the child units i.e. the lookups by identifier and by type served from its snapshot.
+ * Placed in the package of the (package private) list.
+ *
+ * @author Sidharth Yadav
+ */
+public class TestChildUnitList {
+    private static final String TEMPLATE = "<root><group id=\"parent\">" +
+                                             "<group id=\"dup\"/>" +
+                                             "<valueof id=\"dup\"/>" +
+                                             "<get id=\"get\"/>" +
+                                             "<loop id=\"loop\"/>" +
+                                             "<group name=\"named\"/>" +
+                                             "<valueof id=\"item-$CONFIG:index\"/>" +
+                                           "</group></root>";
+
+    private final String templateUID = "child-unit-list-" + System.nanoTime();
+    private final CompiledTemplatesRegistry registry = CompiledTemplatesRegistry.getInstance();
+    private ICompilationUnit[] units = null;  //children of the parent group in the document order
+
+    @Before
+    public void compile() throws Exception {
+        CompiledTemplate mct = registry.getCompiledTemplate(templateUID,
+                                                            new ByteArrayInputStream(TEMPLATE.getBytes(StandardCharsets.UTF_8)),
+                                                            "/root/*");
+        units = registry.getCompilationUnit(mct, new String[]{"parent"}, CompilationUnits.Group.class)
+                        .getChildren(ICompilationUnit.class);
+        Assert.assertEquals(6, units.length);
+    }
+
+    @After
+    public void remove() {
+        registry.removeCompiledTemplate(templateUID);
+    }
+
+    @Test
+    public void firstChildWithTheIdWins() {
+        ChildUnitList<ICompilationUnit> list = newList(units);
+        Assert.assertSame(units[0], list.getByIdOrElse("dup"));
+        Assert.assertSame(units[4], list.getByIdOrElse("named"));  //name serves as the id of a group
+        Assert.assertNull(list.getByIdOrElse("missing"));
+        Assert.assertNull(list.getByIdOrElse(null));
+
+        ChildUnitList<ICompilationUnit> reversed = newList(units[1], units[0]);
+        Assert.assertSame(units[1], reversed.getByIdOrElse("dup"));
+    }
+
+    @Test
+    public void modificationsDropTheSnapshot() {
+        ChildUnitList<ICompilationUnit> list = newList(units);
+        Assert.assertSame(units[0], list.getByIdOrElse("dup"));
+        CompilationUnits.Group[] groups = list.getByType(CompilationUnits.Group.class);
+        Assert.assertSame(groups, list.getByType(CompilationUnits.Group.class));  //served from the snapshot
+
+        list.remove(0);
+        Assert.assertSame(units[1], list.getByIdOrElse("dup"));
+        Assert.assertEquals(Arrays.asList(units[3], units[4]), Arrays.asList(list.getByType(CompilationUnits.Group.class)));
+
+        list.set(0, units[2]);  //not a structural modification
+        Assert.assertNull(list.getByIdOrElse("dup"));
+        Assert.assertSame(units[2], list.getByIdOrElse("get"));
+
+        list.add(0, units[0]);
+        Assert.assertSame(units[0], list.getByIdOrElse("dup"));
+        Assert.assertEquals(Arrays.asList(units[0], units[3], units[4]),
+                            Arrays.asList(list.getByType(CompilationUnits.Group.class)));
+
+        list.clear();
+        Assert.assertNull(list.getByIdOrElse("get"));
+        Assert.assertEquals(0, list.getByType(ICompilationUnit.class).length);
+    }
+
+    @Test
+    public void lookupsByTypeReturnTheSubtypes() {
+        ChildUnitList<ICompilationUnit> list = newList(units);
+        Assert.assertEquals(Arrays.asList(units[0], units[3], units[4]),  //the loop is a group too
+                            Arrays.asList(list.getByType(CompilationUnits.Group.class)));
+        Assert.assertEquals(Arrays.asList(units[1], units[2], units[5]),  //get is a valueof
+                            Arrays.asList(list.getByType(CompilationUnits.ValueOf.class)));
+        Assert.assertEquals(Arrays.asList(units[2]), Arrays.asList(list.getByType(CompilationUnits.Get.class)));
+        Assert.assertEquals(Arrays.asList(units[3]), Arrays.asList(list.getByType(CompilationUnits.IExecutable.class)));
+        Assert.assertEquals(CompilationUnits.ValueOf[].class, list.getByType(CompilationUnits.ValueOf.class).getClass());
+        Assert.assertEquals(Arrays.asList(units), Arrays.asList(list.getByType(ICompilationUnit.class)));
+    }
+
+    @Test
+    public void dynamicIdsAreIndexedByTheirRawValue() throws Exception {
+        ChildUnitList<ICompilationUnit> list = newList(units);
+        Assert.assertSame(units[5], list.getByIdOrElse("item-$CONFIG:index"));
+        Assert.assertNull(list.getByIdOrElse("item-7"));  //the index doesn't compute the ids
+
+        Map<String, Object> config = new HashMap<>();
+        config.put("index", 7);
+        MapOfMaps mapOfMaps = new MapOfMaps();
+        mapOfMaps.putMap("CONFIG", config);
+        CompilationRuntimeContext compilationRuntimeContext = new CompilationRuntimeContext();
+        compilationRuntimeContext.setExternalContext(mapOfMaps);
+        Assert.assertEquals("item-7", units[5].getIdOrElse(compilationRuntimeContext));  //computed on the existing path
+    }
+
+    private static ChildUnitList<ICompilationUnit> newList(ICompilationUnit... units) {
+        ChildUnitList<ICompilationUnit> list = new ChildUnitList<>();
+        list.addAll(Arrays.asList(units));
+        return list;
+    }
+}
@@ -0,0 +1,77 @@
+package org.cuframework.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the registry loads a template off its image only if the image was written off the current xml of the
+ * template, whatever the modification times of the two files. Placed in the package of the registry to tell the image
+ * loads (weighed by the size of the image) from the xml compilations.
+ *
+ * @author Sidharth Yadav
+ */
+public class TestCompiledTemplateImage {
+    private static final String TEMPLATE = "<root><group id=\"before\"/></root>";
+    private static final String CHANGED_TEMPLATE = "<root><group id=\"after!\"/></root>";  //the same size
+
+    private final String templateFile = "image-" + System.nanoTime() + ".xml";
+    private final CompiledTemplatesRegistry registry = CompiledTemplatesRegistry.getInstance();
+    private Path dir = null;
+    private File xmlFile = null;
+    private File imageFile = null;
+
+    @Before
+    public void writeImage() throws Exception {
+        dir = Files.createTempDirectory("cu-image");
+        xmlFile = Files.write(dir.resolve(templateFile), TEMPLATE.getBytes(StandardCharsets.UTF_8)).toFile();
+        imageFile = CompiledTemplateImage.write(xmlFile, "/root/*");
+        Assert.assertTrue(imageFile.isFile());
+    }
+
+    @After
+    public void deleteFiles() throws IOException {
+        registry.removeCompiledTemplate(templateFile);
+        Files.deleteIfExists(imageFile.toPath());
+        Files.deleteIfExists(xmlFile.toPath());
+        Files.delete(dir);
+    }
+
+    @Test
+    public void imageOfTheCurrentXmlIsLoaded() throws Exception {
+        Assert.assertTrue(xmlFile.setLastModified(imageFile.lastModified() + 60000));  //touched, not changed
+        CompiledTemplate mct = compile();
+        Assert.assertEquals(imageFile.length(), mct.getSourceSize());
+        Assert.assertNotNull(registry.getCompilationUnit(mct, new String[]{"before"}, CompilationUnits.Group.class));
+    }
+
+    @Test
+    public void imageOfAChangedXmlIsIgnored() throws Exception {
+        long lastModified = xmlFile.lastModified();
+        Files.write(xmlFile.toPath(), CHANGED_TEMPLATE.getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(xmlFile.setLastModified(lastModified));  //changed within the mtime granularity
+        Assert.assertTrue(imageFile.lastModified() >= xmlFile.lastModified());
+        CompiledTemplate mct = compile();
+        Assert.assertNotNull(registry.getCompilationUnit(mct, new String[]{"after!"}, CompilationUnits.Group.class));
+        Assert.assertNull(registry.getCompilationUnit(mct, new String[]{"before"}, CompilationUnits.Group.class));
+    }
+
+    @Test
+    public void imageIsLoadedWithoutTheXml() throws Exception {
+        Files.delete(xmlFile.toPath());
+        CompiledTemplate mct = compile();
+        Assert.assertEquals(imageFile.length(), mct.getSourceSize());
+        Assert.assertNotNull(registry.getCompilationUnit(mct, new String[]{"before"}, CompilationUnits.Group.class));
+    }
+
+    private CompiledTemplate compile() throws Exception {
+        return registry.getCompiledTemplate(templateFile, "/root/*", dir + File.separator, "");
+    }
+}
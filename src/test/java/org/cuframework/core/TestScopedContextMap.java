@@ -0,0 +1,135 @@
+package org.cuframework.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the values put deferred into the internal context map i.e. that they are computed only when read, whether the
+ * map has been handed out as a HashMap or not, and that replacing them doesn't compute them.
+ *
+ * @author Sidharth Yadav
+ */
+public class TestScopedContextMap {
+    private final AtomicInteger computations = new AtomicInteger();
+
+    @Test
+    public void deferredValuesAreComputedOnFirstRead() {
+        ScopedContextMap map = new ScopedContextMap();
+        map.putDeferred("k", supplier("v"));
+        map.putDeferred(null, supplier("null-key"));
+        Assert.assertEquals(0, computations.get());
+        Assert.assertEquals("v", map.get("k"));
+        Assert.assertEquals("v", map.get("k"));
+        Assert.assertEquals("null-key", map.get(null));
+        Assert.assertEquals(2, computations.get());
+    }
+
+    @Test
+    public void replacingADeferredValueDoesNotComputeIt() {
+        ScopedContextMap map = new ScopedContextMap();
+        map.putDeferred("k", supplier("v1"));
+        map.putDeferred("k", supplier("v2"));
+        Assert.assertNull(map.put("k", "v3"));  //not read, hence not computed
+        Assert.assertEquals(0, computations.get());
+
+        map.putDeferred("k", supplier("v4"));
+        Assert.assertEquals("v4", map.get("k"));
+        Assert.assertEquals("v4", map.put("k", "v5"));  //already computed
+        Assert.assertEquals(1, computations.get());
+    }
+
+    @Test
+    public void deferredValuesStayDeferredOnceHandedOut() {
+        ScopedContextMap map = new ScopedContextMap();
+        map.put("plain", "p");
+        map.putDeferred("before", supplier("b"));
+        HashMap<String, Object> published = map.asHashMap();
+        Assert.assertSame(HashMap.class, published.getClass());  //the templates get to see the type
+        Assert.assertEquals("b", published.get("before"));
+        Assert.assertEquals(1, computations.get());
+
+        for (int i = 0; i < 100; i++) {
+            map.putDeferred("loop-value", supplier("l" + i));
+        }
+        Assert.assertTrue(map.containsKey("loop-value"));
+        Assert.assertEquals(1, computations.get());
+        Assert.assertEquals("l99", map.get("loop-value"));
+        Assert.assertEquals("l99", published.get("loop-value"));  //read through the map
+        Assert.assertEquals(2, computations.get());
+
+        map.putDeferred("loop-value", supplier("l100"));
+        Assert.assertSame(published, map.asHashMap());  //handed out again
+        Assert.assertEquals("l100", published.get("loop-value"));
+        Assert.assertEquals(3, computations.get());
+
+        map.putDeferred("before", supplier("b2"));
+        Assert.assertNull(map.put("before", "replaced"));  //not read, hence not computed
+        Assert.assertEquals("replaced", published.get("before"));
+        Assert.assertEquals(3, computations.get());
+    }
+
+    @Test
+    public void changesMadeThroughTheHandedOutMapWin() {
+        ScopedContextMap map = new ScopedContextMap();
+        map.put("k", "v");
+        HashMap<String, Object> published = map.asHashMap();
+        map.putDeferred("k", supplier("deferred"));
+        map.putDeferred("new", supplier("deferred"));
+        published.put("k", "direct");
+        published.put("new", "direct");
+        Assert.assertEquals("direct", map.get("k"));
+        Assert.assertEquals("direct", map.get("new"));
+
+        map.putDeferred("k", supplier("deferred"));
+        published.remove("k");
+        Assert.assertFalse(map.containsKey("k"));
+        Assert.assertEquals(0, computations.get());
+    }
+
+    @Test
+    public void viewsOfTheHandedOutMapSeeTheComputedValues() {
+        ScopedContextMap map = new ScopedContextMap();
+        HashMap<String, Object> published = map.asHashMap();
+        Map<String, Object> expected = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            map.putDeferred("k" + i, supplier("v" + i));
+            expected.put("k" + i, "v" + i);
+        }
+        Assert.assertEquals(0, computations.get());
+        Assert.assertTrue(map.equals(expected));  //iterates the entries of the map
+        Assert.assertEquals(expected, published);
+        List<Object> values = new ArrayList<>(map.values());
+        Collections.sort(values, (a, b) -> a.toString().compareTo(b.toString()));
+        Assert.assertEquals("[v0, v1, v2, v3, v4, v5, v6, v7, v8, v9]", values.toString());
+        Assert.assertEquals(10, computations.get());  //once each
+    }
+
+    @Test
+    public void forksOfTheHandedOutMapShareTheDeferredValues() {
+        ScopedContextMap map = new ScopedContextMap();
+        map.asHashMap();
+        map.putDeferred("k", supplier("v"));
+        ScopedContextMap fork = map.fork();
+        fork.putDeferred("fork-only", supplier("f"));
+        Assert.assertEquals(0, computations.get());
+        Assert.assertEquals("v", fork.get("k"));
+        Assert.assertEquals("v", map.get("k"));
+        Assert.assertEquals(1, computations.get());  //computed once for both
+        Assert.assertFalse(map.containsKey("fork-only"));
+    }
+
+    private Supplier<String> supplier(String value) {
+        return () -> {
+            computations.incrementAndGet();
+            return value;
+        };
+    }
+}